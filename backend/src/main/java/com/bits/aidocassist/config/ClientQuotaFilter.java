@@ -0,0 +1,70 @@
+package com.bits.aidocassist.config;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.bits.aidocassist.service.AnalysisPriority;
+import com.bits.aidocassist.service.ClientQuotaService;
+import com.bits.aidocassist.service.LlmUsageTracker;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Prüft das Kontingent des Clients vor jeder Analyse-Anfrage (POST/PUT unter
+ * {@code /api/documents} und {@code /api/ai}) und antwortet bei Überschreitung mit
+ * 429 und {@code Retry-After}. Zugelassene Anfragen laufen in einem
+ * {@link LlmUsageTracker.Scope} mit der Client-ID, damit LLM-Tokens – auch aus
+ * virtuellen Threads, reaktiven Ketten und Jobs – dem Client zugeordnet werden.
+ */
+@Component
+public class ClientQuotaFilter extends OncePerRequestFilter {
+
+    private final ClientQuotaService quotaService;
+    private final String clientHeader;
+
+    public ClientQuotaFilter(ClientQuotaService quotaService,
+            @Value("${quota.client-header:X-API-Key}") String clientHeader) {
+        this.quotaService = quotaService;
+        this.clientHeader = clientHeader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !("POST".equals(method) || "PUT".equals(method))
+                || !(path.startsWith("/api/documents") || path.startsWith("/api/ai"));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // Absender-Adresse: hinter einem Proxy von Tomcat aus X-Forwarded-For gesetzt
+        // (server.forward-headers-strategy), nie aus dem ungeprüften ersten Eintrag
+        String clientId = quotaService.clientId(request.getHeader(clientHeader), request.getRemoteAddr());
+        ClientQuotaService.Decision decision = quotaService.tryAcquire(clientId);
+        if (!decision.allowed()) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", String.valueOf(Math.max(1, (decision.retryAfterMs() + 999) / 1000)));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setCharacterEncoding("UTF-8");
+            response.getWriter().write("{\"error\":\"Kontingent überschritten\",\"reason\":\"" + decision.reason()
+                    + "\",\"retryAfterMs\":" + decision.retryAfterMs() + "}");
+            return;
+        }
+        if (decision.remainingRequests() >= 0) {
+            response.setHeader("X-RateLimit-Remaining", String.valueOf(decision.remainingRequests()));
+        }
+        try (LlmUsageTracker.Scope scope = LlmUsageTracker.openScope(AnalysisPriority.INTERACTIVE, clientId)) {
+            chain.doFilter(request, response);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.bits.aidocassist.config;
+
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ReactorNettyClientRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.netty.channel.ChannelOption;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Gemeinsamer HTTP-Client für alle LLM-Aufrufe (OpenAI).
+ *
+ * Ein einziger Reactor-Netty-Pool mit begrenzter Größe, Keep-Alive und
+ * HTTP/2-Multiplexing (ALPN, Fallback HTTP/1.1). Darauf bauen sowohl das
+ * blockierende {@link RestTemplate} (AiService, OpenAIService) als auch der
+ * {@link WebClient} (IndustryDetectionService) auf, damit TLS-Verbindungen
+ * wiederverwendet statt pro Aufruf neu aufgebaut werden.
+ *
+ * Pool-Metriken (aktive/idle/wartende Verbindungen) landen über Micrometer unter
+ * {@code reactor.netty.connection.provider.*} in {@code /actuator/metrics}.
+ */
+@Configuration
+public class LlmHttpClientConfig {
+
+    @Value("${openai.api.base-url:https://api.openai.com/v1}")
+    private String baseUrl;
+
+    // Read-/Response-Timeout in Sekunden (bestehender Key)
+    @Value("${openai.api.timeout:30}")
+    private long timeoutSeconds;
+
+    @Value("${openai.http.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    @Value("${openai.http.max-connections:20}")
+    private int maxConnections;
+
+    @Value("${openai.http.pending-acquire-max-count:100}")
+    private int pendingAcquireMaxCount;
+
+    @Value("${openai.http.pending-acquire-timeout-ms:10000}")
+    private long pendingAcquireTimeoutMs;
+
+    @Value("${openai.http.max-idle-time-seconds:55}")
+    private long maxIdleTimeSeconds;
+
+    @Value("${openai.http.max-life-time-seconds:300}")
+    private long maxLifeTimeSeconds;
+
+    @Value("${openai.http.http2-enabled:true}")
+    private boolean http2Enabled;
+
+    @Value("${openai.http.metrics-enabled:true}")
+    private boolean metricsEnabled;
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider llmConnectionProvider() {
+        return ConnectionProvider.builder("llm")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(maxIdleTimeSeconds))
+                .maxLifeTime(Duration.ofSeconds(maxLifeTimeSeconds))
+                .evictInBackground(Duration.ofSeconds(30))
+                .metrics(metricsEnabled)
+                .build();
+    }
+
+    @Bean
+    public HttpClient llmHttpClient(ConnectionProvider llmConnectionProvider) {
+        HttpClient client = HttpClient.create(llmConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                .responseTimeout(Duration.ofSeconds(timeoutSeconds))
+                .compress(true);
+
+        if (http2Enabled) {
+            // H2 wird per ALPN ausgehandelt, ältere Endpunkte bleiben bei HTTP/1.1
+            client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        return client;
+    }
+
+    /**
+     * Blockierender Client für die synchronen Services.
+     */
+    @Bean
+    public RestTemplate llmRestTemplate(HttpClient llmHttpClient) {
+        ReactorNettyClientRequestFactory factory = new ReactorNettyClientRequestFactory(llmHttpClient);
+        factory.setExchangeTimeout(Duration.ofSeconds(timeoutSeconds));
+        factory.setReadTimeout(Duration.ofSeconds(timeoutSeconds));
+        return new RestTemplate(factory);
+    }
+
+    /**
+     * Reaktiver Client auf demselben Verbindungspool.
+     */
+    @Bean
+    public WebClient llmWebClient(HttpClient llmHttpClient) {
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(llmHttpClient))
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .build();
+    }
+}
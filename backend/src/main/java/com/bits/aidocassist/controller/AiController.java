@@ -10,16 +10,23 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.bits.aidocassist.service.AiService;
 import com.bits.aidocassist.service.IndustryDetectionService;
+import com.bits.aidocassist.service.LlmCircuitBreaker;
+import com.bits.aidocassist.service.LlmClient;
+import com.bits.aidocassist.service.LlmModelRouter;
+import com.bits.aidocassist.service.LlmUsageTracker;
 
 import lombok.RequiredArgsConstructor;
+import reactor.core.publisher.Mono;
 
 @RestController
 @RequestMapping("/api/ai")
@@ -30,6 +37,10 @@ public class AiController {
 
     private final IndustryDetectionService industryDetectionService;
     private final AiService aiService;
+    private final LlmClient llmClient;
+    private final LlmCircuitBreaker llmCircuitBreaker;
+    private final LlmUsageTracker llmUsageTracker;
+    private final LlmModelRouter llmModelRouter;
 
     /**
      * ✅ KORRIGIERTE Branchenerkennung mit verbesserter Fehlerbehandlung
@@ -122,19 +133,8 @@ public class AiController {
             log.info("✅ Text analysis completed");
 
             // 3. ✅ Kombiniere Ergebnisse
-            Map<String, Object> result = new HashMap<>();
-            result.put("industryAnalysis", industryAnalysis);
-            result.put("textAnalysis", textAnalysis);
-            result.put("timestamp", System.currentTimeMillis());
-            result.put("status", "SUCCESS");
-            result.put("processingInfo", Map.of(
-                "textLength", text.length(),
-                "industryConfidence", industryAnalysis.get("confidence"),
-                "analysisMethod", "Enhanced AI + Fallback"
-            ));
-
             log.info("✅ Comprehensive AI analysis completed successfully");
-            return ResponseEntity.ok(result);
+            return ResponseEntity.ok(combineAnalysis(text, industryAnalysis, textAnalysis));
 
         } catch (Exception e) {
             log.error("❌ Comprehensive AI analysis failed: {}", e.getMessage(), e);
@@ -161,41 +161,94 @@ public class AiController {
         }
     }
 
+    /**
+     * Nicht-blockierende Variante von /analyze: Branchenerkennung und kombinierte Analyse
+     * laufen per {@code Mono.zip} parallel über den reaktiven LlmClient, ohne einen Thread
+     * für die Dauer der LLM-Aufrufe zu belegen.
+     */
+    @PostMapping("/analyze/reactive")
+    public Mono<ResponseEntity<Map<String, Object>>> analyzeDocumentReactive(@RequestBody Map<String, String> request) {
+        log.info("⚡ Reactive comprehensive AI analysis request received");
+
+        String text = request.get("text");
+        if (text == null || text.trim().isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest().body(Map.of(
+                "error", "Text is required",
+                "timestamp", System.currentTimeMillis()
+            )));
+        }
+
+        Mono<Map<String, Object>> industryAnalysis = industryDetectionService.detectIndustryReactive(text);
+        Mono<Map<String, Object>> textAnalysis = aiService.analyzeCombinedReactive(text, true, true, true)
+                .map(ai -> {
+                    log.debug("✅ AI analysis completed (combined: {}, fallbacks: {})",
+                            ai.isCombined(), ai.getFallbackFields());
+                    return assembleTextAnalysis(text, ai);
+                })
+                .onErrorResume(e -> {
+                    log.warn("⚠️ AI analysis failed, using fallback: {}", e.getMessage());
+                    return Mono.just(assembleTextAnalysis(text, null));
+                });
+
+        return Mono.zip(industryAnalysis, textAnalysis)
+                .map(tuple -> {
+                    log.info("✅ Reactive comprehensive AI analysis completed: {}", tuple.getT1().get("primaryIndustry"));
+                    return ResponseEntity.ok(combineAnalysis(text, tuple.getT1(), tuple.getT2()));
+                })
+                .onErrorResume(e -> {
+                    log.error("❌ Reactive comprehensive AI analysis failed: {}", e.getMessage(), e);
+                    Map<String, Object> fallbackResult = new HashMap<>();
+                    fallbackResult.put("industryAnalysis", createFallbackIndustryResult(text));
+                    fallbackResult.put("textAnalysis", createFallbackTextAnalysis(text));
+                    fallbackResult.put("status", "PARTIAL");
+                    fallbackResult.put("message", "Analysis completed with limitations: " + e.getMessage());
+                    fallbackResult.put("timestamp", System.currentTimeMillis());
+                    return Mono.just(ResponseEntity.ok(fallbackResult));
+                });
+    }
+
+    private Map<String, Object> combineAnalysis(String text, Map<String, Object> industryAnalysis,
+            Map<String, Object> textAnalysis) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("industryAnalysis", industryAnalysis);
+        result.put("textAnalysis", textAnalysis);
+        result.put("timestamp", System.currentTimeMillis());
+        result.put("status", "SUCCESS");
+        result.put("processingInfo", Map.of(
+            "textLength", text.length(),
+            "industryConfidence", industryAnalysis.get("confidence"),
+            "analysisMethod", "Enhanced AI + Fallback"
+        ));
+        return result;
+    }
+
     /**
      * ✅ Robuste Text-Analyse mit individueller Fehlerbehandlung
      */
     private Map<String, Object> performRobustTextAnalysis(String text) {
-        Map<String, Object> analysis = new HashMap<>();
-        
-        // ✅ Summary mit Fallback
-        String summary = null;
+        // ✅ Ein kombinierter AI-Aufruf (Summary, Keywords, Components) mit Fallback
+        AiService.CombinedAnalysis ai = null;
         try {
-            summary = aiService.summarizeText(text);
-            log.debug("✅ AI Summary generated: {} chars", summary != null ? summary.length() : 0);
+            ai = aiService.analyzeCombined(text, true, true, true);
+            log.debug("✅ AI analysis completed (combined: {}, fallbacks: {})",
+                    ai.isCombined(), ai.getFallbackFields());
         } catch (Exception e) {
-            log.warn("⚠️ AI Summary failed, using fallback: {}", e.getMessage());
-            summary = generateFallbackSummary(text);
-        }
-        
-        // ✅ Keywords mit Fallback
-        String keywords = null;
-        try {
-            keywords = aiService.extractKeywords(text);
-            log.debug("✅ AI Keywords extracted");
-        } catch (Exception e) {
-            log.warn("⚠️ AI Keywords failed, using fallback: {}", e.getMessage());
-            keywords = generateFallbackKeywords(text);
-        }
-        
-        // ✅ Components mit Fallback
-        String components = null;
-        try {
-            components = aiService.suggestComponents(text);
-            log.debug("✅ AI Components suggested");
-        } catch (Exception e) {
-            log.warn("⚠️ AI Components failed, using fallback: {}", e.getMessage());
-            components = generateFallbackComponents(text);
+            log.warn("⚠️ AI analysis failed, using fallback: {}", e.getMessage());
         }
+        return assembleTextAnalysis(text, ai);
+    }
+
+    /**
+     * Ergebnis der Text-Analyse; fehlende KI-Felder ({@code ai} null) kommen aus den lokalen Fallbacks.
+     */
+    private Map<String, Object> assembleTextAnalysis(String text, AiService.CombinedAnalysis ai) {
+        Map<String, Object> analysis = new HashMap<>();
+        String summary = ai != null ? ai.getSummary() : null;
+        String keywords = ai != null ? ai.getKeywords() : null;
+        String components = ai != null ? ai.getComponents() : null;
+        if (summary == null) summary = generateFallbackSummary(text);
+        if (keywords == null) keywords = generateFallbackKeywords(text);
+        if (components == null) components = generateFallbackComponents(text);
 
         // ✅ Ergebnis zusammenstellen
         analysis.put("summary", summary);
@@ -393,12 +446,70 @@ public class AiController {
         textAnalysis.put("aiService", isOpenAiConfigured() ? "OpenAI available" : "Using fallback methods");
         features.put("textAnalysis", textAnalysis);
 
+        // ✅ Circuit Breaker je Operation (OPEN → lokale Fallbacks antworten sofort)
+        Map<String, Object> llm = new HashMap<>();
+        llm.put("circuitBreakers", llmCircuitBreaker.getStates());
+        llm.put("degraded", llmCircuitBreaker.isAnyOpen());
+        features.put("llm", llm);
+
         health.put("features", features);
         health.put("timestamp", System.currentTimeMillis());
 
         return ResponseEntity.ok(health);
     }
 
+    /**
+     * ✅ Statistiken des LLM-Response-Caches (Hits, Misses, Evictions, Größe)
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<Map<String, Object>> cacheStats() {
+        Map<String, Object> stats = new HashMap<>(llmClient.getResponseCache().getStats());
+        stats.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * ✅ Statistiken der LLM-Schicht (laufende/zusammengelegte Requests, Cache)
+     */
+    @GetMapping("/llm/stats")
+    public ResponseEntity<Map<String, Object>> llmStats() {
+        Map<String, Object> stats = new HashMap<>(llmClient.getStats());
+        stats.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * Token-Verbrauch, Latenz und geschätzte Kosten je Operation/Modell im gleitenden Fenster.
+     * sortBy: tokens | latency | cost | calls
+     */
+    @GetMapping("/llm/usage")
+    public ResponseEntity<Map<String, Object>> llmUsage(
+            @RequestParam(defaultValue = "tokens") String sortBy,
+            @RequestParam(defaultValue = "20") int limit) {
+        Map<String, Object> usage = new HashMap<>(llmUsageTracker.getUsage(sortBy, limit));
+        usage.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(usage);
+    }
+
+    /**
+     * Routing-Tabelle mit Latenz, Fehlern und Feedback-Bewertung je Route.
+     */
+    @GetMapping("/llm/routes")
+    public ResponseEntity<Map<String, Object>> llmRoutes() {
+        Map<String, Object> routes = new HashMap<>(llmModelRouter.getStats());
+        routes.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(routes);
+    }
+
+    @DeleteMapping("/cache")
+    public ResponseEntity<Map<String, Object>> clearCache() {
+        llmClient.getResponseCache().clear();
+        return ResponseEntity.ok(Map.of(
+            "status", "CLEARED",
+            "timestamp", System.currentTimeMillis()
+        ));
+    }
+
     /**
      * ✅ Service Info
      */
@@ -2,8 +2,6 @@ package com.bits.aidocassist.controller;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -18,12 +16,19 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -32,25 +37,43 @@ import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import com.bits.aidocassist.exception.JobQueueUnavailableException;
 import com.bits.aidocassist.model.AnalysisFeedback;
+import com.bits.aidocassist.model.AnalysisJob;
 import com.bits.aidocassist.model.Document;
 import com.bits.aidocassist.service.AiService;
+import com.bits.aidocassist.service.AnalysisJobService;
+import com.bits.aidocassist.service.AnalysisPriority;
+import com.bits.aidocassist.service.AnalysisTaskRunner;
+import com.bits.aidocassist.service.AnalysisUpgradeService;
+import com.bits.aidocassist.service.BatchIngestionService;
 import com.bits.aidocassist.service.DocumentService;
 import com.bits.aidocassist.service.FeedbackService;
+import com.bits.aidocassist.service.IncrementalAnalysisService;
 import com.bits.aidocassist.service.IndustryDetectionService;
+import com.bits.aidocassist.service.LlmModelRouter;
+import com.bits.aidocassist.service.LlmUsageTracker;
+import com.bits.aidocassist.service.PdfTextExtractor;
 import com.bits.aidocassist.service.TextPreprocessingService;
-import com.bits.aidocassist.util.PdfProcessor;
+import com.bits.aidocassist.service.UploadAnalysisService;
+import com.bits.aidocassist.util.ContentHash;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.Part;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import reactor.core.publisher.Mono;
 
 /**
  * Optimierter Document Controller mit erweiterten Analyse-Features.
@@ -68,6 +91,13 @@ public class DocumentController {
     private final TextPreprocessingService preprocessingService;
     private final FeedbackService feedbackService;
     private final IndustryDetectionService industryDetectionService;
+    private final IncrementalAnalysisService incrementalAnalysisService;
+    private final AnalysisTaskRunner taskRunner;
+    private final AnalysisUpgradeService upgradeService;
+    private final UploadAnalysisService uploadAnalysis;
+    private final AnalysisJobService jobService;
+    private final BatchIngestionService ingestionService;
+    private final PdfTextExtractor pdfTextExtractor;
     private final ObjectMapper objectMapper;
 
     public DocumentController(
@@ -76,18 +106,41 @@ public class DocumentController {
             TextPreprocessingService preprocessingService,
             FeedbackService feedbackService,
             IndustryDetectionService industryDetectionService,
+            IncrementalAnalysisService incrementalAnalysisService,
+            AnalysisTaskRunner taskRunner,
+            AnalysisUpgradeService upgradeService,
+            UploadAnalysisService uploadAnalysis,
+            AnalysisJobService jobService,
+            BatchIngestionService ingestionService,
+            PdfTextExtractor pdfTextExtractor,
             ObjectMapper objectMapper) {
         this.documentService = documentService;
         this.aiService = aiService;
         this.preprocessingService = preprocessingService;
         this.feedbackService = feedbackService;
         this.industryDetectionService = industryDetectionService;
+        this.incrementalAnalysisService = incrementalAnalysisService;
+        this.taskRunner = taskRunner;
+        this.upgradeService = upgradeService;
+        this.uploadAnalysis = uploadAnalysis;
+        this.jobService = jobService;
+        this.ingestionService = ingestionService;
+        this.pdfTextExtractor = pdfTextExtractor;
         this.objectMapper = objectMapper;
     }
 
     @Value("${spring.servlet.multipart.max-file-size:10MB}")
     private String maxFileSize;
 
+    @Value("${documents.stream.timeout-ms:180000}")
+    private long streamTimeoutMs;
+
+    @Value("${documents.batch.timeout-ms:300000}")
+    private long batchTimeoutMs;
+
+    @Value("${documents.ingest.timeout-ms:3600000}")
+    private long ingestTimeoutMs;
+
     // Unterstützte Dateiformate
     private static final Set<String> SUPPORTED_FORMATS = Set.of(
             "application/pdf",
@@ -99,18 +152,23 @@ public class DocumentController {
             "text/markdown");
 
     /**
-     * Einzeldokument-Upload mit Analyse.
+     * Einzeldokument-Upload mit Analyse. Mit {@code async=true} wird nur der Job eingereiht
+     * (202 + Job-ID, Status über {@code GET /api/jobs/{id}}). Wurde derselbe Inhalt mit
+     * denselben Optionen schon analysiert, wird diese Analyse übernommen ({@code force=true}
+     * erzwingt eine neue).
      */
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<AnalysisResponse> createDocument(
             @RequestParam("file") MultipartFile file,
-            @RequestParam(value = "analysisOptions", required = false) String analysisOptionsJson) {
+            @RequestParam(value = "analysisOptions", required = false) String analysisOptionsJson,
+            @RequestParam(value = "async", defaultValue = "false") boolean async,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
 
         final Instant t0 = Instant.now();
         final String originalName = file != null ? file.getOriginalFilename() : null;
         logger.info("📄 Dokument-Upload gestartet: {}", originalName);
 
-        try {
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope()) {
             ValidationResult validation = validateFile(file);
             if (!validation.isValid()) {
                 return ResponseEntity.badRequest()
@@ -118,52 +176,82 @@ public class DocumentController {
             }
 
             AnalysisOptions options = parseAnalysisOptions(analysisOptionsJson);
+            String contentHash = ContentHash.sha256(file);
+            String optionsKey = uploadOptionsKey(options);
+
+            if (!force) {
+                Document duplicate = findDuplicate(contentHash, optionsKey, originalName, true);
+                if (duplicate != null) {
+                    return duplicateResponse(duplicate, contentHash, t0);
+                }
+            }
+
+            if (async && !jobService.isAcceptingJobs()) {
+                logger.warn("⚠️ async=true ohne persistente Job-Queue: {} wird synchron analysiert", originalName);
+            } else if (async) {
+                AnalysisJob job = submitJob(null, file, options);
+                Map<String, Object> metadata = new HashMap<>();
+                metadata.put("jobId", job.getId());
+                metadata.put("statusUrl", "/api/jobs/" + job.getId());
+                AnalysisResponse resp = new AnalysisResponse(null, "Analyse-Job eingereiht", metadata);
+                resp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
+                return ResponseEntity.accepted().header("Location", "/api/jobs/" + job.getId()).body(resp);
+            }
 
-            String rawContent = extractTextFromFile(file);
-            String processedContent = preprocessingService.preprocessText(rawContent);
+            // PDF-Extraktion und Preprocessing im begrenzten CPU-Pool
+            String rawContent = taskRunner.onCpu(
+                    () -> uploadAnalysis.extractText(originalName, file.getContentType(), file));
+            String processedContent = taskRunner.onCpu(() -> preprocessingService.preprocessText(rawContent));
             TextPreprocessingService.PreprocessingResult preprocessResult = preprocessingService
                     .getPreprocessingResult(rawContent, processedContent);
 
             logger.info("📊 Preprocessing: {} -> {} chars, lang={}",
                     rawContent.length(), processedContent.length(), preprocessResult.detectedLanguage);
 
-            CompletableFuture<String> summaryFuture = CompletableFuture.supplyAsync(
-                    () -> options.generateSummary ? aiService.summarizeText(processedContent) : null);
-
-            CompletableFuture<String> keywordsFuture = CompletableFuture.supplyAsync(
-                    () -> options.extractKeywords ? aiService.extractKeywords(processedContent) : null);
-
-            CompletableFuture<String> componentsFuture = CompletableFuture.supplyAsync(
-                    () -> options.suggestComponents ? aiService.suggestComponents(processedContent) : null);
-
-            CompletableFuture.allOf(summaryFuture, keywordsFuture, componentsFuture).join();
+            // Ein kombinierter LLM-Aufruf statt drei (Fallback: parallele Einzelaufrufe)
+            AiService.CombinedAnalysis ai = runAiAnalysis(processedContent, options);
 
             Document document = new Document();
             document.setFilename(originalName);
             document.setFileType(file.getContentType());
-            document.setTitle(extractTitle(originalName, processedContent));
+            document.setTitle(uploadAnalysis.extractTitle(originalName, processedContent));
             document.setContent(processedContent);
             document.setUploadDate(new Date());
+            document.setContentHash(contentHash);
+            document.setAnalysisOptions(optionsKey);
 
-            document.setSummary(summaryFuture.get());
-            document.setKeywords(keywordsFuture.get());
-            document.setSuggestedComponents(componentsFuture.get());
+            document.setSummary(ai.getSummary());
+            document.setKeywords(ai.getKeywords());
+            document.setSuggestedComponents(ai.getComponents());
+            document.setAnalysisRoutes(LlmModelRouter.encodeFieldRoutes(ai.getRoutes()));
+            // Nur vollständige KI-Analysen dienen später als Duplikat
+            document.setAnalysisStatus(AnalysisUpgradeService.statusOf(ai));
 
-            document.setDocumentType(detectDocumentType(processedContent));
-            document.setComplexityLevel(calculateComplexity(preprocessResult));
-            document.setQualityScore(calculateQualityScore(preprocessResult));
+            document.setDocumentType(uploadAnalysis.detectDocumentType(processedContent));
+            document.setComplexityLevel(uploadAnalysis.calculateComplexity(preprocessResult));
+            document.setQualityScore(uploadAnalysis.calculateQualityScore(preprocessResult));
 
             Document saved = documentService.saveDocument(document);
 
+            Map<String, Object> metadata = buildAnalysisMetadata(preprocessResult, saved);
+            if (!ai.getTokenUsage().isEmpty()) {
+                metadata.put("tokens", ai.getTokenUsage());
+            }
+            metadata.put("llmUsage", usage.toMetadata());
+
             AnalysisResponse resp = new AnalysisResponse(
                     saved,
                     "Analyse erfolgreich abgeschlossen",
-                    buildAnalysisMetadata(preprocessResult, saved));
+                    metadata);
             resp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
 
             logger.info("✅ Dokument analysiert & gespeichert: id={}", saved.getId());
             return ResponseEntity.ok(resp);
 
+        } catch (JobQueueUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfterMs() / 1000)))
+                    .body(new AnalysisResponse(null, e.getMessage(), Map.of()));
         } catch (Exception e) {
             logger.error("❌ Fehler bei Dokumentenverarbeitung:", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -172,12 +260,72 @@ public class DocumentController {
     }
 
     /**
-     * Batch-Upload (max 10 Dateien).
+     * Streamende Batch-Analyse ohne Dateilimit: Multipart-Upload (Feld beliebig, auch ZIP-Teile)
+     * oder ein ZIP-Archiv als Request-Body. Antwort als NDJSON: je Datei eine Zeile
+     * ({@code type=result}), sobald sie analysiert und gespeichert ist, zum Schluss
+     * {@code type=summary}. Parallelität und Spooling: {@link BatchIngestionService}.
+     * Bereits analysierte Inhalte werden übernommen, außer mit {@code force=true}.
+     */
+    @PostMapping(path = "/batch/stream", consumes = { MediaType.MULTIPART_FORM_DATA_VALUE, "application/zip",
+            "application/x-zip-compressed", MediaType.APPLICATION_OCTET_STREAM_VALUE },
+            produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<ResponseBodyEmitter> streamBatch(HttpServletRequest request,
+            @RequestParam(value = "analysisOptions", required = false) String analysisOptionsJson,
+            @RequestParam(value = "force", defaultValue = "false") boolean force) {
+
+        AnalysisOptions options = parseAnalysisOptions(analysisOptionsJson);
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(ingestTimeoutMs);
+        BatchIngestionService.Ingestion ingestion = ingestionService.open(options.generateSummary,
+                options.extractKeywords, options.suggestComponents, force,
+                line -> emitter.send((objectMapper.writeValueAsString(line) + "\n").getBytes(StandardCharsets.UTF_8),
+                        MediaType.APPLICATION_NDJSON));
+        emitter.onTimeout(ingestion::cancel);
+        emitter.onError(e -> ingestion.cancel());
+
+        logger.info("📦 Streaming-Batch {} gestartet ({})", ingestion.getBatchId(), request.getContentType());
+
+        // Lesen des Uploads auf einem virtuellen Thread; add() blockiert, solange alle Slots belegt sind
+        CompletableFuture.runAsync(() -> {
+            String error = null;
+            try {
+                if (request.getContentType() != null
+                        && request.getContentType().startsWith(MediaType.MULTIPART_FORM_DATA_VALUE)) {
+                    // Multipart-Teile liegen bereits auf der Platte (file-size-threshold=0)
+                    for (Part part : request.getParts()) {
+                        if (part.getSubmittedFileName() != null) {
+                            ingestion.add(part.getSubmittedFileName(), part.getContentType(), part::getInputStream);
+                        }
+                    }
+                } else {
+                    ingestion.addZip(request.getInputStream());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                error = "Batch-Verarbeitung unterbrochen";
+            } catch (Exception e) {
+                logger.warn("⚠️ Streaming-Batch {}: {}", ingestion.getBatchId(), e.getMessage());
+                error = e.getMessage();
+            }
+            try {
+                ingestion.finish(error);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            emitter.complete();
+        }, taskRunner.io());
+
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+    }
+
+    /**
+     * Batch-Upload (max 10 Dateien). Mit {@code async=true} ein Job je Datei (202 + Batch-ID,
+     * Status über {@code GET /api/jobs?batchId=...}). Größere Batches: {@code /batch/stream}.
      */
     @PostMapping(path = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<BatchAnalysisResponse> processBatch(
             @RequestParam("files") MultipartFile[] files,
-            @RequestParam(value = "analysisOptions", required = false) String analysisOptionsJson) {
+            @RequestParam(value = "analysisOptions", required = false) String analysisOptionsJson,
+            @RequestParam(value = "async", defaultValue = "false") boolean async) {
 
         if (files == null || files.length == 0) {
             return ResponseEntity.badRequest()
@@ -185,23 +333,35 @@ public class DocumentController {
         }
         if (files.length > 10) {
             return ResponseEntity.badRequest()
-                    .body(new BatchAnalysisResponse(List.of(), "Maximal 10 Dateien gleichzeitig erlaubt", 0,
-                            files.length));
+                    .body(new BatchAnalysisResponse(List.of(),
+                            "Maximal 10 Dateien gleichzeitig erlaubt (größere Batches: /api/documents/batch/stream)",
+                            0, files.length));
         }
 
         logger.info("📦 Batch-Upload gestartet: {} Dateien", files.length);
 
         AnalysisOptions options = parseAnalysisOptions(analysisOptionsJson);
+        if (async && jobService.isAcceptingJobs()) {
+            return submitBatchJobs(files, options);
+        }
+        if (async) {
+            logger.warn("⚠️ async=true ohne persistente Job-Queue: Batch wird synchron analysiert");
+        }
+
         List<Document> processedDocuments = Collections.synchronizedList(new ArrayList<>());
         List<String> errors = Collections.synchronizedList(new ArrayList<>());
 
-        List<CompletableFuture<Void>> futures = Arrays.stream(files)
-                .map(file -> CompletableFuture.runAsync(() -> {
+        // Eine Datei pro virtuellem Thread; Fehler einzelner Dateien brechen den Batch nicht ab,
+        // die Frist schon (unfertige Dateien werden abgebrochen). LLM-Slots in der Batch-Klasse.
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope(AnalysisPriority.BATCH);
+                AnalysisTaskRunner.Scope scope = taskRunner.openScope(java.time.Duration.ofMillis(batchTimeoutMs))) {
+            for (MultipartFile file : files) {
+                scope.fork(() -> {
                     try {
                         ValidationResult validation = validateFile(file);
                         if (!validation.isValid()) {
                             errors.add(file.getOriginalFilename() + ": " + validation.getErrorMessage());
-                            return;
+                            return null;
                         }
                         Document doc = processFile(file, options);
                         processedDocuments.add(doc);
@@ -209,10 +369,20 @@ public class DocumentController {
                         logger.error("Fehler bei Datei {}: {}", file.getOriginalFilename(), e.getMessage());
                         errors.add(file.getOriginalFilename() + ": " + e.getMessage());
                     }
-                }))
-                .toList();
-
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                    return null;
+                });
+            }
+            scope.join();
+        } catch (java.util.concurrent.TimeoutException e) {
+            logger.warn("⏱️ Batch-Frist von {}ms überschritten", batchTimeoutMs);
+            errors.add("Zeitlimit überschritten: " + (files.length - processedDocuments.size() - errors.size())
+                    + " Datei(en) abgebrochen");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            errors.add("Batch-Verarbeitung unterbrochen");
+        } catch (java.util.concurrent.ExecutionException e) {
+            errors.add("Batch-Verarbeitung fehlgeschlagen: " + e.getCause().getMessage());
+        }
 
         BatchAnalysisResponse response = new BatchAnalysisResponse(
                 processedDocuments,
@@ -234,7 +404,19 @@ public class DocumentController {
         logger.info("📝 Direkt-Text-Analyse gestartet: {} Zeichen, Industry: {}",
                 input.length(), selectedIndustry);
 
-        try {
+        if (!request.isForce()) {
+            Document duplicate = findDuplicate(ContentHash.sha256(input), textOptionsKey(request),
+                    request.getTitle(), request.isSaveDocument());
+            if (duplicate != null) {
+                return duplicateResponse(duplicate, duplicate.getContentHash(), t0);
+            }
+        }
+
+        if (request.isInstant()) {
+            return analyzeTextInstant(request, t0, input, selectedIndustry);
+        }
+
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope()) {
             // 1. Text-Preprocessing
             String processedText = preprocessingService.preprocessText(input);
             TextPreprocessingService.PreprocessingResult preprocessResult = preprocessingService
@@ -243,134 +425,480 @@ public class DocumentController {
             AnalysisOptions options = request.getOptions() != null ? request.getOptions()
                     : AnalysisOptions.defaultOptions();
 
-            // 2. ✅ Industry Detection Integration
-            Map<String, Object> industryResult = null;
-            if ("auto".equals(selectedIndustry)) {
-                try {
-                    logger.info("🏭 Starting automatic industry detection...");
-                    industryResult = industryDetectionService.detectIndustry(processedText);
-                    logger.info("✅ Industry detected: {} ({}% confidence)",
-                            industryResult.get("primaryIndustry"),
-                            industryResult.get("confidence"));
-                } catch (Exception e) {
-                    logger.warn("⚠️ Industry detection failed: {}", e.getMessage());
-                    // Create fallback industry result
-                    industryResult = createFallbackIndustryResult();
-                }
-            } else {
-                logger.info("🎯 Using manually selected industry: {}", selectedIndustry);
-                industryResult = createManualIndustryResult(selectedIndustry);
+            // 2. ✅ Industry Detection und 3. AI-Analyse (kombiniert) parallel auf virtuellen Threads
+            Map<String, Object> industryResult;
+            AiService.CombinedAnalysis ai;
+            try (AnalysisTaskRunner.Scope scope = taskRunner.openScope()) {
+                AnalysisTaskRunner.Subtask<Map<String, Object>> industryTask = scope.fork(
+                        () -> detectIndustryOrFallback(processedText, selectedIndustry));
+                AnalysisTaskRunner.Subtask<AiService.CombinedAnalysis> aiTask = scope.fork(() -> {
+                    try {
+                        return runAiAnalysis(processedText, options);
+                    } catch (Exception e) {
+                        logger.warn("⚠️ AI-Analyse fehlgeschlagen, verwende Fallback: {}", e.getMessage());
+                        return null;
+                    }
+                });
+                scope.join();
+                industryResult = industryTask.get();
+                ai = aiTask.get();
             }
 
-            // 3. AI-Service Aufrufe mit Industry Context
-            String summary = null;
-            String keywords = null;
-            String components = null;
-
-            if (options.isGenerateSummary()) {
-                try {
-                    summary = aiService.summarizeText(processedText);
-                    logger.debug("✅ Summary generiert: {} Zeichen", summary != null ? summary.length() : 0);
-                } catch (Exception e) {
-                    logger.warn("⚠️ AI Summary fehlgeschlagen, verwende Fallback: {}", e.getMessage());
-                    summary = generateFallbackSummary(processedText);
-                }
+            return buildTextAnalysisResponse(request, t0, processedText, preprocessResult, options,
+                    industryResult, ai, usage);
+
+        } catch (Exception e) {
+            logger.error("❌ Kritischer Fehler bei Text-Analyse:", e);
+            return textAnalysisFallback(request, input, t0, e);
+        }
+    }
+
+    /**
+     * Ergebnis von /analyze-text aus Branche und KI-Analyse ({@code ai} null → lokale Fallbacks).
+     */
+    private ResponseEntity<AnalysisResponse> buildTextAnalysisResponse(TextAnalysisRequest request, Instant t0,
+            String processedText, TextPreprocessingService.PreprocessingResult preprocessResult,
+            AnalysisOptions options, Map<String, Object> industryResult, AiService.CombinedAnalysis ai,
+            LlmUsageTracker.Scope usage) {
+        // 4. Document-Objekt erstellen und befüllen
+        Document document = newTextDocument(request, processedText);
+        applyTextAnalysis(document, processedText, preprocessResult, options, industryResult, ai);
+        String detectedIndustry = document.getDocumentType();
+
+        // 5. Optional: Dokument speichern
+        if (request.isSaveDocument()) {
+            try {
+                document = documentService.saveDocument(document);
+                logger.info("💾 Dokument gespeichert: id={}", document.getId());
+            } catch (Exception e) {
+                logger.warn("⚠️ Dokument-Speicherung fehlgeschlagen: {}", e.getMessage());
             }
+        }
 
-            if (options.isExtractKeywords()) {
-                try {
-                    keywords = aiService.extractKeywords(processedText);
+        // 6. ✅ Enhanced Response mit Industry Analysis
+        Map<String, Object> enhancedMetadata = buildAnalysisMetadata(preprocessResult, document);
+        enhancedMetadata.put("industryAnalysis", industryResult);
+        if (ai != null && !ai.getTokenUsage().isEmpty()) {
+            enhancedMetadata.put("tokens", ai.getTokenUsage());
+        }
+        // Tatsächlicher Verbrauch laut Provider (usage-Block aller Aufrufe dieser Anfrage)
+        enhancedMetadata.put("llmUsage", usage.toMetadata());
+
+        // Add industry-specific recommendations
+        enhancedMetadata.put("industryRecommendations", generateIndustryRecommendations(detectedIndustry));
+
+        AnalysisResponse resp = new AnalysisResponse(
+                document,
+                "Text-Analyse mit Branchenerkennung erfolgreich",
+                enhancedMetadata);
+        resp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
+
+        logger.info("✅ Text-Analyse abgeschlossen in {}ms - Industry: {} ({}%)",
+                resp.getProcessingTimeMs(), detectedIndustry,
+                industryResult.get("confidence"));
+        return ResponseEntity.ok(resp);
+    }
+
+    private Document newTextDocument(TextAnalysisRequest request, String processedText) {
+        Document document = new Document();
+        document.setTitle(request.getTitle() != null ? request.getTitle() : "Direkt-Analyse");
+        document.setFilename(request.getTitle());
+        document.setFileType("text/plain");
+        document.setContent(processedText);
+        document.setUploadDate(new Date());
+        document.setContentHash(ContentHash.sha256(Objects.requireNonNullElse(request.getText(), "")));
+        document.setAnalysisOptions(textOptionsKey(request));
+        return document;
+    }
+
+    /**
+     * Vorhandene Analyse desselben Inhalts: das Original bei gleichem Namen bzw. ohne
+     * Speichern, sonst eine verknüpfte Kopie unter dem neuen Namen ({@code null}: keine).
+     */
+    private Document findDuplicate(String contentHash, String optionsKey, String filename, boolean save) {
+        Document existing = documentService.findAnalyzedDuplicate(contentHash, optionsKey).orElse(null);
+        if (existing == null || !save || Objects.equals(existing.getFilename(), filename)) {
+            return existing;
+        }
+        String title = filename != null ? uploadAnalysis.extractTitle(filename, existing.getContent())
+                : existing.getTitle();
+        return documentService.saveLinkedCopy(existing, filename, title);
+    }
+
+    private ResponseEntity<AnalysisResponse> duplicateResponse(Document document, String contentHash, Instant t0) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("deduplicated", true);
+        metadata.put("duplicateOf", document.getDuplicateOf() != null ? document.getDuplicateOf() : document.getId());
+        metadata.put("contentHash", contentHash);
+        AnalysisResponse resp = new AnalysisResponse(document,
+                "Inhalt bereits analysiert – vorhandene Analyse übernommen (force=true für neue Analyse)", metadata);
+        resp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
+        logger.info("♻️ Duplikat erkannt: Dokument {} (Original {})", document.getId(),
+                metadata.get("duplicateOf"));
+        return ResponseEntity.ok(resp);
+    }
+
+    private static String uploadOptionsKey(AnalysisOptions options) {
+        return DocumentService.analysisOptionsKey("upload", options.generateSummary, options.extractKeywords,
+                options.suggestComponents);
+    }
+
+    private static String textOptionsKey(TextAnalysisRequest request) {
+        AnalysisOptions options = request.getOptions() != null ? request.getOptions()
+                : AnalysisOptions.defaultOptions();
+        String industry = Objects.requireNonNullElse(request.getSelectedIndustry(), "auto").toLowerCase(Locale.ROOT);
+        return DocumentService.analysisOptionsKey("text:" + industry, options.isGenerateSummary(),
+                options.isExtractKeywords(), options.isSuggestComponents());
+    }
+
+    /**
+     * Setzt die Analysefelder aus Branche und KI-Analyse ({@code ai} null → lokale Fallbacks).
+     */
+    private void applyTextAnalysis(Document document, String processedText,
+            TextPreprocessingService.PreprocessingResult preprocessResult, AnalysisOptions options,
+            Map<String, Object> industryResult, AiService.CombinedAnalysis ai) {
+        String summary = null;
+        String keywords = null;
+        String components = null;
+
+        if (options.isGenerateSummary()) {
+            summary = ai != null && ai.getSummary() != null ? ai.getSummary()
+                    : generateFallbackSummary(processedText);
+            logger.debug("✅ Summary generiert: {} Zeichen", summary.length());
+        }
+
+        if (options.isExtractKeywords()) {
+            keywords = ai != null && ai.getKeywords() != null
                     // ✅ Enhance keywords with industry-specific terms
-                    keywords = enhanceKeywordsWithIndustryContext(keywords, industryResult);
-                    logger.debug("✅ Keywords extrahiert und erweitert");
-                } catch (Exception e) {
-                    logger.warn("⚠️ AI Keywords fehlgeschlagen, verwende Fallback: {}", e.getMessage());
-                    keywords = generateFallbackKeywords(processedText);
-                }
-            }
+                    ? enhanceKeywordsWithIndustryContext(ai.getKeywords(), industryResult)
+                    : generateFallbackKeywords(processedText);
+            logger.debug("✅ Keywords extrahiert und erweitert");
+        }
 
-            if (options.isSuggestComponents()) {
-                try {
-                    components = aiService.suggestComponents(processedText);
+        if (options.isSuggestComponents()) {
+            components = ai != null && ai.getComponents() != null
                     // ✅ Enhance components with industry-specific suggestions
-                    components = enhanceComponentsWithIndustryContext(components, industryResult);
-                    logger.debug("✅ Components vorgeschlagen und erweitert");
-                } catch (Exception e) {
-                    logger.warn("⚠️ AI Components fehlgeschlagen, verwende Fallback: {}", e.getMessage());
-                    components = generateFallbackComponents(processedText);
-                }
-            }
+                    ? enhanceComponentsWithIndustryContext(ai.getComponents(), industryResult)
+                    : generateFallbackComponents(processedText);
+            logger.debug("✅ Components vorgeschlagen und erweitert");
+        }
 
-            // 4. Document-Objekt erstellen und befüllen
-            Document document = new Document();
-            document.setTitle(request.getTitle() != null ? request.getTitle() : "Direkt-Analyse");
-            document.setFilename(request.getTitle());
-            document.setFileType("text/plain");
-            document.setContent(processedText);
-            document.setSummary(summary);
-            document.setKeywords(keywords);
-            document.setSuggestedComponents(components);
-            document.setUploadDate(new Date());
+        document.setSummary(summary);
+        document.setKeywords(keywords);
+        document.setSuggestedComponents(components);
+        if (ai != null) {
+            document.setAnalysisRoutes(LlmModelRouter.encodeFieldRoutes(ai.getRoutes()));
+        }
+        // Nur vollständige KI-Analysen dienen später als Duplikat
+        document.setAnalysisStatus(AnalysisUpgradeService.statusOf(ai));
 
-            // ✅ Industry Information in Document einbetten
-            String detectedIndustry = (String) industryResult.get("primaryIndustry");
-            document.setDocumentType(detectedIndustry);
-            document.setComplexityLevel(calculateComplexityWithIndustry(preprocessResult, detectedIndustry));
-            document.setQualityScore(calculateQualityScoreWithIndustry(preprocessResult, detectedIndustry));
+        // ✅ Industry Information in Document einbetten
+        String detectedIndustry = (String) industryResult.get("primaryIndustry");
+        document.setDocumentType(detectedIndustry);
+        document.setComplexityLevel(calculateComplexityWithIndustry(preprocessResult, detectedIndustry));
+        document.setQualityScore(calculateQualityScoreWithIndustry(preprocessResult, detectedIndustry));
+    }
 
-            // 5. Optional: Dokument speichern
-            if (request.isSaveDocument()) {
-                try {
-                    document = documentService.saveDocument(document);
-                    logger.info("💾 Dokument gespeichert: id={}", document.getId());
-                } catch (Exception e) {
-                    logger.warn("⚠️ Dokument-Speicherung fehlgeschlagen: {}", e.getMessage());
-                }
+    /**
+     * Instant-Modus von /analyze-text: lokale Heuristik und Branchenerkennung nach Keywords,
+     * sofort gespeichert (Version 1) und zurückgegeben. Die KI-Analyse läuft im Hintergrund
+     * und aktualisiert das Dokument; Abruf über {@code GET /api/documents/{id}/analysis}.
+     */
+    private ResponseEntity<AnalysisResponse> analyzeTextInstant(TextAnalysisRequest request, Instant t0,
+            String input, String selectedIndustry) {
+        try {
+            String processedText = preprocessingService.preprocessText(input);
+            TextPreprocessingService.PreprocessingResult preprocessResult = preprocessingService
+                    .getPreprocessingResult(input, processedText);
+            AnalysisOptions options = request.getOptions() != null ? request.getOptions()
+                    : AnalysisOptions.defaultOptions();
+            Map<String, Object> industryResult = "auto".equals(selectedIndustry)
+                    ? industryDetectionService.detectIndustryLocal(processedText)
+                    : createManualIndustryResult(selectedIndustry);
+
+            Document document = newTextDocument(request, processedText);
+            applyTextAnalysis(document, processedText, preprocessResult, options, industryResult, null);
+
+            // Ohne Schlüssel bleibt es bei der Heuristik, ein Upgrade brächte nichts Neues
+            boolean upgrade = aiService.isOpenAiConfigured();
+            document = upgradeService.saveInstant(document, upgrade);
+            if (upgrade) {
+                upgradeService.submit(document,
+                        () -> upgradeTextAnalysis(processedText, preprocessResult, options, selectedIndustry));
             }
 
-            // 6. ✅ Enhanced Response mit Industry Analysis
-            Map<String, Object> enhancedMetadata = buildAnalysisMetadata(preprocessResult, document);
-            enhancedMetadata.put("industryAnalysis", industryResult);
+            Map<String, Object> metadata = buildAnalysisMetadata(preprocessResult, document);
+            metadata.put("industryAnalysis", industryResult);
+            metadata.put("industryRecommendations", generateIndustryRecommendations(document.getDocumentType()));
+            metadata.put("instant", true);
+            metadata.put("analysisVersion", document.getAnalysisVersion());
+            metadata.put("analysisStatus", document.getAnalysisStatus());
+            metadata.put("pollUrl", "/api/documents/" + document.getId() + "/analysis?sinceVersion="
+                    + document.getAnalysisVersion());
+
+            AnalysisResponse resp = new AnalysisResponse(document,
+                    upgrade ? "Sofort-Analyse gespeichert, KI-Analyse läuft im Hintergrund"
+                            : "Sofort-Analyse gespeichert (ohne KI)",
+                    metadata);
+            resp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
+            logger.info("⚡ Sofort-Analyse in {}ms: id={}, Upgrade={}", resp.getProcessingTimeMs(),
+                    document.getId(), upgrade);
+            return ResponseEntity.status(upgrade ? HttpStatus.ACCEPTED : HttpStatus.OK).body(resp);
 
-            // Add industry-specific recommendations
-            enhancedMetadata.put("industryRecommendations", generateIndustryRecommendations(detectedIndustry));
+        } catch (Exception e) {
+            logger.error("❌ Kritischer Fehler bei Sofort-Analyse:", e);
+            return textAnalysisFallback(request, input, t0, e);
+        }
+    }
 
-            AnalysisResponse resp = new AnalysisResponse(
-                    document,
-                    "Text-Analyse mit Branchenerkennung erfolgreich",
-                    enhancedMetadata);
-            resp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
+    /**
+     * KI-Teil des Instant-Modus (Hintergrund): Branche und kombinierte Analyse parallel,
+     * Ergebnis als Änderung für den aktuellen Stand des Dokuments.
+     */
+    private Consumer<Document> upgradeTextAnalysis(String processedText,
+            TextPreprocessingService.PreprocessingResult preprocessResult, AnalysisOptions options,
+            String selectedIndustry) throws Exception {
+        try (AnalysisTaskRunner.Scope scope = taskRunner.openScope()) {
+            AnalysisTaskRunner.Subtask<Map<String, Object>> industryTask = scope.fork(
+                    () -> detectIndustryOrFallback(processedText, selectedIndustry));
+            AnalysisTaskRunner.Subtask<AiService.CombinedAnalysis> aiTask = scope.fork(
+                    () -> runAiAnalysis(processedText, options));
+            scope.join();
+            Map<String, Object> industryResult = industryTask.get();
+            AiService.CombinedAnalysis ai = aiTask.get();
+            return document -> applyTextAnalysis(document, processedText, preprocessResult, options,
+                    industryResult, ai);
+        }
+    }
 
-            logger.info("✅ Text-Analyse abgeschlossen in {}ms - Industry: {} ({}%)",
-                    resp.getProcessingTimeMs(), detectedIndustry,
-                    industryResult.get("confidence"));
-            return ResponseEntity.ok(resp);
+    private ResponseEntity<AnalysisResponse> textAnalysisFallback(TextAnalysisRequest request, String input,
+            Instant t0, Throwable e) {
+        // Graceful Degradation mit Industry Fallback
+        try {
+            Document fallbackDocument = createFallbackDocument(input, request);
+            Map<String, Object> fallbackMetadata = Map.of(
+                    "fallback", true,
+                    "originalError", e.getMessage(),
+                    "industryAnalysis", createFallbackIndustryResult());
+
+            AnalysisResponse fallbackResp = new AnalysisResponse(
+                    fallbackDocument,
+                    "Analyse mit Einschränkungen abgeschlossen: " + e.getMessage(),
+                    fallbackMetadata);
+            fallbackResp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
+
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(fallbackResp);
+
+        } catch (Exception fallbackError) {
+            logger.error("❌ Auch Fallback-Analyse fehlgeschlagen:", fallbackError);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new AnalysisResponse(null, "Analysefehler: " + e.getMessage(),
+                            Map.of("timestamp", System.currentTimeMillis())));
+        }
+    }
 
-        } catch (Exception e) {
-            logger.error("❌ Kritischer Fehler bei Text-Analyse:", e);
+    /**
+     * Nicht-blockierende Variante von /analyze-text: Preprocessing im CPU-Pool, Branche und
+     * KI-Analyse per {@code Mono.zip} parallel über den reaktiven LlmClient. Der Servlet-Thread
+     * ist sofort wieder frei, auf die LLM-Antworten wartet kein Thread.
+     */
+    @PostMapping(path = "/analyze-text/reactive", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<AnalysisResponse>> analyzeTextReactive(
+            @RequestBody @Valid TextAnalysisRequest request) {
+        final Instant t0 = Instant.now();
+        String input = Objects.requireNonNullElse(request.getText(), "");
+        String selectedIndustry = Objects.requireNonNullElse(request.getSelectedIndustry(), "auto");
+        AnalysisOptions options = request.getOptions() != null ? request.getOptions()
+                : AnalysisOptions.defaultOptions();
+
+        logger.info("⚡ Reaktive Text-Analyse gestartet: {} Zeichen, Industry: {}",
+                input.length(), selectedIndustry);
+        LlmUsageTracker.Scope usage = LlmUsageTracker.newScope();
+
+        return Mono.fromCallable(() -> preprocessingService.preprocessText(input))
+                .subscribeOn(taskRunner.cpuScheduler())
+                .flatMap(processedText -> {
+                    TextPreprocessingService.PreprocessingResult preprocessResult = preprocessingService
+                            .getPreprocessingResult(input, processedText);
+
+                    Mono<Map<String, Object>> industry = detectIndustryReactiveOrFallback(processedText,
+                            selectedIndustry);
+                    Mono<Optional<AiService.CombinedAnalysis>> ai = aiService.analyzeCombinedReactive(processedText,
+                            options.generateSummary, options.extractKeywords, options.suggestComponents)
+                            .map(Optional::of)
+                            .onErrorResume(e -> {
+                                logger.warn("⚠️ AI-Analyse fehlgeschlagen, verwende Fallback: {}", e.getMessage());
+                                return Mono.just(Optional.empty());
+                            });
+
+                    // Antwort inkl. optionalem Speichern (JPA, blockierend) auf virtuellen Threads
+                    return Mono.zip(industry, ai)
+                            .publishOn(taskRunner.ioScheduler())
+                            .map(tuple -> buildTextAnalysisResponse(request, t0, processedText, preprocessResult,
+                                    options, tuple.getT1(), tuple.getT2().orElse(null), usage));
+                })
+                .onErrorResume(e -> {
+                    logger.error("❌ Kritischer Fehler bei reaktiver Text-Analyse:", e);
+                    return Mono.just(textAnalysisFallback(request, input, t0, e));
+                })
+                .contextWrite(LlmUsageTracker.withScope(usage));
+    }
+
+    /**
+     * Streaming-Variante von /analyze-text (Server-Sent Events).
+     * Events: "token" (Summary-Tokens), "summary", "keywords", "components",
+     * "done" (mit documentId) bzw. "error".
+     */
+    @PostMapping(path = "/analyze-text/stream", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter analyzeTextStream(@RequestBody @Valid TextAnalysisRequest request) {
+        final Instant t0 = Instant.now();
+        String input = Objects.requireNonNullElse(request.getText(), "");
+        String selectedIndustry = Objects.requireNonNullElse(request.getSelectedIndustry(), "auto");
+        AnalysisOptions options = request.getOptions() != null ? request.getOptions()
+                : AnalysisOptions.defaultOptions();
+
+        logger.info("🌊 Streaming-Text-Analyse gestartet: {} Zeichen, Industry: {}",
+                input.length(), selectedIndustry);
+
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        // Client getrennt oder Timeout: laufende LLM-Aufrufe abbrechen (Interrupt beendet den
+        // blockierenden Stream bzw. Aufruf), statt bis zum Ende Tokens zu verbrauchen
+        AtomicBoolean closed = new AtomicBoolean();
+        Set<Thread> workers = ConcurrentHashMap.newKeySet();
+        List<CompletableFuture<?>> futures = new CopyOnWriteArrayList<>();
+        Runnable cancel = () -> {
+            if (closed.compareAndSet(false, true)) {
+                futures.forEach(future -> future.cancel(true));
+                workers.forEach(Thread::interrupt);
+                logger.info("🛑 Streaming-Analyse abgebrochen (Client getrennt oder Timeout)");
+            }
+        };
+        emitter.onTimeout(cancel);
+        emitter.onError(e -> cancel.run());
+        emitter.onCompletion(cancel);
+
+        futures.add(CompletableFuture.runAsync(() -> {
+            workers.add(Thread.currentThread());
+            try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope()) {
+                String processedText = preprocessingService.preprocessText(input);
+                TextPreprocessingService.PreprocessingResult preprocessResult = preprocessingService
+                        .getPreprocessingResult(input, processedText);
+
+                // Branche sowie Keywords/Komponenten laufen parallel zum Summary-Stream
+                CompletableFuture<Map<String, Object>> industryFuture = CompletableFuture.supplyAsync(
+                        interruptible(workers, () -> detectIndustryOrFallback(processedText, selectedIndustry)),
+                        taskRunner.io());
+                CompletableFuture<AiService.CombinedAnalysis> combinedFuture = CompletableFuture.supplyAsync(
+                        interruptible(workers, () -> aiService.analyzeCombined(processedText, false,
+                                options.isExtractKeywords(), options.isSuggestComponents())),
+                        taskRunner.io());
+
+                CompletableFuture<Map<String, String>> restFuture = industryFuture.thenCombine(combinedFuture,
+                        (industryResult, ai) -> {
+                            Map<String, String> rest = new HashMap<>();
+                            if (options.isExtractKeywords()) {
+                                rest.put("keywords", ai.getKeywords() != null
+                                        ? enhanceKeywordsWithIndustryContext(ai.getKeywords(), industryResult)
+                                        : generateFallbackKeywords(processedText));
+                            }
+                            if (options.isSuggestComponents()) {
+                                rest.put("components", ai.getComponents() != null
+                                        ? enhanceComponentsWithIndustryContext(ai.getComponents(), industryResult)
+                                        : generateFallbackComponents(processedText));
+                            }
+                            return rest;
+                        });
+                // Keywords/Komponenten sofort senden, sobald fertig (auch vor der Summary)
+                CompletableFuture<Void> restSent = restFuture
+                        .thenAccept(rest -> rest.forEach((name, value) -> sendEvent(emitter, name, value)));
+                futures.addAll(List.of(industryFuture, combinedFuture, restFuture, restSent));
+
+                String summary = null;
+                if (options.isGenerateSummary()) {
+                    summary = aiService.streamSummary(processedText, token -> {
+                        if (closed.get()) {
+                            throw new CancellationException("Client getrennt");
+                        }
+                        sendEvent(emitter, "token", token);
+                    });
+                    sendEvent(emitter, "summary", summary);
+                }
+
+                Map<String, Object> industryResult = industryFuture.join();
+                Map<String, String> rest = restFuture.join();
+                // "done" erst, nachdem keywords/components gesendet sind
+                restSent.join();
+
+                Document document = new Document();
+                document.setTitle(request.getTitle() != null ? request.getTitle() : "Direkt-Analyse");
+                document.setFilename(request.getTitle());
+                document.setFileType("text/plain");
+                document.setContent(processedText);
+                document.setSummary(summary);
+                document.setKeywords(rest.get("keywords"));
+                document.setSuggestedComponents(rest.get("components"));
+                document.setUploadDate(new Date());
+
+                String detectedIndustry = (String) industryResult.get("primaryIndustry");
+                document.setDocumentType(detectedIndustry);
+                document.setComplexityLevel(calculateComplexityWithIndustry(preprocessResult, detectedIndustry));
+                document.setQualityScore(calculateQualityScoreWithIndustry(preprocessResult, detectedIndustry));
+
+                if (closed.get()) {
+                    return;
+                }
+                if (request.isSaveDocument()) {
+                    document = documentService.saveDocument(document);
+                    logger.info("💾 Dokument gespeichert: id={}", document.getId());
+                }
+
+                Map<String, Object> done = new HashMap<>();
+                done.put("documentId", document.getId());
+                done.put("industry", detectedIndustry);
+                done.put("processingTimeMs", java.time.Duration.between(t0, Instant.now()).toMillis());
+                done.put("llmUsage", usage.toMetadata());
+                sendEvent(emitter, "done", done);
+                closed.set(true);
+                emitter.complete();
+
+                logger.info("✅ Streaming-Analyse abgeschlossen in {}ms", done.get("processingTimeMs"));
+            } catch (Exception e) {
+                if (closed.get()) {
+                    logger.debug("Streaming-Analyse nach Abbruch beendet: {}", e.getMessage());
+                    return;
+                }
+                logger.error("❌ Fehler bei Streaming-Analyse: {}", e.getMessage(), e);
+                sendEvent(emitter, "error", Map.of("message", String.valueOf(e.getMessage())));
+                closed.set(true);
+                emitter.complete();
+            } finally {
+                workers.remove(Thread.currentThread());
+            }
+        }, taskRunner.io()));
+        return emitter;
+    }
 
-            // Graceful Degradation mit Industry Fallback
+    /**
+     * Meldet den ausführenden Thread für die Dauer der Aufgabe an, damit ein Abbruch ihn unterbrechen kann.
+     */
+    private static <T> Supplier<T> interruptible(Set<Thread> workers, Supplier<T> task) {
+        return () -> {
+            workers.add(Thread.currentThread());
             try {
-                Document fallbackDocument = createFallbackDocument(input, request);
-                Map<String, Object> fallbackMetadata = Map.of(
-                        "fallback", true,
-                        "originalError", e.getMessage(),
-                        "industryAnalysis", createFallbackIndustryResult());
-
-                AnalysisResponse fallbackResp = new AnalysisResponse(
-                        fallbackDocument,
-                        "Analyse mit Einschränkungen abgeschlossen: " + e.getMessage(),
-                        fallbackMetadata);
-                fallbackResp.setProcessingTimeMs(java.time.Duration.between(t0, Instant.now()).toMillis());
-
-                return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).body(fallbackResp);
-
-            } catch (Exception fallbackError) {
-                logger.error("❌ Auch Fallback-Analyse fehlgeschlagen:", fallbackError);
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body(new AnalysisResponse(null, "Analysefehler: " + e.getMessage(),
-                                Map.of("timestamp", System.currentTimeMillis())));
+                return task.get();
+            } finally {
+                workers.remove(Thread.currentThread());
             }
+        };
+    }
+
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            // Client hat die Verbindung geschlossen – restliche Events verwerfen
+            logger.debug("SSE-Event '{}' nicht gesendet: {}", name, e.getMessage());
         }
     }
 
@@ -378,6 +906,42 @@ public class DocumentController {
     // NEUE INDUSTRY-INTEGRATION METHODEN
     // ===================================
 
+    /**
+     * Branchenerkennung (automatisch oder manuell gewählt), bei Fehler Fallback-Ergebnis.
+     */
+    private Map<String, Object> detectIndustryOrFallback(String processedText, String selectedIndustry) {
+        if (!"auto".equals(selectedIndustry)) {
+            logger.info("🎯 Using manually selected industry: {}", selectedIndustry);
+            return createManualIndustryResult(selectedIndustry);
+        }
+        try {
+            logger.info("🏭 Starting automatic industry detection...");
+            Map<String, Object> industryResult = industryDetectionService.detectIndustry(processedText);
+            logger.info("✅ Industry detected: {} ({}% confidence)",
+                    industryResult.get("primaryIndustry"),
+                    industryResult.get("confidence"));
+            return industryResult;
+        } catch (Exception e) {
+            logger.warn("⚠️ Industry detection failed: {}", e.getMessage());
+            return createFallbackIndustryResult();
+        }
+    }
+
+    private Mono<Map<String, Object>> detectIndustryReactiveOrFallback(String processedText,
+            String selectedIndustry) {
+        if (!"auto".equals(selectedIndustry)) {
+            logger.info("🎯 Using manually selected industry: {}", selectedIndustry);
+            return Mono.just(createManualIndustryResult(selectedIndustry));
+        }
+        return industryDetectionService.detectIndustryReactive(processedText)
+                .doOnNext(industryResult -> logger.info("✅ Industry detected: {} ({}% confidence)",
+                        industryResult.get("primaryIndustry"), industryResult.get("confidence")))
+                .onErrorResume(e -> {
+                    logger.warn("⚠️ Industry detection failed: {}", e.getMessage());
+                    return Mono.just(createFallbackIndustryResult());
+                });
+    }
+
     /**
      * ✅ Fallback Industry Result für Fehlerbehandlung
      */
@@ -490,7 +1054,7 @@ public class DocumentController {
      */
     private String calculateComplexityWithIndustry(TextPreprocessingService.PreprocessingResult result,
             String industry) {
-        String baseComplexity = calculateComplexity(result);
+        String baseComplexity = uploadAnalysis.calculateComplexity(result);
 
         // Industry-spezifische Anpassungen
         if ("Finanzwesen".equals(industry) || "Gesundheitswesen".equals(industry)) {
@@ -509,7 +1073,7 @@ public class DocumentController {
      */
     private double calculateQualityScoreWithIndustry(TextPreprocessingService.PreprocessingResult result,
             String industry) {
-        double baseScore = calculateQualityScore(result);
+        double baseScore = uploadAnalysis.calculateQualityScore(result);
 
         // Industry-spezifische Anpassungen
         if ("IT/Software".equals(industry) && result != null && result.technicalTermCount > 5) {
@@ -721,6 +1285,14 @@ public class DocumentController {
         }
     }
 
+    /**
+     * PDF-Extraktion: Zähler und die langsamsten Seiten (Dokument, Seite, Dauer).
+     */
+    @GetMapping("/extraction/stats")
+    public ResponseEntity<Map<String, Object>> extractionStats() {
+        return ResponseEntity.ok(pdfTextExtractor.getStats());
+    }
+
     /**
      * Dokument + Historie.
      */
@@ -748,35 +1320,73 @@ public class DocumentController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Analyse-Stand eines Dokuments (Instant-Modus). Mit {@code waitMs} > 0 wartet die Anfrage
+     * (Long-Poll, ohne Servlet-Thread), bis eine Version größer als {@code sinceVersion} vorliegt.
+     */
+    @GetMapping("/{id}/analysis")
+    public Mono<ResponseEntity<AnalysisResponse>> getAnalysisVersion(
+            @PathVariable Long id,
+            @RequestParam(name = "sinceVersion", defaultValue = "0") int sinceVersion,
+            @RequestParam(name = "waitMs", defaultValue = "0") long waitMs) {
+        return upgradeService.awaitVersion(id, sinceVersion, waitMs)
+                .map(document -> {
+                    int version = AnalysisUpgradeService.versionOf(document);
+                    Map<String, Object> metadata = new HashMap<>();
+                    metadata.put("analysisVersion", version);
+                    metadata.put("analysisStatus", document.getAnalysisStatus());
+                    metadata.put("changed", version > sinceVersion);
+                    metadata.put("upgrading", upgradeService.isUpgrading(id));
+                    return ResponseEntity.ok(new AnalysisResponse(document,
+                            version > sinceVersion ? "Neue Analyse-Version" : "Analyse unverändert", metadata));
+                })
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
     /**
      * Re-Analyse des bestehenden Dokuments.
      */
     @PostMapping("/{id}/reanalyze")
     public ResponseEntity<AnalysisResponse> reanalyzeDocument(
             @PathVariable Long id,
-            @RequestParam(value = "options", required = false) String optionsJson) {
+            @RequestParam(value = "options", required = false) String optionsJson,
+            @RequestParam(value = "full", defaultValue = "false") boolean full) {
 
-        logger.info("🔄 Re-Analyse für Dokument id={}", id);
+        logger.info("🔄 Re-Analyse für Dokument id={} (full={})", id, full);
 
         Document document = documentService.getDocumentById(id);
         if (document == null)
             return ResponseEntity.notFound().build();
 
-        try {
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope()) {
             AnalysisOptions options = parseAnalysisOptions(optionsJson);
-            String content = Objects.requireNonNullElse(document.getContent(), "");
-
-            if (options.generateSummary)
-                document.setSummary(aiService.summarizeText(content));
-            if (options.extractKeywords)
-                document.setKeywords(aiService.extractKeywords(content));
-            if (options.suggestComponents)
-                document.setSuggestedComponents(aiService.suggestComponents(content));
+            Map<String, Object> metadata = new HashMap<>();
+
+            if (full) {
+                String content = Objects.requireNonNullElse(document.getContent(), "");
+                AiService.CombinedAnalysis ai = runAiAnalysis(content, options);
+                if (options.generateSummary)
+                    document.setSummary(ai.getSummary());
+                if (options.extractKeywords)
+                    document.setKeywords(ai.getKeywords());
+                if (options.suggestComponents)
+                    document.setSuggestedComponents(ai.getComponents());
+                document.setAnalysisRoutes(LlmModelRouter.encodeFieldRoutes(ai.getRoutes()));
+                document.setAnalysisStatus(AnalysisUpgradeService.statusOf(ai));
+            } else {
+                // Nur geänderte Segmente neu analysieren
+                metadata.put("incremental", incrementalAnalysisService.reanalyze(document,
+                        options.generateSummary, options.extractKeywords, options.suggestComponents).toMetadata());
+            }
+            metadata.put("llmUsage", usage.toMetadata());
+            // Duplikat-Schlüssel an die Felder dieser Analyse anpassen
+            document.setAnalysisOptions(DocumentService.withAnalysisFields(document.getAnalysisOptions(),
+                    options.generateSummary, options.extractKeywords, options.suggestComponents));
 
             document.setUploadDate(new Date());
             Document updated = documentService.saveDocument(document);
 
-            return ResponseEntity.ok(new AnalysisResponse(updated, "Dokument erfolgreich neu analysiert", Map.of()));
+            return ResponseEntity.ok(new AnalysisResponse(updated, "Dokument erfolgreich neu analysiert", metadata));
         } catch (Exception e) {
             logger.error("❌ Fehler bei Re-Analyse:", e);
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
@@ -784,6 +1394,45 @@ public class DocumentController {
         }
     }
 
+    /**
+     * Dokument-Inhalt aktualisieren und inkrementell neu analysieren.
+     */
+    @PutMapping(path = "/{id}", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<AnalysisResponse> updateDocument(
+            @PathVariable Long id,
+            @Valid @RequestBody DocumentUpdateRequest request) {
+
+        logger.info("✏️ Aktualisiere Dokument id={}", id);
+
+        Document document = documentService.getDocumentById(id);
+        if (document == null)
+            return ResponseEntity.notFound().build();
+
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope()) {
+            AnalysisOptions options = Optional.ofNullable(request.getOptions())
+                    .orElse(AnalysisOptions.defaultOptions());
+            if (request.getTitle() != null)
+                document.setTitle(request.getTitle());
+            document.setContent(preprocessingService.preprocessText(request.getContent()));
+            // Bearbeiteter Inhalt entspricht keinem Upload mehr: nicht als Duplikat anbieten
+            document.setContentHash(null);
+            document.setAnalysisOptions(null);
+
+            IncrementalAnalysisService.IncrementalResult incremental = incrementalAnalysisService.reanalyze(
+                    document, options.generateSummary, options.extractKeywords, options.suggestComponents);
+
+            document.setUploadDate(new Date());
+            Document updated = documentService.saveDocument(document);
+
+            return ResponseEntity.ok(new AnalysisResponse(updated, "Dokument aktualisiert und neu analysiert",
+                    Map.of("incremental", incremental.toMetadata(), "llmUsage", usage.toMetadata())));
+        } catch (Exception e) {
+            logger.error("❌ Fehler bei Dokument-Aktualisierung:", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new AnalysisResponse(null, "Aktualisierung fehlgeschlagen: " + e.getMessage(), Map.of()));
+        }
+    }
+
     /**
      * Vergleich zweier Dokumente (null-sicher).
      */
@@ -852,11 +1501,15 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
 
     // Available Endpoints
     List<String> endpoints = Arrays.asList(
-        "POST /api/documents - Upload and analyze document",
-        "POST /api/documents/analyze-text - Analyze text directly",
-        "POST /api/documents/batch - Batch process multiple files",
+        "POST /api/documents - Upload and analyze document (?async=true: 202 + job id)",
+        "POST /api/documents/analyze-text - Analyze text directly (instant=true: heuristics now, AI upgrade in background)",
+        "POST /api/documents/batch - Batch process multiple files (?async=true: one job per file)",
+        "POST /api/documents/batch/stream - Unbounded batch (multipart or zip), NDJSON result per file",
+        "GET /api/documents/extraction/stats - PDF extraction timing and slowest pages",
         "GET /api/documents/{id} - Retrieve document by ID",
-        "POST /api/documents/{id}/reanalyze - Re-analyze document",
+        "GET /api/documents/{id}/analysis - Analysis version (long-poll with ?sinceVersion=&waitMs=)",
+        "POST /api/documents/{id}/reanalyze - Re-analyze document (incremental, ?full=true)",
+        "PUT /api/documents/{id} - Update content and re-analyze changed segments",
         "GET /api/documents/compare - Compare two documents",
         "POST /api/documents/analyze-realtime - Real-time analysis",
         "GET /api/documents/health - This health check"
@@ -931,62 +1584,66 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
         return result;
     }
 
-    private String extractTextFromFile(MultipartFile file) throws IOException {
-        String contentType = file.getContentType();
-        String filename = file.getOriginalFilename();
-        logger.debug("Extrahiere Text aus {}, Typ: {}", filename, contentType);
+    private Document processFile(MultipartFile file, AnalysisOptions options) throws Exception {
+        Document duplicate = findDuplicate(ContentHash.sha256(file), uploadOptionsKey(options),
+                file.getOriginalFilename(), true);
+        if (duplicate != null) {
+            return duplicate;
+        }
+        Document document = uploadAnalysis.analyzeUpload(file.getOriginalFilename(), file.getContentType(), file,
+                options.generateSummary, options.extractKeywords, options.suggestComponents, stage -> {
+                });
+        return documentService.saveDocument(document);
+    }
+
+    private AnalysisJob submitJob(String batchId, MultipartFile file, AnalysisOptions options) throws IOException {
+        // Client-ID aus dem Scope des ClientQuotaFilter
+        return jobService.submit(batchId, LlmUsageTracker.currentClientId(), file.getOriginalFilename(),
+                file.getContentType(), file.getBytes(), options.generateSummary, options.extractKeywords,
+                options.suggestComponents);
+    }
 
-        if ("application/pdf".equals(contentType)) {
-            Path tmp = Files.createTempFile("upload-", ".pdf");
+    private ResponseEntity<BatchAnalysisResponse> submitBatchJobs(MultipartFile[] files, AnalysisOptions options) {
+        String batchId = AnalysisJobService.newBatchId();
+        List<Long> jobIds = new ArrayList<>();
+        List<String> errors = new ArrayList<>();
+        JobQueueUnavailableException queueFull = null;
+        for (MultipartFile file : files) {
+            ValidationResult validation = validateFile(file);
+            if (!validation.isValid()) {
+                errors.add(file.getOriginalFilename() + ": " + validation.getErrorMessage());
+                continue;
+            }
             try {
-                file.transferTo(tmp.toFile());
-                return PdfProcessor.extractTextFromPdf(tmp.toFile());
-            } finally {
-                try {
-                    Files.deleteIfExists(tmp);
-                } catch (Exception ignore) {
-                }
+                jobIds.add(submitJob(batchId, file, options).getId());
+            } catch (JobQueueUnavailableException e) {
+                queueFull = e;
+                errors.add(file.getOriginalFilename() + ": " + e.getMessage());
+            } catch (Exception e) {
+                errors.add(file.getOriginalFilename() + ": " + e.getMessage());
             }
-        } else if ("application/json".equals(contentType)) {
-            String json = new String(file.getBytes(), StandardCharsets.UTF_8);
-            Object jsonObject = objectMapper.readValue(json, Object.class);
-            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject);
-        } else if ("text/plain".equals(contentType)
-                || "text/csv".equals(contentType)
-                || "text/markdown".equals(contentType)) {
-            return new String(file.getBytes(), StandardCharsets.UTF_8);
-        } else if (contentType.contains("word")) {
-            // TODO: Apache POI für .doc/.docx integrieren
-            return "Word-Dokument-Extraktion noch nicht implementiert";
-        } else {
-            return new String(file.getBytes(), StandardCharsets.UTF_8);
-        }
-    }
-
-    private Document processFile(MultipartFile file, AnalysisOptions options) throws IOException {
-        String content = extractTextFromFile(file);
-        String processed = preprocessingService.preprocessText(content);
-
-        Document document = new Document();
-        document.setFilename(file.getOriginalFilename());
-        document.setFileType(file.getContentType());
-        document.setContent(processed);
-        document.setUploadDate(new Date());
-
-        if (options.generateSummary)
-            document.setSummary(aiService.summarizeText(processed));
-        if (options.extractKeywords)
-            document.setKeywords(aiService.extractKeywords(processed));
-        if (options.suggestComponents)
-            document.setSuggestedComponents(aiService.suggestComponents(processed));
+        }
+        logger.info("📦 Batch {} eingereiht: {}/{} Dateien", batchId, jobIds.size(), files.length);
 
-        document.setDocumentType(detectDocumentType(processed));
-        TextPreprocessingService.PreprocessingResult pr = preprocessingService.getPreprocessingResult(content,
-                processed);
-        document.setComplexityLevel(calculateComplexity(pr));
-        document.setQualityScore(calculateQualityScore(pr));
+        BatchAnalysisResponse response = new BatchAnalysisResponse(List.of(),
+                jobIds.isEmpty() ? "Keine Datei eingereiht" : "Analyse-Jobs eingereiht", 0, files.length);
+        response.setErrors(errors);
+        response.setBatchId(batchId);
+        response.setJobIds(jobIds);
+        if (jobIds.isEmpty() && queueFull != null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, queueFull.getRetryAfterMs() / 1000)))
+                    .body(response);
+        }
+        if (jobIds.isEmpty()) {
+            return ResponseEntity.badRequest().body(response);
+        }
+        return ResponseEntity.accepted().header("Location", "/api/jobs?batchId=" + batchId).body(response);
+    }
 
-        return documentService.saveDocument(document);
+    private AiService.CombinedAnalysis runAiAnalysis(String content, AnalysisOptions options) {
+        return aiService.analyzeCombined(content,
+                options.generateSummary, options.extractKeywords, options.suggestComponents);
     }
 
     private AnalysisOptions parseAnalysisOptions(String json) {
@@ -1000,69 +1657,6 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
         }
     }
 
-    private String extractTitle(String filename, String content) {
-        if (filename != null) {
-            int lastDot = filename.lastIndexOf('.');
-            return lastDot > 0 ? filename.substring(0, lastDot) : filename;
-        }
-        String[] lines = content.split("\n");
-        if (lines.length > 0 && lines[0].length() < 100)
-            return lines[0].trim();
-        return "Unbenanntes Dokument";
-    }
-
-    private String detectDocumentType(String content) {
-        String s = content == null ? "" : content.toLowerCase();
-        if (s.contains("requirements") || s.contains("anforderungen"))
-            return "Anforderungsdokument";
-        if (s.contains("architecture") || s.contains("architektur"))
-            return "Architekturdokument";
-        if (s.contains("test") || s.contains("testing"))
-            return "Testdokument";
-        if (s.contains("manual") || s.contains("anleitung"))
-            return "Handbuch";
-        if (s.contains("api") && s.contains("endpoint"))
-            return "API-Dokumentation";
-        if (s.contains("class") || s.contains("function") || s.contains("import"))
-            return "Code-Dokumentation";
-        return "Technisches Dokument";
-    }
-
-    private String calculateComplexity(TextPreprocessingService.PreprocessingResult result) {
-        double score = 0;
-        Map<String, Object> m = result != null ? result.qualityMetrics : null;
-
-        if (m != null) {
-            Number wc = (Number) m.getOrDefault("wordCount", 0);
-            Number td = (Number) m.getOrDefault("technicalDensity", 0.0);
-            Number rd = (Number) m.getOrDefault("readabilityScore", 100.0);
-
-            if (wc.longValue() > 1000)
-                score += 20;
-            if (td.doubleValue() > 0.10)
-                score += 30;
-            if (rd.doubleValue() < 50.0)
-                score += 30;
-            if (result.codeBlockCount > 5)
-                score += 20;
-        }
-
-        if (score > 70)
-            return "Experte";
-        if (score > 40)
-            return "Fortgeschritten";
-        return "Einsteiger";
-    }
-
-    private double calculateQualityScore(TextPreprocessingService.PreprocessingResult result) {
-        if (result != null && result.qualityMetrics != null) {
-            Object v = result.qualityMetrics.get("overallQualityScore");
-            if (v instanceof Number n)
-                return n.doubleValue();
-        }
-        return 50.0;
-    }
-
     private Map<String, Object> buildAnalysisMetadata(
             TextPreprocessingService.PreprocessingResult pr,
             Document document) {
@@ -1230,6 +1824,10 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
         private AnalysisOptions options;
         private boolean saveDocument = true;
         private String selectedIndustry = "auto";
+        // Sofort-Antwort mit Heuristik, KI-Analyse im Hintergrund (speichert immer)
+        private boolean instant = false;
+        // Vorhandene Analyse desselben Textes ignorieren und neu analysieren
+        private boolean force = false;
 
         public String getText() {
             return text;
@@ -1270,6 +1868,53 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
         public void setSelectedIndustry(String selectedIndustry) {
             this.selectedIndustry = selectedIndustry;
         }
+
+        public boolean isInstant() {
+            return instant;
+        }
+
+        public void setInstant(boolean instant) {
+            this.instant = instant;
+        }
+
+        public boolean isForce() {
+            return force;
+        }
+
+        public void setForce(boolean force) {
+            this.force = force;
+        }
+    }
+
+    public static class DocumentUpdateRequest {
+        @NotBlank(message = "Inhalt darf nicht leer sein")
+        private String content;
+        private String title;
+        private AnalysisOptions options;
+
+        public String getContent() {
+            return content;
+        }
+
+        public void setContent(String content) {
+            this.content = content;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+
+        public AnalysisOptions getOptions() {
+            return options;
+        }
+
+        public void setOptions(AnalysisOptions options) {
+            this.options = options;
+        }
     }
 
     public static class RealtimeAnalysisRequest {
@@ -1356,6 +2001,9 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
         private int totalCount;
         private List<String> errors;
         private Map<String, Object> statistics;
+        // Nur bei async=true: Batch-ID und Job-IDs
+        private String batchId;
+        private List<Long> jobIds;
 
         public BatchAnalysisResponse(List<Document> documents, String message, int successCount, int totalCount) {
             this.documents = documents != null ? documents : List.of();
@@ -1426,6 +2074,22 @@ public ResponseEntity<Map<String, Object>> documentsHealthEndpoint() {
             this.errors = errors;
         }
 
+        public String getBatchId() {
+            return batchId;
+        }
+
+        public void setBatchId(String batchId) {
+            this.batchId = batchId;
+        }
+
+        public List<Long> getJobIds() {
+            return jobIds;
+        }
+
+        public void setJobIds(List<Long> jobIds) {
+            this.jobIds = jobIds;
+        }
+
         public Map<String, Object> getStatistics() {
             return statistics;
         }
@@ -169,19 +169,6 @@ public class HealthController {
         return ResponseEntity.ok(health);
     }
 
-    /**
-     * ✅ AI Service Health Proxy - Forwarding to AI service
-     */
-    @GetMapping("/ai/health") 
-    public ResponseEntity<Map<String, Object>> aiHealthProxy() {
-        // This could forward to actual AI service or provide summary
-        Map<String, Object> health = new HashMap<>();
-        health.put("status", "UP");
-        health.put("message", "Use /api/ai/health directly for detailed AI service status");
-        health.put("redirect", "/api/ai/health");
-        return ResponseEntity.ok(health);
-    }
-
     /**
      * ✅ System Information Endpoint
      */
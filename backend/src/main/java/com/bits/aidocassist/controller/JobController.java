@@ -0,0 +1,73 @@
+package com.bits.aidocassist.controller;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bits.aidocassist.model.AnalysisJob;
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.service.AnalysisJobService;
+import com.bits.aidocassist.service.DocumentService;
+
+/**
+ * Status der asynchronen Analyse-Jobs ({@code POST /api/documents?async=true}).
+ */
+@RestController
+@RequestMapping(path = "/api/jobs", produces = MediaType.APPLICATION_JSON_VALUE)
+public class JobController {
+
+    private final AnalysisJobService jobService;
+    private final DocumentService documentService;
+
+    public JobController(AnalysisJobService jobService, DocumentService documentService) {
+        this.jobService = jobService;
+        this.documentService = documentService;
+    }
+
+    /**
+     * Schritt, Fortschritt und – nach Abschluss – das analysierte Dokument.
+     */
+    @GetMapping("/{id}")
+    public ResponseEntity<JobStatusResponse> getJob(@PathVariable Long id) {
+        return jobService.getJob(id)
+                .map(job -> ResponseEntity.ok(new JobStatusResponse(job,
+                        job.getDocumentId() != null ? documentService.getDocumentById(job.getDocumentId()) : null)))
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    @GetMapping
+    public ResponseEntity<List<AnalysisJob>> getBatch(@RequestParam("batchId") String batchId) {
+        List<AnalysisJob> jobs = jobService.getBatch(batchId);
+        return jobs.isEmpty() ? ResponseEntity.notFound().build() : ResponseEntity.ok(jobs);
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        return ResponseEntity.ok(jobService.getStats());
+    }
+
+    public static class JobStatusResponse {
+        private final AnalysisJob job;
+        private final Document document;
+
+        public JobStatusResponse(AnalysisJob job, Document document) {
+            this.job = job;
+            this.document = document;
+        }
+
+        public AnalysisJob getJob() {
+            return job;
+        }
+
+        public Document getDocument() {
+            return document;
+        }
+    }
+}
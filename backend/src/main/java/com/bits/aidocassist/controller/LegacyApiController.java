@@ -26,7 +26,7 @@ public class LegacyApiController {
             @RequestParam("file") MultipartFile file,
             @RequestParam(value = "analysisOptions", required = false) String analysisOptionsJson) {
         logger.info("🔄 Legacy /api/analyze/document -> delegate /api/documents");
-        return documentController.createDocument(file, analysisOptionsJson);
+        return documentController.createDocument(file, analysisOptionsJson, false, false);
     }
 
     @PostMapping(path = "/text", consumes = MediaType.APPLICATION_JSON_VALUE)
@@ -0,0 +1,34 @@
+package com.bits.aidocassist.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.bits.aidocassist.service.ClientQuotaService;
+
+/**
+ * Kontingente und Verbrauch je Client (Anfragen, LLM-Tokens, abgewiesene Anfragen).
+ */
+@RestController
+@RequestMapping(path = "/api/quotas", produces = MediaType.APPLICATION_JSON_VALUE)
+public class QuotaController {
+
+    private final ClientQuotaService quotaService;
+
+    public QuotaController(ClientQuotaService quotaService) {
+        this.quotaService = quotaService;
+    }
+
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> getQuotas(@RequestParam(defaultValue = "50") int limit) {
+        Map<String, Object> stats = new HashMap<>(quotaService.getStats(limit));
+        stats.put("timestamp", System.currentTimeMillis());
+        return ResponseEntity.ok(stats);
+    }
+}
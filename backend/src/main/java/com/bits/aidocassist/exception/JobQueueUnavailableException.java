@@ -0,0 +1,19 @@
+package com.bits.aidocassist.exception;
+
+/**
+ * Exception thrown when an analysis job cannot be queued, because the queue is full
+ * or the job queue is not available for the configured datasource
+ */
+public class JobQueueUnavailableException extends RuntimeException {
+
+    private final long retryAfterMs;
+
+    public JobQueueUnavailableException(String message, long retryAfterMs) {
+        super(message);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+}
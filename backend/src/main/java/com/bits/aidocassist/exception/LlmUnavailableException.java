@@ -0,0 +1,16 @@
+package com.bits.aidocassist.exception;
+
+/**
+ * Exception thrown when an LLM call is not attempted because the provider is
+ * currently unavailable or overloaded (no free slot, open breaker, ...)
+ */
+public class LlmUnavailableException extends RuntimeException {
+
+    public LlmUnavailableException(String message) {
+        super(message);
+    }
+
+    public LlmUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
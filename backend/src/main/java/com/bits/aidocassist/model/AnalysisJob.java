@@ -0,0 +1,298 @@
+package com.bits.aidocassist.model;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+
+/**
+ * Asynchroner Analyse-Auftrag für eine hochgeladene Datei (Queue-Tabelle).
+ * Die Datei selbst liegt in {@link AnalysisJobPayload}, damit Status-Abfragen
+ * nicht die Nutzlast laden. Laufende Jobs gehören dem Knoten in {@code workerId}, solange
+ * dessen Lease ({@code leaseExpiresAt}) per Heartbeat verlängert wird.
+ */
+@Entity
+@Table(name = "analysis_job", indexes = {
+        @Index(name = "idx_job_status_created", columnList = "status, created_at"),
+        @Index(name = "idx_job_batch", columnList = "batch_id"),
+        @Index(name = "idx_job_status_client", columnList = "status, client_id"),
+        @Index(name = "idx_job_status_lease", columnList = "status, lease_expires_at") })
+public class AnalysisJob {
+
+    public enum Status {
+        QUEUED, RUNNING, SUCCEEDED, FAILED
+    }
+
+    /**
+     * Verarbeitungsschritt mit grobem Fortschritt in Prozent.
+     */
+    public enum Stage {
+        QUEUED(0), EXTRACTING(10), PREPROCESSING(30), ANALYZING(50), SAVING(90), DONE(100);
+
+        private final int progress;
+
+        Stage(int progress) {
+            this.progress = progress;
+        }
+
+        public int getProgress() {
+            return progress;
+        }
+    }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", length = 20, nullable = false)
+    private Status status = Status.QUEUED;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "stage", length = 20)
+    private Stage stage = Stage.QUEUED;
+
+    // Gemeinsame ID aller Jobs eines Batch-Uploads
+    @Column(name = "batch_id", length = 36)
+    private String batchId;
+
+    // Auftraggeber (API-Key-Hash bzw. IP) für die faire Zuteilung zwischen Clients
+    @Column(name = "client_id", length = 100)
+    private String clientId;
+
+    @Column(length = 255)
+    private String filename;
+
+    private long sizeBytes;
+
+    @Column(length = 100)
+    private String contentType;
+
+    private boolean withSummary;
+
+    private boolean withKeywords;
+
+    private boolean withComponents;
+
+    // Ergebnis: gespeichertes Dokument
+    private Long documentId;
+
+    @Column(length = 1000)
+    private String errorMessage;
+
+    private int attempts;
+
+    @Column(length = 100)
+    private String workerId;
+
+    // Token der aktuellen Übernahme: Fortschritt und Abschluss gelten nur für genau diese Ausführung,
+    // auch wenn derselbe Knoten den Job nach Lease-Ablauf erneut übernommen hat
+    @JsonIgnore
+    @Column(length = 36)
+    private String claimToken;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    private LocalDateTime startedAt;
+
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime finishedAt;
+
+    // Letzter Heartbeat des ausführenden Knotens; nach Ablauf der Lease wird der Job neu vergeben
+    @Column(name = "heartbeat_at")
+    private LocalDateTime heartbeatAt;
+
+    @Column(name = "lease_expires_at")
+    private LocalDateTime leaseExpiresAt;
+
+    public int getProgress() {
+        return stage != null ? stage.getProgress() : 0;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public void setStatus(Status status) {
+        this.status = status;
+    }
+
+    public Stage getStage() {
+        return stage;
+    }
+
+    public void setStage(Stage stage) {
+        this.stage = stage;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    public void setBatchId(String batchId) {
+        this.batchId = batchId;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public boolean isWithSummary() {
+        return withSummary;
+    }
+
+    public void setWithSummary(boolean withSummary) {
+        this.withSummary = withSummary;
+    }
+
+    public boolean isWithKeywords() {
+        return withKeywords;
+    }
+
+    public void setWithKeywords(boolean withKeywords) {
+        this.withKeywords = withKeywords;
+    }
+
+    public boolean isWithComponents() {
+        return withComponents;
+    }
+
+    public void setWithComponents(boolean withComponents) {
+        this.withComponents = withComponents;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    public void setErrorMessage(String errorMessage) {
+        this.errorMessage = errorMessage;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getWorkerId() {
+        return workerId;
+    }
+
+    public void setWorkerId(String workerId) {
+        this.workerId = workerId;
+    }
+
+    public String getClaimToken() {
+        return claimToken;
+    }
+
+    public void setClaimToken(String claimToken) {
+        this.claimToken = claimToken;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(LocalDateTime startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(LocalDateTime finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public LocalDateTime getHeartbeatAt() {
+        return heartbeatAt;
+    }
+
+    public void setHeartbeatAt(LocalDateTime heartbeatAt) {
+        this.heartbeatAt = heartbeatAt;
+    }
+
+    public LocalDateTime getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+    public void setLeaseExpiresAt(LocalDateTime leaseExpiresAt) {
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+}
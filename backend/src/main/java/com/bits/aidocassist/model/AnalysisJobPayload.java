@@ -0,0 +1,50 @@
+package com.bits.aidocassist.model;
+
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Hochgeladene Datei eines {@link AnalysisJob} (gleiche ID). Wird nach Abschluss
+ * des Jobs gelöscht.
+ */
+@Entity
+@Table(name = "analysis_job_payload")
+public class AnalysisJobPayload {
+
+    @Id
+    private Long jobId;
+
+    // bytea (PostgreSQL) bzw. BLOB (H2)
+    @JdbcTypeCode(SqlTypes.LONG32VARBINARY)
+    @Column(name = "content")
+    private byte[] content;
+
+    public AnalysisJobPayload() {
+    }
+
+    public AnalysisJobPayload(Long jobId, byte[] content) {
+        this.jobId = jobId;
+        this.content = content;
+    }
+
+    public Long getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(Long jobId) {
+        this.jobId = jobId;
+    }
+
+    public byte[] getContent() {
+        return content;
+    }
+
+    public void setContent(byte[] content) {
+        this.content = content;
+    }
+}
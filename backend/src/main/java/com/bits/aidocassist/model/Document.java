@@ -7,10 +7,14 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import jakarta.persistence.Temporal;
 import jakarta.persistence.TemporalType;
+import jakarta.persistence.Version;
 
 @Entity
+@Table(indexes = @Index(name = "idx_document_content_hash", columnList = "content_hash, analysis_options"))
 public class Document {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -59,6 +63,38 @@ public class Document {
     @Column(length = 100)
     private String complexityLevel;
 
+    // Fingerprint über die Segment-Hashes (inkrementelle Re-Analyse)
+    @Column(length = 64)
+    private String segmentFingerprint;
+
+    // Modell-Routen der Analyse je Feld ("summary=small,keywords=small"), für Feedback je Route
+    @Column(length = 255)
+    private String analysisRoutes;
+
+    // Instant-Modus: Version der Analyse (1 = Heuristik) und Status des KI-Upgrades
+    @Column
+    private Integer analysisVersion;
+
+    @Column(length = 20)
+    private String analysisStatus;
+
+    // Deduplizierung: SHA-256 des Rohinhalts (Datei-Bytes bzw. Eingabetext) und Analyse-Optionen
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Column(name = "analysis_options", length = 100)
+    private String analysisOptions;
+
+    // Kopie einer vorhandenen Analyse (gleicher Inhalt unter anderem Namen): ID des Originals
+    @Column
+    private Long duplicateOf;
+
+    // Optimistic Locking: gleichzeitige Änderungen (PUT, KI-Upgrade) überschreiben sich nicht;
+    // Default 0 für Zeilen aus Läufen vor Einführung der Spalte
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private long version;
+
     // Getters and Setters
     public Long getId() {
         return id;
@@ -179,4 +215,68 @@ public class Document {
     public void setComplexityLevel(String complexityLevel) {
         this.complexityLevel = complexityLevel;
     }
+
+    public String getSegmentFingerprint() {
+        return segmentFingerprint;
+    }
+
+    public void setSegmentFingerprint(String segmentFingerprint) {
+        this.segmentFingerprint = segmentFingerprint;
+    }
+
+    public String getAnalysisRoutes() {
+        return analysisRoutes;
+    }
+
+    public void setAnalysisRoutes(String analysisRoutes) {
+        this.analysisRoutes = analysisRoutes;
+    }
+
+    public Integer getAnalysisVersion() {
+        return analysisVersion;
+    }
+
+    public void setAnalysisVersion(Integer analysisVersion) {
+        this.analysisVersion = analysisVersion;
+    }
+
+    public String getAnalysisStatus() {
+        return analysisStatus;
+    }
+
+    public void setAnalysisStatus(String analysisStatus) {
+        this.analysisStatus = analysisStatus;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getAnalysisOptions() {
+        return analysisOptions;
+    }
+
+    public void setAnalysisOptions(String analysisOptions) {
+        this.analysisOptions = analysisOptions;
+    }
+
+    public Long getDuplicateOf() {
+        return duplicateOf;
+    }
+
+    public void setDuplicateOf(Long duplicateOf) {
+        this.duplicateOf = duplicateOf;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
 }
@@ -0,0 +1,10 @@
+package com.bits.aidocassist.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.bits.aidocassist.model.AnalysisJobPayload;
+
+@Repository
+public interface AnalysisJobPayloadRepository extends JpaRepository<AnalysisJobPayload, Long> {
+}
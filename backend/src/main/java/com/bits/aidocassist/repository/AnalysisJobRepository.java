@@ -0,0 +1,120 @@
+package com.bits.aidocassist.repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.bits.aidocassist.model.AnalysisJob;
+import com.bits.aidocassist.model.AnalysisJob.Stage;
+import com.bits.aidocassist.model.AnalysisJob.Status;
+
+@Repository
+public interface AnalysisJobRepository extends JpaRepository<AnalysisJob, Long> {
+
+    /**
+     * Ältester wartender Job je Client (Kandidaten für die faire Zuteilung).
+     */
+    @Query("SELECT j FROM AnalysisJob j WHERE j.status = :status AND j.id IN "
+            + "(SELECT MIN(k.id) FROM AnalysisJob k WHERE k.status = :status GROUP BY k.clientId)")
+    List<AnalysisJob> findOldestPerClient(Status status);
+
+    /**
+     * Sperrt den Kopf-Job oder – falls ein anderer Knoten ihn gerade sperrt – den nächsten
+     * wartenden Job desselben Clients ({@code FOR UPDATE SKIP LOCKED}). Konkurrierende Knoten
+     * erhalten so verschiedene Jobs, statt um dieselbe Zeile zu warten. Nur in einer Transaktion
+     * und nur auf Postgres (natives SQL; H2 überspringt bei Index-Zugriffen alle Zeilen).
+     */
+    @Query(value = "SELECT * FROM analysis_job WHERE status = :status AND (id = :headId OR client_id = :clientId) "
+            + "ORDER BY id LIMIT 1 FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<AnalysisJob> lockQueued(String status, Long headId, String clientId);
+
+    List<AnalysisJob> findByBatchIdOrderByIdAsc(String batchId);
+
+    long countByStatus(Status status);
+
+    long countByStatusIn(Collection<Status> statuses);
+
+    /**
+     * Summe der Dateigrößen (Payloads) der Jobs in den angegebenen Status.
+     */
+    @Query("SELECT COALESCE(SUM(j.sizeBytes), 0) FROM AnalysisJob j WHERE j.status IN :statuses")
+    long sumSizeBytesByStatusIn(Collection<Status> statuses);
+
+    /**
+     * Übernimmt einen wartenden Job mit Lease bis {@code leaseUntil}; 1 nur für genau einen
+     * Worker (bedingtes Update). {@code claimToken} kennzeichnet diese eine Ausführung.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.status = :running, j.workerId = :workerId, j.claimToken = :claimToken, "
+            + "j.startedAt = :now, j.updatedAt = :now, j.heartbeatAt = :now, j.leaseExpiresAt = :leaseUntil, "
+            + "j.attempts = j.attempts + 1 WHERE j.id = :id AND j.status = :queued")
+    int claim(Long id, String workerId, String claimToken, LocalDateTime now, LocalDateTime leaseUntil,
+            Status queued, Status running);
+
+    /**
+     * Heartbeat: verlängert die Leases aller Jobs, die der Knoten gerade ausführt.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.heartbeatAt = :now, j.leaseExpiresAt = :leaseUntil "
+            + "WHERE j.workerId = :workerId AND j.status = :running")
+    int renewLeases(String workerId, LocalDateTime now, LocalDateTime leaseUntil, Status running);
+
+    /**
+     * Fortschritt des Jobs, sofern er noch zu dieser Übernahme gehört; 0 nach verlorener Lease.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.stage = :stage, j.updatedAt = :now "
+            + "WHERE j.id = :id AND j.claimToken = :claimToken")
+    int updateStage(Long id, String claimToken, Stage stage, LocalDateTime now);
+
+    /**
+     * Schließt den Job ab, sofern er noch zu dieser Übernahme gehört; 0 nach verlorener Lease.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.status = :status, j.stage = :stage, j.documentId = :documentId, "
+            + "j.errorMessage = :errorMessage, j.updatedAt = :now, j.finishedAt = :now, j.leaseExpiresAt = NULL "
+            + "WHERE j.id = :id AND j.claimToken = :claimToken")
+    int finish(Long id, String claimToken, Status status, Stage stage, Long documentId, String errorMessage,
+            LocalDateTime now);
+
+    /**
+     * Gibt einen fehlgeschlagenen Versuch für einen weiteren Lauf frei (nur durch die Übernahme selbst).
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.status = :queued, j.stage = :stage, j.workerId = NULL, "
+            + "j.claimToken = NULL, j.leaseExpiresAt = NULL, j.errorMessage = :errorMessage, j.updatedAt = :now "
+            + "WHERE j.id = :id AND j.claimToken = :claimToken")
+    int requeue(Long id, String claimToken, Status queued, Stage stage, String errorMessage, LocalDateTime now);
+
+    /**
+     * Gibt laufende Jobs mit abgelaufener Lease frei – ihr Knoten ist abgestürzt oder hängt.
+     * Jobs ohne Lease stammen aus einem Lauf vor Einführung der Leases.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.status = :queued, j.stage = :stage, j.workerId = NULL, "
+            + "j.claimToken = NULL, j.leaseExpiresAt = NULL, j.updatedAt = :now "
+            + "WHERE j.status = :running AND (j.leaseExpiresAt IS NULL OR j.leaseExpiresAt < :now)")
+    int requeueExpired(Status running, Status queued, Stage stage, LocalDateTime now);
+
+    /**
+     * Nach einem Neustart mit fester Knoten-ID: eigene Jobs des vorherigen Laufs sofort freigeben.
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE AnalysisJob j SET j.status = :queued, j.stage = :stage, j.workerId = NULL, "
+            + "j.claimToken = NULL, j.leaseExpiresAt = NULL, j.updatedAt = :now "
+            + "WHERE j.status = :running AND j.workerId = :workerId")
+    int requeueOwned(String workerId, Status running, Status queued, Stage stage, LocalDateTime now);
+}
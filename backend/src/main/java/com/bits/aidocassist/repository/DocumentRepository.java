@@ -1,9 +1,22 @@
 package com.bits.aidocassist.repository;
 
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import com.bits.aidocassist.model.Document;
 
 @Repository
 public interface DocumentRepository extends JpaRepository<Document, Long> {
-}
\ No newline at end of file
+
+    /**
+     * Abgeschlossene Analysen mit gleichem Inhalt und gleichen Optionen, Original zuerst.
+     * Instant-Dokumente zählen erst nach dem KI-Upgrade, Analysen mit lokalem Fallback
+     * ({@code FALLBACK}) nie; {@code NULL} stammt aus Läufen vor Einführung des Status.
+     */
+    @Query("SELECT d FROM Document d WHERE d.contentHash = :contentHash AND d.analysisOptions = :analysisOptions "
+            + "AND (d.analysisStatus IS NULL OR d.analysisStatus = 'COMPLETE') ORDER BY d.id")
+    List<Document> findAnalyzed(String contentHash, String analysisOptions, Pageable pageable);
+}
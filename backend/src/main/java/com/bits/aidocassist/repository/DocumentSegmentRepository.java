@@ -0,0 +1,22 @@
+package com.bits.aidocassist.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.bits.aidocassist.model.DocumentSegment;
+
+@Repository
+public interface DocumentSegmentRepository extends JpaRepository<DocumentSegment, Long> {
+
+    List<DocumentSegment> findByDocumentIdOrderByPositionAsc(Long documentId);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DocumentSegment s WHERE s.document.id = :documentId")
+    int deleteByDocumentId(Long documentId);
+}
@@ -0,0 +1,519 @@
+package com.bits.aidocassist.service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.bits.aidocassist.exception.LlmUnavailableException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+/**
+ * AIMD-Limiter für ausgehende LLM-Aufrufe.
+ *
+ * Das Limit wächst additiv (+1 pro "Runde" erfolgreicher Aufrufe), solange die
+ * Latenz unter der Schwelle bleibt und das Limit auch ausgeschöpft wird. Bei 429,
+ * Timeouts oder zu hoher Latenz wird es multiplikativ verkleinert – höchstens einmal je
+ * Überlast-Ereignis: Signale von Aufrufen, die vor der letzten Verkleinerung gestartet
+ * sind, werden ignoriert (wie bei TCP-AIMD einmal je Fenster). Aufrufer ohne
+ * freien Slot warten höchstens {@code max-wait-ms} in einer begrenzten Warteschlange.
+ * Reaktive Aufrufer ({@link #acquireReactive}) teilen sich Limit und Warteschlange,
+ * belegen beim Warten aber keinen Thread.
+ *
+ * Freie Slots werden nach Prioritätsklasse ({@link AnalysisPriority}, aus dem Scope der
+ * Anfrage) per Weighted Fair Queuing vergeben: jeder Warter erhält eine virtuelle
+ * Endzeit {@code max(virtuelle Zeit, letzte Endzeit der Klasse) + 1/Gewicht}, der kleinste
+ * Wert gewinnt ({@code class-weights}). Batch und Hintergrund belegen höchstens
+ * {@code deferrable-share} des Limits, der Rest bleibt für Interaktives frei. Wartet der
+ * Kopf einer Klasse länger als {@code starvation-ms}, wird er unabhängig davon als
+ * Nächster bedient. Batch und Hintergrund dürfen {@code deferrable-max-wait-ms} warten.
+ */
+@Component
+public class AdaptiveConcurrencyLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    public enum Outcome {
+        /** Erfolgreiche Antwort – Latenz fließt in die Anpassung ein */
+        SUCCESS,
+        /** Überlast-Signal des Providers (429, Timeout) */
+        DROPPED,
+        /** Fehler ohne Aussagekraft über die Last (z.B. 400) */
+        IGNORED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdMs;
+    private final double backoffRatio;
+    private final int maxQueueSize;
+    private final long maxWaitMs;
+    private final Map<AnalysisPriority, Integer> weights;
+    private final double deferrableShare;
+    private final long starvationNanos;
+    private final long deferrableMaxWaitMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<AnalysisPriority, ClassState> classes = new EnumMap<>(AnalysisPriority.class);
+    // Virtuelle Zeit des Fair Queuing: Endzeit des zuletzt bedienten Warters
+    private double virtualTime;
+    // Zeitpunkt der letzten Verkleinerung; ältere Slots verkleinern nicht erneut
+    private long lastDecreaseNanos = System.nanoTime() - 1;
+
+    private volatile double limit;
+    private volatile int inFlight;
+    private volatile int waiting;
+    private int deferrableInFlight;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder starvationGrants = new LongAdder();
+
+    public AdaptiveConcurrencyLimiter(
+            @Value("${openai.limiter.initial-limit:4}") int initialLimit,
+            @Value("${openai.limiter.min-limit:1}") int minLimit,
+            @Value("${openai.limiter.max-limit:20}") int maxLimit,
+            @Value("${openai.limiter.latency-threshold-ms:20000}") long latencyThresholdMs,
+            @Value("${openai.limiter.backoff-ratio:0.5}") double backoffRatio,
+            @Value("${openai.limiter.max-queue-size:100}") int maxQueueSize,
+            @Value("${openai.limiter.max-wait-ms:30000}") long maxWaitMs,
+            @Value("${openai.limiter.class-weights:realtime:8,interactive:4,batch:2,background:1}") String classWeights,
+            @Value("${openai.limiter.deferrable-share:0.75}") double deferrableShare,
+            @Value("${openai.limiter.starvation-ms:10000}") long starvationMs,
+            @Value("${openai.limiter.deferrable-max-wait-ms:300000}") long deferrableMaxWaitMs,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyThresholdMs = latencyThresholdMs;
+        this.backoffRatio = backoffRatio;
+        this.maxQueueSize = maxQueueSize;
+        this.maxWaitMs = maxWaitMs;
+        this.weights = parseWeights(classWeights);
+        this.deferrableShare = Math.min(1.0, Math.max(0.0, deferrableShare));
+        this.starvationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, starvationMs));
+        this.deferrableMaxWaitMs = Math.max(maxWaitMs, deferrableMaxWaitMs);
+        for (AnalysisPriority priority : AnalysisPriority.values()) {
+            classes.put(priority, new ClassState());
+        }
+
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("llm.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("Aktuelles Limit gleichzeitiger LLM-Aufrufe").register(registry);
+            Gauge.builder("llm.limiter.in-flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                    .register(registry);
+            Gauge.builder("llm.limiter.queue-depth", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+                    .description("Aufrufer, die auf einen freien Slot warten").register(registry);
+            FunctionCounter.builder("llm.limiter.rejected", rejected, LongAdder::sum)
+                    .description("Aufrufe ohne Slot nach maximaler Wartezeit oder bei voller Queue")
+                    .register(registry);
+            FunctionCounter.builder("llm.limiter.dropped", dropped, LongAdder::sum)
+                    .description("Überlast-Signale (429/Timeout), die das Limit verkleinert haben")
+                    .register(registry);
+            classes.forEach((priority, state) -> {
+                String tag = priority.name().toLowerCase();
+                Gauge.builder("llm.limiter.class.queue-depth", state, st -> st.queue.size())
+                        .tag("priority", tag).register(registry);
+                Gauge.builder("llm.limiter.class.in-flight", state, st -> st.inFlight)
+                        .tag("priority", tag).register(registry);
+                FunctionCounter.builder("llm.limiter.class.wait", state.waitNanos, LongAdder::sum)
+                        .description("Summierte Wartezeit auf einen Slot (ns)")
+                        .tag("priority", tag).register(registry);
+            });
+        });
+    }
+
+    /**
+     * Wartet auf einen freien Slot, eingereiht nach der Prioritätsklasse des aktuellen Scopes.
+     *
+     * @throws LlmUnavailableException wenn die Queue voll ist oder die Wartezeit abläuft
+     */
+    public Permit acquire(String operation) {
+        AnalysisPriority priority = LlmUsageTracker.priorityOf(LlmUsageTracker.current());
+        long waitMs = maxWaitMs(priority);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+        List<Waiter> granted = new ArrayList<>();
+        Permit orphan = null;
+        lock.lock();
+        try {
+            if (waiting == 0 && canAdmit(priority)) {
+                return grant(priority, System.nanoTime());
+            }
+            if (waiting >= maxQueueSize) {
+                rejected.increment();
+                throw new LlmUnavailableException("LLM-Warteschlange voll (" + waiting + ")");
+            }
+            Waiter waiter = enqueue(priority, null, lock.newCondition());
+            dispatch(granted);
+            try {
+                while (waiter.state.get() == Waiter.PENDING) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        abandon(waiter);
+                        rejected.increment();
+                        throw new LlmUnavailableException(
+                                "Kein freier LLM-Slot nach " + waitMs + " ms (" + operation + ")");
+                    }
+                    waiter.signal.awaitNanos(remaining);
+                }
+                return waiter.permit;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (!abandon(waiter)) {
+                    orphan = waiter.permit;
+                }
+                throw new LlmUnavailableException("Warten auf LLM-Slot unterbrochen", e);
+            }
+        } finally {
+            lock.unlock();
+            complete(granted);
+            if (orphan != null) {
+                orphan.release(Outcome.IGNORED);
+            }
+        }
+    }
+
+    /**
+     * Nicht-blockierende Variante von {@link #acquire}: ohne freien Slot wird ein Platzhalter
+     * eingereiht, den das nächste {@code release} bedient. Abbruch oder Ablauf der Wartezeit
+     * entfernen ihn wieder. Die Prioritätsklasse kommt aus dem Scope im Reactor-Context.
+     *
+     * @return Mono mit dem Slot oder {@link LlmUnavailableException} (Queue voll, Wartezeit abgelaufen)
+     */
+    public Mono<Permit> acquireReactive(String operation) {
+        return Mono.deferContextual(context -> {
+            AnalysisPriority priority = LlmUsageTracker.priorityOf(LlmUsageTracker.fromContext(context));
+            long waitMs = maxWaitMs(priority);
+            return Mono.<Permit>create(sink -> {
+                Permit immediate = null;
+                Waiter waiter = null;
+                List<Waiter> granted = new ArrayList<>();
+                lock.lock();
+                try {
+                    if (waiting == 0 && canAdmit(priority)) {
+                        immediate = grant(priority, System.nanoTime());
+                    } else if (waiting >= maxQueueSize) {
+                        rejected.increment();
+                        sink.error(new LlmUnavailableException("LLM-Warteschlange voll (" + waiting + ")"));
+                        return;
+                    } else {
+                        waiter = enqueue(priority, sink, null);
+                        dispatch(granted);
+                    }
+                } finally {
+                    lock.unlock();
+                    complete(granted);
+                }
+                if (immediate != null) {
+                    sink.success(immediate);
+                    return;
+                }
+                Waiter queued = waiter;
+                sink.onCancel(() -> cancel(queued));
+            }).timeout(Duration.ofMillis(waitMs))
+                    .onErrorMap(TimeoutException.class, e -> {
+                        rejected.increment();
+                        return new LlmUnavailableException(
+                                "Kein freier LLM-Slot nach " + waitMs + " ms (" + operation + ")", e);
+                    });
+        });
+    }
+
+    private void cancel(Waiter waiter) {
+        boolean removed;
+        lock.lock();
+        try {
+            removed = abandon(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (!removed && waiter.permit != null) {
+            // Slot wurde zugeteilt, kam aber nicht mehr beim Aufrufer an
+            waiter.permit.release(Outcome.IGNORED);
+        }
+    }
+
+    private void release(long startNanos, AnalysisPriority priority, Outcome outcome) {
+        long latencyMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        List<Waiter> granted = new ArrayList<>();
+        lock.lock();
+        try {
+            int usedBefore = inFlight;
+            inFlight--;
+            classes.get(priority).inFlight--;
+            if (priority.isDeferrable()) {
+                deferrableInFlight--;
+            }
+            double previous = limit;
+
+            if (outcome == Outcome.DROPPED || (outcome == Outcome.SUCCESS && latencyMs > latencyThresholdMs)) {
+                if (startNanos - lastDecreaseNanos > 0) {
+                    limit = Math.max(minLimit, limit * backoffRatio);
+                    lastDecreaseNanos = System.nanoTime();
+                    dropped.increment();
+                }
+            } else if (outcome == Outcome.SUCCESS && usedBefore * 2 >= limit) {
+                // Nur wachsen, wenn das Limit tatsächlich genutzt wird
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+
+            if ((int) previous != (int) limit) {
+                log.info("🎚️ LLM-Limit {} → {} ({}, {} ms)", (int) previous, (int) limit, outcome, latencyMs);
+            }
+            dispatch(granted);
+        } finally {
+            lock.unlock();
+        }
+        // Außerhalb des Locks, der Aufrufer startet darin direkt seinen Request
+        complete(granted);
+    }
+
+    // ---- Fair Queuing (alle Methoden unter dem Lock) ----
+
+    private boolean canAdmit(AnalysisPriority priority) {
+        return inFlight < (int) limit && (!priority.isDeferrable() || deferrableInFlight < deferrableLimit());
+    }
+
+    private int deferrableLimit() {
+        return Math.max(1, (int) (limit * deferrableShare));
+    }
+
+    private Permit grant(AnalysisPriority priority, long enqueuedNanos) {
+        long now = System.nanoTime();
+        inFlight++;
+        ClassState state = classes.get(priority);
+        state.inFlight++;
+        state.granted.increment();
+        state.waitNanos.add(now - enqueuedNanos);
+        if (priority.isDeferrable()) {
+            deferrableInFlight++;
+        }
+        return new Permit(now, priority);
+    }
+
+    private Waiter enqueue(AnalysisPriority priority, MonoSink<Permit> sink, Condition signal) {
+        ClassState state = classes.get(priority);
+        double finishTag = Math.max(virtualTime, state.lastFinishTag) + 1.0 / weights.get(priority);
+        state.lastFinishTag = finishTag;
+        Waiter waiter = new Waiter(priority, System.nanoTime(), finishTag, sink, signal);
+        state.queue.addLast(waiter);
+        waiting++;
+        return waiter;
+    }
+
+    /**
+     * Entfernt einen noch wartenden Warter; false, wenn er bereits bedient wurde.
+     */
+    private boolean abandon(Waiter waiter) {
+        if (!waiter.state.compareAndSet(Waiter.PENDING, Waiter.CANCELLED)) {
+            return false;
+        }
+        if (classes.get(waiter.priority).queue.remove(waiter)) {
+            waiting--;
+        }
+        return true;
+    }
+
+    /**
+     * Vergibt freie Slots; reaktive Warter landen in {@code granted} und werden nach dem
+     * Lock bedient, blockierende direkt geweckt.
+     */
+    private void dispatch(List<Waiter> granted) {
+        while (inFlight < (int) limit) {
+            Waiter next = selectNext();
+            if (next == null) {
+                return;
+            }
+            classes.get(next.priority).queue.pollFirst();
+            waiting--;
+            virtualTime = Math.max(virtualTime, next.finishTag);
+            if (!next.state.compareAndSet(Waiter.PENDING, Waiter.GRANTED)) {
+                continue;
+            }
+            next.permit = grant(next.priority, next.enqueuedNanos);
+            if (next.sink != null) {
+                granted.add(next);
+            } else {
+                next.signal.signal();
+            }
+        }
+    }
+
+    private Waiter selectNext() {
+        long now = System.nanoTime();
+        Waiter fairest = null;
+        Waiter starving = null;
+        for (ClassState state : classes.values()) {
+            Waiter head = state.queue.peekFirst();
+            if (head == null) {
+                continue;
+            }
+            boolean starved = starvationNanos > 0 && now - head.enqueuedNanos > starvationNanos;
+            if (starved && (starving == null || head.enqueuedNanos < starving.enqueuedNanos)) {
+                starving = head;
+            }
+            if (canAdmit(head.priority) && (fairest == null || head.finishTag < fairest.finishTag)) {
+                fairest = head;
+            }
+        }
+        if (starving != null && starving != fairest) {
+            starvationGrants.increment();
+            return starving;
+        }
+        return fairest;
+    }
+
+    private static void complete(List<Waiter> granted) {
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    private long maxWaitMs(AnalysisPriority priority) {
+        return priority.isDeferrable() ? deferrableMaxWaitMs : maxWaitMs;
+    }
+
+    static Map<AnalysisPriority, Integer> parseWeights(String spec) {
+        Map<AnalysisPriority, Integer> parsed = new EnumMap<>(AnalysisPriority.class);
+        if (spec != null) {
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.trim().split(":");
+                if (parts.length != 2) {
+                    continue;
+                }
+                try {
+                    parsed.put(AnalysisPriority.valueOf(parts[0].trim().toUpperCase()),
+                            Math.max(1, Integer.parseInt(parts[1].trim())));
+                } catch (IllegalArgumentException e) {
+                    log.warn("⚠️ Ungültiges Klassengewicht ignoriert: {}", entry.trim());
+                }
+            }
+        }
+        for (AnalysisPriority priority : AnalysisPriority.values()) {
+            parsed.putIfAbsent(priority, 1);
+        }
+        return parsed;
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight;
+    }
+
+    public int getQueueDepth() {
+        return waiting;
+    }
+
+    public Map<String, Object> getStats() {
+        lock.lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("limit", (int) limit);
+            stats.put("minLimit", minLimit);
+            stats.put("maxLimit", maxLimit);
+            stats.put("inFlight", inFlight);
+            stats.put("queueDepth", waiting);
+            stats.put("rejected", rejected.sum());
+            stats.put("dropped", dropped.sum());
+            stats.put("deferrableLimit", deferrableLimit());
+            stats.put("starvationGrants", starvationGrants.sum());
+            Map<String, Object> byClass = new LinkedHashMap<>();
+            classes.forEach((priority, state) -> {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                long grants = state.granted.sum();
+                entry.put("weight", weights.get(priority));
+                entry.put("queued", state.queue.size());
+                entry.put("inFlight", state.inFlight);
+                entry.put("granted", grants);
+                entry.put("avgWaitMs", grants > 0 ? TimeUnit.NANOSECONDS.toMillis(state.waitNanos.sum() / grants) : 0);
+                byClass.put(priority.name().toLowerCase(), entry);
+            });
+            stats.put("classes", byClass);
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Belegter Slot; muss genau einmal mit dem Ergebnis freigegeben werden.
+     */
+    public final class Permit {
+        private final long startNanos;
+        private final AnalysisPriority priority;
+        // Reaktive Ketten können aus verschiedenen Threads freigeben (Erfolg vs. Abbruch)
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startNanos, AnalysisPriority priority) {
+            this.startNanos = startNanos;
+            this.priority = priority;
+        }
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(startNanos, priority, outcome);
+            }
+        }
+    }
+
+    /**
+     * Warteschlange und Kennzahlen einer Prioritätsklasse.
+     */
+    private static final class ClassState {
+        final Deque<Waiter> queue = new ArrayDeque<>();
+        final LongAdder granted = new LongAdder();
+        final LongAdder waitNanos = new LongAdder();
+        double lastFinishTag;
+        int inFlight;
+    }
+
+    /**
+     * Eingereihter Aufrufer (reaktiv mit {@code sink}, blockierend mit {@code signal});
+     * genau einer von Zuteilung und Abbruch gewinnt.
+     */
+    private static final class Waiter {
+        static final int PENDING = 0;
+        static final int GRANTED = 1;
+        static final int CANCELLED = 2;
+
+        final AnalysisPriority priority;
+        final long enqueuedNanos;
+        final double finishTag;
+        final MonoSink<Permit> sink;
+        final Condition signal;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        volatile Permit permit;
+
+        Waiter(AnalysisPriority priority, long enqueuedNanos, double finishTag, MonoSink<Permit> sink,
+                Condition signal) {
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+            this.finishTag = finishTag;
+            this.sink = sink;
+            this.signal = signal;
+        }
+    }
+}
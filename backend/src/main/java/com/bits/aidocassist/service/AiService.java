@@ -1,55 +1,108 @@
 package com.bits.aidocassist.service;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.HttpStatus;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import reactor.core.publisher.Mono;
+
 @Service
 public class AiService {
 
+    private static final String SYSTEM_PROMPT =
+            "Du bist ein Experte für technische Dokumentenanalyse. " +
+            "Antworte präzise, strukturiert und in deutscher Sprache.";
+
+    // Platzhalter für das Dokument; wird erst nach dem Token-Zuschnitt ersetzt
+    private static final String DOCUMENT_PLACEHOLDER = "{{DOKUMENT}}";
+
+    // Antwort-Budgets (max_tokens) je Operation
+    private static final int SUMMARY_MAX_TOKENS = 500;
+    private static final int KEYWORDS_MAX_TOKENS = 300;
+    private static final int COMPONENTS_MAX_TOKENS = 400;
+    private static final int COMBINED_MAX_TOKENS = 1200;
+    private static final int CHUNK_SUMMARY_MAX_TOKENS = 250;
+
     @Value("${openai.api.key:}")
     private String openAiApiKey;
 
     @Value("${openai.api.model:gpt-4-turbo-preview}")
     private String openAiModel;
 
+    // Ein Aufruf für Zusammenfassung, Keywords und Komponenten statt drei
+    @Value("${openai.api.combined-analysis:true}")
+    private boolean combinedAnalysisEnabled;
+
     @Autowired
     private TextPreprocessingService preprocessingService;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    // Gemeinsame LLM-Schicht (Cache, gepoolter HTTP-Client)
+    @Autowired
+    private LlmClient llmClient;
+
+    // Exakte Token-Zählung statt Zeichen-Kürzung
+    @Autowired
+    private TokenizerService tokenizer;
+
+    // Virtuelle Threads für parallele LLM-Aufrufe (statt Common-ForkJoinPool)
+    @Autowired
+    private AnalysisTaskRunner taskRunner;
+
+    // Modellwahl je Aufruf (Operation, Dokumentgröße, Latenzziel); openAiModel ist der Default
+    @Autowired
+    private LlmModelRouter modelRouter;
+
+    // Map-Reduce-Zusammenfassung für Dokumente, die nicht in einen Prompt passen
+    @Value("${openai.summary.map-reduce.enabled:true}")
+    private boolean mapReduceEnabled;
+
+    @Value("${openai.summary.chunk-tokens:2000}")
+    private int chunkTokens;
+
+    // Obergrenze für Map-Aufrufe; größere Dokumente bekommen größere Chunks
+    @Value("${openai.summary.max-chunks:16}")
+    private int maxChunks;
+
     private final ObjectMapper objectMapper = new ObjectMapper();
-    
-    // Verwende Chat Completions API statt Legacy Completions
-    private static final String OPENAI_CHAT_URL = "https://api.openai.com/v1/chat/completions";
 
     // Qualitäts-Metriken
-    private final Map<String, QualityMetrics> qualityMetrics = new HashMap<>();
+    // Aufrufe laufen parallel in virtuellen Threads (Map-Reduce, Einzel-Analysen, Scope-Forks)
+    private final Map<String, QualityMetrics> qualityMetrics = new ConcurrentHashMap<>();
 
     /**
      * OPTIMIERTE Zusammenfassung mit strukturiertem Output
      */
     public String summarizeText(String text) {
+        return summarizeText(text, null);
+    }
+
+    private String summarizeText(String text, Map<String, String> routes) {
         long startTime = System.currentTimeMillis();
         
         if (text.length() < 100) {
@@ -61,14 +114,15 @@ public class AiService {
         
         if (openAiApiKey != null && !openAiApiKey.trim().isEmpty()) {
             try {
-                String prompt = createOptimizedSummarizationPrompt(processedText);
-                String result = callOpenAiChat(prompt, 500, 0.3, "summarization");
+                PromptFit prompt = prepareSummaryPrompt(processedText);
+                String result = callOpenAiChat(prompt, SUMMARY_MAX_TOKENS, 0.3, "summarization");
                 
                 // Post-Processing für strukturierte Ausgabe
                 result = postProcessSummary(result);
                 
                 recordQualityMetrics("summarization", startTime, true, result.length());
-                System.out.println("✅ OpenAI Zusammenfassung erfolgreich (GPT-4)");
+                recordRoute(routes, "summary", prompt);
+                System.out.println("✅ OpenAI Zusammenfassung erfolgreich (" + prompt.model() + ")");
                 return result;
             } catch (Exception e) {
                 recordQualityMetrics("summarization", startTime, false, 0);
@@ -79,10 +133,64 @@ public class AiService {
         return getEnhancedFallbackSummary(processedText);
     }
 
+    /**
+     * Zusammenfassung als Token-Stream (SSE). Tokens gehen sofort an {@code onToken};
+     * Rückgabe ist die nachbearbeitete Gesamt-Zusammenfassung.
+     * Ohne API-Key oder bei Fehler vor dem ersten Token wird die Fallback-Zusammenfassung
+     * als ein einziger Block gesendet.
+     */
+    public String streamSummary(String text, Consumer<String> onToken) {
+        long startTime = System.currentTimeMillis();
+
+        if (text.length() < 100) {
+            String shortResult = text + " [Text zu kurz für KI-Zusammenfassung]";
+            onToken.accept(shortResult);
+            return shortResult;
+        }
+
+        String processedText = preprocessingService.preprocessText(text);
+
+        if (isOpenAiConfigured()) {
+            StringBuilder streamed = new StringBuilder();
+            try {
+                PromptFit prompt = prepareSummaryPrompt(processedText);
+                String result = streamOpenAiChat(prompt, SUMMARY_MAX_TOKENS, 0.3, "summarization", token -> {
+                    streamed.append(token);
+                    onToken.accept(token);
+                });
+                if (result.isEmpty()) {
+                    throw new IllegalStateException("Leerer Stream");
+                }
+                result = postProcessSummary(result);
+                recordQualityMetrics("summarization", startTime, true, result.length());
+                System.out.println("✅ OpenAI Zusammenfassung gestreamt (" + result.length() + " Zeichen)");
+                return result;
+            } catch (CancellationException e) {
+                // Aufrufer hat abgebrochen (Client getrennt): kein Fehler, kein Fallback
+                throw e;
+            } catch (Exception e) {
+                recordQualityMetrics("summarization", startTime, false, 0);
+                System.err.println("❌ OpenAI Summary-Stream fehlgeschlagen: " + e.getMessage());
+                if (streamed.length() > 0) {
+                    // Bereits gesendete Tokens nicht verwerfen
+                    return postProcessSummary(streamed.toString().trim());
+                }
+            }
+        }
+
+        String fallback = getEnhancedFallbackSummary(processedText);
+        onToken.accept(fallback);
+        return fallback;
+    }
+
     /**
      * OPTIMIERTE Keyword-Extraktion mit Kategorisierung
      */
     public String extractKeywords(String text) {
+        return extractKeywords(text, null);
+    }
+
+    private String extractKeywords(String text, Map<String, String> routes) {
         long startTime = System.currentTimeMillis();
         
         // Text-Preprocessing
@@ -90,13 +198,14 @@ public class AiService {
         
         if (openAiApiKey != null && !openAiApiKey.trim().isEmpty()) {
             try {
-                String prompt = createOptimizedKeywordPrompt(processedText);
-                String result = callOpenAiChat(prompt, 300, 0.2, "keywords");
+                PromptFit prompt = createOptimizedKeywordPrompt(processedText);
+                String result = callOpenAiChat(prompt, KEYWORDS_MAX_TOKENS, 0.2, "keywords");
                 
                 // JSON-Response parsen und formatieren
                 result = processKeywordResponse(result);
                 
                 recordQualityMetrics("keywords", startTime, true, result.length());
+                recordRoute(routes, "keywords", prompt);
                 System.out.println("✅ OpenAI Keywords erfolgreich extrahiert (strukturiert)");
                 return result;
             } catch (Exception e) {
@@ -114,6 +223,10 @@ public class AiService {
      * OPTIMIERTE Komponenten-Empfehlungen (kontextbezogen)
      */
     public String suggestComponents(String text) {
+        return suggestComponents(text, null);
+    }
+
+    private String suggestComponents(String text, Map<String, String> routes) {
         long startTime = System.currentTimeMillis();
         
         // Text-Preprocessing und Technologie-Erkennung
@@ -122,13 +235,14 @@ public class AiService {
         
         if (openAiApiKey != null && !openAiApiKey.trim().isEmpty()) {
             try {
-                String prompt = createContextAwareComponentPrompt(processedText, detectedTechs);
-                String result = callOpenAiChat(prompt, 400, 0.4, "components");
+                PromptFit prompt = createContextAwareComponentPrompt(processedText, detectedTechs);
+                String result = callOpenAiChat(prompt, COMPONENTS_MAX_TOKENS, 0.4, "components");
                 
                 // Validierung: Keine widersprüchlichen Empfehlungen
                 result = validateComponentSuggestions(result, detectedTechs);
                 
                 recordQualityMetrics("components", startTime, true, result.length());
+                recordRoute(routes, "components", prompt);
                 System.out.println("✅ OpenAI Komponenten-Empfehlungen (kontextbezogen)");
                 return result;
             } catch (Exception e) {
@@ -140,15 +254,488 @@ public class AiService {
         return getContextAwareFallbackComponents(processedText, detectedTechs);
     }
 
+    /**
+     * KOMBINIERTE Analyse: Zusammenfassung, Keywords und Komponenten in EINEM Chat-Aufruf.
+     * Das Dokument wird nur einmal gesendet; ungültige Teile der JSON-Antwort fallen
+     * einzeln auf die lokalen Fallbacks zurück. Nicht angeforderte Felder bleiben null.
+     */
+    public CombinedAnalysis analyzeCombined(String text, boolean withSummary, boolean withKeywords,
+            boolean withComponents) {
+        int requested = (withSummary ? 1 : 0) + (withKeywords ? 1 : 0) + (withComponents ? 1 : 0);
+
+        // Kombinierter Modus lohnt sich nur ab zwei Feldern und mit OpenAI
+        if (!combinedAnalysisEnabled || requested < 2 || !isOpenAiConfigured()) {
+            return analyzeSeparately(text, withSummary, withKeywords, withComponents);
+        }
+
+        long startTime = System.currentTimeMillis();
+        String processedText = preprocessingService.preprocessText(text);
+        Set<String> detectedTechs = detectExistingTechnologies(processedText);
+
+        CombinedAnalysis result = new CombinedAnalysis();
+        result.combined = true;
+
+        PromptFit fit = createCombinedAnalysisPrompt(processedText, detectedTechs, withSummary);
+        // Langes Dokument: Zusammenfassung per Map-Reduce parallel zum kombinierten Aufruf,
+        // der dann ohne Zusammenfassungs-Feld auskommt (keine verworfenen Output-Tokens)
+        boolean mapReduce = withSummary && fit.truncated() && mapReduceEnabled;
+        if (mapReduce) {
+            fit = createCombinedAnalysisPrompt(processedText, detectedTechs, false);
+        }
+        result.recordTokens(fit, COMBINED_MAX_TOKENS);
+
+        CompletableFuture<String> mapReduceSummary = mapReduce
+                ? CompletableFuture.supplyAsync(() -> summarizeMapReduce(processedText), taskRunner.io())
+                : CompletableFuture.completedFuture(null);
+
+        Map<String, Object> parsed;
+        try {
+            String response = callOpenAiChat(fit, COMBINED_MAX_TOKENS, 0.3, "combined");
+            parsed = parseJsonObject(response);
+            recordQualityMetrics("combined", startTime, true, response.length());
+            recordCombinedRoutes(result, fit, withSummary && !mapReduce, withKeywords, withComponents);
+            System.out.println("✅ OpenAI kombinierte Analyse erfolgreich (1 Aufruf)");
+        } catch (Exception e) {
+            recordQualityMetrics("combined", startTime, false, 0);
+            System.err.println("❌ OpenAI Combined analysis failed: " + e.getMessage());
+            parsed = Map.of();
+        }
+
+        applyCombinedFields(result, text, processedText, detectedTechs, parsed, mapReduceSummary.join(),
+                withSummary, withKeywords, withComponents);
+        return result;
+    }
+
+    /**
+     * Übernimmt die Felder der kombinierten JSON-Antwort; fehlende oder ungültige Teile
+     * fallen einzeln auf die lokalen Fallbacks zurück.
+     */
+    private void applyCombinedFields(CombinedAnalysis result, String text, String processedText,
+            Set<String> detectedTechs, Map<String, Object> parsed, String mapReduced,
+            boolean withSummary, boolean withKeywords, boolean withComponents) {
+        if (withSummary) {
+            if (text.length() < 100) {
+                result.summary = text + " [Text zu kurz für KI-Zusammenfassung]";
+            } else if (mapReduced != null) {
+                result.summary = mapReduced;
+            } else {
+                String summary = asNonBlankString(parsed.get("zusammenfassung"));
+                if (summary != null) {
+                    result.summary = postProcessSummary(summary);
+                } else {
+                    result.summary = getEnhancedFallbackSummary(processedText);
+                    result.fallbackFields.add("summary");
+                }
+            }
+        }
+
+        if (withKeywords) {
+            String keywords = parsed.get("keywords") instanceof Map<?, ?> keywordMap
+                    ? formatKeywordMap(keywordMap) : null;
+            if (keywords != null && !keywords.isBlank()) {
+                result.keywords = keywords;
+            } else {
+                result.keywords = String.join(", ", preprocessingService.extractKeywords(processedText, 15));
+                result.fallbackFields.add("keywords");
+            }
+        }
+
+        if (withComponents) {
+            String components = formatComponentMap(parsed.get("komponenten"));
+            if (components != null && !components.isBlank()) {
+                result.components = validateComponentSuggestions(components, detectedTechs);
+            } else {
+                result.components = getContextAwareFallbackComponents(processedText, detectedTechs);
+                result.fallbackFields.add("components");
+            }
+        }
+
+        if (!result.fallbackFields.isEmpty()) {
+            System.out.println("⚠️ Kombinierte Analyse: Fallback für " + result.fallbackFields);
+        }
+    }
+
+    /**
+     * Bisheriger Weg: drei getrennte Aufrufe (parallel), z.B. wenn nur ein Feld gewünscht ist.
+     */
+    private CombinedAnalysis analyzeSeparately(String text, boolean withSummary, boolean withKeywords,
+            boolean withComponents) {
+        CombinedAnalysis result = new CombinedAnalysis();
+        CompletableFuture<String> summaryFuture = CompletableFuture.supplyAsync(
+                () -> withSummary ? summarizeText(text, result.routes) : null, taskRunner.io());
+        CompletableFuture<String> keywordsFuture = CompletableFuture.supplyAsync(
+                () -> withKeywords ? extractKeywords(text, result.routes) : null, taskRunner.io());
+        CompletableFuture<String> componentsFuture = CompletableFuture.supplyAsync(
+                () -> withComponents ? suggestComponents(text, result.routes) : null, taskRunner.io());
+
+        if (withSummary && isOpenAiConfigured()) {
+            // Größter Prompt der Einzelaufrufe (Zusammenfassung) als Referenz
+            String processedText = preprocessingService.preprocessText(text);
+            result.recordTokens(createSummarizationPromptFit(processedText), SUMMARY_MAX_TOKENS);
+        }
+        result.summary = summaryFuture.join();
+        result.keywords = keywordsFuture.join();
+        result.components = componentsFuture.join();
+        result.markFallbacks(text, withSummary, withKeywords, withComponents);
+        return result;
+    }
+
+    // ========================================
+    // REAKTIVE ANALYSE (nicht-blockierend)
+    // ========================================
+
+    /**
+     * Reaktive Variante von {@link #analyzeCombined}: Preprocessing und Prompt-Aufbau im
+     * CPU-Pool, der LLM-Aufruf über den nicht-blockierenden LlmClient. Ohne kombinierten
+     * Modus laufen Zusammenfassung, Keywords und Komponenten per {@code Mono.zip} parallel.
+     */
+    public Mono<CombinedAnalysis> analyzeCombinedReactive(String text, boolean withSummary, boolean withKeywords,
+            boolean withComponents) {
+        int requested = (withSummary ? 1 : 0) + (withKeywords ? 1 : 0) + (withComponents ? 1 : 0);
+        if (!combinedAnalysisEnabled || requested < 2 || !isOpenAiConfigured()) {
+            return analyzeSeparatelyReactive(text, withSummary, withKeywords, withComponents);
+        }
+
+        return Mono.fromCallable(() -> preprocessingService.preprocessText(text))
+                .subscribeOn(taskRunner.cpuScheduler())
+                .flatMap(processedText -> {
+                    long startTime = System.currentTimeMillis();
+                    Set<String> detectedTechs = detectExistingTechnologies(processedText);
+                    PromptFit withSummaryFit = createCombinedAnalysisPrompt(processedText, detectedTechs, withSummary);
+                    boolean mapReduce = withSummary && withSummaryFit.truncated() && mapReduceEnabled;
+                    PromptFit fit = mapReduce
+                            ? createCombinedAnalysisPrompt(processedText, detectedTechs, false)
+                            : withSummaryFit;
+
+                    CombinedAnalysis result = new CombinedAnalysis();
+                    result.combined = true;
+                    result.recordTokens(fit, COMBINED_MAX_TOKENS);
+
+                    // Map-Reduce (selten, lange Dokumente) bleibt blockierend, aber auf virtuellen Threads
+                    Mono<Optional<String>> mapReduceSummary = mapReduce
+                            ? LlmUsageTracker.blocking(() -> Optional.ofNullable(summarizeMapReduce(processedText)))
+                                    .subscribeOn(taskRunner.ioScheduler())
+                            : Mono.just(Optional.empty());
+
+                    Mono<Map<String, Object>> parsed = callOpenAiChatReactive(fit, COMBINED_MAX_TOKENS, 0.3,
+                            "combined")
+                            .flatMap(response -> Mono.fromCallable(() -> {
+                                Map<String, Object> json = parseJsonObject(response);
+                                recordQualityMetrics("combined", startTime, true, response.length());
+                                recordCombinedRoutes(result, fit, withSummary && !mapReduce, withKeywords,
+                                        withComponents);
+                                System.out.println("✅ OpenAI kombinierte Analyse erfolgreich (reaktiv)");
+                                return json;
+                            }))
+                            .onErrorResume(e -> {
+                                recordQualityMetrics("combined", startTime, false, 0);
+                                System.err.println("❌ OpenAI Combined analysis failed: " + e.getMessage());
+                                return Mono.just(Map.of());
+                            });
+
+                    return Mono.zip(parsed, mapReduceSummary).map(tuple -> {
+                        applyCombinedFields(result, text, processedText, detectedTechs, tuple.getT1(),
+                                tuple.getT2().orElse(null), withSummary, withKeywords, withComponents);
+                        return result;
+                    });
+                });
+    }
+
+    private Mono<CombinedAnalysis> analyzeSeparatelyReactive(String text, boolean withSummary,
+            boolean withKeywords, boolean withComponents) {
+        CombinedAnalysis result = new CombinedAnalysis();
+        Mono<Optional<String>> summary = withSummary
+                ? summarizeTextReactive(text, result.routes).map(Optional::of) : Mono.just(Optional.empty());
+        Mono<Optional<String>> keywords = withKeywords
+                ? extractKeywordsReactive(text, result.routes).map(Optional::of) : Mono.just(Optional.empty());
+        Mono<Optional<String>> components = withComponents
+                ? suggestComponentsReactive(text, result.routes).map(Optional::of) : Mono.just(Optional.empty());
+
+        return Mono.zip(summary, keywords, components).map(tuple -> {
+            result.summary = tuple.getT1().orElse(null);
+            result.keywords = tuple.getT2().orElse(null);
+            result.components = tuple.getT3().orElse(null);
+            result.markFallbacks(text, withSummary, withKeywords, withComponents);
+            return result;
+        });
+    }
+
+    public Mono<String> summarizeTextReactive(String text) {
+        return summarizeTextReactive(text, null);
+    }
+
+    private Mono<String> summarizeTextReactive(String text, Map<String, String> routes) {
+        if (text.length() < 100) {
+            return Mono.just(text + " [Text zu kurz für KI-Zusammenfassung]");
+        }
+        return analyzeFieldReactive(text, "summarization", "summary", routes, SUMMARY_MAX_TOKENS, 0.3,
+                processedText -> {
+                    PromptFit fit = createSummarizationPromptFit(processedText);
+                    return fit.truncated() && mapReduceEnabled
+                            ? LlmUsageTracker.blocking(() -> prepareSummaryPrompt(processedText))
+                                    .subscribeOn(taskRunner.ioScheduler())
+                            : Mono.just(fit);
+                },
+                (response, processedText) -> postProcessSummary(response),
+                this::getEnhancedFallbackSummary);
+    }
+
+    public Mono<String> extractKeywordsReactive(String text) {
+        return extractKeywordsReactive(text, null);
+    }
+
+    private Mono<String> extractKeywordsReactive(String text, Map<String, String> routes) {
+        return analyzeFieldReactive(text, "keywords", "keywords", routes, KEYWORDS_MAX_TOKENS, 0.2,
+                processedText -> Mono.just(createOptimizedKeywordPrompt(processedText)),
+                (response, processedText) -> processKeywordResponse(response),
+                processedText -> String.join(", ", preprocessingService.extractKeywords(processedText, 15)));
+    }
+
+    public Mono<String> suggestComponentsReactive(String text) {
+        return suggestComponentsReactive(text, null);
+    }
+
+    private Mono<String> suggestComponentsReactive(String text, Map<String, String> routes) {
+        return analyzeFieldReactive(text, "components", "components", routes, COMPONENTS_MAX_TOKENS, 0.4,
+                processedText -> Mono.just(createContextAwareComponentPrompt(processedText,
+                        detectExistingTechnologies(processedText))),
+                (response, processedText) -> validateComponentSuggestions(response,
+                        detectExistingTechnologies(processedText)),
+                processedText -> getContextAwareFallbackComponents(processedText,
+                        detectExistingTechnologies(processedText)));
+    }
+
+    /**
+     * Gemeinsamer Ablauf der reaktiven Einzelanalysen: Preprocessing im CPU-Pool, Aufruf
+     * nicht-blockierend, bei Fehler oder ohne API-Key der lokale Fallback.
+     * Die gewählte Route landet unter {@code field} in {@code routes} (falls angegeben).
+     */
+    private Mono<String> analyzeFieldReactive(String text, String type, String field, Map<String, String> routes,
+            int maxTokens, double temperature, Function<String, Mono<PromptFit>> promptFor,
+            BiFunction<String, String, String> postProcess, Function<String, String> fallback) {
+        return Mono.fromCallable(() -> preprocessingService.preprocessText(text))
+                .subscribeOn(taskRunner.cpuScheduler())
+                .flatMap(processedText -> {
+                    if (!isOpenAiConfigured()) {
+                        return Mono.just(fallback.apply(processedText));
+                    }
+                    long startTime = System.currentTimeMillis();
+                    return promptFor.apply(processedText)
+                            .flatMap(prompt -> callOpenAiChatReactive(prompt, maxTokens, temperature, type)
+                                    .doOnNext(response -> recordRoute(routes, field, prompt)))
+                            .map(response -> postProcess.apply(response, processedText))
+                            .doOnNext(result -> {
+                                recordQualityMetrics(type, startTime, true, result.length());
+                                System.out.println("✅ OpenAI " + type + " erfolgreich (reaktiv)");
+                            })
+                            .onErrorResume(e -> {
+                                recordQualityMetrics(type, startTime, false, 0);
+                                System.err.println("❌ OpenAI " + type + " (reaktiv) failed: " + e.getMessage());
+                                return Mono.just(fallback.apply(processedText));
+                            });
+                });
+    }
+
     // ========================================
     // OPTIMIERTE PROMPT-ERSTELLUNG
     // ========================================
 
-    private String createOptimizedSummarizationPrompt(String text) {
-        // Text begrenzen aber intelligent (nicht mitten im Satz abschneiden)
-        String inputText = truncateIntelligently(text, 4000);
-        
-        return String.format("""
+    /**
+     * Prompt für die Zusammenfassung. Passt das Dokument nicht ins Token-Budget,
+     * werden zuerst Teilzusammenfassungen je Chunk erzeugt (Map), die der
+     * zurückgegebene Prompt zusammenführt (Reduce).
+     */
+    private PromptFit prepareSummaryPrompt(String processedText) {
+        PromptFit fit = createSummarizationPromptFit(processedText);
+        if (!fit.truncated() || !mapReduceEnabled) {
+            return fit;
+        }
+        List<String> partials = summarizeChunks(processedText);
+        return partials.isEmpty() ? fit : createReduceSummaryPrompt(partials);
+    }
+
+    /**
+     * Vollständige Map-Reduce-Zusammenfassung, {@code null} bei Fehler.
+     */
+    private String summarizeMapReduce(String processedText) {
+        long startTime = System.currentTimeMillis();
+        try {
+            List<String> partials = summarizeChunks(processedText);
+            if (partials.isEmpty()) {
+                return null;
+            }
+            String result = reduceSummaries(partials);
+            recordQualityMetrics("summarization", startTime, true, result.length());
+            return result;
+        } catch (Exception e) {
+            recordQualityMetrics("summarization", startTime, false, 0);
+            System.err.println("❌ Map-Reduce-Zusammenfassung fehlgeschlagen: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Map-Schritt: Segmente aus dem Preprocessing in Token-Chunks packen und parallel
+     * zusammenfassen. Die Parallelität begrenzt der Concurrency-Limiter im {@link LlmClient};
+     * der Prompt hängt nur vom Chunk ab und die Chunk-Grenzen am Inhalt
+     * ({@link TokenizerService#packSegments}), so trifft ein erneuter Upload nach einer
+     * Änderung für die übrigen Chunks den Response-Cache. Fehlgeschlagene Chunks werden ausgelassen.
+     */
+    private List<String> summarizeChunks(String processedText) {
+        List<String> chunks = packSummaryChunks(processedText);
+
+        List<CompletableFuture<String>> futures = chunks.stream()
+                .map(chunk -> CompletableFuture.supplyAsync(() -> summarizeSegment(chunk), taskRunner.io()))
+                .toList();
+        return futures.stream()
+                .map(CompletableFuture::join)
+                .filter(partial -> partial != null && !partial.isBlank())
+                .toList();
+    }
+
+    private List<String> packSummaryChunks(String processedText) {
+        List<String> segments = preprocessingService.getSegments(processedText);
+        int totalTokens = tokenizer.countTokens(openAiModel, processedText);
+        // Chunk-Größe in Verdopplungs-Stufen: kleine Änderungen der Gesamtlänge verschieben
+        // keine Grenzen, nur das Überschreiten einer Stufe
+        int chunkLimit = Math.max(1, chunkTokens);
+        while ((long) chunkLimit * Math.max(1, maxChunks) < 2L * totalTokens) {
+            chunkLimit *= 2;
+        }
+        List<String> chunks = tokenizer.packSegments(openAiModel, segments, chunkLimit);
+        System.out.println("🧩 Map-Reduce-Zusammenfassung: " + segments.size() + " Segmente → "
+                + chunks.size() + " Chunks (" + totalTokens + " Tokens)");
+        return chunks;
+    }
+
+    /**
+     * Schnelle Vorprüfung ohne Tokenisierung des Dokuments: {@code false}, wenn es sicher in
+     * einen Prompt passt. Ein Token umfasst mindestens ein UTF-8-Byte, die Byte-Länge ist also
+     * eine obere Schranke der Token-Zahl.
+     */
+    public boolean mayNeedMapReduce(String text) {
+        if (!mapReduceEnabled || !isOpenAiConfigured() || text == null) {
+            return false;
+        }
+        int summaryBudget = tokenizer.inputBudget(openAiModel, SUMMARY_MAX_TOKENS,
+                createSummarizationPromptFit("").promptTokens());
+        int combinedBudget = tokenizer.inputBudget(openAiModel, COMBINED_MAX_TOKENS,
+                createCombinedAnalysisPrompt("", Set.of(), true).promptTokens());
+        return text.getBytes(StandardCharsets.UTF_8).length > Math.min(summaryBudget, combinedBudget);
+    }
+
+    /**
+     * Chunks, über die die Analyse ein Dokument per Map-Reduce zusammenfasst; leer, wenn es
+     * in einen Prompt passt (dann genügt ein Aufruf).
+     */
+    public List<String> summaryChunks(String text) {
+        if (!mapReduceEnabled || !isOpenAiConfigured()) {
+            return List.of();
+        }
+        String processedText = preprocessingService.preprocessText(text);
+        boolean fits = !createSummarizationPromptFit(processedText).truncated()
+                && !createCombinedAnalysisPrompt(processedText, detectExistingTechnologies(processedText), true)
+                        .truncated();
+        return fits ? List.of() : packSummaryChunks(processedText);
+    }
+
+    /**
+     * Teilzusammenfassung eines Chunks aus dem Response-Cache, ohne LLM-Aufruf;
+     * {@code null}, wenn sie dort nicht (mehr) liegt.
+     */
+    public String cachedSegmentSummary(String chunk) {
+        LlmResponseCache cache = llmClient.getResponseCache();
+        String cached = cache.get(cache.keyFor(
+                buildChatRequestBody(createChunkSummaryPrompt(chunk), CHUNK_SUMMARY_MAX_TOKENS, 0.2)));
+        return cached != null ? cached.trim() : null;
+    }
+
+    /**
+     * Teilzusammenfassung eines Abschnitts (Map-Schritt), {@code null} ohne API-Key oder bei Fehler.
+     */
+    public String summarizeSegment(String chunk) {
+        if (!isOpenAiConfigured()) {
+            return null;
+        }
+        try {
+            return callOpenAiChat(createChunkSummaryPrompt(chunk), CHUNK_SUMMARY_MAX_TOKENS, 0.2,
+                    "summary-chunk");
+        } catch (Exception e) {
+            System.err.println("⚠️ Chunk-Zusammenfassung fehlgeschlagen: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reduce-Schritt: Teilzusammenfassungen zu einer strukturierten Gesamtzusammenfassung
+     * zusammenführen. Fällt bei Fehlern auf die lokale Zusammenfassung der Teile zurück.
+     */
+    public String mergeSummaries(List<String> partials) {
+        long startTime = System.currentTimeMillis();
+        if (isOpenAiConfigured()) {
+            try {
+                String result = reduceSummaries(partials);
+                recordQualityMetrics("summarization", startTime, true, result.length());
+                return result;
+            } catch (Exception e) {
+                recordQualityMetrics("summarization", startTime, false, 0);
+                System.err.println("❌ Zusammenführen der Teilzusammenfassungen fehlgeschlagen: " + e.getMessage());
+            }
+        }
+        return getEnhancedFallbackSummary(String.join("\n\n", partials));
+    }
+
+    private String reduceSummaries(List<String> partials) {
+        String result = callOpenAiChat(createReduceSummaryPrompt(partials), SUMMARY_MAX_TOKENS, 0.3,
+                "summarization");
+        return postProcessSummary(result);
+    }
+
+    private PromptFit createChunkSummaryPrompt(String chunk) {
+        return fitDocument(String.format("""
+            Fasse den folgenden Abschnitt eines technischen Dokuments in 3-6 Stichpunkten zusammen.
+            Behalte Technologien (mit Versionsnummern), Ziele, Funktionen und Besonderheiten bei.
+            Keine Einleitung, keine Wertung.
+
+            ABSCHNITT:
+            %s
+
+            STICHPUNKTE:
+            """, DOCUMENT_PLACEHOLDER), chunk, CHUNK_SUMMARY_MAX_TOKENS, "summary-chunk");
+    }
+
+    private PromptFit createReduceSummaryPrompt(List<String> partials) {
+        StringBuilder parts = new StringBuilder();
+        for (int i = 0; i < partials.size(); i++) {
+            parts.append("TEIL ").append(i + 1).append(":\n").append(partials.get(i)).append("\n\n");
+        }
+
+        return fitDocument(String.format("""
+            Die folgenden Teilzusammenfassungen stammen aus aufeinanderfolgenden Abschnitten
+            EINES technischen Dokuments. Führe sie zu einer STRUKTURIERTEN Gesamtzusammenfassung zusammen.
+
+            FORMAT DER AUSGABE:
+            **Projektziel:** [Beschreibung]
+
+            **Technologien:** [Frontend], [Backend], [Datenbank], [DevOps]
+
+            **Hauptfunktionen:**
+            - [Funktion 1]
+            - [Funktion 2]
+            - [Funktion 3]
+
+            **Besonderheit:** [Was hebt das Projekt hervor]
+
+            TEILZUSAMMENFASSUNGEN:
+            %s
+
+            ZUSAMMENFASSUNG:
+            """, DOCUMENT_PLACEHOLDER), parts.toString().trim(), SUMMARY_MAX_TOKENS, "summarization");
+    }
+
+    private PromptFit createSummarizationPromptFit(String text) {
+        // Dokument exakt auf das Token-Budget zuschneiden (nicht mitten im Satz abschneiden)
+        return fitDocument(String.format("""
             Analysiere das folgende technische Dokument und erstelle eine STRUKTURIERTE Zusammenfassung.
             
             ANFORDERUNGEN:
@@ -173,16 +760,14 @@ public class AiService {
             %s
             
             ZUSAMMENFASSUNG:
-            """, inputText);
+            """, DOCUMENT_PLACEHOLDER), text, SUMMARY_MAX_TOKENS, "summarization");
     }
 
-    private String createOptimizedKeywordPrompt(String text) {
-        String inputText = truncateIntelligently(text, 3000);
-        
+    private PromptFit createOptimizedKeywordPrompt(String text) {
         // Bereits erkannte technische Begriffe hervorheben
         Map<String, Object> textAnalysis = preprocessingService.analyzeTextQuality(text);
         
-        return String.format("""
+        return fitDocument(String.format("""
             Extrahiere und kategorisiere die wichtigsten Keywords aus diesem technischen Dokument.
             
             AUSGABE ALS JSON:
@@ -207,14 +792,13 @@ public class AiService {
             %s
             
             JSON-OUTPUT:
-            """, inputText);
+            """, DOCUMENT_PLACEHOLDER), text, KEYWORDS_MAX_TOKENS, "keywords");
     }
 
-    private String createContextAwareComponentPrompt(String text, Set<String> existingTechs) {
-        String inputText = truncateIntelligently(text, 3000);
+    private PromptFit createContextAwareComponentPrompt(String text, Set<String> existingTechs) {
         String existingTechList = String.join(", ", existingTechs);
         
-        return String.format("""
+        return fitDocument(String.format("""
             Als Senior Solutions Architect, analysiere das Projekt und empfehle ERGÄNZENDE Technologien.
             
             BEREITS VERWENDETE TECHNOLOGIEN (NICHT ersetzen):
@@ -244,54 +828,179 @@ public class AiService {
             %s
             
             EMPFEHLUNGEN:
-            """, existingTechList, inputText);
+            """, existingTechList, DOCUMENT_PLACEHOLDER), text, COMPONENTS_MAX_TOKENS, "components");
+    }
+
+    /**
+     * Kombinierter Prompt; ohne {@code withSummary} (nicht angefordert oder per Map-Reduce)
+     * fehlt das Feld "zusammenfassung", damit das Modell es nicht erzeugt.
+     */
+    private PromptFit createCombinedAnalysisPrompt(String text, Set<String> existingTechs, boolean withSummary) {
+        String existingTechList = existingTechs.isEmpty() ? "keine erkannt" : String.join(", ", existingTechs);
+        String summaryTask = withSummary ? """
+            - "zusammenfassung": STRUKTURIERTE Zusammenfassung als Text im Format
+               **Projektziel:** ... **Technologien:** ... **Hauptfunktionen:** (3 Punkte) ... **Besonderheit:** ...
+            """ : "";
+        String summaryJson = withSummary ? "\n    \"zusammenfassung\": \"**Projektziel:** ...\"," : "";
+
+        return fitDocument(String.format("""
+            Analysiere das folgende technische Dokument und liefere ALLE Ergebnisse in EINER Antwort.
+
+            %s- "keywords": Kategorisierte Keywords (mindestens 15, Versionsnummern beibehalten)
+            - "komponenten": NUR ERGÄNZENDE Tools zum bestehenden Stack (keine Alternativen).
+               Bereits verwendet (NICHT ersetzen): %s
+
+            AUSGABE ALS JSON (keine weiteren Erklärungen):
+            {%s
+                "keywords": {
+                    "projekt": ["Projektname", "Firma"],
+                    "technologien": {
+                        "frontend": [], "backend": [], "datenbank": [], "devops": []
+                    },
+                    "konzepte": [],
+                    "priorität_hoch": []
+                },
+                "komponenten": {
+                    "Monitoring": [], "Caching": [], "Security": [], "Testing": [], "DevTools": []
+                }
+            }
+
+            DOKUMENT:
+            %s
+
+            JSON-OUTPUT:
+            """, summaryTask, existingTechList, summaryJson, DOCUMENT_PLACEHOLDER), text, COMBINED_MAX_TOKENS,
+                "combined");
+    }
+
+    /**
+     * Wählt per {@link LlmModelRouter} das Modell für {@code operation} und setzt das Dokument
+     * so gekürzt in die Vorlage ein, dass System-Prompt, Vorlage, Dokument und
+     * {@code maxCompletionTokens} ins Kontextfenster des gewählten Modells passen.
+     */
+    private PromptFit fitDocument(String template, String text, int maxCompletionTokens, String operation) {
+        int documentTokens = tokenizer.countTokens(openAiModel, text);
+        LlmModelRouter.Decision route = modelRouter.route(operation, documentTokens, openAiModel);
+        String model = route.model();
+        if (!model.equals(openAiModel)) {
+            documentTokens = tokenizer.countTokens(model, text);
+        }
+
+        String emptyPrompt = template.replace(DOCUMENT_PLACEHOLDER, "");
+        int overheadTokens = tokenizer.countChatTokens(model, buildMessages(emptyPrompt));
+        int budget = route.maxInputTokens() > 0
+                ? tokenizer.inputBudget(model, maxCompletionTokens, overheadTokens, route.maxInputTokens())
+                : tokenizer.inputBudget(model, maxCompletionTokens, overheadTokens);
+
+        boolean truncated = documentTokens > budget;
+        String inputText = truncated ? tokenizer.truncateToTokens(model, text, budget) : text;
+        int inputTokens = truncated ? tokenizer.countTokens(model, inputText) : documentTokens;
+
+        return new PromptFit(template.replace(DOCUMENT_PLACEHOLDER, inputText), route,
+                documentTokens, inputTokens, overheadTokens + inputTokens, truncated);
+    }
+
+    /**
+     * Prompt inkl. gewählter Route und Token-Zahlen: Dokument gesamt, davon im Prompt,
+     * Prompt gesamt (Chat-Format).
+     */
+    private record PromptFit(String prompt, LlmModelRouter.Decision route, int documentTokens, int inputTokens,
+            int promptTokens, boolean truncated) {
+
+        String model() {
+            return route.model();
+        }
+    }
+
+    private static void recordRoute(Map<String, String> routes, String field, PromptFit fit) {
+        if (routes != null) {
+            routes.put(field, fit.route().route());
+        }
+    }
+
+    private static void recordCombinedRoutes(CombinedAnalysis result, PromptFit fit, boolean withSummary,
+            boolean withKeywords, boolean withComponents) {
+        if (withSummary) recordRoute(result.routes, "summary", fit);
+        if (withKeywords) recordRoute(result.routes, "keywords", fit);
+        if (withComponents) recordRoute(result.routes, "components", fit);
     }
 
     // ========================================
     // OPTIMIERTER OPENAI API AUFRUF (Chat Completions)
     // ========================================
 
-    private String callOpenAiChat(String prompt, int maxTokens, double temperature, String type) {
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        headers.setBearerAuth(openAiApiKey);
+    private String callOpenAiChat(PromptFit prompt, int maxTokens, double temperature, String type) {
+        Map<String, Object> requestBody = buildChatRequestBody(prompt, maxTokens, temperature);
+
+        long startNanos = System.nanoTime();
+        try {
+            System.out.println("🤖 Rufe OpenAI Chat API auf (" + prompt.model() + ", Route "
+                    + prompt.route().route() + ") für: " + type);
+            String result = llmClient.chatCompletion(requestBody, type);
+            modelRouter.recordOutcome(prompt.route(), elapsedMs(startNanos), true);
+            return result != null ? result.trim() : "Keine Antwort erhalten";
+        } catch (Exception e) {
+            modelRouter.recordOutcome(prompt.route(), elapsedMs(startNanos), false);
+            System.err.println("❌ OpenAI Chat API Fehler: " + e.getMessage());
+            throw e;
+        }
+    }
+
+    private Mono<String> callOpenAiChatReactive(PromptFit prompt, int maxTokens, double temperature, String type) {
+        Map<String, Object> requestBody = buildChatRequestBody(prompt, maxTokens, temperature);
+        System.out.println("🤖 Rufe OpenAI Chat API reaktiv auf (" + prompt.model() + ", Route "
+                + prompt.route().route() + ") für: " + type);
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            return llmClient.chatCompletionReactive(requestBody, type)
+                    .doOnSuccess(result -> modelRouter.recordOutcome(prompt.route(), elapsedMs(startNanos), true))
+                    .doOnError(e -> modelRouter.recordOutcome(prompt.route(), elapsedMs(startNanos), false));
+        })
+                .map(String::trim)
+                .defaultIfEmpty("Keine Antwort erhalten")
+                .doOnError(e -> System.err.println("❌ OpenAI Chat API Fehler: " + e.getMessage()));
+    }
+
+    /**
+     * Chat-Aufruf mit {@code stream=true}: jedes Delta-Token wird sofort an
+     * {@code onToken} weitergereicht, der vollständige Text wird zurückgegeben.
+     */
+    private String streamOpenAiChat(PromptFit prompt, int maxTokens, double temperature, String type,
+            Consumer<String> onToken) {
+        Map<String, Object> requestBody = buildChatRequestBody(prompt, maxTokens, temperature);
+        System.out.println("🌊 Starte OpenAI Chat Stream (" + prompt.model() + ") für: " + type);
+        long startNanos = System.nanoTime();
+        try {
+            String result = llmClient.streamChatCompletion(requestBody, type, onToken);
+            modelRouter.recordOutcome(prompt.route(), elapsedMs(startNanos), true);
+            return result;
+        } catch (RuntimeException e) {
+            modelRouter.recordOutcome(prompt.route(), elapsedMs(startNanos), false);
+            throw e;
+        }
+    }
 
+    private Map<String, Object> buildChatRequestBody(PromptFit prompt, int maxTokens, double temperature) {
         Map<String, Object> requestBody = new HashMap<>();
-        requestBody.put("model", openAiModel); // Nutze GPT-4 aus Config
-        requestBody.put("messages", Arrays.asList(
-            Map.of("role", "system", "content", 
-                "Du bist ein Experte für technische Dokumentenanalyse. " +
-                "Antworte präzise, strukturiert und in deutscher Sprache."),
-            Map.of("role", "user", "content", prompt)
-        ));
+        requestBody.put("model", prompt.model()); // Modell laut Routing (Default: openai.api.model)
+        requestBody.put("messages", buildMessages(prompt.prompt()));
         requestBody.put("max_tokens", maxTokens);
         requestBody.put("temperature", temperature);
         requestBody.put("top_p", 0.95);
         requestBody.put("frequency_penalty", 0.2);
         requestBody.put("presence_penalty", 0.1);
+        return requestBody;
+    }
 
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-        
-        try {
-            System.out.println("🤖 Rufe OpenAI Chat API auf (" + openAiModel + ") für: " + type);
-            ResponseEntity<Map> response = restTemplate.exchange(
-                OPENAI_CHAT_URL, HttpMethod.POST, entity, Map.class);
-            
-            if (response.getStatusCode() == HttpStatus.OK && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
-                List<Map<String, Object>> choices = (List<Map<String, Object>>) body.get("choices");
-                if (choices != null && !choices.isEmpty()) {
-                    Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-                    String result = (String) message.get("content");
-                    return result != null ? result.trim() : "Keine Antwort erhalten";
-                }
-            }
-        } catch (Exception e) {
-            System.err.println("❌ OpenAI Chat API Fehler: " + e.getMessage());
-            throw e;
-        }
-        
-        return "API-Aufruf fehlgeschlagen";
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private List<Map<String, Object>> buildMessages(String prompt) {
+        return Arrays.asList(
+            Map.of("role", "system", "content", SYSTEM_PROMPT),
+            Map.of("role", "user", "content", prompt)
+        );
     }
 
     // ========================================
@@ -318,37 +1027,76 @@ public class AiService {
         try {
             // Versuche JSON zu parsen
             Map<String, Object> keywordMap = objectMapper.readValue(response, Map.class);
-            
-            StringBuilder formatted = new StringBuilder();
-            
-            // Projekt-Keywords
-            if (keywordMap.containsKey("projekt")) {
-                List<String> projekt = (List<String>) keywordMap.get("projekt");
-                formatted.append("Projekt: ").append(String.join(", ", projekt)).append("\n");
-            }
-            
-            // Technologie-Keywords
-            if (keywordMap.containsKey("technologien")) {
-                Map<String, List<String>> techs = (Map<String, List<String>>) keywordMap.get("technologien");
-                List<String> allTechs = new ArrayList<>();
-                techs.values().forEach(allTechs::addAll);
-                formatted.append("Technologien: ").append(String.join(", ", allTechs)).append("\n");
-            }
-            
-            // Konzepte
-            if (keywordMap.containsKey("konzepte")) {
-                List<String> konzepte = (List<String>) keywordMap.get("konzepte");
-                formatted.append("Konzepte: ").append(String.join(", ", konzepte));
-            }
-            
-            return formatted.toString();
-            
+            return formatKeywordMap(keywordMap);
         } catch (Exception e) {
             // Fallback: Wenn kein JSON, gib Response direkt zurück
             return response;
         }
     }
 
+    private String formatKeywordMap(Map<?, ?> keywordMap) {
+        StringBuilder formatted = new StringBuilder();
+
+        // Projekt-Keywords
+        if (keywordMap.get("projekt") instanceof List<?> projekt && !projekt.isEmpty()) {
+            formatted.append("Projekt: ").append(joinValues(projekt)).append("\n");
+        }
+
+        // Technologie-Keywords
+        if (keywordMap.get("technologien") instanceof Map<?, ?> techs) {
+            List<Object> allTechs = new ArrayList<>();
+            techs.values().forEach(v -> {
+                if (v instanceof List<?> list) allTechs.addAll(list);
+            });
+            if (!allTechs.isEmpty()) {
+                formatted.append("Technologien: ").append(joinValues(allTechs)).append("\n");
+            }
+        }
+
+        // Konzepte
+        if (keywordMap.get("konzepte") instanceof List<?> konzepte && !konzepte.isEmpty()) {
+            formatted.append("Konzepte: ").append(joinValues(konzepte));
+        }
+
+        return formatted.toString().trim();
+    }
+
+    private String formatComponentMap(Object components) {
+        if (components instanceof String str) {
+            return str.isBlank() ? null : str;
+        }
+        if (!(components instanceof Map<?, ?> map)) {
+            return null;
+        }
+        // Gleiches Zeilenformat wie die Einzel-Empfehlung ("Monitoring: Tool1, Tool2")
+        return map.entrySet().stream()
+            .filter(e -> e.getValue() instanceof List<?> list && !list.isEmpty())
+            .map(e -> e.getKey() + ": " + joinValues((List<?>) e.getValue()))
+            .collect(Collectors.joining("\n"));
+    }
+
+    private Map<String, Object> parseJsonObject(String response) throws Exception {
+        String json = response.trim();
+        // Modelle packen JSON gerne in ```json ... ``` Blöcke
+        int start = json.indexOf('{');
+        int end = json.lastIndexOf('}');
+        if (start < 0 || end <= start) {
+            throw new IllegalArgumentException("Keine JSON-Antwort erhalten");
+        }
+        return objectMapper.readValue(json.substring(start, end + 1), Map.class);
+    }
+
+    private static String asNonBlankString(Object value) {
+        return value instanceof String str && !str.isBlank() ? str.trim() : null;
+    }
+
+    private static String joinValues(List<?> values) {
+        return values.stream()
+            .filter(v -> v != null && !v.toString().isBlank())
+            .map(Object::toString)
+            .collect(Collectors.joining(", "));
+    }
+
     private String validateComponentSuggestions(String suggestions, Set<String> existingTechs) {
         // Entferne widersprüchliche Empfehlungen
         String validated = suggestions;
@@ -375,22 +1123,8 @@ public class AiService {
     // INTELLIGENTE HILFSMETHODEN
     // ========================================
 
-    private String truncateIntelligently(String text, int maxLength) {
-        if (text.length() <= maxLength) {
-            return text;
-        }
-        
-        // Finde den letzten vollständigen Satz vor maxLength
-        String truncated = text.substring(0, maxLength);
-        int lastPeriod = truncated.lastIndexOf(".");
-        int lastNewline = truncated.lastIndexOf("\n");
-        
-        int cutPoint = Math.max(lastPeriod, lastNewline);
-        if (cutPoint > maxLength * 0.7) { // Nur wenn nicht zu viel verloren geht
-            return text.substring(0, cutPoint + 1);
-        }
-        
-        return truncated + "...";
+    public boolean isOpenAiConfigured() {
+        return openAiApiKey != null && !openAiApiKey.trim().isEmpty();
     }
 
     private Set<String> detectExistingTechnologies(String text) {
@@ -472,7 +1206,7 @@ public class AiService {
     }
 
     // ========================================
-    // QUALITÄTS-METRIKEN (unverändert)
+    // QUALITÄTS-METRIKEN
     // ========================================
 
     private void recordQualityMetrics(String analysisType, long startTime, boolean success, int resultLength) {
@@ -490,34 +1224,99 @@ public class AiService {
     }
 
     public static class QualityMetrics {
-        private int totalCalls = 0;
-        private int successfulCalls = 0;
-        private long totalResponseTime = 0;
-        private int totalResultLength = 0;
-        private LocalDateTime lastCall;
+        private final AtomicInteger totalCalls = new AtomicInteger();
+        private final AtomicInteger successfulCalls = new AtomicInteger();
+        private final AtomicLong totalResponseTime = new AtomicLong();
+        private final AtomicLong totalResultLength = new AtomicLong();
+        private volatile LocalDateTime lastCall;
 
         public void recordCall(long responseTime, boolean success, int resultLength) {
-            totalCalls++;
-            if (success) successfulCalls++;
-            totalResponseTime += responseTime;
-            totalResultLength += resultLength;
+            totalCalls.incrementAndGet();
+            if (success) successfulCalls.incrementAndGet();
+            totalResponseTime.addAndGet(responseTime);
+            totalResultLength.addAndGet(resultLength);
             lastCall = LocalDateTime.now();
         }
 
         public double getSuccessRate() {
-            return totalCalls > 0 ? (double) successfulCalls / totalCalls * 100 : 0;
+            int calls = totalCalls.get();
+            return calls > 0 ? (double) successfulCalls.get() / calls * 100 : 0;
         }
 
         public double getAvgResponseTime() {
-            return totalCalls > 0 ? (double) totalResponseTime / totalCalls : 0;
+            int calls = totalCalls.get();
+            return calls > 0 ? (double) totalResponseTime.get() / calls : 0;
         }
 
         public double getAvgResultLength() {
-            return successfulCalls > 0 ? (double) totalResultLength / successfulCalls : 0;
+            int successful = successfulCalls.get();
+            return successful > 0 ? (double) totalResultLength.get() / successful : 0;
         }
 
-        public int getTotalCalls() { return totalCalls; }
-        public int getSuccessfulCalls() { return successfulCalls; }
+        public int getTotalCalls() { return totalCalls.get(); }
+        public int getSuccessfulCalls() { return successfulCalls.get(); }
         public LocalDateTime getLastCall() { return lastCall; }
     }
+
+    /**
+     * Ergebnis der kombinierten Analyse (ein Feld pro bisheriger Einzel-Methode).
+     */
+    public static class CombinedAnalysis {
+        private String summary;
+        private String keywords;
+        private String components;
+        private boolean combined;
+        private final List<String> fallbackFields = new ArrayList<>();
+        private final Map<String, Object> tokenUsage = new LinkedHashMap<>();
+        // Route je Feld (summary/keywords/components), Felder können parallel entstehen
+        private final Map<String, String> routes = new ConcurrentHashMap<>();
+
+        public String getSummary() { return summary; }
+        public String getKeywords() { return keywords; }
+        public String getComponents() { return components; }
+        public boolean isCombined() { return combined; }
+        public List<String> getFallbackFields() { return fallbackFields; }
+
+        /**
+         * Alle angeforderten Felder stammen vom LLM (kein lokaler Fallback).
+         */
+        public boolean isComplete() { return fallbackFields.isEmpty(); }
+
+        /**
+         * Einzelaufrufe: angeforderte Felder ohne Route kamen aus dem lokalen Fallback
+         * (zu kurze Texte erhalten ihre Zusammenfassung ohne LLM).
+         */
+        private void markFallbacks(String text, boolean withSummary, boolean withKeywords,
+                boolean withComponents) {
+            if (withSummary && text.length() >= 100 && !routes.containsKey("summary")) {
+                fallbackFields.add("summary");
+            }
+            if (withKeywords && !routes.containsKey("keywords")) {
+                fallbackFields.add("keywords");
+            }
+            if (withComponents && !routes.containsKey("components")) {
+                fallbackFields.add("components");
+            }
+        }
+
+        /**
+         * Token-Zahlen des Prompts (für die Analyse-Metadaten), leer ohne LLM-Aufruf.
+         */
+        public Map<String, Object> getTokenUsage() { return tokenUsage; }
+
+        /**
+         * Genutzte Route je Feld, leer ohne LLM-Aufruf.
+         */
+        public Map<String, String> getRoutes() { return routes; }
+
+        private void recordTokens(PromptFit fit, int maxCompletionTokens) {
+            tokenUsage.put("model", fit.model());
+            tokenUsage.put("route", fit.route().route());
+            tokenUsage.put("documentTokens", fit.documentTokens());
+            tokenUsage.put("inputTokens", fit.inputTokens());
+            tokenUsage.put("promptTokens", fit.promptTokens());
+            tokenUsage.put("maxCompletionTokens", maxCompletionTokens);
+            tokenUsage.put("truncated", fit.truncated());
+        }
+    }
 }
\ No newline at end of file
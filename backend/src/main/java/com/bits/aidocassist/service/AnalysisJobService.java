@@ -0,0 +1,509 @@
+package com.bits.aidocassist.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.bits.aidocassist.exception.JobQueueUnavailableException;
+import com.bits.aidocassist.model.AnalysisJob;
+import com.bits.aidocassist.model.AnalysisJobPayload;
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.repository.AnalysisJobPayloadRepository;
+import com.bits.aidocassist.repository.AnalysisJobRepository;
+
+/**
+ * Dauerhafte Job-Queue für Datei-Analysen (Tabelle {@code analysis_job}).
+ *
+ * Uploads werden mit ihrer Datei gespeichert und sofort mit der Job-ID beantwortet.
+ * Mehrere Instanzen können sich eine Datenbank teilen: ein Dispatcher-Thread je Knoten
+ * sperrt den nächsten Job auf Postgres per {@code SELECT ... FOR UPDATE SKIP LOCKED} und
+ * übernimmt ihn per bedingtem Update ({@code status = QUEUED → RUNNING}) mit einer Lease
+ * von {@code jobs.lease-ms} und verarbeitet höchstens {@code jobs.workers} gleichzeitig auf
+ * virtuellen Threads. Ein Heartbeat-Thread verlängert alle {@code jobs.heartbeat-ms} die
+ * Leases der eigenen Jobs und gibt Jobs mit abgelaufener Lease (abgestürzter Knoten) wieder
+ * frei. Fortschritt, Abschluss und Wiedereinreihung gelten nur für die Übernahme, die den Job
+ * noch hält (Claim-Token) – auch wenn derselbe Knoten ihn nach einer verspäteten Lease erneut
+ * übernommen hat.
+ * Zwischen den Clients wird per {@link DeficitRoundRobin} nach Dateigröße fair verteilt
+ * ({@code jobs.fair-share.quantum-kb} je Runde); Clients mit erschöpftem LLM-Kontingent
+ * werden zurückgestellt, bis es sich wieder aufgefüllt hat.
+ * Das Dokument und der Abschluss des Jobs werden in einer Transaktion gespeichert.
+ * Ein Job, der {@code jobs.max-attempts} Versuche verbraucht hat, schlägt endgültig fehl.
+ * Dauerhaft und zwischen Instanzen geteilt ist die Queue nur mit persistenter Datenbank
+ * ({@code SPRING_DATASOURCE_URL}); mit einer In-Memory-Datenbank nimmt sie keine Jobs an
+ * (außer mit {@code jobs.allow-in-memory=true}), weil Jobs und Dateien dort im Heap lägen
+ * und einen Neustart nicht überleben. Wartende und laufende Jobs sind auf
+ * {@code jobs.max-queued} Stück und {@code jobs.max-queued-mb} Dateigröße begrenzt, darüber
+ * lehnt {@link #submit} mit {@link JobQueueUnavailableException} ab.
+ */
+@Service
+public class AnalysisJobService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    private static final int CLAIM_ATTEMPTS = 10;
+
+    private static final Set<AnalysisJob.Status> PENDING = Set.of(AnalysisJob.Status.QUEUED,
+            AnalysisJob.Status.RUNNING);
+
+    // Vorschlag für Retry-After bei voller Queue
+    private static final long QUEUE_FULL_RETRY_AFTER_MS = 30_000;
+
+    private final AnalysisJobRepository jobRepository;
+    private final AnalysisJobPayloadRepository payloadRepository;
+    private final DocumentService documentService;
+    private final UploadAnalysisService uploadAnalysisService;
+    private final AnalysisTaskRunner taskRunner;
+    private final ClientQuotaService quotaService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int workers;
+    private final long pollIntervalMs;
+    private final int maxAttempts;
+    private final Duration lease;
+    private final long heartbeatMs;
+    private final boolean fixedWorkerId;
+    private final DataSource dataSource;
+    private volatile boolean skipLocked;
+    private final boolean acceptingJobs;
+    private final int maxQueued;
+    private final long maxQueuedBytes;
+    private final Object admission = new Object();
+
+    private final String workerId;
+    private final Semaphore slots;
+    private final DeficitRoundRobin fairShare;
+    private final AtomicLong reassigned = new AtomicLong();
+    private final Object wakeUp = new Object();
+    private volatile boolean running;
+    private Thread dispatcher;
+    private Thread heartbeat;
+
+    public AnalysisJobService(AnalysisJobRepository jobRepository, AnalysisJobPayloadRepository payloadRepository,
+            DocumentService documentService, UploadAnalysisService uploadAnalysisService,
+            AnalysisTaskRunner taskRunner, ClientQuotaService quotaService,
+            PlatformTransactionManager transactionManager, DataSource dataSource,
+            @Value("${jobs.enabled:true}") boolean enabled,
+            @Value("${jobs.workers:4}") int workers,
+            @Value("${jobs.poll-interval-ms:1000}") long pollIntervalMs,
+            @Value("${jobs.max-attempts:3}") int maxAttempts,
+            @Value("${jobs.fair-share.quantum-kb:256}") long quantumKb,
+            @Value("${jobs.node-id:}") String nodeId,
+            @Value("${jobs.lease-ms:60000}") long leaseMs,
+            @Value("${jobs.heartbeat-ms:15000}") long heartbeatMs,
+            @Value("${jobs.max-queued:100}") int maxQueued,
+            @Value("${jobs.max-queued-mb:64}") long maxQueuedMb,
+            @Value("${jobs.allow-in-memory:false}") boolean allowInMemory,
+            @Value("${spring.datasource.url:}") String datasourceUrl) {
+        this.jobRepository = jobRepository;
+        this.payloadRepository = payloadRepository;
+        this.documentService = documentService;
+        this.uploadAnalysisService = uploadAnalysisService;
+        this.taskRunner = taskRunner;
+        this.quotaService = quotaService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.dataSource = dataSource;
+        this.enabled = enabled;
+        this.workers = Math.max(1, workers);
+        this.pollIntervalMs = Math.max(50, pollIntervalMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.slots = new Semaphore(this.workers);
+        this.fairShare = new DeficitRoundRobin(quantumKb);
+        this.fixedWorkerId = nodeId != null && !nodeId.isBlank();
+        this.workerId = fixedWorkerId ? nodeId.trim() : "worker-" + UUID.randomUUID().toString().substring(0, 8);
+        this.lease = Duration.ofMillis(Math.max(1000, leaseMs));
+        // mindestens drei Heartbeats je Lease, damit ein verspäteter Heartbeat die Lease nicht kostet
+        this.heartbeatMs = Math.max(100, Math.min(heartbeatMs, this.lease.toMillis() / 3));
+        this.maxQueued = Math.max(1, maxQueued);
+        this.maxQueuedBytes = Math.max(1, maxQueuedMb) * 1024 * 1024;
+        boolean inMemory = isInMemory(datasourceUrl);
+        this.acceptingJobs = enabled && (!inMemory || allowInMemory);
+        if (enabled && !acceptingJobs) {
+            log.warn("⚠️ In-Memory-Datenbank ({}): asynchrone Analyse-Jobs abgeschaltet, async=true läuft synchron. "
+                    + "Persistente DB per SPRING_DATASOURCE_URL (z.B. jdbc:h2:file:./data/aidocassist) "
+                    + "oder jobs.allow-in-memory=true", datasourceUrl);
+        }
+    }
+
+    static boolean isInMemory(String datasourceUrl) {
+        return datasourceUrl != null && (datasourceUrl.startsWith("jdbc:h2:mem:")
+                || datasourceUrl.startsWith("jdbc:hsqldb:mem:") || datasourceUrl.startsWith("jdbc:derby:memory:"));
+    }
+
+    /**
+     * {@code false}, wenn Jobs einen Neustart nicht überleben würden (In-Memory-Datenbank)
+     * oder die Queue abgeschaltet ist; Aufrufer analysieren dann synchron.
+     */
+    public boolean isAcceptingJobs() {
+        return acceptingJobs;
+    }
+
+    public static String newBatchId() {
+        return UUID.randomUUID().toString();
+    }
+
+    /**
+     * Speichert Job und Datei in einer Transaktion und weckt den Dispatcher. Ist die Queue
+     * voll (Anzahl oder Dateigröße wartender und laufender Jobs), wird nichts gespeichert.
+     */
+    public AnalysisJob submit(String batchId, String clientId, String filename, String contentType, byte[] content,
+            boolean withSummary, boolean withKeywords, boolean withComponents) {
+        if (!acceptingJobs) {
+            throw new JobQueueUnavailableException("Job-Queue nicht verfügbar (keine persistente Datenbank)",
+                    0);
+        }
+        // Prüfen und Einreihen je Knoten serialisiert; mehrere Knoten überschreiten das Limit
+        // höchstens um die gleichzeitig eingehenden Uploads
+        AnalysisJob job;
+        synchronized (admission) {
+            long pending = jobRepository.countByStatusIn(PENDING);
+            long pendingBytes = jobRepository.sumSizeBytesByStatusIn(PENDING);
+            if (pending >= maxQueued || pendingBytes + content.length > maxQueuedBytes) {
+                log.warn("⛔ Job-Queue voll ({} Jobs, {} KB): {} abgelehnt", pending, pendingBytes / 1024, filename);
+                throw new JobQueueUnavailableException("Job-Queue voll (" + pending + " Jobs wartend oder laufend)",
+                        QUEUE_FULL_RETRY_AFTER_MS);
+            }
+            job = transactionTemplate.execute(status -> {
+                AnalysisJob created = new AnalysisJob();
+                created.setBatchId(batchId);
+                created.setClientId(clientId != null ? clientId : ClientQuotaService.ANONYMOUS);
+                created.setFilename(filename);
+                created.setSizeBytes(content.length);
+                created.setContentType(contentType);
+                created.setWithSummary(withSummary);
+                created.setWithKeywords(withKeywords);
+                created.setWithComponents(withComponents);
+                LocalDateTime now = LocalDateTime.now();
+                created.setCreatedAt(now);
+                created.setUpdatedAt(now);
+                created = jobRepository.save(created);
+                payloadRepository.save(new AnalysisJobPayload(created.getId(), content));
+                return created;
+            });
+        }
+        log.info("📥 Analyse-Job {} eingereiht: {} ({} Bytes)", job.getId(), filename, content.length);
+        wakeUp();
+        return job;
+    }
+
+    public Optional<AnalysisJob> getJob(Long id) {
+        return jobRepository.findById(id);
+    }
+
+    public List<AnalysisJob> getBatch(String batchId) {
+        return jobRepository.findByBatchIdOrderByIdAsc(batchId);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("acceptingJobs", acceptingJobs);
+        stats.put("maxQueued", maxQueued);
+        stats.put("maxQueuedMb", maxQueuedBytes / (1024 * 1024));
+        stats.put("pendingKb", jobRepository.sumSizeBytesByStatusIn(PENDING) / 1024);
+        stats.put("workerId", workerId);
+        stats.put("workers", workers);
+        stats.put("active", workers - slots.availablePermits());
+        stats.put("leaseMs", lease.toMillis());
+        stats.put("heartbeatMs", heartbeatMs);
+        stats.put("reassignedExpired", reassigned.get());
+        stats.put("skipLocked", skipLocked);
+        stats.put("fairShareDeficitsKb", fairShare.getDeficits());
+        for (AnalysisJob.Status status : AnalysisJob.Status.values()) {
+            stats.put(status.name().toLowerCase(), jobRepository.countByStatus(status));
+        }
+        return stats;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!acceptingJobs || running) {
+            return;
+        }
+        // Nur eigene Jobs des vorherigen Laufs sofort freigeben; Jobs anderer Knoten erst nach Lease-Ablauf
+        if (fixedWorkerId) {
+            int recovered = jobRepository.requeueOwned(workerId, AnalysisJob.Status.RUNNING,
+                    AnalysisJob.Status.QUEUED, AnalysisJob.Stage.QUEUED, LocalDateTime.now());
+            if (recovered > 0) {
+                log.warn("♻️ {} unterbrochene Analyse-Jobs von {} wieder eingereiht", recovered, workerId);
+            }
+        }
+        requeueExpired();
+        skipLocked = supportsSkipLocked();
+        running = true;
+        dispatcher = new Thread(this::dispatchLoop, "analysis-job-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+        heartbeat = new Thread(this::heartbeatLoop, "analysis-job-heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+        log.info("🗂️ Job-Queue aktiv: {} Worker, Poll-Intervall {}ms, Lease {}ms, SKIP LOCKED {} ({})", workers,
+                pollIntervalMs, lease.toMillis(), skipLocked, workerId);
+    }
+
+    /**
+     * {@code SKIP LOCKED} nur auf Postgres: H2 2.2 liefert damit bei Index-Zugriffen keine Zeilen,
+     * dort genügt das bedingte Update (konkurrierende Knoten versuchen den nächsten Kandidaten).
+     */
+    private boolean supportsSkipLocked() {
+        try (Connection connection = dataSource.getConnection()) {
+            return "PostgreSQL".equalsIgnoreCase(connection.getMetaData().getDatabaseProductName());
+        } catch (SQLException e) {
+            log.warn("⚠️ Datenbanktyp nicht ermittelbar, Jobs ohne SKIP LOCKED: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        running = false;
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+        if (heartbeat != null) {
+            heartbeat.interrupt();
+        }
+    }
+
+    private void heartbeatLoop() {
+        while (running) {
+            try {
+                Thread.sleep(heartbeatMs);
+                LocalDateTime now = LocalDateTime.now();
+                jobRepository.renewLeases(workerId, now, now.plus(lease), AnalysisJob.Status.RUNNING);
+                if (requeueExpired() > 0) {
+                    wakeUp();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // Heartbeat verpasst: die Lease reicht für weitere Versuche
+                log.warn("⚠️ Job-Heartbeat: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Gibt Jobs abgestürzter Knoten frei; ein Versuch ist dabei bereits verbraucht.
+     */
+    int requeueExpired() {
+        int expired = jobRepository.requeueExpired(AnalysisJob.Status.RUNNING, AnalysisJob.Status.QUEUED,
+                AnalysisJob.Stage.QUEUED, LocalDateTime.now());
+        if (expired > 0) {
+            reassigned.addAndGet(expired);
+            log.warn("♻️ {} Analyse-Jobs mit abgelaufener Lease wieder eingereiht", expired);
+        }
+        return expired;
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            try {
+                slots.acquire();
+                Claim claim = claimNext();
+                if (claim == null) {
+                    slots.release();
+                    awaitWork();
+                    continue;
+                }
+                taskRunner.io().execute(() -> {
+                    try {
+                        process(claim.jobId(), claim.token());
+                    } finally {
+                        slots.release();
+                        wakeUp();
+                    }
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                // z.B. Datenbank kurz nicht erreichbar: nach dem Poll-Intervall erneut versuchen
+                slots.release();
+                log.warn("⚠️ Job-Dispatcher: {}", e.getMessage());
+                sleepQuietly();
+            }
+        }
+    }
+
+    /**
+     * Nächster Job nach Deficit Round Robin über die Clients; {@code null}, wenn nichts
+     * wartet oder alle wartenden Clients ihr LLM-Kontingent aufgebraucht haben. Mit
+     * {@code SKIP LOCKED} laufen Sperren und Übernahme in einer Transaktion, gesperrte Zeilen
+     * anderer Knoten werden übersprungen.
+     */
+    Claim claimNext() {
+        for (int attempt = 0; attempt < CLAIM_ATTEMPTS; attempt++) {
+            Map<String, AnalysisJob> heads = new HashMap<>();
+            Map<String, Long> costs = new HashMap<>();
+            for (AnalysisJob head : jobRepository.findOldestPerClient(AnalysisJob.Status.QUEUED)) {
+                String client = head.getClientId() != null ? head.getClientId() : ClientQuotaService.ANONYMOUS;
+                heads.put(client, head);
+                costs.put(client, costKb(head));
+            }
+            if (heads.isEmpty()) {
+                return null;
+            }
+            String client = fairShare.next(costs, candidate -> !quotaService.isLlmThrottled(candidate));
+            if (client == null) {
+                return null;
+            }
+            AnalysisJob head = heads.get(client);
+            Claim claimed = skipLocked ? transactionTemplate.execute(status -> {
+                List<AnalysisJob> locked = jobRepository.lockQueued(AnalysisJob.Status.QUEUED.name(),
+                        head.getId(), head.getClientId());
+                return locked.isEmpty() ? null : claim(locked.get(0));
+            }) : claim(head);
+            if (claimed != null) {
+                fairShare.charge(client, claimed.costKb());
+                return claimed;
+            }
+        }
+        return null;
+    }
+
+    private Claim claim(AnalysisJob job) {
+        LocalDateTime now = LocalDateTime.now();
+        String token = UUID.randomUUID().toString();
+        return jobRepository.claim(job.getId(), workerId, token, now, now.plus(lease), AnalysisJob.Status.QUEUED,
+                AnalysisJob.Status.RUNNING) == 1 ? new Claim(job.getId(), token, costKb(job)) : null;
+    }
+
+    /**
+     * Eine Übernahme: Fortschritt, Abschluss und Wiedereinreihung gelten nur mit ihrem Token.
+     */
+    record Claim(Long jobId, String token, long costKb) {
+    }
+
+    private static long costKb(AnalysisJob job) {
+        return Math.max(1, (job.getSizeBytes() + 1023) / 1024);
+    }
+
+    void process(Long jobId, String claimToken) {
+        AnalysisJob job = jobRepository.findById(jobId).orElse(null);
+        if (job == null) {
+            return;
+        }
+        if (job.getAttempts() > maxAttempts) {
+            fail(job, claimToken, "Maximale Anzahl Versuche überschritten");
+            return;
+        }
+        AnalysisJobPayload payload = payloadRepository.findById(jobId).orElse(null);
+        if (payload == null || payload.getContent() == null) {
+            fail(job, claimToken, "Datei des Jobs nicht mehr vorhanden");
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope(AnalysisPriority.BATCH, job.getClientId())) {
+            Document document = uploadAnalysisService.analyzeUpload(job.getFilename(), job.getContentType(),
+                    new ByteArrayResource(payload.getContent()), job.isWithSummary(), job.isWithKeywords(),
+                    job.isWithComponents(), stage -> updateStage(jobId, claimToken, stage));
+
+            updateStage(jobId, claimToken, AnalysisJob.Stage.SAVING);
+            Document saved = transactionTemplate.execute(status -> {
+                Document stored = documentService.saveDocument(document);
+                if (jobRepository.finish(jobId, claimToken, AnalysisJob.Status.SUCCEEDED, AnalysisJob.Stage.DONE,
+                        stored.getId(), null, LocalDateTime.now()) == 0) {
+                    // Lease verloren, ein anderer Knoten hat den Job übernommen: Ergebnis verwerfen
+                    status.setRollbackOnly();
+                    return null;
+                }
+                payloadRepository.deleteById(jobId);
+                return stored;
+            });
+            if (saved == null) {
+                log.warn("⚠️ Analyse-Job {}: Lease verloren, Ergebnis verworfen", jobId);
+                return;
+            }
+            log.info("✅ Analyse-Job {} abgeschlossen: Dokument {} ({}ms, {} LLM-Aufrufe)", jobId, saved.getId(),
+                    (System.nanoTime() - start) / 1_000_000, usage.getCalls().size());
+        } catch (LeaseLostException e) {
+            log.warn("⚠️ Analyse-Job {}: Lease verloren, Verarbeitung abgebrochen", jobId);
+        } catch (Exception e) {
+            String error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            if (job.getAttempts() < maxAttempts) {
+                log.warn("⚠️ Analyse-Job {} fehlgeschlagen (Versuch {}/{}), erneut eingereiht: {}", jobId,
+                        job.getAttempts(), maxAttempts, error);
+                jobRepository.requeue(jobId, claimToken, AnalysisJob.Status.QUEUED, AnalysisJob.Stage.QUEUED,
+                        truncate(error), LocalDateTime.now());
+            } else {
+                log.error("❌ Analyse-Job {} endgültig fehlgeschlagen: {}", jobId, error);
+                fail(job, claimToken, error);
+            }
+        }
+    }
+
+    /**
+     * Fortschritt melden; gehört der Job nicht mehr zu dieser Übernahme, wird die Verarbeitung
+     * abgebrochen, statt ein zweites Ergebnis zu berechnen.
+     */
+    private void updateStage(Long jobId, String claimToken, AnalysisJob.Stage stage) {
+        if (jobRepository.updateStage(jobId, claimToken, stage, LocalDateTime.now()) == 0) {
+            throw new LeaseLostException();
+        }
+    }
+
+    private void fail(AnalysisJob job, String claimToken, String error) {
+        transactionTemplate.executeWithoutResult(status -> {
+            if (jobRepository.finish(job.getId(), claimToken, AnalysisJob.Status.FAILED, job.getStage(), null,
+                    truncate(error), LocalDateTime.now()) == 1) {
+                payloadRepository.findById(job.getId()).ifPresent(payloadRepository::delete);
+            }
+        });
+    }
+
+    private static String truncate(String error) {
+        return error != null && error.length() > 1000 ? error.substring(0, 1000) : error;
+    }
+
+    private void wakeUp() {
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+    }
+
+    private void awaitWork() throws InterruptedException {
+        synchronized (wakeUp) {
+            wakeUp.wait(pollIntervalMs);
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(pollIntervalMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class LeaseLostException extends RuntimeException {
+        LeaseLostException() {
+            super("Lease verloren", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.bits.aidocassist.service;
+
+/**
+ * Prioritätsklasse einer Anfrage für die Zuteilung knapper Ressourcen (LLM-Slots).
+ *
+ * Die Klasse hängt am {@link LlmUsageTracker.Scope} der Anfrage und wird mit ihm auf
+ * virtuelle Threads und in reaktive Ketten übertragen. Ohne Angabe gilt {@link #INTERACTIVE}.
+ */
+public enum AnalysisPriority {
+
+    /** Live-Analyse während der Eingabe */
+    REALTIME,
+    /** Nutzer wartet auf die Antwort (analyze-text, Upload) */
+    INTERACTIVE,
+    /** Batch-Uploads und Analyse-Jobs */
+    BATCH,
+    /** Hintergrund-Re-Analyse (Instant-Upgrade) */
+    BACKGROUND;
+
+    /**
+     * Klassen, die nur einen Teil des Limits belegen dürfen (Reserve für Interaktives).
+     */
+    public boolean isDeferrable() {
+        return this == BATCH || this == BACKGROUND;
+    }
+}
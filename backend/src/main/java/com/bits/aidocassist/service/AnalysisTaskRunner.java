@@ -0,0 +1,292 @@
+package com.bits.aidocassist.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Ausführung der Analyse-Pipeline.
+ *
+ * I/O-lastige Aufgaben (LLM-Aufrufe, Branchenerkennung) laufen auf virtuellen Threads,
+ * CPU-lastige (PDF-Extraktion, Preprocessing) in einem begrenzten Plattform-Pool
+ * (Standard: Anzahl Kerne). Statt des Common-ForkJoinPools, der auf kleinen Instanzen
+ * nur ein bis zwei Threads hat und blockierende Aufrufe serialisiert.
+ *
+ * {@link Scope} bildet {@code StructuredTaskScope.ShutdownOnFailure} nach (in Java 21
+ * nur als Preview verfügbar): schlägt eine Teilaufgabe fehl oder läuft die Frist ab,
+ * werden alle Geschwister-Aufgaben per Interrupt abgebrochen.
+ */
+@Component
+public class AnalysisTaskRunner implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisTaskRunner.class);
+
+    private final ExecutorService ioExecutor;
+    private final Executor propagatingIoExecutor;
+    private final ThreadPoolExecutor cpuExecutor;
+    private final Duration defaultTimeout;
+    private final Scheduler ioScheduler;
+    private final Scheduler cpuScheduler;
+
+    public AnalysisTaskRunner(
+            @Value("${analysis.cpu.threads:0}") int cpuThreads,
+            @Value("${analysis.cpu.queue-capacity:64}") int cpuQueueCapacity,
+            @Value("${analysis.scope.timeout-ms:120000}") long scopeTimeoutMs,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        int threads = cpuThreads > 0 ? cpuThreads : Runtime.getRuntime().availableProcessors();
+        this.defaultTimeout = Duration.ofMillis(scopeTimeoutMs);
+        this.ioExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("analysis-io-", 0).factory());
+        this.propagatingIoExecutor = task -> ioExecutor.execute(LlmUsageTracker.propagate(task));
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        // Volle Queue: der Aufrufer rechnet selbst (Backpressure statt Ablehnung)
+        this.cpuExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, cpuQueueCapacity)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "analysis-cpu-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        this.ioScheduler = Schedulers.fromExecutorService(ioExecutor, "analysis-io");
+        this.cpuScheduler = Schedulers.fromExecutorService(cpuExecutor, "analysis-cpu");
+
+        meterRegistry.ifAvailable(registry -> {
+            Gauge.builder("analysis.cpu.active", cpuExecutor, ThreadPoolExecutor::getActiveCount)
+                    .description("Aktive CPU-Aufgaben (PDF-Extraktion, Preprocessing)").register(registry);
+            Gauge.builder("analysis.cpu.queued", cpuExecutor, pool -> pool.getQueue().size())
+                    .description("Wartende CPU-Aufgaben").register(registry);
+        });
+        log.info("🧵 Analyse-Pipeline: virtuelle Threads für I/O, {} CPU-Threads", threads);
+    }
+
+    /**
+     * Executor für I/O-lastige Einzelaufgaben ({@code CompletableFuture.supplyAsync(..., io())}).
+     * Der LLM-Verbrauchs-Scope des Aufrufers gilt auch in der Aufgabe.
+     */
+    public Executor io() {
+        return propagatingIoExecutor;
+    }
+
+    /**
+     * Reactor-Scheduler auf den virtuellen Threads, für blockierende Reste in reaktiven
+     * Ketten (JPA, Map-Reduce), damit weder Netty- noch boundedElastic-Threads blockieren.
+     */
+    public Scheduler ioScheduler() {
+        return ioScheduler;
+    }
+
+    /**
+     * Reactor-Scheduler auf dem begrenzten CPU-Pool (Preprocessing, Tokenisierung).
+     */
+    public Scheduler cpuScheduler() {
+        return cpuScheduler;
+    }
+
+    /**
+     * Führt eine CPU-lastige Aufgabe im begrenzten Pool aus und wartet auf das Ergebnis.
+     * Wird der Aufrufer unterbrochen (z.B. Scope abgebrochen), wird die Aufgabe mit abgebrochen.
+     */
+    public <T> T onCpu(Callable<T> task) throws Exception {
+        Future<T> future = cpuExecutor.submit(LlmUsageTracker.propagate(task));
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Führt gleichartige CPU-Aufgaben parallel im begrenzten Pool aus, Ergebnisse in
+     * Aufgabenreihenfolge. Der Aufrufer rechnet mit und übernimmt alle Aufgaben, die noch
+     * kein Pool-Thread begonnen hat – kein Deadlock, auch wenn er selbst im Pool läuft
+     * ({@link #onCpu}) oder der Pool ausgelastet ist. Nach dem ersten Fehler wird keine
+     * weitere Aufgabe begonnen.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> onCpuAll(List<? extends Callable<T>> tasks) throws Exception {
+        int count = tasks.size();
+        Object[] results = new Object[count];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(count);
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < count) {
+                try {
+                    if (failure.get() == null) {
+                        results[index] = tasks.get(index).call();
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+
+        Future<?>[] helpers = new Future<?>[Math.max(0, Math.min(count - 1, cpuExecutor.getMaximumPoolSize()))];
+        try {
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i] = cpuExecutor.submit(LlmUsageTracker.propagate(worker));
+            }
+            worker.run();
+            done.await();
+        } catch (InterruptedException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            // Nicht begonnene Helfer hätten nichts mehr zu tun
+            Arrays.stream(helpers).filter(helper -> helper != null).forEach(helper -> helper.cancel(false));
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        return (List<T>) Arrays.asList(results);
+    }
+
+    public Scope openScope() {
+        return new Scope(ioExecutor, defaultTimeout);
+    }
+
+    public Scope openScope(Duration timeout) {
+        return new Scope(ioExecutor, timeout);
+    }
+
+    @Override
+    public void destroy() {
+        ioScheduler.dispose();
+        cpuScheduler.dispose();
+        ioExecutor.shutdownNow();
+        cpuExecutor.shutdownNow();
+    }
+
+    /**
+     * Strukturierter Fan-out auf virtuellen Threads: {@code fork} startet Teilaufgaben,
+     * {@code join} wartet bis alle fertig sind, die erste fehlschlägt oder die Frist abläuft.
+     * {@code close} bricht alles Unfertige ab, Teilaufgaben überleben den Scope also nie.
+     */
+    public static final class Scope implements AutoCloseable {
+        private final ExecutorService executor;
+        private final long deadlineNanos;
+        private final List<Future<?>> forks = new CopyOnWriteArrayList<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Scope(ExecutorService executor, Duration timeout) {
+            this.executor = executor;
+            this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+        }
+
+        public <T> Subtask<T> fork(Callable<T> task) {
+            Callable<T> scoped = LlmUsageTracker.propagate(task);
+            Future<T> future = executor.submit(() -> {
+                try {
+                    return scoped.call();
+                } catch (Exception | Error e) {
+                    if (failure.compareAndSet(null, e)) {
+                        cancelAll();
+                    }
+                    throw e;
+                }
+            });
+            forks.add(future);
+            if (failure.get() != null) {
+                // Scope ist bereits gescheitert: nicht mehr starten
+                future.cancel(true);
+            }
+            return new Subtask<>(future);
+        }
+
+        /**
+         * @throws ExecutionException mit der ersten fehlgeschlagenen Teilaufgabe als Ursache
+         * @throws TimeoutException   wenn die Frist abgelaufen ist (alle Teilaufgaben abgebrochen)
+         */
+        public void join() throws InterruptedException, ExecutionException, TimeoutException {
+            try {
+                for (Future<?> fork : forks) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if (remaining <= 0 && !fork.isDone()) {
+                        throw new TimeoutException("Analyse-Frist abgelaufen");
+                    }
+                    try {
+                        fork.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                    } catch (CancellationException e) {
+                        // Abgebrochen wegen eines Geschwister-Fehlers → unten melden
+                    }
+                }
+            } catch (ExecutionException | TimeoutException | InterruptedException e) {
+                cancelAll();
+                if (e instanceof ExecutionException && failure.get() != null) {
+                    throw new ExecutionException(failure.get());
+                }
+                throw e;
+            }
+            if (failure.get() != null) {
+                throw new ExecutionException(failure.get());
+            }
+        }
+
+        @Override
+        public void close() {
+            cancelAll();
+        }
+
+        private void cancelAll() {
+            forks.forEach(fork -> fork.cancel(true));
+        }
+    }
+
+    /**
+     * Ergebnis einer Teilaufgabe; {@link #get()} erst nach {@link Scope#join()} aufrufen.
+     */
+    public static final class Subtask<T> {
+        private final Future<T> future;
+
+        Subtask(Future<T> future) {
+            this.future = future;
+        }
+
+        public T get() {
+            if (!future.isDone() || future.isCancelled()) {
+                throw new IllegalStateException("Teilaufgabe nicht abgeschlossen");
+            }
+            try {
+                return future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.bits.aidocassist.service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+
+import com.bits.aidocassist.model.Document;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Hintergrund-Upgrade für den Instant-Modus von /analyze-text.
+ *
+ * Das Dokument wird zuerst mit der lokalen Heuristik gespeichert (Version 1, Status
+ * {@code PENDING}); die KI-Analyse läuft danach auf einem virtuellen Thread und schreibt
+ * ihr Ergebnis als neue Version in dasselbe Dokument. Jeder Statuswechsel erhöht
+ * {@code analysisVersion}, Clients warten per Long-Poll auf eine Version größer als die
+ * zuletzt gesehene. Laufende Upgrades sind nur im Speicher bekannt: nach einem Neustart
+ * bleibt ein Dokument mit der heuristischen Analyse im Status {@code PENDING}.
+ */
+@Service
+public class AnalysisUpgradeService {
+
+    private static final Logger log = LoggerFactory.getLogger(AnalysisUpgradeService.class);
+
+    // Versuche, wenn zwischen Laden und Speichern eine andere Änderung committet wurde
+    private static final int SAVE_ATTEMPTS = 3;
+
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_COMPLETE = "COMPLETE";
+    public static final String STATUS_FAILED = "FAILED";
+    // Analyse mit lokalem Fallback für mindestens ein Feld: wird nicht dedupliziert
+    public static final String STATUS_FALLBACK = "FALLBACK";
+
+    private final DocumentService documentService;
+    private final AnalysisTaskRunner taskRunner;
+    private final long maxWaitMs;
+
+    // Dokument-ID → Upgrade, wird mit dem gespeicherten Ergebnis abgeschlossen
+    private final Map<Long, CompletableFuture<Document>> inFlight = new ConcurrentHashMap<>();
+
+    public AnalysisUpgradeService(DocumentService documentService, AnalysisTaskRunner taskRunner,
+            @Value("${documents.instant.max-wait-ms:30000}") long maxWaitMs) {
+        this.documentService = documentService;
+        this.taskRunner = taskRunner;
+        this.maxWaitMs = maxWaitMs;
+    }
+
+    /**
+     * {@code COMPLETE} nur, wenn alle angeforderten Felder vom LLM stammen, sonst {@code FALLBACK}
+     * ({@code ai} null: keine KI-Analyse).
+     */
+    public static String statusOf(AiService.CombinedAnalysis ai) {
+        return ai != null && ai.isComplete() ? STATUS_COMPLETE : STATUS_FALLBACK;
+    }
+
+    /**
+     * Speichert die heuristische Analyse als Version 1, im Status {@code PENDING}, wenn ein
+     * Upgrade folgt, sonst {@code FALLBACK}.
+     */
+    public Document saveInstant(Document document, boolean upgradePending) {
+        document.setAnalysisVersion(1);
+        document.setAnalysisStatus(upgradePending ? STATUS_PENDING : STATUS_FALLBACK);
+        return documentService.saveDocument(document);
+    }
+
+    /**
+     * Startet das Upgrade eines gespeicherten Dokuments. {@code analysis} führt die
+     * KI-Aufrufe aus und liefert die Änderungen, die auf den aktuellen Stand des Dokuments
+     * angewendet werden. Wurde der Inhalt inzwischen geändert (PUT), wird das Ergebnis verworfen.
+     */
+    public CompletableFuture<Document> submit(Document document, Callable<Consumer<Document>> analysis) {
+        Long id = Objects.requireNonNull(document.getId(), "Dokument muss gespeichert sein");
+        String analyzedContent = document.getContent();
+        CompletableFuture<Document> upgrade = new CompletableFuture<>();
+        inFlight.put(id, upgrade);
+
+        taskRunner.io().execute(() -> {
+            long start = System.nanoTime();
+            Document result = null;
+            try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope(AnalysisPriority.BACKGROUND)) {
+                Consumer<Document> changes = analysis.call();
+                result = apply(id, analyzedContent, changes, STATUS_COMPLETE);
+                log.info("⬆️ Dokument {} auf KI-Analyse aktualisiert (v{}, {} LLM-Aufrufe, {}ms)", id,
+                        result != null ? result.getAnalysisVersion() : null, usage.getCalls().size(),
+                        Duration.ofNanos(System.nanoTime() - start).toMillis());
+            } catch (Exception e) {
+                log.warn("⚠️ KI-Upgrade für Dokument {} fehlgeschlagen, Heuristik bleibt: {}", id, e.getMessage());
+                result = applyQuietly(id, analyzedContent, doc -> { }, STATUS_FAILED);
+            } finally {
+                inFlight.remove(id, upgrade);
+                upgrade.complete(result);
+            }
+        });
+        return upgrade;
+    }
+
+    public boolean isUpgrading(Long documentId) {
+        return inFlight.containsKey(documentId);
+    }
+
+    /**
+     * Long-Poll: liefert das Dokument, sobald seine Version größer als {@code sinceVersion} ist,
+     * spätestens nach {@code waitMs} (begrenzt auf {@code documents.instant.max-wait-ms}) den
+     * aktuellen Stand. Leer, wenn das Dokument nicht existiert.
+     */
+    public Mono<Document> awaitVersion(Long documentId, int sinceVersion, long waitMs) {
+        Duration wait = Duration.ofMillis(Math.max(0, Math.min(waitMs, maxWaitMs)));
+        Mono<Document> load = Mono.fromCallable(() -> documentService.getDocumentById(documentId))
+                .subscribeOn(taskRunner.ioScheduler());
+
+        return Mono.defer(() -> {
+            // Erst das laufende Upgrade holen, dann laden: so geht kein Abschluss dazwischen verloren
+            CompletableFuture<Document> upgrade = inFlight.get(documentId);
+            return load.flatMap(current -> {
+                if (upgrade == null || wait.isZero() || versionOf(current) > sinceVersion) {
+                    return Mono.just(current);
+                }
+                // Kopie: Timeout eines Wartenden bricht das gemeinsame Upgrade nicht ab
+                return Mono.fromFuture(upgrade.copy())
+                        .switchIfEmpty(load)
+                        .timeout(wait, load);
+            });
+        });
+    }
+
+    public static int versionOf(Document document) {
+        return document.getAnalysisVersion() != null ? document.getAnalysisVersion() : 0;
+    }
+
+    /**
+     * Wendet die Änderungen auf den aktuellen Stand an. Prüfung und Speichern sind über
+     * {@code @Version} gekoppelt: committet dazwischen eine andere Änderung (z.B. PUT), wird
+     * neu geladen und erneut geprüft, statt den alten Inhalt zurückzuschreiben.
+     */
+    private Document apply(Long id, String analyzedContent, Consumer<Document> changes, String status) {
+        for (int attempt = 1; ; attempt++) {
+            Document current = documentService.getDocumentById(id);
+            if (current == null) {
+                log.info("Dokument {} wurde während des Upgrades gelöscht", id);
+                return null;
+            }
+            if (!Objects.equals(current.getContent(), analyzedContent)) {
+                log.info("Dokument {} wurde während des Upgrades geändert, KI-Ergebnis verworfen", id);
+                return current;
+            }
+            // Status vor den Änderungen: eine KI-Analyse mit Fallback setzt FALLBACK selbst
+            current.setAnalysisStatus(status);
+            changes.accept(current);
+            current.setAnalysisVersion(versionOf(current) + 1);
+            try {
+                return documentService.saveDocument(current);
+            } catch (OptimisticLockingFailureException e) {
+                if (attempt >= SAVE_ATTEMPTS) {
+                    throw e;
+                }
+                log.info("Dokument {} wurde beim Speichern des Upgrades geändert, erneuter Versuch", id);
+            }
+        }
+    }
+
+    private Document applyQuietly(Long id, String analyzedContent, Consumer<Document> changes, String status) {
+        try {
+            return apply(id, analyzedContent, changes, status);
+        } catch (Exception e) {
+            log.error("❌ Status für Dokument {} konnte nicht gespeichert werden: {}", id, e.getMessage());
+            return null;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.bits.aidocassist.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.util.ContentHash;
+
+/**
+ * Streamende Batch-Analyse ohne Obergrenze für die Dateianzahl
+ * ({@code POST /api/documents/batch/stream}).
+ *
+ * Dateien werden einzeln angenommen (ZIP-Einträge vorher auf die Platte gespoolt) und
+ * mit höchstens {@code documents.ingest.parallelism} Analysen gleichzeitig verarbeitet.
+ * Sind alle Slots belegt, blockiert {@link Ingestion#add} – das Lesen des Uploads
+ * pausiert (Backpressure), Speicher und Spool-Verzeichnis bleiben unabhängig von der
+ * Batch-Größe begrenzt. Jede fertige Datei wird sofort als Ergebniszeile gemeldet;
+ * Dokumente werden gespeichert, aber nicht im Speicher gesammelt. Bereits analysierte
+ * Inhalte (gleicher Content-Hash und gleiche Optionen) werden ohne erneute Analyse übernommen.
+ */
+@Service
+public class BatchIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchIngestionService.class);
+
+    private static final Set<String> ZIP_TYPES = Set.of("application/zip", "application/x-zip-compressed");
+
+    private static final String UNSUPPORTED_TYPE =
+            "Dateityp nicht unterstützt. Erlaubt: PDF, TXT, DOC, DOCX, CSV, JSON, MD";
+
+    private static final Map<String, String> TYPES_BY_EXTENSION = Map.of(
+            "pdf", "application/pdf",
+            "txt", "text/plain",
+            "md", "text/markdown",
+            "markdown", "text/markdown",
+            "csv", "text/csv",
+            "json", "application/json",
+            "doc", "application/msword",
+            "docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document");
+
+    /**
+     * Empfänger der Ergebniszeilen; eine {@link IOException} bedeutet, dass der Client
+     * nicht mehr zuhört – der Batch wird dann abgebrochen.
+     */
+    @FunctionalInterface
+    public interface ResultSink {
+        void accept(Map<String, Object> line) throws IOException;
+    }
+
+    private final UploadAnalysisService uploadAnalysisService;
+    private final DocumentService documentService;
+    private final AnalysisTaskRunner taskRunner;
+    private final int parallelism;
+    private final long maxFileSize;
+    private final int maxFiles;
+
+    public BatchIngestionService(UploadAnalysisService uploadAnalysisService, DocumentService documentService,
+            AnalysisTaskRunner taskRunner,
+            @Value("${documents.ingest.parallelism:4}") int parallelism,
+            @Value("${documents.ingest.max-file-size:10MB}") DataSize maxFileSize,
+            @Value("${documents.ingest.max-files:10000}") int maxFiles) {
+        this.uploadAnalysisService = uploadAnalysisService;
+        this.documentService = documentService;
+        this.taskRunner = taskRunner;
+        this.parallelism = Math.max(1, parallelism);
+        this.maxFileSize = maxFileSize.toBytes();
+        this.maxFiles = Math.max(1, maxFiles);
+    }
+
+    /**
+     * @param force vorhandene Analysen gleichen Inhalts ignorieren
+     */
+    public Ingestion open(boolean withSummary, boolean withKeywords, boolean withComponents, boolean force,
+            ResultSink sink) {
+        return new Ingestion(withSummary, withKeywords, withComponents, force, sink);
+    }
+
+    static boolean isZip(String filename, String contentType) {
+        return (contentType != null && ZIP_TYPES.contains(contentType))
+                || (filename != null && filename.toLowerCase(Locale.ROOT).endsWith(".zip"));
+    }
+
+    /**
+     * Unterstützter Typ aus Content-Type bzw. Dateiendung (ZIP-Einträge haben keinen
+     * Content-Type, Multipart-Clients senden oft {@code application/octet-stream}).
+     */
+    static String resolveContentType(String filename, String contentType) {
+        if (contentType != null && TYPES_BY_EXTENSION.containsValue(contentType)) {
+            return contentType;
+        }
+        if (filename == null) {
+            return null;
+        }
+        int dot = filename.lastIndexOf('.');
+        return dot >= 0 ? TYPES_BY_EXTENSION.get(filename.substring(dot + 1).toLowerCase(Locale.ROOT)) : null;
+    }
+
+    /**
+     * Ein laufender Batch. {@link #add} wird vom lesenden Thread aufgerufen,
+     * {@link #finish} wartet auf die letzten Analysen und meldet die Zusammenfassung.
+     */
+    public final class Ingestion {
+
+        private final String batchId = AnalysisJobService.newBatchId();
+        private final boolean withSummary;
+        private final boolean withKeywords;
+        private final boolean withComponents;
+        private final boolean force;
+        private final ResultSink sink;
+        private final Semaphore slots = new Semaphore(parallelism);
+        private final AtomicInteger files = new AtomicInteger();
+        private final AtomicInteger succeeded = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger duplicates = new AtomicInteger();
+        private final long startNanos = System.nanoTime();
+        private volatile boolean cancelled;
+
+        private Ingestion(boolean withSummary, boolean withKeywords, boolean withComponents, boolean force,
+                ResultSink sink) {
+            this.withSummary = withSummary;
+            this.withKeywords = withKeywords;
+            this.withComponents = withComponents;
+            this.force = force;
+            this.sink = sink;
+        }
+
+        public String getBatchId() {
+            return batchId;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        /**
+         * Nimmt eine Datei (oder ein ZIP-Archiv) an. Blockiert, solange alle Slots belegt sind.
+         * Die Quelle muss bis zum Ende der Analyse lesbar bleiben (z.B. Multipart-Teil auf der Platte).
+         */
+        public void add(String filename, String contentType, InputStreamSource source)
+                throws IOException, InterruptedException {
+            if (isZip(filename, contentType)) {
+                try (InputStream in = source.getInputStream()) {
+                    addZip(in);
+                }
+                return;
+            }
+            int index = nextIndex();
+            String type = resolveContentType(filename, contentType);
+            if (type == null) {
+                reject(index, filename, UNSUPPORTED_TYPE);
+                return;
+            }
+            acquireSlot();
+            submit(index, filename, type, source, null);
+        }
+
+        /**
+         * Liest ein ZIP-Archiv als Strom; jeder Eintrag wird auf die Platte gespoolt
+         * (höchstens so viele Dateien gleichzeitig wie Slots). Verschachtelte Archive
+         * werden nicht entpackt.
+         */
+        public void addZip(InputStream in) throws IOException, InterruptedException {
+            try (ZipInputStream zip = new ZipInputStream(in)) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    String filename = baseName(entry.getName());
+                    if (entry.isDirectory() || entry.getName().startsWith("__MACOSX/") || filename.startsWith(".")) {
+                        continue;
+                    }
+                    int index = nextIndex();
+                    String type = resolveContentType(filename, null);
+                    if (type == null) {
+                        reject(index, filename, UNSUPPORTED_TYPE);
+                        continue;
+                    }
+                    acquireSlot();
+                    Path spooled;
+                    try {
+                        spooled = spool(zip, filename);
+                    } catch (SpoolLimitException e) {
+                        slots.release();
+                        reject(index, filename, e.getMessage());
+                        continue;
+                    } catch (IOException e) {
+                        slots.release();
+                        throw e;
+                    }
+                    submit(index, filename, type, new FileSystemResource(spooled), spooled);
+                }
+            }
+        }
+
+        /**
+         * Wartet auf alle laufenden Analysen und meldet die Zusammenfassung
+         * ({@code error}: Grund, falls der Upload nicht vollständig gelesen wurde).
+         */
+        public Map<String, Object> finish(String error) throws InterruptedException {
+            slots.acquire(parallelism);
+            slots.release(parallelism);
+
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("type", "summary");
+            summary.put("batchId", batchId);
+            summary.put("files", files.get());
+            summary.put("succeeded", succeeded.get());
+            summary.put("failed", failed.get());
+            summary.put("duplicates", duplicates.get());
+            summary.put("processingTimeMs", (System.nanoTime() - startNanos) / 1_000_000);
+            if (error != null) {
+                summary.put("error", error);
+            }
+            emit(summary);
+            log.info("✅ Streaming-Batch {}: {}/{} erfolgreich{}", batchId, succeeded.get(), files.get(),
+                    error != null ? " (abgebrochen: " + error + ")" : "");
+            return summary;
+        }
+
+        private int nextIndex() throws IOException {
+            if (cancelled) {
+                throw new IOException("Batch abgebrochen");
+            }
+            int index = files.incrementAndGet();
+            if (index > maxFiles) {
+                files.decrementAndGet();
+                throw new IOException("Maximal " + maxFiles + " Dateien pro Batch");
+            }
+            return index;
+        }
+
+        private void acquireSlot() throws IOException, InterruptedException {
+            slots.acquire();
+            if (cancelled) {
+                slots.release();
+                throw new IOException("Batch abgebrochen");
+            }
+        }
+
+        private void submit(int index, String filename, String contentType, InputStreamSource source,
+                Path spooled) {
+            taskRunner.io().execute(() -> {
+                long start = System.nanoTime();
+                Map<String, Object> line = newLine(index, filename);
+                try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope(AnalysisPriority.BATCH)) {
+                    Document saved = force ? null : findDuplicate(filename, source);
+                    if (saved != null) {
+                        line.put("duplicateOf", saved.getDuplicateOf() != null ? saved.getDuplicateOf()
+                                : saved.getId());
+                        duplicates.incrementAndGet();
+                    } else {
+                        Document document = uploadAnalysisService.analyzeUpload(filename, contentType, source,
+                                withSummary, withKeywords, withComponents, stage -> {
+                                });
+                        saved = documentService.saveDocument(document);
+                    }
+                    line.put("status", "ok");
+                    line.put("documentId", saved.getId());
+                    line.put("title", saved.getTitle());
+                    line.put("documentType", saved.getDocumentType());
+                    line.put("llmCalls", usage.getCalls().size());
+                    succeeded.incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("⚠️ Streaming-Batch {}: Datei {} fehlgeschlagen: {}", batchId, filename,
+                            e.getMessage());
+                    line.put("status", "error");
+                    line.put("error", String.valueOf(e.getMessage()));
+                    failed.incrementAndGet();
+                } finally {
+                    deleteQuietly(spooled);
+                    line.put("processingTimeMs", (System.nanoTime() - start) / 1_000_000);
+                    // Slot erst nach dem Schreiben freigeben: ein langsamer Client bremst den Upload
+                    emit(line);
+                    slots.release();
+                }
+            });
+        }
+
+        /**
+         * Vorhandene Analyse gleichen Inhalts; unter anderem Dateinamen als verknüpfte Kopie.
+         */
+        private Document findDuplicate(String filename, InputStreamSource source) throws IOException {
+            String optionsKey = DocumentService.analysisOptionsKey("upload", withSummary, withKeywords,
+                    withComponents);
+            Document existing = documentService.findAnalyzedDuplicate(ContentHash.sha256(source), optionsKey)
+                    .orElse(null);
+            if (existing == null || Objects.equals(existing.getFilename(), filename)) {
+                return existing;
+            }
+            return documentService.saveLinkedCopy(existing, filename,
+                    uploadAnalysisService.extractTitle(filename, existing.getContent()));
+        }
+
+        private void reject(int index, String filename, String error) {
+            Map<String, Object> line = newLine(index, filename);
+            line.put("status", "error");
+            line.put("error", error);
+            failed.incrementAndGet();
+            emit(line);
+        }
+
+        private Map<String, Object> newLine(int index, String filename) {
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("type", "result");
+            line.put("index", index);
+            line.put("filename", filename);
+            return line;
+        }
+
+        private void emit(Map<String, Object> line) {
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                try {
+                    sink.accept(line);
+                } catch (Exception e) {
+                    log.warn("⚠️ Streaming-Batch {} abgebrochen, Client nicht erreichbar: {}", batchId,
+                            e.getMessage());
+                    cancelled = true;
+                }
+            }
+        }
+    }
+
+    private Path spool(InputStream in, String filename) throws IOException {
+        int dot = filename.lastIndexOf('.');
+        Path file = Files.createTempFile("ingest-", dot >= 0 ? filename.substring(dot) : null);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[8192];
+            long total = 0;
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                total += n;
+                if (total > maxFileSize) {
+                    throw new SpoolLimitException(
+                            "Datei zu groß. Maximum: " + DataSize.ofBytes(maxFileSize).toMegabytes() + "MB");
+                }
+                out.write(buffer, 0, n);
+            }
+            if (total == 0) {
+                throw new SpoolLimitException("Datei ist leer");
+            }
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static String baseName(String name) {
+        int slash = Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\'));
+        return slash >= 0 ? name.substring(slash + 1) : name;
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Spool-Datei {} nicht gelöscht: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * ZIP-Eintrag verletzt ein Limit: nur diese Datei wird abgelehnt, der Batch läuft weiter.
+     */
+    private static final class SpoolLimitException extends IOException {
+        SpoolLimitException(String message) {
+            super(message);
+        }
+    }
+}
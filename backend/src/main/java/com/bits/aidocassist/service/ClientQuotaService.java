@@ -0,0 +1,268 @@
+package com.bits.aidocassist.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.bits.aidocassist.util.ContentHash;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Kontingente je Client (API-Key bzw. IP-Adresse).
+ *
+ * Als Client zählen nur Angaben, die der Aufrufer nicht beliebig wechseln kann: ein in
+ * {@code quota.api-keys} eingetragener API-Key, sonst die Absender-Adresse der Verbindung.
+ * Hinter einem Reverse-Proxy setzt Tomcat sie per {@code server.forward-headers-strategy=native}
+ * aus dem letzten nicht vertrauenswürdigen {@code X-Forwarded-For}-Eintrag.
+ *
+ * Zwei Token-Buckets pro Client:
+ * <ul>
+ *   <li>Anfragen: jede Analyse-Anfrage kostet ein Token ({@code quota.requests.*}),</li>
+ *   <li>LLM-Tokens: nach jedem Aufruf wird der tatsächliche Verbrauch abgebucht
+ *       ({@code quota.llm-tokens.*}). Der Bucket darf ins Minus gehen – solange er
+ *       leer ist, werden neue Anfragen des Clients abgewiesen und seine Jobs zurückgestellt.</li>
+ * </ul>
+ * Die Client-Liste ist begrenzt ({@code quota.max-clients}, inaktive Clients verfallen).
+ * Zähler je Client: {@code GET /api/quotas}; Summen in Micrometer unter {@code quota.requests}
+ * und {@code quota.llm.tokens} (ohne Client-Tag, begrenzte Kardinalität).
+ */
+@Service
+public class ClientQuotaService {
+
+    public static final String ANONYMOUS = "anonymous";
+
+    private final boolean enabled;
+    private final double requestsPerMinute;
+    private final double requestBurst;
+    private final double tokensPerMinute;
+    private final double tokenBurst;
+    private final Set<String> apiKeyHashes;
+    private final Cache<String, ClientState> clients;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public ClientQuotaService(LlmUsageTracker usageTracker,
+            @Value("${quota.enabled:true}") boolean enabled,
+            @Value("${quota.requests.per-minute:60}") double requestsPerMinute,
+            @Value("${quota.requests.burst:20}") double requestBurst,
+            @Value("${quota.llm-tokens.per-minute:100000}") double tokensPerMinute,
+            @Value("${quota.llm-tokens.burst:200000}") double tokenBurst,
+            @Value("${quota.max-clients:10000}") long maxClients,
+            @Value("${quota.api-keys:}") List<String> apiKeys,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.requestsPerMinute = Math.max(1, requestsPerMinute);
+        this.requestBurst = Math.max(1, requestBurst);
+        this.tokensPerMinute = Math.max(1, tokensPerMinute);
+        this.tokenBurst = Math.max(1, tokenBurst);
+        this.apiKeyHashes = apiKeys.stream()
+                .map(String::trim)
+                .filter(key -> !key.isEmpty())
+                .map(ContentHash::sha256)
+                .collect(Collectors.toUnmodifiableSet());
+        this.clients = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxClients))
+                .expireAfterAccess(Duration.ofHours(1))
+                .build();
+        this.meterRegistry = meterRegistry;
+        usageTracker.addListener(this::recordLlmUsage);
+    }
+
+    /**
+     * Ergebnis der Zulassungsprüfung; {@code retryAfterMs} gilt bei Ablehnung.
+     */
+    public record Decision(boolean allowed, String reason, long retryAfterMs, long remainingRequests) {
+    }
+
+    /**
+     * Client-ID aus bekanntem API-Key (nur als Hash gespeichert) oder Absender-Adresse.
+     * Unbekannte Keys zählen nicht – sonst bekäme jeder neue Key ein frisches Kontingent.
+     */
+    public String clientId(String apiKey, String remoteAddr) {
+        if (apiKey != null && !apiKey.isBlank()) {
+            String hash = ContentHash.sha256(apiKey.trim());
+            if (apiKeyHashes.contains(hash)) {
+                return "key:" + hash.substring(0, 16);
+            }
+        }
+        return remoteAddr != null ? "ip:" + remoteAddr : ANONYMOUS;
+    }
+
+    /**
+     * Bucht eine Analyse-Anfrage ab. Abgelehnt wird bei leerem Anfrage-Bucket oder
+     * aufgebrauchtem LLM-Token-Kontingent.
+     */
+    public Decision tryAcquire(String clientId) {
+        if (!enabled) {
+            return new Decision(true, null, 0, -1);
+        }
+        ClientState state = state(clientId);
+        long tokenWaitMs = state.llmTokens.millisUntilPositive();
+        if (tokenWaitMs > 0) {
+            state.throttledTokens.increment();
+            count("throttled", "llm-tokens");
+            return new Decision(false, "llm-tokens", tokenWaitMs, (long) state.requests.available());
+        }
+        long requestWaitMs = state.requests.tryTake(1);
+        if (requestWaitMs > 0) {
+            state.throttledRequests.increment();
+            count("throttled", "requests");
+            return new Decision(false, "requests", requestWaitMs, 0);
+        }
+        state.admitted.increment();
+        count("admitted", "none");
+        return new Decision(true, null, 0, (long) state.requests.available());
+    }
+
+    /**
+     * {@code true}, solange das LLM-Token-Kontingent des Clients aufgebraucht ist.
+     */
+    public boolean isLlmThrottled(String clientId) {
+        if (!enabled || clientId == null) {
+            return false;
+        }
+        ClientState state = clients.getIfPresent(clientId);
+        return state != null && state.llmTokens.millisUntilPositive() > 0;
+    }
+
+    void recordLlmUsage(LlmUsageTracker.Scope scope, LlmUsageTracker.LlmCall call) {
+        String clientId = scope != null ? scope.getClientId() : null;
+        if (clientId == null || call.totalTokens() <= 0) {
+            return;
+        }
+        ClientState state = state(clientId);
+        state.llmTokens.debit(call.totalTokens());
+        state.usedTokens.add(call.totalTokens());
+        state.llmCalls.increment();
+        meterRegistry.ifAvailable(registry -> Counter.builder("quota.llm.tokens")
+                .description("LLM-Tokens mit Client-Zuordnung")
+                .register(registry)
+                .increment(call.totalTokens()));
+    }
+
+    /**
+     * Konfiguration und Zähler der aktivsten Clients (nach LLM-Tokens sortiert).
+     */
+    public Map<String, Object> getStats(int limit) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        clients.asMap().forEach((clientId, state) -> entries.add(state.snapshot(clientId)));
+        entries.sort(Comparator.comparingLong((Map<String, Object> entry) -> (long) entry.get("llmTokens"))
+                .thenComparingLong(entry -> (long) entry.get("requests")).reversed());
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("requestsPerMinute", requestsPerMinute);
+        stats.put("requestBurst", requestBurst);
+        stats.put("llmTokensPerMinute", tokensPerMinute);
+        stats.put("llmTokenBurst", tokenBurst);
+        stats.put("activeClients", entries.size());
+        stats.put("clients", entries.subList(0, Math.min(Math.max(0, limit), entries.size())));
+        return stats;
+    }
+
+    private ClientState state(String clientId) {
+        return clients.get(clientId != null ? clientId : ANONYMOUS, id -> new ClientState(
+                new TokenBucket(requestBurst, requestsPerMinute), new TokenBucket(tokenBurst, tokensPerMinute)));
+    }
+
+    private void count(String outcome, String reason) {
+        meterRegistry.ifAvailable(registry -> Counter.builder("quota.requests")
+                .description("Analyse-Anfragen nach Kontingent-Entscheidung")
+                .tags("outcome", outcome, "reason", reason)
+                .register(registry)
+                .increment());
+    }
+
+    private static final class ClientState {
+        private final TokenBucket requests;
+        private final TokenBucket llmTokens;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder throttledRequests = new LongAdder();
+        private final LongAdder throttledTokens = new LongAdder();
+        private final LongAdder usedTokens = new LongAdder();
+        private final LongAdder llmCalls = new LongAdder();
+
+        ClientState(TokenBucket requests, TokenBucket llmTokens) {
+            this.requests = requests;
+            this.llmTokens = llmTokens;
+        }
+
+        Map<String, Object> snapshot(String clientId) {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("clientId", clientId);
+            snapshot.put("requests", admitted.sum());
+            snapshot.put("throttledRequests", throttledRequests.sum());
+            snapshot.put("throttledLlmTokens", throttledTokens.sum());
+            snapshot.put("llmCalls", llmCalls.sum());
+            snapshot.put("llmTokens", usedTokens.sum());
+            snapshot.put("availableRequests", Math.round(requests.available()));
+            snapshot.put("availableLlmTokens", Math.round(llmTokens.available()));
+            return snapshot;
+        }
+    }
+
+    /**
+     * Token-Bucket mit kontinuierlichem Nachfüllen; {@link #debit} erlaubt Schulden.
+     */
+    static final class TokenBucket {
+        private final double capacity;
+        private final double refillPerMs;
+        private double tokens;
+        private long lastRefillMs;
+
+        TokenBucket(double capacity, double perMinute) {
+            this.capacity = capacity;
+            this.refillPerMs = perMinute / 60_000d;
+            this.tokens = capacity;
+            this.lastRefillMs = System.currentTimeMillis();
+        }
+
+        /**
+         * Entnimmt {@code amount} Tokens; 0 bei Erfolg, sonst Wartezeit in ms.
+         */
+        synchronized long tryTake(double amount) {
+            refill();
+            if (tokens >= amount) {
+                tokens -= amount;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((amount - tokens) / refillPerMs));
+        }
+
+        synchronized void debit(double amount) {
+            refill();
+            tokens -= amount;
+        }
+
+        synchronized long millisUntilPositive() {
+            refill();
+            return tokens > 0 ? 0 : Math.max(1, (long) Math.ceil(-tokens / refillPerMs));
+        }
+
+        synchronized double available() {
+            refill();
+            return tokens;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            if (now > lastRefillMs) {
+                tokens = Math.min(capacity, tokens + (now - lastRefillMs) * refillPerMs);
+                lastRefillMs = now;
+            }
+        }
+    }
+}
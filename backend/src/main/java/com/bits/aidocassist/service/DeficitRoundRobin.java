@@ -0,0 +1,81 @@
+package com.bits.aidocassist.service;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Deficit Round Robin über Clients: jeder Client mit wartender Arbeit erhält pro Runde
+ * {@code quantum} Guthaben und darf Aufträge abrufen, solange sein Guthaben die Kosten
+ * des nächsten Auftrags deckt. Große Aufträge sammeln über mehrere Runden Guthaben an,
+ * sodass jeder Client unabhängig von Anzahl und Größe seiner Aufträge denselben Anteil
+ * erhält. Clients ohne wartende Aufträge verlieren ihr Guthaben.
+ */
+final class DeficitRoundRobin {
+
+    private final long quantum;
+    private final Deque<String> round = new ArrayDeque<>();
+    private final Map<String, Long> deficits = new HashMap<>();
+    // Client, dessen Runde gerade läuft (Quantum dieser Runde bereits gutgeschrieben)
+    private String turn;
+
+    DeficitRoundRobin(long quantum) {
+        this.quantum = Math.max(1, quantum);
+    }
+
+    /**
+     * Wählt den nächsten Client.
+     *
+     * @param headCosts Kosten des ältesten wartenden Auftrags je Client
+     * @param eligible  Clients, die derzeit bedient werden dürfen (z.B. Kontingent nicht erschöpft)
+     * @return Client oder {@code null}, wenn kein berechtigter Client wartet
+     */
+    synchronized String next(Map<String, Long> headCosts, Predicate<String> eligible) {
+        round.removeIf(client -> !headCosts.containsKey(client));
+        deficits.keySet().retainAll(headCosts.keySet());
+        if (turn != null && !headCosts.containsKey(turn)) {
+            turn = null;
+        }
+        headCosts.keySet().stream().sorted().forEach(client -> {
+            if (deficits.putIfAbsent(client, 0L) == null) {
+                round.addLast(client);
+            }
+        });
+        // Berechtigung einmal auswerten: sie kann sich nebenläufig ändern (Kontingente), die
+        // Schleife muss aber auf einer festen Menge enden
+        Set<String> eligibleClients = round.stream().filter(eligible).collect(Collectors.toSet());
+        if (eligibleClients.isEmpty()) {
+            return null;
+        }
+
+        while (true) {
+            String client = round.peekFirst();
+            if (eligibleClients.contains(client)) {
+                if (!client.equals(turn)) {
+                    deficits.merge(client, quantum, Long::sum);
+                    turn = client;
+                }
+                if (deficits.get(client) >= headCosts.get(client)) {
+                    return client;
+                }
+            }
+            round.addLast(round.pollFirst());
+            turn = null;
+        }
+    }
+
+    /**
+     * Bucht die Kosten des tatsächlich übernommenen Auftrags ab.
+     */
+    synchronized void charge(String client, long cost) {
+        deficits.computeIfPresent(client, (key, deficit) -> deficit - cost);
+    }
+
+    synchronized Map<String, Long> getDeficits() {
+        return Map.copyOf(deficits);
+    }
+}
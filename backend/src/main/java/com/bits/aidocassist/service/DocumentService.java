@@ -5,15 +5,15 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-
 import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.model.DocumentSegment;
 import com.bits.aidocassist.repository.DocumentRepository;
 
 @Service
@@ -28,6 +28,12 @@ public class DocumentService {
     @Autowired
     private TextPreprocessingService preprocessingService;
 
+    @Autowired
+    private PdfTextExtractor pdfTextExtractor;
+
+    @Autowired
+    private IncrementalAnalysisService incrementalAnalysisService;
+
     /**
      * Hauptmethode für Dokumentenverarbeitung
      */
@@ -332,16 +338,10 @@ public class DocumentService {
     }
 
     /**
-     * PDF-Text-Extraktion
+     * PDF-Text-Extraktion (große Dokumente parallel in Seitenblöcken, Heap begrenzt)
      */
     private String extractPdfText(MultipartFile file) throws IOException {
-        try (PDDocument document = PDDocument.load(file.getInputStream())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            stripper.setSortByPosition(true);
-            stripper.setStartPage(1);
-            stripper.setEndPage(document.getNumberOfPages());
-            return stripper.getText(document);
-        }
+        return pdfTextExtractor.extract(file.getOriginalFilename(), file, true).text();
     }
 
     /**
@@ -353,6 +353,72 @@ public class DocumentService {
     }
 
     public Document saveDocument(Document document) {
-        return documentRepository.save(document);
+        // Neu analysierte große Dokumente: Chunk-Zusammenfassungen gleich für die Re-Analyse ablegen
+        List<DocumentSegment> segments = incrementalAnalysisService.prepareInitialSegments(document);
+        Document saved = documentRepository.save(document);
+        incrementalAnalysisService.storeInitialSegments(saved, segments);
+        return saved;
+    }
+
+    /**
+     * Schlüssel der Analyse-Optionen für die Deduplizierung, z.B. {@code upload:SKC} oder
+     * {@code text:auto:S--}. Nur bei gleichem Schlüssel ist das Ergebnis übertragbar.
+     */
+    public static String analysisOptionsKey(String source, boolean summary, boolean keywords, boolean components) {
+        return source + ":" + (summary ? "S" : "-") + (keywords ? "K" : "-") + (components ? "C" : "-");
+    }
+
+    /**
+     * Gespeicherter Options-Schlüssel mit neuen Feldern (gleiche Quelle), z.B. nach einer
+     * Re-Analyse mit anderen Optionen; {@code null} bleibt {@code null}.
+     */
+    public static String withAnalysisFields(String optionsKey, boolean summary, boolean keywords,
+            boolean components) {
+        if (optionsKey == null || optionsKey.lastIndexOf(':') < 0) {
+            return optionsKey;
+        }
+        return analysisOptionsKey(optionsKey.substring(0, optionsKey.lastIndexOf(':')), summary, keywords,
+                components);
+    }
+
+    /**
+     * Bereits abgeschlossene Analyse desselben Inhalts mit denselben Optionen (Index auf
+     * {@code content_hash, analysis_options}).
+     */
+    public Optional<Document> findAnalyzedDuplicate(String contentHash, String analysisOptions) {
+        if (contentHash == null) {
+            return Optional.empty();
+        }
+        return documentRepository.findAnalyzed(contentHash, analysisOptions, PageRequest.of(0, 1)).stream()
+                .findFirst();
+    }
+
+    /**
+     * Speichert eine Kopie der vorhandenen Analyse unter neuem Namen, verknüpft über
+     * {@code duplicateOf} – ohne Extraktion und LLM-Aufrufe.
+     */
+    public Document saveLinkedCopy(Document original, String filename, String title) {
+        Document copy = new Document();
+        copy.setTitle(title);
+        copy.setFilename(filename);
+        copy.setFileType(original.getFileType());
+        copy.setUploadDate(new Date());
+        copy.setContent(original.getContent());
+        copy.setSummary(original.getSummary());
+        copy.setKeywords(original.getKeywords());
+        copy.setSuggestedComponents(original.getSuggestedComponents());
+        copy.setSentiment(original.getSentiment());
+        copy.setTone(original.getTone());
+        copy.setRecommendations(original.getRecommendations());
+        copy.setQualityScore(original.getQualityScore());
+        copy.setDocumentType(original.getDocumentType());
+        copy.setComplexityLevel(original.getComplexityLevel());
+        copy.setAnalysisRoutes(original.getAnalysisRoutes());
+        copy.setAnalysisVersion(original.getAnalysisVersion());
+        copy.setAnalysisStatus(original.getAnalysisStatus());
+        copy.setContentHash(original.getContentHash());
+        copy.setAnalysisOptions(original.getAnalysisOptions());
+        copy.setDuplicateOf(original.getDuplicateOf() != null ? original.getDuplicateOf() : original.getId());
+        return documentRepository.save(copy);
     }
 }
\ No newline at end of file
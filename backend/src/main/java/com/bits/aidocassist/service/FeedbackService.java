@@ -24,6 +24,10 @@ public class FeedbackService {
     @Autowired
     private DocumentRepository documentRepository;
 
+    // Bewertungen fließen als Qualitätssignal in die Modell-Routen zurück
+    @Autowired
+    private LlmModelRouter modelRouter;
+
     public AnalysisFeedback saveFeedback(AnalysisFeedback feedback) {
         // Validierung
         if (feedback.getDocument() != null && feedback.getDocument().getId() != null) {
@@ -34,7 +38,33 @@ public class FeedbackService {
         }
         
         feedback.setCreatedAt(LocalDateTime.now());
-        return feedbackRepository.save(feedback);
+        AnalysisFeedback saved = feedbackRepository.save(feedback);
+        recordRouteRatings(saved);
+        return saved;
+    }
+
+    /**
+     * Ordnet die Teilbewertungen den Routen zu, über die das Dokument analysiert wurde
+     * (ohne Teilbewertung zählt die Gesamtbewertung).
+     */
+    private void recordRouteRatings(AnalysisFeedback feedback) {
+        if (feedback.getDocument() == null) {
+            return;
+        }
+        Map<String, String> routes = LlmModelRouter.decodeFieldRoutes(feedback.getDocument().getAnalysisRoutes());
+        if (routes.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> ratings = new HashMap<>();
+        ratings.put("summary", feedback.getSummaryRating());
+        ratings.put("keywords", feedback.getKeywordsRating());
+        ratings.put("components", feedback.getComponentsRating());
+        routes.forEach((field, route) -> {
+            Integer rating = ratings.get(field) != null ? ratings.get(field) : feedback.getOverallRating();
+            if (rating != null) {
+                modelRouter.recordRating(route, rating);
+            }
+        });
     }
 
     public List<AnalysisFeedback> getFeedbackForDocument(Long documentId) {
@@ -0,0 +1,254 @@
+package com.bits.aidocassist.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.model.DocumentSegment;
+import com.bits.aidocassist.repository.DocumentSegmentRepository;
+import com.bits.aidocassist.util.ContentHash;
+
+/**
+ * Inkrementelle Re-Analyse auf Chunk-Ebene.
+ *
+ * Passt ein Dokument in einen Prompt, genügt ein kombinierter Aufruf. Größere Dokumente fasst
+ * die Analyse per Map-Reduce über Token-begrenzte Chunks zusammen ({@link AiService#summaryChunks});
+ * jeder Chunk bekommt einen Inhalts-Hash, die Teilzusammenfassungen werden in
+ * {@link DocumentSegment} gespeichert – schon beim ersten Speichern des Dokuments. Bei der
+ * Re-Analyse werden nur Chunks mit neuem Hash zusammengefasst, danach führt ein Reduce-Aufruf
+ * alle Teile zusammen. Keywords und Komponenten hängen vom ganzen Dokument ab und werden nur
+ * neu berechnet, wenn sich der Inhalt geändert hat.
+ */
+@Service
+public class IncrementalAnalysisService {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalAnalysisService.class);
+
+    private final AiService aiService;
+    private final TokenizerService tokenizer;
+    private final DocumentSegmentRepository segmentRepository;
+    private final AnalysisTaskRunner taskRunner;
+    private final String model;
+
+    public IncrementalAnalysisService(AiService aiService, TokenizerService tokenizer,
+            DocumentSegmentRepository segmentRepository, AnalysisTaskRunner taskRunner,
+            @Value("${openai.api.model:gpt-4-turbo-preview}") String model) {
+        this.aiService = aiService;
+        this.tokenizer = tokenizer;
+        this.segmentRepository = segmentRepository;
+        this.taskRunner = taskRunner;
+        this.model = model;
+    }
+
+    /**
+     * Analysiert ein gespeichertes Dokument neu und setzt die angeforderten Felder.
+     * Das Dokument wird nicht gespeichert, die Segmente schon.
+     */
+    public IncrementalResult reanalyze(Document document, boolean withSummary, boolean withKeywords,
+            boolean withComponents) {
+        String content = Objects.requireNonNullElse(document.getContent(), "");
+        String fingerprint = hash(content);
+        boolean contentChanged = !fingerprint.equals(document.getSegmentFingerprint());
+
+        if (!contentChanged && hasRequestedFields(document, withSummary, withKeywords, withComponents)) {
+            IncrementalResult result = new IncrementalResult(0);
+            result.unchanged = true;
+            log.info("♻️ Dokument {} unverändert – keine LLM-Aufrufe", document.getId());
+            return result;
+        }
+
+        List<String> chunks = aiService.summaryChunks(content);
+        List<String> hashes = chunks.stream().map(IncrementalAnalysisService::hash).toList();
+        IncrementalResult result = new IncrementalResult(chunks.size());
+
+        // Passt in einen Prompt (oder ohne LLM): ein kombinierter Aufruf statt Map-Reduce
+        if (chunks.size() < 2 || document.getId() == null) {
+            applyFullAnalysis(document, content, withSummary, withKeywords, withComponents);
+            result.recomputedSegments = chunks.size();
+            result.fullAnalysis = true;
+            if (document.getId() != null) {
+                segmentRepository.deleteByDocumentId(document.getId());
+            }
+            document.setSegmentFingerprint(fingerprint);
+            return result;
+        }
+
+        Map<String, String> knownSummaries = new HashMap<>();
+        for (DocumentSegment stored : segmentRepository.findByDocumentIdOrderByPositionAsc(document.getId())) {
+            if (stored.getSummary() != null) {
+                knownSummaries.put(stored.getContentHash(), stored.getSummary());
+            }
+        }
+
+        if (withSummary) {
+            // Map: nur neue Chunks (virtuelle Threads, begrenzt durch den Limiter im LlmClient)
+            List<CompletableFuture<String>> partials = new ArrayList<>();
+            for (int i = 0; i < chunks.size(); i++) {
+                String known = knownSummaries.get(hashes.get(i));
+                if (known != null) {
+                    result.reusedSegments++;
+                    partials.add(CompletableFuture.completedFuture(known));
+                } else {
+                    result.recomputedSegments++;
+                    String chunk = chunks.get(i);
+                    partials.add(CompletableFuture.supplyAsync(() -> aiService.summarizeSegment(chunk), taskRunner.io()));
+                }
+            }
+            List<String> chunkSummaries = partials.stream().map(CompletableFuture::join).toList();
+
+            // Reduce: immer über alle Teile, damit die Gesamtzusammenfassung konsistent bleibt
+            List<String> available = chunkSummaries.stream().filter(Objects::nonNull).toList();
+            document.setSummary(available.isEmpty()
+                    ? aiService.summarizeText(content)
+                    : aiService.mergeSummaries(available));
+            storeSegments(document, chunks, hashes, chunkSummaries);
+        } else {
+            storeSegments(document, chunks, hashes, hashes.stream().map(knownSummaries::get).toList());
+        }
+
+        boolean needKeywords = withKeywords && (contentChanged || document.getKeywords() == null);
+        boolean needComponents = withComponents && (contentChanged || document.getSuggestedComponents() == null);
+        if (needKeywords || needComponents) {
+            AiService.CombinedAnalysis ai = aiService.analyzeCombined(content, false, needKeywords, needComponents);
+            if (needKeywords) {
+                document.setKeywords(ai.getKeywords());
+            }
+            if (needComponents) {
+                document.setSuggestedComponents(ai.getComponents());
+            }
+        }
+
+        document.setSegmentFingerprint(fingerprint);
+        log.info("♻️ Inkrementelle Re-Analyse Dokument {}: {} Chunks, {} wiederverwendet, {} neu",
+                document.getId(), chunks.size(), result.reusedSegments, result.recomputedSegments);
+        return result;
+    }
+
+    /**
+     * Vor dem ersten Speichern: Chunks eines per Map-Reduce zusammengefassten Dokuments mit den
+     * Teilzusammenfassungen der gerade gelaufenen Analyse (aus dem Response-Cache, ohne
+     * LLM-Aufruf). Leer, wenn das Dokument in einen Prompt passt oder nichts im Cache liegt.
+     * Mit Segmenten wird auch der Fingerprint gesetzt: eine Re-Analyse desselben Inhalts
+     * braucht dann keine LLM-Aufrufe.
+     */
+    public List<DocumentSegment> prepareInitialSegments(Document document) {
+        if (document.getId() != null || document.getSummary() == null || document.getContent() == null) {
+            return List.of();
+        }
+        // Vorprüfung ohne Tokenisierung: kleine Dokumente (der Normalfall) kosten beim Speichern nichts
+        if (!aiService.mayNeedMapReduce(document.getContent())) {
+            return List.of();
+        }
+        List<String> chunks = aiService.summaryChunks(document.getContent());
+        List<String> summaries = chunks.stream().map(aiService::cachedSegmentSummary).toList();
+        if (summaries.stream().allMatch(Objects::isNull)) {
+            return List.of();
+        }
+        document.setSegmentFingerprint(hash(document.getContent()));
+        return segmentRows(document, chunks, chunks.stream().map(IncrementalAnalysisService::hash).toList(),
+                summaries);
+    }
+
+    /**
+     * Speichert die Segmente aus {@link #prepareInitialSegments} zum gespeicherten Dokument.
+     */
+    public void storeInitialSegments(Document saved, List<DocumentSegment> segments) {
+        if (segments.isEmpty() || saved.getId() == null) {
+            return;
+        }
+        segments.forEach(segment -> segment.setDocument(saved));
+        segmentRepository.saveAll(segments);
+        log.info("♻️ Dokument {}: {} Chunk-Zusammenfassungen für die Re-Analyse gespeichert", saved.getId(),
+                segments.size());
+    }
+
+    private static boolean hasRequestedFields(Document document, boolean withSummary, boolean withKeywords,
+            boolean withComponents) {
+        return (!withSummary || document.getSummary() != null)
+                && (!withKeywords || document.getKeywords() != null)
+                && (!withComponents || document.getSuggestedComponents() != null);
+    }
+
+    private void applyFullAnalysis(Document document, String content, boolean withSummary,
+            boolean withKeywords, boolean withComponents) {
+        AiService.CombinedAnalysis ai = aiService.analyzeCombined(content, withSummary, withKeywords, withComponents);
+        if (withSummary) {
+            document.setSummary(ai.getSummary());
+        }
+        if (withKeywords) {
+            document.setKeywords(ai.getKeywords());
+        }
+        if (withComponents) {
+            document.setSuggestedComponents(ai.getComponents());
+        }
+    }
+
+    private void storeSegments(Document document, List<String> chunks, List<String> hashes,
+            List<String> summaries) {
+        segmentRepository.deleteByDocumentId(document.getId());
+        segmentRepository.saveAll(segmentRows(document, chunks, hashes, summaries));
+    }
+
+    private List<DocumentSegment> segmentRows(Document document, List<String> chunks, List<String> hashes,
+            List<String> summaries) {
+        List<DocumentSegment> rows = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            DocumentSegment row = new DocumentSegment();
+            row.setDocument(document);
+            row.setPosition(i);
+            row.setContentHash(hashes.get(i));
+            row.setTokenCount(tokenizer.countTokens(model, chunks.get(i)));
+            row.setSummary(summaries.get(i));
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    /**
+     * SHA-256 über den Text mit normalisierten Leerzeichen (reine Umbrüche zählen nicht als Änderung).
+     */
+    static String hash(String text) {
+        return ContentHash.sha256(text.strip().replaceAll("\\s+", " "));
+    }
+
+    /**
+     * Statistik einer Re-Analyse (für die Response-Metadaten).
+     */
+    public static class IncrementalResult {
+        private final int totalSegments;
+        private int reusedSegments;
+        private int recomputedSegments;
+        private boolean unchanged;
+        private boolean fullAnalysis;
+
+        IncrementalResult(int totalSegments) {
+            this.totalSegments = totalSegments;
+        }
+
+        public int getTotalSegments() { return totalSegments; }
+        public int getReusedSegments() { return reusedSegments; }
+        public int getRecomputedSegments() { return recomputedSegments; }
+        public boolean isUnchanged() { return unchanged; }
+        public boolean isFullAnalysis() { return fullAnalysis; }
+
+        public Map<String, Object> toMetadata() {
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            metadata.put("totalSegments", totalSegments);
+            metadata.put("reusedSegments", reusedSegments);
+            metadata.put("recomputedSegments", recomputedSegments);
+            metadata.put("unchanged", unchanged);
+            metadata.put("fullAnalysis", fullAnalysis);
+            return metadata;
+        }
+    }
+}
@@ -6,14 +6,13 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Mono;
 
-import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+import reactor.core.publisher.Mono;
+
 @Service
 @RequiredArgsConstructor
 @ConditionalOnProperty(name = "industry-detection.enabled", havingValue = "true", matchIfMissing = true)
@@ -27,8 +26,17 @@ public class IndustryDetectionService {
     @Value("${openai.model:gpt-3.5-turbo-instruct}")
     private String model;
 
-    @Value("${openai.timeout:30s}")
-    private Duration timeout;
+    // Gemeinsame LLM-Schicht (Cache, Limiter, gepoolter HTTP-Client)
+    private final LlmClient llmClient;
+
+    private final TokenizerService tokenizer;
+
+    // Modellwahl für die Operation "industry" (Chat- oder Instruct-Modell)
+    private final LlmModelRouter modelRouter;
+
+    // Dokumentanteil im Branchen-Prompt (vorher 1500 Zeichen)
+    @Value("${openai.tokens.industry-input-tokens:400}")
+    private int industryInputTokens = 400;
 
     // In-Memory Cache für Demo (ersetzt Redis)
     private final Map<String, Map<String, Object>> inMemoryCache = new ConcurrentHashMap<>();
@@ -164,16 +172,54 @@ public class IndustryDetectionService {
     }
 
     /**
-     * 🆕 VERBESSERTE Hauptlogik für Branchenerkennung
+     * Reaktive Variante von {@link #detectIndustry}: der KI-Anteil läuft über den
+     * nicht-blockierenden LlmClient, Cache und Fallback verhalten sich gleich.
      */
-    private Map<String, Object> analyzeIndustryEnhanced(String text) {
-        // 1. Keyword-basierte Erkennung mit verbesserter Gewichtung
-        Map<String, Double> keywordScores = analyzeKeywordsEnhanced(text);
+    public Mono<Map<String, Object>> detectIndustryReactive(String text) {
+        String cacheKey = generateCacheKey(text);
+        Map<String, Object> cachedResult = inMemoryCache.get(cacheKey);
+        if (cachedResult != null) {
+            log.info("Returning cached industry detection result");
+            return Mono.just(cachedResult);
+        }
 
-        // 2. Kontext-Analyse für bessere Genauigkeit
-        Map<String, Double> contextEnhanced = enhanceWithContextAnalysis(text, keywordScores);
+        Mono<Map<String, Double>> aiScores = isOpenAiConfigured()
+                ? callOpenAiReactive(buildIndustryPrompt(text))
+                        .map(String::trim)
+                        .filter(response -> !response.isEmpty())
+                        .map(this::parseAIResponse)
+                        .defaultIfEmpty(new HashMap<>())
+                        .onErrorResume(e -> {
+                            log.warn("AI industry analysis failed: {}", e.getMessage());
+                            return Mono.just(new HashMap<>());
+                        })
+                : Mono.just(new HashMap<>());
+
+        return aiScores.map(scores -> {
+            Map<String, Object> result = combineWithKeywordAnalysis(text, scores);
+            cacheResult(cacheKey, result);
+            log.info("Industry detection completed successfully");
+            return result;
+        }).onErrorResume(e -> {
+            log.error("Industry detection failed, using fallback: {}", e.getMessage());
+            return Mono.just(getFallbackIndustryAnalysis(text));
+        });
+    }
 
-        // 3. AI-basierte Erkennung (nur wenn API Key verfügbar)
+    /**
+     * Branchenerkennung ohne LLM (Keywords + Kontext), für Sofort-Antworten. Ein bereits
+     * gecachtes Ergebnis der vollständigen Erkennung wird bevorzugt.
+     */
+    public Map<String, Object> detectIndustryLocal(String text) {
+        Map<String, Object> cachedResult = inMemoryCache.get(generateCacheKey(text));
+        return cachedResult != null ? cachedResult : getFallbackIndustryAnalysis(text);
+    }
+
+    /**
+     * 🆕 VERBESSERTE Hauptlogik für Branchenerkennung
+     */
+    private Map<String, Object> analyzeIndustryEnhanced(String text) {
+        // AI-basierte Erkennung (nur wenn API Key verfügbar)
         Map<String, Double> aiScores = new HashMap<>();
         if (isOpenAiConfigured()) {
             try {
@@ -182,11 +228,20 @@ public class IndustryDetectionService {
                 log.warn("AI analysis failed, using enhanced keywords only: {}", e.getMessage());
             }
         }
+        return combineWithKeywordAnalysis(text, aiScores);
+    }
+
+    private Map<String, Object> combineWithKeywordAnalysis(String text, Map<String, Double> aiScores) {
+        // 1. Keyword-basierte Erkennung mit verbesserter Gewichtung
+        Map<String, Double> keywordScores = analyzeKeywordsEnhanced(text);
+
+        // 2. Kontext-Analyse für bessere Genauigkeit
+        Map<String, Double> contextEnhanced = enhanceWithContextAnalysis(text, keywordScores);
 
-        // 4. Kombiniere alle Ansätze
+        // 3. Kombiniere alle Ansätze
         Map<String, Double> finalScores = combineScoresEnhanced(contextEnhanced, aiScores);
 
-        // 5. Erstelle detailliertes Ergebnis
+        // 4. Erstelle detailliertes Ergebnis
         return buildEnhancedIndustryResult(finalScores, keywordScores, aiScores, text);
     }
 
@@ -462,16 +517,7 @@ public class IndustryDetectionService {
         }
 
         try {
-            String industries = String.join(", ", INDUSTRY_KEYWORDS.keySet());
-            String prompt = String.format(
-                "Analysiere folgenden Text und bestimme die Wahrscheinlichkeit für jede Branche (0-100): %s%n%n" +
-                "Branchen: %s%n%n" +
-                "Text: %s%n%n" +
-                "Antworte nur mit: Branche1:Wahrscheinlichkeit, Branche2:Wahrscheinlichkeit, ...",
-                industries, industries, text.substring(0, Math.min(text.length(), 1500))
-            );
-
-            String aiResponse = callOpenAi(prompt);
+            String aiResponse = callOpenAi(buildIndustryPrompt(text));
             return parseAIResponse(aiResponse);
 
         } catch (Exception e) {
@@ -480,51 +526,89 @@ public class IndustryDetectionService {
         }
     }
 
+    private String buildIndustryPrompt(String text) {
+        String industries = String.join(", ", INDUSTRY_KEYWORDS.keySet());
+        return String.format(
+            "Analysiere folgenden Text und bestimme die Wahrscheinlichkeit für jede Branche (0-100): %s%n%n" +
+            "Branchen: %s%n%n" +
+            "Text: %s%n%n" +
+            "Antworte nur mit: Branche1:Wahrscheinlichkeit, Branche2:Wahrscheinlichkeit, ...",
+            industries, industries, tokenizer.truncateToTokens(model, text, industryInputTokens)
+        );
+    }
+
     /**
-     * OpenAI API Call mit WebClient (unverändert)
+     * Request für das geroutete Modell: Chat-Modelle über {@code messages},
+     * Instruct-Modelle (Standard) über {@code prompt}.
      */
-    private String callOpenAi(String prompt) {
-        WebClient webClient = WebClient.builder()
-            .baseUrl("https://api.openai.com/v1")
-            .defaultHeader("Authorization", "Bearer " + openAiApiKey)
-            .defaultHeader("Content-Type", "application/json")
-            .build();
-
-        Map<String, Object> requestBody = Map.of(
-            "model", model,
+    private Map<String, Object> buildIndustryRequest(String routedModel, String prompt) {
+        if (isChatModel(routedModel)) {
+            return Map.of(
+                "model", routedModel,
+                "messages", List.of(Map.of("role", "user", "content", prompt)),
+                "max_tokens", 200,
+                "temperature", 0.1,
+                "top_p", 0.9
+            );
+        }
+        return Map.of(
+            "model", routedModel,
             "prompt", prompt,
             "max_tokens", 200,
             "temperature", 0.1,
             "top_p", 0.9
         );
+    }
 
-        Mono<Map> response = webClient.post()
-            .uri("/completions")
-            .bodyValue(requestBody)
-            .retrieve()
-            .bodyToMono(Map.class)
-            .timeout(timeout);
+    private static boolean isChatModel(String modelName) {
+        return !modelName.contains("instruct");
+    }
 
-        Map<String, Object> responseBody = response.block();
-        return extractResponseText(responseBody);
+    private LlmModelRouter.Decision routeIndustry(String prompt) {
+        return modelRouter.route("industry", tokenizer.countTokens(model, prompt), model);
     }
 
     /**
-     * Extrahiert Text aus OpenAI Response (unverändert)
+     * OpenAI API Call über die gemeinsame LLM-Schicht (Cache, Limiter, Verbindungspool)
      */
-    @SuppressWarnings("unchecked")
-    private String extractResponseText(Map<String, Object> responseBody) {
-        List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-
-        if (choices != null && !choices.isEmpty()) {
-            String result = (String) choices.get(0).get("text");
-            if (result != null && !result.trim().isEmpty()) {
-                return result.trim();
-            }
+    private String callOpenAi(String prompt) {
+        LlmModelRouter.Decision route = routeIndustry(prompt);
+        Map<String, Object> request = buildIndustryRequest(route.model(), prompt);
+        long startNanos = System.nanoTime();
+        String result;
+        try {
+            result = isChatModel(route.model())
+                    ? llmClient.chatCompletion(request, "industry-detection")
+                    : llmClient.textCompletion(request, "industry-detection");
+            modelRouter.recordOutcome(route, elapsedMs(startNanos), true);
+        } catch (RuntimeException e) {
+            modelRouter.recordOutcome(route, elapsedMs(startNanos), false);
+            throw e;
+        }
+        if (result != null && !result.trim().isEmpty()) {
+            return result.trim();
         }
         throw new RuntimeException("No valid response from OpenAI");
     }
 
+    private Mono<String> callOpenAiReactive(String prompt) {
+        LlmModelRouter.Decision route = routeIndustry(prompt);
+        Map<String, Object> request = buildIndustryRequest(route.model(), prompt);
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            Mono<String> call = isChatModel(route.model())
+                    ? llmClient.chatCompletionReactive(request, "industry-detection")
+                    : llmClient.textCompletionReactive(request, "industry-detection");
+            return call
+                    .doOnSuccess(result -> modelRouter.recordOutcome(route, elapsedMs(startNanos), true))
+                    .doOnError(e -> modelRouter.recordOutcome(route, elapsedMs(startNanos), false));
+        });
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
     /**
      * Parst die OpenAI-Antwort (unverändert)
      */
@@ -0,0 +1,183 @@
+package com.bits.aidocassist.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Circuit Breaker je Provider und Operation (z.B. {@code openai:summarization}).
+ *
+ * CLOSED: Aufrufe laufen durch, die letzten {@code window-size} Ergebnisse bilden
+ * ein gleitendes Fenster. Ab {@code minimum-calls} Aufrufen und einer Fehlerquote
+ * über {@code failure-rate-threshold} wechselt der Breaker auf OPEN.
+ * OPEN: Aufrufe werden sofort abgelehnt, die Aufrufer nutzen ihre lokalen Fallbacks.
+ * Nach {@code open-duration-ms} geht der Breaker auf HALF_OPEN und lässt einzelne
+ * Probe-Aufrufe durch; Erfolg schließt ihn, ein Fehler öffnet ihn erneut.
+ */
+@Component
+public class LlmCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmCircuitBreaker.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openDurationMs;
+    private final int halfOpenProbes;
+
+    private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+
+    public LlmCircuitBreaker(
+            @Value("${openai.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${openai.circuit-breaker.minimum-calls:5}") int minimumCalls,
+            @Value("${openai.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+            @Value("${openai.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+            @Value("${openai.circuit-breaker.half-open-probes:1}") int halfOpenProbes) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenProbes = Math.max(1, halfOpenProbes);
+    }
+
+    public Breaker forOperation(String provider, String operation) {
+        return breakers.computeIfAbsent(provider + ":" + operation, Breaker::new);
+    }
+
+    /**
+     * Zustand aller bisher genutzten Breaker (für {@code /api/ai/health}).
+     */
+    public Map<String, Object> getStates() {
+        Map<String, Object> states = new TreeMap<>();
+        breakers.forEach((name, breaker) -> states.put(name, breaker.snapshot()));
+        return states;
+    }
+
+    public boolean isAnyOpen() {
+        return breakers.values().stream().anyMatch(b -> b.getState() == State.OPEN);
+    }
+
+    public final class Breaker {
+        private final String name;
+        private final boolean[] window = new boolean[windowSize];
+        private int windowIndex;
+        private int recordedCalls;
+        private int failuresInWindow;
+
+        private State state = State.CLOSED;
+        private long openedAtNanos;
+        private int probesInFlight;
+        private long rejectedCalls;
+
+        private Breaker(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return {@code false}, wenn der Aufruf sofort abgelehnt werden soll
+         */
+        public synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAtNanos < TimeUnit.MILLISECONDS.toNanos(openDurationMs)) {
+                    rejectedCalls++;
+                    return false;
+                }
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight >= halfOpenProbes) {
+                    rejectedCalls++;
+                    return false;
+                }
+                probesInFlight++;
+            }
+            return true;
+        }
+
+        public synchronized void onSuccess() {
+            if (state == State.HALF_OPEN) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                transitionTo(State.CLOSED);
+                return;
+            }
+            record(false);
+        }
+
+        public synchronized void onFailure() {
+            if (state == State.HALF_OPEN) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+                transitionTo(State.OPEN);
+                return;
+            }
+            record(true);
+            if (state == State.CLOSED && recordedCalls >= minimumCalls
+                    && failureRate() >= failureRateThreshold) {
+                transitionTo(State.OPEN);
+            }
+        }
+
+        /**
+         * Aufruf ohne Aussage über den Provider (z.B. 400) – nur den Probe-Slot freigeben.
+         */
+        public synchronized void onIgnored() {
+            if (state == State.HALF_OPEN) {
+                probesInFlight = Math.max(0, probesInFlight - 1);
+            }
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        private void record(boolean failure) {
+            if (recordedCalls == windowSize && window[windowIndex]) {
+                failuresInWindow--;
+            }
+            window[windowIndex] = failure;
+            if (failure) {
+                failuresInWindow++;
+            }
+            windowIndex = (windowIndex + 1) % windowSize;
+            recordedCalls = Math.min(windowSize, recordedCalls + 1);
+        }
+
+        private double failureRate() {
+            return recordedCalls == 0 ? 0 : failuresInWindow * 100.0 / recordedCalls;
+        }
+
+        private void transitionTo(State next) {
+            if (state == next) {
+                return;
+            }
+            log.warn("⚡ Circuit Breaker {}: {} → {} (Fehlerquote {}%)",
+                    name, state, next, Math.round(failureRate()));
+            state = next;
+            if (next == State.OPEN) {
+                openedAtNanos = System.nanoTime();
+            } else if (next == State.CLOSED) {
+                // Neues Fenster nach erfolgreicher Probe
+                recordedCalls = 0;
+                failuresInWindow = 0;
+                windowIndex = 0;
+            }
+        }
+
+        private synchronized Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("state", state.name());
+            snapshot.put("failureRate", Math.round(failureRate() * 10) / 10.0);
+            snapshot.put("calls", recordedCalls);
+            snapshot.put("rejectedCalls", rejectedCalls);
+            return snapshot;
+        }
+    }
+}
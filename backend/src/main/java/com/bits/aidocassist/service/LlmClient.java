@@ -0,0 +1,506 @@
+package com.bits.aidocassist.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.bits.aidocassist.exception.LlmUnavailableException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Gemeinsame Schicht für alle Completion-Aufrufe (AiService, OpenAIService,
+ * IndustryDetectionService).
+ *
+ * Prüft zuerst den {@link LlmResponseCache}, erst bei einem Miss geht der
+ * Request über den gepoolten {@code llmRestTemplate} ins Netz. Identische
+ * Requests, die gleichzeitig eintreffen, teilen sich einen einzigen Aufruf;
+ * die Anzahl gleichzeitiger Aufrufe begrenzt der {@link AdaptiveConcurrencyLimiter},
+ * Wiederholungen und Quota-Pausen steuert die {@link LlmRetryPolicy}. Ist der
+ * {@link LlmCircuitBreaker} einer Operation offen, wird sofort mit
+ * {@link LlmUnavailableException} abgelehnt. Langsame blockierende Aufrufe können
+ * über die {@link LlmHedgingPolicy} ein zweites Mal gestartet werden.
+ *
+ * Die {@code *Reactive}-Varianten durchlaufen dieselben Stufen über den {@code llmWebClient},
+ * ohne dass ein Thread auf Slot, Backoff oder Antwort wartet.
+ *
+ * Jede Provider-Antwort wird mit ihrem {@code usage}-Block an den {@link LlmUsageTracker} gemeldet.
+ */
+@Service
+public class LlmClient {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmClient.class);
+
+    private static final String CHAT_COMPLETIONS_PATH = "/chat/completions";
+    private static final String COMPLETIONS_PATH = "/completions";
+    private static final String PROVIDER = "openai";
+
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_STRING =
+            new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_MAP =
+            new ParameterizedTypeReference<>() {};
+
+    private final RestTemplate restTemplate;
+    private final WebClient webClient;
+    private final LlmResponseCache responseCache;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final LlmRetryPolicy retryPolicy;
+    private final LlmCircuitBreaker circuitBreaker;
+    private final LlmHedgingPolicy hedgingPolicy;
+    private final LlmUsageTracker usageTracker;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${openai.api.key:}")
+    private String apiKey;
+
+    @Value("${openai.api.base-url:https://api.openai.com/v1}")
+    private String baseUrl;
+
+    // Obergrenze für einen kompletten Token-Stream
+    @Value("${openai.api.stream-timeout:120}")
+    private long streamTimeoutSeconds = 120;
+
+    // usage-Block auch bei Streams anfordern (stream_options.include_usage)
+    @Value("${openai.usage.include-stream-usage:true}")
+    private boolean includeStreamUsage = true;
+
+    // Laufende Requests je Cache-Key (Single-Flight)
+    private final ConcurrentHashMap<String, CompletableFuture<String>> inFlightCalls = new ConcurrentHashMap<>();
+    private final LongAdder coalescedCalls = new LongAdder();
+
+    public LlmClient(@Qualifier("llmRestTemplate") RestTemplate restTemplate,
+            @Qualifier("llmWebClient") WebClient webClient,
+            LlmResponseCache responseCache,
+            AdaptiveConcurrencyLimiter limiter,
+            LlmRetryPolicy retryPolicy,
+            LlmCircuitBreaker circuitBreaker,
+            LlmHedgingPolicy hedgingPolicy,
+            LlmUsageTracker usageTracker,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.webClient = webClient;
+        this.responseCache = responseCache;
+        this.limiter = limiter;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreaker = circuitBreaker;
+        this.hedgingPolicy = hedgingPolicy;
+        this.usageTracker = usageTracker;
+
+        meterRegistry.ifAvailable(registry -> {
+            FunctionCounter.builder("llm.requests.coalesced", coalescedCalls, LongAdder::sum)
+                    .description("LLM-Aufrufe, die an einen identischen laufenden Request angehängt wurden")
+                    .register(registry);
+            Gauge.builder("llm.requests.in-flight", inFlightCalls, Map::size)
+                    .register(registry);
+        });
+    }
+
+    /**
+     * Führt einen Chat-Completion-Request aus und liefert den Text der ersten Choice.
+     *
+     * @param requestBody vollständiger Request (model, messages, temperature, max_tokens, ...)
+     * @param operation   fachlicher Name für Logs (z.B. "summarization")
+     * @return Antworttext oder {@code null}, wenn die API keinen Inhalt geliefert hat
+     */
+    public String chatCompletion(Map<String, Object> requestBody, String operation) {
+        return complete(CHAT_COMPLETIONS_PATH, requestBody, operation, LlmClient::extractMessageContent);
+    }
+
+    /**
+     * Legacy-Completion ({@code /completions}, Feld {@code prompt}); liefert {@code choices[0].text}.
+     */
+    public String textCompletion(Map<String, Object> requestBody, String operation) {
+        return complete(COMPLETIONS_PATH, requestBody, operation, LlmClient::extractText);
+    }
+
+    /**
+     * Nicht-blockierende Variante von {@link #chatCompletion}: Cache, Breaker, Single-Flight,
+     * Limiter und Retry-Policy wie dort, Hedging entfällt. Ohne Inhalt in der Antwort ist das Mono leer.
+     */
+    public Mono<String> chatCompletionReactive(Map<String, Object> requestBody, String operation) {
+        return completeReactive(CHAT_COMPLETIONS_PATH, requestBody, operation, LlmClient::extractMessageContent);
+    }
+
+    /**
+     * Nicht-blockierende Variante von {@link #textCompletion}.
+     */
+    public Mono<String> textCompletionReactive(Map<String, Object> requestBody, String operation) {
+        return completeReactive(COMPLETIONS_PATH, requestBody, operation, LlmClient::extractText);
+    }
+
+    /**
+     * Chat-Aufruf mit {@code stream=true}: jedes Delta-Token wird sofort an
+     * {@code onToken} weitergereicht, der vollständige Text wird zurückgegeben.
+     * Ein Cache-Treffer wird als ein einziges Token ausgeliefert.
+     */
+    public String streamChatCompletion(Map<String, Object> requestBody, String operation,
+            Consumer<String> onToken) {
+        Map<String, Object> streamBody = new LinkedHashMap<>(requestBody);
+        streamBody.put("stream", true);
+        if (includeStreamUsage) {
+            streamBody.put("stream_options", Map.of("include_usage", true));
+        }
+
+        String cacheKey = responseCache.keyFor(streamBody);
+        String cached = responseCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("🗄️ LLM-Cache-Treffer für Stream {}", operation);
+            usageTracker.recordCacheHit(LlmUsageTracker.current());
+            onToken.accept(cached.trim());
+            return cached.trim();
+        }
+
+        LlmCircuitBreaker.Breaker breaker = acquireBreaker(operation);
+        StringBuilder result = new StringBuilder();
+        try {
+            streamWithRetry(streamBody, operation, onToken, result);
+            breaker.onSuccess();
+        } catch (RuntimeException e) {
+            recordFailure(breaker, e);
+            throw e;
+        }
+
+        if (result.length() > 0) {
+            responseCache.put(cacheKey, result.toString());
+        }
+        return result.toString().trim();
+    }
+
+    private void streamWithRetry(Map<String, Object> streamBody, String operation,
+            Consumer<String> onToken, StringBuilder result) {
+        // Retry nur, solange noch kein Token beim Aufrufer angekommen ist
+        retryPolicy.execute(operation, () -> {
+            AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(operation);
+            AtomicReference<Map<String, Object>> usageChunk = new AtomicReference<>();
+            long startNanos = System.nanoTime();
+            try {
+                log.debug("🌊 Chat-Stream ({}) für: {}", streamBody.get("model"), operation);
+                webClient.post()
+                        .uri(CHAT_COMPLETIONS_PATH)
+                        .headers(h -> h.setBearerAuth(apiKey))
+                        .accept(MediaType.TEXT_EVENT_STREAM)
+                        .bodyValue(streamBody)
+                        .exchangeToFlux(response -> {
+                            retryPolicy.observe(response.headers().asHttpHeaders());
+                            return response.statusCode().isError()
+                                    ? response.createException().flatMapMany(Flux::error)
+                                    : response.bodyToFlux(SSE_STRING);
+                        })
+                        .map(event -> event.data() != null ? event.data().trim() : "")
+                        .takeWhile(data -> !"[DONE]".equals(data))
+                        .map(this::parseChunk)
+                        .doOnNext(chunk -> {
+                            // Letzter Chunk (ohne choices) trägt den usage-Block
+                            if (chunk.get("usage") instanceof Map<?, ?>) {
+                                usageChunk.set(chunk);
+                            }
+                        })
+                        .map(LlmClient::extractDeltaContent)
+                        .filter(token -> !token.isEmpty())
+                        .doOnNext(token -> {
+                            result.append(token);
+                            onToken.accept(token);
+                        })
+                        .blockLast(Duration.ofSeconds(streamTimeoutSeconds));
+                permit.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+                usageTracker.record(LlmUsageTracker.current(), LlmUsageTracker.LlmCall.fromResponse(operation,
+                        (String) streamBody.get("model"), usageChunk.get(), elapsedMs(startNanos)));
+                return result;
+            } catch (RuntimeException e) {
+                permit.release(classify(e));
+                throw e;
+            }
+        }, () -> result.length() == 0);
+    }
+
+    public LlmResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlightCalls.size());
+        stats.put("coalescedCalls", coalescedCalls.sum());
+        stats.put("limiter", limiter.getStats());
+        stats.put("retry", retryPolicy.getStats());
+        stats.put("circuitBreakers", circuitBreaker.getStates());
+        stats.put("hedging", hedgingPolicy.getStats());
+        stats.put("cache", responseCache.getStats());
+        return stats;
+    }
+
+    private String complete(String path, Map<String, Object> requestBody, String operation,
+            Function<Map<String, Object>, String> extractor) {
+        String cacheKey = responseCache.keyFor(requestBody);
+        String cached = responseCache.get(cacheKey);
+        if (cached != null) {
+            log.debug("🗄️ LLM-Cache-Treffer für {}", operation);
+            usageTracker.recordCacheHit(LlmUsageTracker.current());
+            return cached;
+        }
+
+        // Offener Breaker → sofort ablehnen, Aufrufer antworten mit lokalem Fallback
+        LlmCircuitBreaker.Breaker breaker = acquireBreaker(operation);
+
+        // Single-Flight: identischer Request bereits unterwegs → an dessen Future anhängen
+        CompletableFuture<String> call = new CompletableFuture<>();
+        CompletableFuture<String> inFlight = inFlightCalls.putIfAbsent(cacheKey, call);
+        if (inFlight != null) {
+            breaker.onIgnored();
+            coalescedCalls.increment();
+            log.debug("🔗 Identischer LLM-Request läuft bereits, warte auf Ergebnis ({})", operation);
+            return awaitInFlight(inFlight);
+        }
+
+        try {
+            String content = retryPolicy.execute(operation, () -> hedgingPolicy.execute(operation,
+                    () -> execute(path, requestBody, operation, extractor)));
+            breaker.onSuccess();
+            // Erst cachen, dann austragen – Nachzügler treffen so den Cache
+            responseCache.put(cacheKey, content);
+            call.complete(content);
+            return content;
+        } catch (RuntimeException e) {
+            recordFailure(breaker, e);
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightCalls.remove(cacheKey, call);
+        }
+    }
+
+    private String execute(String path, Map<String, Object> requestBody, String operation,
+            Function<Map<String, Object>, String> extractor) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setBearerAuth(apiKey);
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.acquire(operation);
+        long startNanos = System.nanoTime();
+        try {
+            log.debug("🤖 Completion ({}) für: {}", requestBody.get("model"), operation);
+            ResponseEntity<Map> response = restTemplate.exchange(
+                    baseUrl + path, HttpMethod.POST, new HttpEntity<>(requestBody, headers), Map.class);
+            permit.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+            retryPolicy.observe(response.getHeaders());
+
+            if (response.getStatusCode() != HttpStatus.OK || response.getBody() == null) {
+                return null;
+            }
+            @SuppressWarnings("unchecked")
+            Map<String, Object> body = response.getBody();
+            usageTracker.record(LlmUsageTracker.current(), LlmUsageTracker.LlmCall.fromResponse(operation,
+                    (String) requestBody.get("model"), body, elapsedMs(startNanos)));
+            return extractor.apply(body);
+        } catch (RuntimeException e) {
+            permit.release(classify(e));
+            throw e;
+        }
+    }
+
+    private Mono<String> completeReactive(String path, Map<String, Object> requestBody, String operation,
+            Function<Map<String, Object>, String> extractor) {
+        return Mono.deferContextual(context -> {
+            LlmUsageTracker.Scope usageScope = LlmUsageTracker.fromContext(context);
+            String cacheKey = responseCache.keyFor(requestBody);
+            String cached = responseCache.get(cacheKey);
+            if (cached != null) {
+                log.debug("🗄️ LLM-Cache-Treffer für {}", operation);
+                usageTracker.recordCacheHit(usageScope);
+                return Mono.just(cached);
+            }
+
+            LlmCircuitBreaker.Breaker breaker = acquireBreaker(operation);
+
+            // Single-Flight gemeinsam mit den blockierenden Aufrufen
+            CompletableFuture<String> call = new CompletableFuture<>();
+            CompletableFuture<String> inFlight = inFlightCalls.putIfAbsent(cacheKey, call);
+            if (inFlight != null) {
+                breaker.onIgnored();
+                coalescedCalls.increment();
+                log.debug("🔗 Identischer LLM-Request läuft bereits, warte auf Ergebnis ({})", operation);
+                return Mono.fromFuture(inFlight, true);
+            }
+
+            return retryPolicy.executeReactive(operation,
+                    exchangeReactive(path, requestBody, operation, extractor, usageScope))
+                    .doOnSuccess(content -> {
+                        breaker.onSuccess();
+                        if (content != null) {
+                            responseCache.put(cacheKey, content);
+                        }
+                        call.complete(content);
+                    })
+                    .doOnError(e -> {
+                        recordFailure(breaker, e);
+                        call.completeExceptionally(e);
+                    })
+                    .doOnCancel(() -> {
+                        breaker.onIgnored();
+                        call.completeExceptionally(new LlmUnavailableException("LLM-Aufruf abgebrochen (" + operation + ")"));
+                    })
+                    .doFinally(signal -> inFlightCalls.remove(cacheKey, call));
+        });
+    }
+
+    private Mono<String> exchangeReactive(String path, Map<String, Object> requestBody, String operation,
+            Function<Map<String, Object>, String> extractor, LlmUsageTracker.Scope usageScope) {
+        return limiter.acquireReactive(operation).flatMap(permit -> {
+            log.debug("🤖 Completion reaktiv ({}) für: {}", requestBody.get("model"), operation);
+            long startNanos = System.nanoTime();
+            return webClient.post()
+                    .uri(path)
+                    .headers(h -> h.setBearerAuth(apiKey))
+                    .bodyValue(requestBody)
+                    .exchangeToMono(response -> {
+                        retryPolicy.observe(response.headers().asHttpHeaders());
+                        return response.statusCode().isError()
+                                ? response.createException().flatMap(Mono::<Map<String, Object>>error)
+                                : response.bodyToMono(JSON_MAP);
+                    })
+                    .doOnNext(body -> usageTracker.record(usageScope, LlmUsageTracker.LlmCall.fromResponse(
+                            operation, (String) requestBody.get("model"), body, elapsedMs(startNanos))))
+                    .mapNotNull(extractor)
+                    .doOnSuccess(content -> permit.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS))
+                    .doOnError(e -> permit.release(classify(e)))
+                    .doOnCancel(() -> permit.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED));
+        });
+    }
+
+    private LlmCircuitBreaker.Breaker acquireBreaker(String operation) {
+        LlmCircuitBreaker.Breaker breaker = circuitBreaker.forOperation(PROVIDER, operation);
+        if (!breaker.tryAcquire()) {
+            throw new LlmUnavailableException("Circuit Breaker offen für " + PROVIDER + ":" + operation);
+        }
+        return breaker;
+    }
+
+    /**
+     * Nur Fehler, die auf ein Provider-Problem deuten (5xx, 429, Timeouts), zählen für den Breaker.
+     */
+    private static void recordFailure(LlmCircuitBreaker.Breaker breaker, Throwable error) {
+        if (LlmRetryPolicy.isRetryable(error)) {
+            breaker.onFailure();
+        } else {
+            breaker.onIgnored();
+        }
+    }
+
+    /**
+     * 429 und Timeouts sind Überlast-Signale, alle anderen Fehler sagen nichts über die Last aus.
+     */
+    static AdaptiveConcurrencyLimiter.Outcome classify(Throwable error) {
+        if (error instanceof HttpStatusCodeException http) {
+            return http.getStatusCode().value() == 429
+                    ? AdaptiveConcurrencyLimiter.Outcome.DROPPED
+                    : AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+        }
+        if (error instanceof WebClientResponseException http) {
+            return http.getStatusCode().value() == 429
+                    ? AdaptiveConcurrencyLimiter.Outcome.DROPPED
+                    : AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+        }
+        if (error instanceof ResourceAccessException
+                || error instanceof WebClientRequestException
+                || error instanceof TimeoutException
+                || error.getCause() instanceof TimeoutException) {
+            return AdaptiveConcurrencyLimiter.Outcome.DROPPED;
+        }
+        return AdaptiveConcurrencyLimiter.Outcome.IGNORED;
+    }
+
+    private static String awaitInFlight(CompletableFuture<String> inFlight) {
+        try {
+            return inFlight.join();
+        } catch (CompletionException e) {
+            // Fehler des ursprünglichen Aufrufs unverändert weiterreichen
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String extractMessageContent(Map<String, Object> body) {
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) body.get("choices");
+        if (choices == null || choices.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
+        return message != null ? (String) message.get("content") : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String extractText(Map<String, Object> body) {
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) body.get("choices");
+        if (choices == null || choices.isEmpty()) {
+            return null;
+        }
+        return (String) choices.get(0).get("text");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> parseChunk(String data) {
+        if (data.isEmpty()) {
+            return Map.of();
+        }
+        try {
+            return objectMapper.readValue(data, Map.class);
+        } catch (Exception e) {
+            log.warn("⚠️ Stream-Chunk nicht lesbar: {}", e.getMessage());
+            return Map.of();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static String extractDeltaContent(Map<String, Object> chunk) {
+        List<Map<String, Object>> choices = (List<Map<String, Object>>) chunk.get("choices");
+        if (choices == null || choices.isEmpty()) {
+            return "";
+        }
+        Map<String, Object> delta = (Map<String, Object>) choices.get(0).get("delta");
+        Object content = delta != null ? delta.get("content") : null;
+        return content != null ? content.toString() : "";
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
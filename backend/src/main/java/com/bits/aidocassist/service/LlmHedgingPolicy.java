@@ -0,0 +1,192 @@
+package com.bits.aidocassist.service;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.bits.aidocassist.exception.LlmUnavailableException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Hedged Requests für blockierende LLM-Aufrufe (optional, {@code openai.hedging.enabled}).
+ *
+ * Ist nach dem konfigurierten Perzentil der letzten Latenzen derselben Operation
+ * (Standard p90) noch keine Antwort da, wird ein zweiter identischer Request
+ * gestartet. Die erste erfolgreiche Antwort gewinnt, der Verlierer wird per
+ * Interrupt abgebrochen (Reactor Netty gibt die Verbindung dabei frei).
+ * Höchstens {@code budget-ratio} (Standard 5 %) zusätzliche Aufrufe.
+ * Beide Versuche laufen auf virtuellen Threads ({@link AnalysisTaskRunner#io()}), damit
+ * Map-Reduce-Fan-outs keine Plattform-Threads je LLM-Aufruf anlegen.
+ */
+@Component
+public class LlmHedgingPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmHedgingPolicy.class);
+
+    private static final int LATENCY_WINDOW = 100;
+
+    private final boolean enabled;
+    private final double percentile;
+    private final double budgetRatio;
+    private final int minSamples;
+
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+    private final Executor executor;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder hedgesSkippedByBudget = new LongAdder();
+
+    public LlmHedgingPolicy(AnalysisTaskRunner taskRunner,
+            @Value("${openai.hedging.enabled:false}") boolean enabled,
+            @Value("${openai.hedging.percentile:0.9}") double percentile,
+            @Value("${openai.hedging.budget-ratio:0.05}") double budgetRatio,
+            @Value("${openai.hedging.min-samples:20}") int minSamples,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.minSamples = Math.max(1, Math.min(minSamples, LATENCY_WINDOW));
+
+        // überträgt auch den Verbrauchs-Scope der Anfrage
+        this.executor = taskRunner.io();
+
+        meterRegistry.ifAvailable(registry -> {
+            FunctionCounter.builder("llm.hedging.sent", hedgesSent, LongAdder::sum)
+                    .description("Zusätzlich gestartete Hedge-Requests").register(registry);
+            FunctionCounter.builder("llm.hedging.won", hedgesWon, LongAdder::sum)
+                    .description("Hedge-Requests, die vor dem ursprünglichen Request geantwortet haben")
+                    .register(registry);
+        });
+    }
+
+    /**
+     * Führt {@code call} aus und startet bei Bedarf einen Hedge.
+     */
+    public <T> T execute(String operation, Supplier<T> call) {
+        LatencyWindow window = latencies.computeIfAbsent(operation, op -> new LatencyWindow());
+        long hedgeDelayMs = enabled ? window.percentileMs(percentile, minSamples) : -1;
+        if (hedgeDelayMs < 0) {
+            return timed(window, call);
+        }
+
+        calls.increment();
+        CompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Callable<T> attempt = () -> timed(window, call);
+        Future<T> primary = completion.submit(attempt);
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(hedgeDelayMs, TimeUnit.MILLISECONDS);
+            if (done != null) {
+                return result(done);
+            }
+            if (hedgesSent.sum() + 1 > budgetRatio * calls.sum()) {
+                hedgesSkippedByBudget.increment();
+                return result(primary);
+            }
+
+            hedgesSent.increment();
+            log.debug("🪁 Hedge für {} nach {} ms gestartet", operation, hedgeDelayMs);
+            hedge = completion.submit(attempt);
+
+            Future<T> first = completion.take();
+            try {
+                T value = result(first);
+                if (first == hedge) {
+                    hedgesWon.increment();
+                }
+                return value;
+            } catch (RuntimeException firstError) {
+                // Erste Antwort war ein Fehler → auf den anderen Request warten
+                return result(completion.take());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("LLM-Aufruf unterbrochen (" + operation + ")", e);
+        } finally {
+            // Verlierer abbrechen; bereits fertige Futures ignorieren das
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("percentile", percentile);
+        stats.put("budgetRatio", budgetRatio);
+        stats.put("hedgeableCalls", calls.sum());
+        stats.put("hedgesSent", hedgesSent.sum());
+        stats.put("hedgesWon", hedgesWon.sum());
+        stats.put("skippedByBudget", hedgesSkippedByBudget.sum());
+        Map<String, Object> thresholds = new LinkedHashMap<>();
+        latencies.forEach((operation, window) ->
+                thresholds.put(operation, window.percentileMs(percentile, minSamples)));
+        stats.put("hedgeDelayMs", thresholds);
+        return stats;
+    }
+
+    private static <T> T timed(LatencyWindow window, Supplier<T> call) {
+        long start = System.nanoTime();
+        T value = call.get();
+        window.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return value;
+    }
+
+    private static <T> T result(Future<T> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Ringpuffer der letzten erfolgreichen Latenzen einer Operation.
+     */
+    private static final class LatencyWindow {
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int next;
+        private int count;
+
+        synchronized void record(long latencyMs) {
+            samples[next] = latencyMs;
+            next = (next + 1) % samples.length;
+            count = Math.min(samples.length, count + 1);
+        }
+
+        synchronized long percentileMs(double percentile, int minSamples) {
+            if (count < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
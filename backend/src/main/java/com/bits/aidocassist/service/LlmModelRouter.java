@@ -0,0 +1,334 @@
+package com.bits.aidocassist.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Modellwahl je LLM-Aufruf nach Operation, Dokumentgröße und Latenzziel.
+ *
+ * Die Routing-Tabelle ({@code openai.routing.routes}) ist nach Präferenz sortiert,
+ * Einträge im Format {@code name|modell|operationen|max-input-tokens}, getrennt durch {@code ;}
+ * ({@code *} = alle Operationen). Gewählt wird die erste Route, die die Operation bedient
+ * und das Dokument aufnimmt. Routen mit schlechter Feedback-Bewertung (unter
+ * {@code min-rating} ab {@code min-samples} Bewertungen) werden übersprungen; liegt die
+ * beobachtete Latenz über dem Ziel der Operation ({@code latency-targets}), wird eine
+ * spätere Route bevorzugt, die das Ziel einhält. Ohne passende Route gilt das Modell
+ * des Aufrufers (Route {@code default}).
+ *
+ * Bewertungen und Latenz-Messwerte verlieren mit der Halbwertszeit {@code decay-half-life-ms}
+ * an Gewicht. Eine ausgeschlossene Route bekommt keinen Verkehr und damit keine neuen
+ * Messwerte; fällt ihr Gewicht unter {@code min-samples}, wird sie wieder gewählt und
+ * neu gemessen, statt bis zum Neustart gesperrt zu bleiben.
+ */
+@Component
+public class LlmModelRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmModelRouter.class);
+
+    public static final String DEFAULT_ROUTE = "default";
+
+    // Glättung der Latenz (EWMA)
+    private static final double LATENCY_ALPHA = 0.2;
+
+    private final boolean enabled;
+    private final List<Route> routes;
+    private final Map<String, Long> latencyTargetsMs;
+    private final double minRating;
+    private final int minSamples;
+    private final long decayHalfLifeNanos;
+
+    private final Map<String, RouteStats> stats = new ConcurrentHashMap<>();
+
+    public LlmModelRouter(
+            @Value("${openai.routing.enabled:true}") boolean enabled,
+            @Value("${openai.routing.routes:}") String routes,
+            @Value("${openai.routing.latency-targets:}") String latencyTargets,
+            @Value("${openai.routing.min-rating:2.5}") double minRating,
+            @Value("${openai.routing.min-samples:10}") int minSamples,
+            @Value("${openai.routing.decay-half-life-ms:1800000}") long decayHalfLifeMs) {
+        this.enabled = enabled;
+        this.routes = parseRoutes(routes);
+        this.latencyTargetsMs = parseLatencyTargets(latencyTargets);
+        this.minRating = minRating;
+        this.minSamples = Math.max(1, minSamples);
+        this.decayHalfLifeNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, decayHalfLifeMs));
+        if (enabled && !this.routes.isEmpty()) {
+            log.info("🧭 Modell-Routing aktiv: {}", this.routes.stream()
+                    .map(r -> r.name() + "→" + r.model()).collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * Eintrag der Routing-Tabelle.
+     */
+    public record Route(String name, String model, Set<String> operations, int maxInputTokens) {
+
+        boolean accepts(String operation, int inputTokens) {
+            return (operations.contains("*") || operations.contains(operation)) && inputTokens <= maxInputTokens;
+        }
+    }
+
+    /**
+     * Gewählte Route; {@code maxInputTokens <= 0} heißt: globales Token-Budget verwenden.
+     */
+    public record Decision(String route, String model, int maxInputTokens) {
+    }
+
+    /**
+     * Route für einen Aufruf mit {@code inputTokens} Dokument-Tokens.
+     *
+     * @param defaultModel Modell des Aufrufers, wenn keine Route passt
+     */
+    public Decision route(String operation, int inputTokens, String defaultModel) {
+        if (!enabled) {
+            return new Decision(DEFAULT_ROUTE, defaultModel, 0);
+        }
+
+        List<Route> candidates = new ArrayList<>();
+        for (Route route : routes) {
+            if (route.accepts(operation, inputTokens) && !isDemoted(route)) {
+                candidates.add(route);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new Decision(DEFAULT_ROUTE, defaultModel, 0);
+        }
+
+        Route chosen = candidates.get(0);
+        Long target = latencyTargetsMs.get(operation);
+        if (target != null && !meetsLatencyTarget(chosen, target)) {
+            chosen = candidates.stream()
+                    .filter(route -> meetsLatencyTarget(route, target))
+                    .findFirst()
+                    .orElse(chosen);
+        }
+        return new Decision(chosen.name(), chosen.model(), chosen.maxInputTokens());
+    }
+
+    /**
+     * Latenz und Erfolg eines gerouteten Aufrufs.
+     */
+    public void recordOutcome(Decision decision, long latencyMs, boolean success) {
+        if (decision != null) {
+            statsFor(decision.route()).recordCall(latencyMs, success);
+        }
+    }
+
+    /**
+     * Nutzerbewertung (1-5) für ein Ergebnis, das über {@code route} erzeugt wurde.
+     */
+    public void recordRating(String route, int rating) {
+        if (route != null && !route.isBlank() && rating >= 1 && rating <= 5) {
+            statsFor(route).recordRating(rating);
+        }
+    }
+
+    /**
+     * Tabelle und Kennzahlen je Route (für {@code /api/ai/llm/routes}).
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("latencyTargetsMs", latencyTargetsMs);
+        result.put("minRating", minRating);
+
+        List<Map<String, Object>> table = new ArrayList<>();
+        for (Route route : routes) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("route", route.name());
+            entry.put("model", route.model());
+            entry.put("operations", route.operations());
+            entry.put("maxInputTokens", route.maxInputTokens());
+            entry.put("demoted", isDemoted(route));
+            entry.putAll(statsFor(route.name()).snapshot());
+            table.add(entry);
+        }
+        result.put("routes", table);
+        if (stats.containsKey(DEFAULT_ROUTE)) {
+            result.put(DEFAULT_ROUTE, stats.get(DEFAULT_ROUTE).snapshot());
+        }
+        return result;
+    }
+
+    /**
+     * Routen je Analysefeld als kompakter String für {@code Document.analysisRoutes}.
+     */
+    public static String encodeFieldRoutes(Map<String, String> routes) {
+        if (routes == null || routes.isEmpty()) {
+            return null;
+        }
+        return routes.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .collect(Collectors.joining(","));
+    }
+
+    public static Map<String, String> decodeFieldRoutes(String encoded) {
+        Map<String, String> routes = new LinkedHashMap<>();
+        if (encoded == null || encoded.isBlank()) {
+            return routes;
+        }
+        for (String entry : encoded.split(",")) {
+            int separator = entry.indexOf('=');
+            if (separator > 0) {
+                routes.put(entry.substring(0, separator).trim(), entry.substring(separator + 1).trim());
+            }
+        }
+        return routes;
+    }
+
+    private boolean isDemoted(Route route) {
+        RouteStats routeStats = stats.get(route.name());
+        return routeStats != null && routeStats.averageRating(minSamples) < minRating;
+    }
+
+    private boolean meetsLatencyTarget(Route route, long targetMs) {
+        RouteStats routeStats = stats.get(route.name());
+        return routeStats == null || routeStats.latencyMs(minSamples) <= targetMs;
+    }
+
+    private RouteStats statsFor(String route) {
+        return stats.computeIfAbsent(route, name -> new RouteStats(decayHalfLifeNanos));
+    }
+
+    static List<Route> parseRoutes(String table) {
+        List<Route> parsed = new ArrayList<>();
+        if (table == null || table.isBlank()) {
+            return parsed;
+        }
+        for (String entry : table.split(";")) {
+            String[] parts = entry.trim().split("\\|");
+            if (parts.length != 4) {
+                if (!entry.isBlank()) {
+                    log.warn("⚠️ Ungültiger Routing-Eintrag ignoriert: {}", entry.trim());
+                }
+                continue;
+            }
+            Set<String> operations = Arrays.stream(parts[2].split(","))
+                    .map(String::trim)
+                    .filter(op -> !op.isEmpty())
+                    .collect(Collectors.toUnmodifiableSet());
+            try {
+                parsed.add(new Route(parts[0].trim(), parts[1].trim(), operations,
+                        Integer.parseInt(parts[3].trim())));
+            } catch (NumberFormatException e) {
+                log.warn("⚠️ Ungültiges Token-Limit im Routing-Eintrag: {}", entry.trim());
+            }
+        }
+        return List.copyOf(parsed);
+    }
+
+    static Map<String, Long> parseLatencyTargets(String targets) {
+        Map<String, Long> parsed = new LinkedHashMap<>();
+        if (targets == null || targets.isBlank()) {
+            return parsed;
+        }
+        for (String entry : targets.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length == 2) {
+                try {
+                    parsed.put(parts[0].trim(), Long.parseLong(parts[1].trim()));
+                } catch (NumberFormatException e) {
+                    log.warn("⚠️ Ungültiges Latenzziel ignoriert: {}", entry.trim());
+                }
+            }
+        }
+        return Map.copyOf(parsed);
+    }
+
+    /**
+     * Kennzahlen einer Route: geglättete Latenz, Fehlerquote, Feedback-Bewertung.
+     * Gewicht von Latenz-Messwerten und Bewertungen halbiert sich je Halbwertszeit.
+     */
+    private static final class RouteStats {
+        private final long halfLifeNanos;
+        private long calls;
+        private long failures;
+        private double ewmaLatencyMs = -1;
+        private double latencyWeight;
+        private long ratings;
+        private double ratingWeight;
+        private double ratingSum;
+        private long decayedAtNanos = System.nanoTime();
+
+        RouteStats(long halfLifeNanos) {
+            this.halfLifeNanos = halfLifeNanos;
+        }
+
+        synchronized void recordCall(long latencyMs, boolean success) {
+            decay();
+            calls++;
+            if (!success) {
+                failures++;
+                return;
+            }
+            ewmaLatencyMs = ewmaLatencyMs < 0
+                    ? latencyMs
+                    : LATENCY_ALPHA * latencyMs + (1 - LATENCY_ALPHA) * ewmaLatencyMs;
+            latencyWeight++;
+        }
+
+        synchronized void recordRating(int rating) {
+            decay();
+            ratings++;
+            ratingWeight++;
+            ratingSum += rating;
+        }
+
+        /**
+         * Geglättete Latenz, 0 solange das (gerundete) Gewicht der Messwerte unter
+         * {@code minSamples} liegt.
+         */
+        synchronized double latencyMs(int minSamples) {
+            decay();
+            return Math.round(latencyWeight) >= minSamples ? ewmaLatencyMs : 0;
+        }
+
+        /**
+         * Gewichtete Durchschnittsbewertung, 5 solange das (gerundete) Gewicht unter
+         * {@code minSamples} liegt.
+         */
+        synchronized double averageRating(int minSamples) {
+            decay();
+            return Math.round(ratingWeight) >= minSamples ? ratingSum / ratingWeight : 5;
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            decay();
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("calls", calls);
+            snapshot.put("failures", failures);
+            snapshot.put("latencyMs", ewmaLatencyMs < 0 ? null : Math.round(ewmaLatencyMs));
+            snapshot.put("latencyWeight", Math.round(latencyWeight * 100) / 100.0);
+            snapshot.put("ratings", ratings);
+            snapshot.put("ratingWeight", Math.round(ratingWeight * 100) / 100.0);
+            snapshot.put("averageRating", ratingWeight > 0 ? Math.round(ratingSum * 100 / ratingWeight) / 100.0 : null);
+            return snapshot;
+        }
+
+        private void decay() {
+            long now = System.nanoTime();
+            long elapsed = now - decayedAtNanos;
+            if (halfLifeNanos <= 0 || elapsed <= 0) {
+                return;
+            }
+            double factor = Math.pow(0.5, (double) elapsed / halfLifeNanos);
+            latencyWeight *= factor;
+            ratingWeight *= factor;
+            ratingSum *= factor;
+            decayedAtNanos = now;
+        }
+    }
+}
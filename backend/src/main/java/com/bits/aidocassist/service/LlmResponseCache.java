@@ -0,0 +1,134 @@
+package com.bits.aidocassist.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Inhaltsadressierter Cache für LLM-Antworten.
+ *
+ * Schlüssel ist der SHA-256 über den kanonischen Request (Modell, Messages,
+ * Temperatur, max_tokens, Sampling-Parameter). Caffeine begrenzt den Cache nach
+ * geschätzten Bytes (W-TinyLFU-Eviction) und verwirft Einträge nach der TTL.
+ * Statistiken: {@code GET /api/ai/cache/stats} sowie {@code cache.*{cache=llm-responses}}
+ * in {@code /actuator/metrics}.
+ */
+@Component
+public class LlmResponseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmResponseCache.class);
+
+    // Grobe Objekt-Overheads pro Eintrag (Node, String-Header, Hash-Key)
+    private static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    // Sortierte Keys → gleicher Request ergibt immer denselben Hash
+    private static final ObjectMapper CANONICAL_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final Duration ttl;
+    private final Cache<String, String> cache;
+
+    public LlmResponseCache(
+            @Value("${openai.cache.enabled:true}") boolean enabled,
+            @Value("${openai.cache.max-size-mb:32}") long maxSizeMb,
+            @Value("${openai.cache.ttl-minutes:360}") long ttlMinutes,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.enabled = enabled;
+        this.maxBytes = maxSizeMb * 1024 * 1024;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher((String key, String value) -> estimateBytes(key, value))
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+
+        meterRegistry.ifAvailable(registry -> CaffeineCacheMetrics.monitor(registry, cache, "llm-responses"));
+        log.info("🗄️ LLM-Response-Cache: enabled={}, max={} MB, ttl={} min", enabled, maxSizeMb, ttlMinutes);
+    }
+
+    /**
+     * Hash über den kompletten Request-Body ohne Transport-Flags ({@code stream},
+     * {@code stream_options}), damit Stream und blockierender Aufruf denselben Eintrag teilen.
+     */
+    public String keyFor(Map<String, Object> requestBody) {
+        Map<String, Object> canonical = new TreeMap<>(requestBody);
+        canonical.remove("stream");
+        canonical.remove("stream_options");
+        try {
+            byte[] json = CANONICAL_MAPPER.writeValueAsBytes(canonical);
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(json));
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("LLM-Cache-Key konnte nicht berechnet werden", e);
+        }
+    }
+
+    public String get(String key) {
+        return enabled ? cache.getIfPresent(key) : null;
+    }
+
+    public void put(String key, String response) {
+        if (enabled && response != null) {
+            cache.put(key, response);
+        }
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+        log.info("🧹 LLM-Response-Cache geleert");
+    }
+
+    public Map<String, Object> getStats() {
+        CacheStats stats = cache.stats();
+        long weightedBytes = cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L))
+                .orElse(0L);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", enabled);
+        result.put("entries", cache.estimatedSize());
+        result.put("sizeBytes", weightedBytes);
+        result.put("maxBytes", maxBytes);
+        result.put("ttlMinutes", ttl.toMinutes());
+        result.put("hits", stats.hitCount());
+        result.put("misses", stats.missCount());
+        result.put("hitRate", Math.round(stats.hitRate() * 1000) / 10.0);
+        result.put("evictions", stats.evictionCount());
+        result.put("evictedBytes", stats.evictionWeight());
+        return result;
+    }
+
+    static int estimateBytes(String key, String value) {
+        // Java-Strings: Latin-1 = 1 Byte/Zeichen, sonst UTF-16 = 2 Bytes/Zeichen
+        long bytes = ENTRY_OVERHEAD_BYTES + key.length() + stringBytes(value);
+        return (int) Math.min(Integer.MAX_VALUE, bytes);
+    }
+
+    private static long stringBytes(String value) {
+        boolean latin1 = StandardCharsets.ISO_8859_1.newEncoder().canEncode(value);
+        return latin1 ? value.length() : 2L * value.length();
+    }
+}
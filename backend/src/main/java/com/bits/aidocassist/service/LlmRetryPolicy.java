@@ -0,0 +1,367 @@
+package com.bits.aidocassist.service;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import com.bits.aidocassist.exception.LlmUnavailableException;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Retry-Logik für LLM-Aufrufe mit Rücksicht auf die Provider-Quota.
+ *
+ * <ul>
+ *   <li>Exponentielles Backoff mit Jitter, höchstens {@code openai.api.max-retries} Wiederholungen</li>
+ *   <li>{@code Retry-After} / {@code retry-after-ms} haben Vorrang vor dem berechneten Backoff</li>
+ *   <li>{@code x-ratelimit-remaining-*} / {@code x-ratelimit-reset-*} jeder Antwort werden gemerkt;
+ *       ist die Quota fast aufgebraucht, werden neue Requests vorab verzögert</li>
+ *   <li>Pro Aufruf gilt ein Zeitbudget: passt die nächste Wartezeit nicht mehr hinein,
+ *       wird nicht erneut versucht</li>
+ * </ul>
+ */
+@Component
+public class LlmRetryPolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(LlmRetryPolicy.class);
+
+    // OpenAI-Format für Reset-Zeiten, z.B. "1s", "6m0s", "20ms", "1h2m3.5s"
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+(?:\\.\\d+)?)(ms|h|m|s)");
+
+    private final int maxRetries;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long budgetMs;
+    private final double quotaLowWatermark;
+
+    private final QuotaWindow requestQuota = new QuotaWindow();
+    private final QuotaWindow tokenQuota = new QuotaWindow();
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+    private final LongAdder quotaPauses = new LongAdder();
+
+    public LlmRetryPolicy(
+            @Value("${openai.api.max-retries:3}") int maxRetries,
+            @Value("${openai.retry.initial-backoff-ms:500}") long initialBackoffMs,
+            @Value("${openai.retry.max-backoff-ms:8000}") long maxBackoffMs,
+            @Value("${openai.retry.budget-ms:45000}") long budgetMs,
+            @Value("${openai.retry.quota-low-watermark:0.05}") double quotaLowWatermark,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.maxRetries = Math.max(0, maxRetries);
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.budgetMs = budgetMs;
+        this.quotaLowWatermark = quotaLowWatermark;
+
+        meterRegistry.ifAvailable(registry -> {
+            FunctionCounter.builder("llm.retry.attempts", retries, LongAdder::sum)
+                    .description("Wiederholte LLM-Aufrufe").register(registry);
+            FunctionCounter.builder("llm.retry.budget-exhausted", budgetExhausted, LongAdder::sum)
+                    .description("Abgebrochene Retries, weil das Zeitbudget nicht mehr reicht").register(registry);
+            FunctionCounter.builder("llm.retry.quota-pauses", quotaPauses, LongAdder::sum)
+                    .description("Vorab verzögerte Requests wegen knapper Rate-Limit-Quota").register(registry);
+        });
+    }
+
+    public <T> T execute(String operation, Supplier<T> attempt) {
+        return execute(operation, attempt, () -> true);
+    }
+
+    /**
+     * Führt {@code attempt} mit Retries aus.
+     *
+     * @param retryAllowed wird nach einem Fehler geprüft, z.B. um Streams nach dem
+     *                     ersten Token nicht mehr zu wiederholen
+     */
+    public <T> T execute(String operation, Supplier<T> attempt, BooleanSupplier retryAllowed) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+        int attemptNo = 0;
+        while (true) {
+            awaitQuota(operation, deadline);
+            try {
+                return attempt.get();
+            } catch (RuntimeException e) {
+                HttpHeaders headers = headersOf(e);
+                if (headers != null) {
+                    observe(headers);
+                }
+                if (attemptNo >= maxRetries || !isRetryable(e) || !retryAllowed.getAsBoolean()) {
+                    throw e;
+                }
+
+                long delayMs = retryDelayMs(attemptNo, headers);
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (delayMs >= remainingMs) {
+                    budgetExhausted.increment();
+                    log.warn("⏱️ Kein Retry für {}: Wartezeit {} ms > Restbudget {} ms",
+                            operation, delayMs, remainingMs);
+                    throw e;
+                }
+
+                attemptNo++;
+                retries.increment();
+                log.info("🔁 Retry {}/{} für {} in {} ms ({})",
+                        attemptNo, maxRetries, operation, delayMs, e.getMessage());
+                sleep(delayMs);
+            }
+        }
+    }
+
+    /**
+     * Reaktive Variante von {@link #execute(String, Supplier)}: gleiche Quota-Pause, gleiches
+     * Backoff und Zeitbudget, gewartet wird aber mit {@code Mono.delay} statt {@code Thread.sleep}.
+     *
+     * @param attempt kaltes Mono, jede Subscription startet einen neuen Versuch
+     */
+    public <T> Mono<T> executeReactive(String operation, Mono<T> attempt) {
+        return Mono.defer(() -> {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMs);
+            return quotaPause(operation, deadline).then(attempt)
+                    .retryWhen(Retry.from(signals -> signals.concatMap(signal -> {
+                        Throwable e = signal.failure();
+                        HttpHeaders headers = headersOf(e);
+                        if (headers != null) {
+                            observe(headers);
+                        }
+                        int attemptNo = (int) signal.totalRetries();
+                        if (attemptNo >= maxRetries || !isRetryable(e)) {
+                            return Mono.error(e);
+                        }
+
+                        long delayMs = retryDelayMs(attemptNo, headers);
+                        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                        if (delayMs >= remainingMs) {
+                            budgetExhausted.increment();
+                            log.warn("⏱️ Kein Retry für {}: Wartezeit {} ms > Restbudget {} ms",
+                                    operation, delayMs, remainingMs);
+                            return Mono.error(e);
+                        }
+
+                        retries.increment();
+                        log.info("🔁 Retry {}/{} für {} in {} ms ({})",
+                                attemptNo + 1, maxRetries, operation, delayMs, e.getMessage());
+                        // Resubscribe startet wieder mit der Quota-Pause
+                        return Mono.delay(Duration.ofMillis(delayMs));
+                    })));
+        });
+    }
+
+    /**
+     * Merkt sich die Rate-Limit-Header einer Antwort (auch erfolgreicher).
+     */
+    public void observe(HttpHeaders headers) {
+        requestQuota.update(headers.getFirst("x-ratelimit-limit-requests"),
+                headers.getFirst("x-ratelimit-remaining-requests"),
+                headers.getFirst("x-ratelimit-reset-requests"));
+        tokenQuota.update(headers.getFirst("x-ratelimit-limit-tokens"),
+                headers.getFirst("x-ratelimit-remaining-tokens"),
+                headers.getFirst("x-ratelimit-reset-tokens"));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxRetries", maxRetries);
+        stats.put("budgetMs", budgetMs);
+        stats.put("retries", retries.sum());
+        stats.put("budgetExhausted", budgetExhausted.sum());
+        stats.put("quotaPauses", quotaPauses.sum());
+        stats.put("remainingRequests", requestQuota.remaining);
+        stats.put("remainingTokens", tokenQuota.remaining);
+        return stats;
+    }
+
+    long retryDelayMs(int attemptNo, HttpHeaders headers) {
+        long retryAfterMs = retryAfterMs(headers);
+        if (retryAfterMs >= 0) {
+            return retryAfterMs;
+        }
+        // Jitter: zufällig zwischen halbem und vollem exponentiellen Deckel
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attemptNo, 20));
+        return ThreadLocalRandom.current().nextLong(cap / 2, cap + 1);
+    }
+
+    /**
+     * Vorab-Verzögerung, solange die Quota (fast) erschöpft ist.
+     */
+    long quotaDelayMs() {
+        return Math.max(requestQuota.delayMs(quotaLowWatermark, true),
+                tokenQuota.delayMs(quotaLowWatermark, false));
+    }
+
+    static boolean isRetryable(Throwable error) {
+        if (error instanceof HttpStatusCodeException http) {
+            return isRetryableStatus(http.getStatusCode().value());
+        }
+        if (error instanceof WebClientResponseException http) {
+            return isRetryableStatus(http.getStatusCode().value());
+        }
+        // Verbindungs- und Timeout-Fehler
+        return error instanceof ResourceAccessException || error instanceof WebClientRequestException;
+    }
+
+    private static boolean isRetryableStatus(int status) {
+        return status == 408 || status == 409 || status == 429 || status >= 500;
+    }
+
+    static long retryAfterMs(HttpHeaders headers) {
+        if (headers == null) {
+            return -1;
+        }
+        String retryAfterMs = headers.getFirst("retry-after-ms");
+        if (retryAfterMs != null) {
+            try {
+                return (long) Double.parseDouble(retryAfterMs.trim());
+            } catch (NumberFormatException ignored) {
+                // weiter mit Retry-After
+            }
+        }
+        String retryAfter = headers.getFirst(HttpHeaders.RETRY_AFTER);
+        if (retryAfter == null || retryAfter.isBlank()) {
+            return -1;
+        }
+        try {
+            return (long) (Double.parseDouble(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(at.getZone()), at).toMillis());
+            } catch (Exception ignored) {
+                return -1;
+            }
+        }
+    }
+
+    static long parseResetMs(String value) {
+        if (value == null || value.isBlank()) {
+            return -1;
+        }
+        Matcher matcher = DURATION_PART.matcher(value.trim());
+        double totalMs = 0;
+        boolean matched = false;
+        while (matcher.find()) {
+            matched = true;
+            double amount = Double.parseDouble(matcher.group(1));
+            totalMs += switch (matcher.group(2)) {
+                case "h" -> amount * 3_600_000;
+                case "m" -> amount * 60_000;
+                case "s" -> amount * 1000;
+                default -> amount;
+            };
+        }
+        return matched ? (long) totalMs : -1;
+    }
+
+    private void awaitQuota(String operation, long deadline) {
+        long delayMs = quotaDelayMs();
+        if (delayMs <= 0) {
+            return;
+        }
+        long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMs <= 0) {
+            throw new LlmUnavailableException("Rate-Limit-Quota erschöpft (" + operation + ")");
+        }
+        quotaPauses.increment();
+        log.info("🐢 Quota fast erschöpft, verzögere {} um {} ms", operation, Math.min(delayMs, remainingMs));
+        sleep(Math.min(delayMs, remainingMs));
+    }
+
+    private Mono<Void> quotaPause(String operation, long deadline) {
+        return Mono.defer(() -> {
+            long delayMs = quotaDelayMs();
+            if (delayMs <= 0) {
+                return Mono.empty();
+            }
+            long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs <= 0) {
+                return Mono.error(new LlmUnavailableException("Rate-Limit-Quota erschöpft (" + operation + ")"));
+            }
+            quotaPauses.increment();
+            log.info("🐢 Quota fast erschöpft, verzögere {} um {} ms", operation, Math.min(delayMs, remainingMs));
+            return Mono.delay(Duration.ofMillis(Math.min(delayMs, remainingMs))).then();
+        });
+    }
+
+    private static HttpHeaders headersOf(Throwable error) {
+        if (error instanceof HttpStatusCodeException http) {
+            return http.getResponseHeaders();
+        }
+        if (error instanceof WebClientResponseException http) {
+            return http.getHeaders();
+        }
+        return null;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LlmUnavailableException("Warten auf LLM-Retry unterbrochen", e);
+        }
+    }
+
+    /**
+     * Letzter bekannter Stand eines Rate-Limit-Fensters (Requests oder Tokens).
+     */
+    private static final class QuotaWindow {
+        private volatile long limit = -1;
+        private volatile long remaining = -1;
+        private volatile long resetAtNanos;
+
+        void update(String limitHeader, String remainingHeader, String resetHeader) {
+            long resetMs = parseResetMs(resetHeader);
+            if (remainingHeader == null || resetMs < 0) {
+                return;
+            }
+            try {
+                remaining = Long.parseLong(remainingHeader.trim());
+                if (limitHeader != null) {
+                    limit = Long.parseLong(limitHeader.trim());
+                }
+                resetAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(resetMs);
+            } catch (NumberFormatException ignored) {
+                // unbekanntes Format – Quota nicht berücksichtigen
+            }
+        }
+
+        long delayMs(double lowWatermark, boolean paceRequests) {
+            long windowMs = TimeUnit.NANOSECONDS.toMillis(resetAtNanos - System.nanoTime());
+            if (remaining < 0 || windowMs <= 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return windowMs;
+            }
+            if (limit > 0 && remaining <= limit * lowWatermark) {
+                // Restliche Requests gleichmäßig auf das Fenster verteilen;
+                // Token-Quota wird bei knappem Rest bis zum Reset abgewartet
+                return paceRequests ? windowMs / remaining : windowMs;
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package com.bits.aidocassist.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Token- und Kostenbuchhaltung aller LLM-Aufrufe.
+ *
+ * Der {@link LlmClient} meldet jede Provider-Antwort mit ihrem {@code usage}-Block
+ * (Prompt-, Completion- und gecachte Tokens), Modell und Latenz. Die Werte landen
+ * <ul>
+ *   <li>im {@link Scope} der laufenden Anfrage (→ {@code metadata.llmUsage} der Response),</li>
+ *   <li>im rollierenden Speicher je Operation und Modell (Minuten-Buckets, {@code /api/ai/llm/usage}),</li>
+ *   <li>in Micrometer unter {@code llm.tokens}.</li>
+ * </ul>
+ *
+ * Der Scope hängt am Thread und wird über {@link #propagate} an virtuelle Threads und den
+ * Hedging-Pool weitergegeben; reaktive Ketten tragen ihn im Reactor-Context ({@link #withScope}).
+ * Er trägt außerdem Prioritätsklasse und Client-ID der Anfrage (Kontingente je Client).
+ */
+@Component
+public class LlmUsageTracker {
+
+    private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<>();
+    private static final String CONTEXT_KEY = LlmUsageTracker.class.getName() + ".scope";
+
+    // USD je 1 Mio. Tokens (Input, gecachter Input, Output), längster Modell-Präfix gewinnt
+    private static final Map<String, double[]> PRICES_PER_MILLION = new LinkedHashMap<>();
+    static {
+        PRICES_PER_MILLION.put("gpt-4o-mini", new double[] { 0.15, 0.075, 0.60 });
+        PRICES_PER_MILLION.put("gpt-4o", new double[] { 2.50, 1.25, 10.00 });
+        PRICES_PER_MILLION.put("gpt-4-turbo", new double[] { 10.00, 10.00, 30.00 });
+        PRICES_PER_MILLION.put("gpt-4-1106", new double[] { 10.00, 10.00, 30.00 });
+        PRICES_PER_MILLION.put("gpt-4-0125", new double[] { 10.00, 10.00, 30.00 });
+        PRICES_PER_MILLION.put("gpt-4-32k", new double[] { 60.00, 60.00, 120.00 });
+        PRICES_PER_MILLION.put("gpt-4", new double[] { 30.00, 30.00, 60.00 });
+        PRICES_PER_MILLION.put("gpt-3.5-turbo-instruct", new double[] { 1.50, 1.50, 2.00 });
+        PRICES_PER_MILLION.put("gpt-3.5-turbo", new double[] { 0.50, 0.50, 1.50 });
+    }
+
+    private final int windowMinutes;
+    private final ConcurrentHashMap<String, RollingStats> rolling = new ConcurrentHashMap<>();
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final List<BiConsumer<Scope, LlmCall>> listeners = new CopyOnWriteArrayList<>();
+
+    public LlmUsageTracker(@Value("${openai.usage.window-minutes:60}") int windowMinutes,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.windowMinutes = Math.max(1, windowMinutes);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Ein Provider-Aufruf mit den Werten aus dem {@code usage}-Block.
+     */
+    public record LlmCall(String operation, String model, int promptTokens, int completionTokens,
+            int cachedTokens, long latencyMs) {
+
+        public int totalTokens() {
+            return promptTokens + completionTokens;
+        }
+
+        @SuppressWarnings("unchecked")
+        static LlmCall fromResponse(String operation, String model, Map<String, Object> body, long latencyMs) {
+            Map<String, Object> usage = body != null && body.get("usage") instanceof Map<?, ?> map
+                    ? (Map<String, Object>) map : Map.of();
+            int cached = usage.get("prompt_tokens_details") instanceof Map<?, ?> details
+                    ? intValue(details.get("cached_tokens")) : 0;
+            return new LlmCall(operation, model, intValue(usage.get("prompt_tokens")),
+                    intValue(usage.get("completion_tokens")), cached, latencyMs);
+        }
+
+        private static int intValue(Object value) {
+            return value instanceof Number number ? number.intValue() : 0;
+        }
+    }
+
+    // ---- Anfrage-Scope ----
+
+    /**
+     * Öffnet einen Scope für den aktuellen Thread (try-with-resources); ein äußerer Scope
+     * wird beim Schließen wiederhergestellt.
+     */
+    public static Scope openScope() {
+        Scope outer = CURRENT.get();
+        return openScope(outer != null ? outer.priority : AnalysisPriority.INTERACTIVE);
+    }
+
+    /**
+     * Wie {@link #openScope()}, mit Prioritätsklasse für die LLM-Slot-Zuteilung.
+     * Die Client-ID wird vom äußeren Scope übernommen.
+     */
+    public static Scope openScope(AnalysisPriority priority) {
+        return openScope(priority, currentClientId());
+    }
+
+    /**
+     * Scope mit Prioritätsklasse und Client-ID (z.B. Analyse-Job ohne umgebende Anfrage).
+     */
+    public static Scope openScope(AnalysisPriority priority, String clientId) {
+        Scope scope = new Scope(CURRENT.get(), true, priority, clientId);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * Scope ohne Thread-Bindung, für reaktive Ketten über {@link #withScope}.
+     */
+    public static Scope newScope() {
+        return newScope(AnalysisPriority.INTERACTIVE);
+    }
+
+    public static Scope newScope(AnalysisPriority priority) {
+        return new Scope(null, false, priority, currentClientId());
+    }
+
+    /**
+     * Client-ID des aktuellen Threads (gesetzt vom {@code ClientQuotaFilter}) oder {@code null}.
+     */
+    public static String currentClientId() {
+        Scope scope = CURRENT.get();
+        return scope != null ? scope.clientId : null;
+    }
+
+    /**
+     * Prioritätsklasse des aktuellen Threads bzw. Reactor-Contexts.
+     */
+    static AnalysisPriority priorityOf(Scope scope) {
+        return scope != null ? scope.priority : AnalysisPriority.INTERACTIVE;
+    }
+
+    public static Scope current() {
+        return CURRENT.get();
+    }
+
+    public static Function<Context, Context> withScope(Scope scope) {
+        return context -> context.put(CONTEXT_KEY, scope);
+    }
+
+    static Scope fromContext(ContextView context) {
+        return context.getOrDefault(CONTEXT_KEY, CURRENT.get());
+    }
+
+    /**
+     * Überträgt den Scope des aufrufenden Threads auf die Ausführung von {@code task}.
+     */
+    public static Runnable propagate(Runnable task) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            return task;
+        }
+        return () -> {
+            Scope previous = CURRENT.get();
+            CURRENT.set(scope);
+            try {
+                task.run();
+            } finally {
+                restore(previous);
+            }
+        };
+    }
+
+    public static <T> Callable<T> propagate(Callable<T> task) {
+        Scope scope = CURRENT.get();
+        if (scope == null) {
+            return task;
+        }
+        return () -> callWithin(scope, task);
+    }
+
+    /**
+     * Blockierender Teil einer reaktiven Kette: der Scope aus dem Reactor-Context gilt
+     * während {@code task} auch für den Thread.
+     */
+    public static <T> Mono<T> blocking(Callable<T> task) {
+        return Mono.deferContextual(context -> {
+            Scope scope = fromContext(context);
+            if (scope == null) {
+                return Mono.fromCallable(task);
+            }
+            return Mono.fromCallable(() -> callWithin(scope, task));
+        });
+    }
+
+    private static <T> T callWithin(Scope scope, Callable<T> task) throws Exception {
+        Scope previous = CURRENT.get();
+        CURRENT.set(scope);
+        try {
+            return task.call();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    private static void restore(Scope previous) {
+        if (previous != null) {
+            CURRENT.set(previous);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    // ---- Erfassung ----
+
+    /**
+     * Wird bei jedem erfassten Aufruf mit dem Scope der Anfrage benachrichtigt.
+     */
+    public void addListener(BiConsumer<Scope, LlmCall> listener) {
+        listeners.add(listener);
+    }
+
+    public void record(Scope scope, LlmCall call) {
+        if (scope != null) {
+            scope.calls.add(call);
+        }
+        for (BiConsumer<Scope, LlmCall> listener : listeners) {
+            listener.accept(scope, call);
+        }
+        long minute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        rolling.computeIfAbsent(call.operation() + "|" + call.model(),
+                key -> new RollingStats(call.operation(), call.model(), windowMinutes)).add(call, minute);
+
+        meterRegistry.ifAvailable(registry -> {
+            count(registry, call, "prompt", call.promptTokens() - call.cachedTokens());
+            count(registry, call, "cached", call.cachedTokens());
+            count(registry, call, "completion", call.completionTokens());
+        });
+    }
+
+    public void recordCacheHit(Scope scope) {
+        if (scope != null) {
+            scope.cacheHits.increment();
+        }
+    }
+
+    private static void count(MeterRegistry registry, LlmCall call, String type, int tokens) {
+        if (tokens > 0) {
+            Counter.builder("llm.tokens")
+                    .description("Vom Provider abgerechnete Tokens")
+                    .tags("operation", call.operation(), "model", String.valueOf(call.model()), "type", type)
+                    .register(registry)
+                    .increment(tokens);
+        }
+    }
+
+    /**
+     * Aggregat je Operation und Modell über das rollierende Fenster.
+     *
+     * @param sortBy "tokens" (Standard), "latency", "cost" oder "calls"
+     */
+    public Map<String, Object> getUsage(String sortBy, int limit) {
+        long nowMinute = TimeUnit.MILLISECONDS.toMinutes(System.currentTimeMillis());
+        List<Map<String, Object>> operations = new ArrayList<>();
+        for (RollingStats stats : rolling.values()) {
+            Map<String, Object> snapshot = stats.snapshot(nowMinute);
+            if ((long) snapshot.get("calls") > 0) {
+                operations.add(snapshot);
+            }
+        }
+
+        String key = switch (sortBy != null ? sortBy : "tokens") {
+            case "latency" -> "totalLatencyMs";
+            case "cost" -> "estimatedCostUsd";
+            case "calls" -> "calls";
+            default -> "totalTokens";
+        };
+        operations.sort(Comparator.comparingDouble(
+                (Map<String, Object> entry) -> ((Number) entry.get(key)).doubleValue()).reversed());
+
+        Map<String, Object> usage = new LinkedHashMap<>();
+        usage.put("windowMinutes", windowMinutes);
+        usage.put("sortBy", key);
+        usage.put("operations", operations.subList(0, Math.min(Math.max(0, limit), operations.size())));
+        return usage;
+    }
+
+    /**
+     * Geschätzte Kosten in USD oder -1 für unbekannte Modelle.
+     */
+    static double estimateCostUsd(String model, long promptTokens, long cachedTokens, long completionTokens) {
+        String name = model != null ? model.toLowerCase() : "";
+        double[] prices = null;
+        int bestLength = -1;
+        for (Map.Entry<String, double[]> entry : PRICES_PER_MILLION.entrySet()) {
+            if (name.startsWith(entry.getKey()) && entry.getKey().length() > bestLength) {
+                bestLength = entry.getKey().length();
+                prices = entry.getValue();
+            }
+        }
+        if (prices == null) {
+            return -1;
+        }
+        return ((promptTokens - cachedTokens) * prices[0] + cachedTokens * prices[1]
+                + completionTokens * prices[2]) / 1_000_000d;
+    }
+
+    private static double round6(double value) {
+        return Math.round(value * 1_000_000d) / 1_000_000d;
+    }
+
+    /**
+     * Sammelt die LLM-Aufrufe einer Anfrage (thread-sicher, Aufrufe laufen parallel).
+     */
+    public static final class Scope implements AutoCloseable {
+        private final Scope previous;
+        private final boolean bound;
+        private final AnalysisPriority priority;
+        private final String clientId;
+        private final Queue<LlmCall> calls = new ConcurrentLinkedQueue<>();
+        private final LongAdder cacheHits = new LongAdder();
+
+        private Scope(Scope previous, boolean bound, AnalysisPriority priority, String clientId) {
+            this.previous = previous;
+            this.bound = bound;
+            this.priority = priority != null ? priority : AnalysisPriority.INTERACTIVE;
+            this.clientId = clientId;
+        }
+
+        public AnalysisPriority getPriority() {
+            return priority;
+        }
+
+        public String getClientId() {
+            return clientId;
+        }
+
+        public List<LlmCall> getCalls() {
+            return List.copyOf(calls);
+        }
+
+        public boolean isEmpty() {
+            return calls.isEmpty() && cacheHits.sum() == 0;
+        }
+
+        /**
+         * Summen der Anfrage, zusätzlich aufgeschlüsselt nach Operation.
+         */
+        public Map<String, Object> toMetadata() {
+            Map<String, Object> metadata = new LinkedHashMap<>();
+            Totals all = new Totals();
+            Map<String, Totals> byOperation = new LinkedHashMap<>();
+            for (LlmCall call : calls) {
+                all.add(call);
+                byOperation.computeIfAbsent(call.operation(), op -> new Totals()).add(call);
+            }
+            metadata.putAll(all.toMap());
+            metadata.put("cacheHits", cacheHits.sum());
+            Map<String, Object> operations = new LinkedHashMap<>();
+            byOperation.forEach((operation, totals) -> operations.put(operation, totals.toMap()));
+            metadata.put("byOperation", operations);
+            return metadata;
+        }
+
+        @Override
+        public void close() {
+            if (bound) {
+                restore(previous);
+            }
+        }
+    }
+
+    private static final class Totals {
+        private long calls;
+        private long promptTokens;
+        private long completionTokens;
+        private long cachedTokens;
+        private long latencyMs;
+        private double costUsd;
+        private boolean costKnown = true;
+
+        void add(LlmCall call) {
+            calls++;
+            promptTokens += call.promptTokens();
+            completionTokens += call.completionTokens();
+            cachedTokens += call.cachedTokens();
+            latencyMs += call.latencyMs();
+            double cost = estimateCostUsd(call.model(), call.promptTokens(), call.cachedTokens(),
+                    call.completionTokens());
+            if (cost < 0) {
+                costKnown = false;
+            } else {
+                costUsd += cost;
+            }
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", calls);
+            map.put("promptTokens", promptTokens);
+            map.put("completionTokens", completionTokens);
+            map.put("cachedTokens", cachedTokens);
+            map.put("totalTokens", promptTokens + completionTokens);
+            map.put("latencyMs", latencyMs);
+            map.put("estimatedCostUsd", costKnown ? round6(costUsd) : null);
+            return map;
+        }
+    }
+
+    /**
+     * Ringpuffer aus Minuten-Buckets für eine Kombination aus Operation und Modell.
+     */
+    private static final class RollingStats {
+        private final String operation;
+        private final String model;
+        private final long[] minutes;
+        private final long[][] values;
+
+        // Indizes in values
+        private static final int CALLS = 0;
+        private static final int PROMPT = 1;
+        private static final int COMPLETION = 2;
+        private static final int CACHED = 3;
+        private static final int LATENCY = 4;
+        private static final int MAX_LATENCY = 5;
+
+        RollingStats(String operation, String model, int windowMinutes) {
+            this.operation = operation;
+            this.model = model;
+            this.minutes = new long[windowMinutes];
+            this.values = new long[windowMinutes][6];
+        }
+
+        synchronized void add(LlmCall call, long minute) {
+            int index = (int) (minute % minutes.length);
+            if (minutes[index] != minute) {
+                minutes[index] = minute;
+                values[index] = new long[6];
+            }
+            long[] bucket = values[index];
+            bucket[CALLS]++;
+            bucket[PROMPT] += call.promptTokens();
+            bucket[COMPLETION] += call.completionTokens();
+            bucket[CACHED] += call.cachedTokens();
+            bucket[LATENCY] += call.latencyMs();
+            bucket[MAX_LATENCY] = Math.max(bucket[MAX_LATENCY], call.latencyMs());
+        }
+
+        synchronized Map<String, Object> snapshot(long nowMinute) {
+            long[] sum = new long[6];
+            for (int i = 0; i < minutes.length; i++) {
+                if (minutes[i] > nowMinute - minutes.length) {
+                    for (int j = 0; j < MAX_LATENCY; j++) {
+                        sum[j] += values[i][j];
+                    }
+                    sum[MAX_LATENCY] = Math.max(sum[MAX_LATENCY], values[i][MAX_LATENCY]);
+                }
+            }
+            double cost = estimateCostUsd(model, sum[PROMPT], sum[CACHED], sum[COMPLETION]);
+
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("operation", operation);
+            snapshot.put("model", model);
+            snapshot.put("calls", sum[CALLS]);
+            snapshot.put("promptTokens", sum[PROMPT]);
+            snapshot.put("completionTokens", sum[COMPLETION]);
+            snapshot.put("cachedTokens", sum[CACHED]);
+            snapshot.put("totalTokens", sum[PROMPT] + sum[COMPLETION]);
+            snapshot.put("avgPromptTokens", sum[CALLS] > 0 ? sum[PROMPT] / sum[CALLS] : 0);
+            snapshot.put("totalLatencyMs", sum[LATENCY]);
+            snapshot.put("avgLatencyMs", sum[CALLS] > 0 ? sum[LATENCY] / sum[CALLS] : 0);
+            snapshot.put("maxLatencyMs", sum[MAX_LATENCY]);
+            snapshot.put("estimatedCostUsd", cost >= 0 ? round6(cost) : 0.0);
+            return snapshot;
+        }
+    }
+}
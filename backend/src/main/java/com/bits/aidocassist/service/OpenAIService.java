@@ -5,25 +5,26 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 @Service
 public class OpenAIService {
 
-    @Value("${openai.api.key}")
-    private String apiKey;
+    private static final String MODEL = "gpt-4-turbo-preview";
+
+    // Dokumentanteil für die Klassifikation (vorher 2000 Zeichen)
+    private static final int CLASSIFICATION_INPUT_TOKENS = 500;
+
+    // Gemeinsame LLM-Schicht (Cache, gepoolter HTTP-Client)
+    @Autowired
+    private LlmClient llmClient;
+
+    @Autowired
+    private TokenizerService tokenizer;
 
-    private static final String OPENAI_API_URL = "https://api.openai.com/v1/chat/completions";
-    private final RestTemplate restTemplate = new RestTemplate();
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
@@ -181,7 +182,7 @@ public class OpenAIService {
 
                 TEXT:
                 %s
-                """, text.substring(0, Math.min(text.length(), 2000)));
+                """, tokenizer.truncateToTokens(MODEL, text, CLASSIFICATION_INPUT_TOKENS));
 
         String response = callOpenAI(prompt, 0.3, 200);
         return parseClassification(response);
@@ -221,12 +222,8 @@ public class OpenAIService {
      */
     private String callOpenAI(String prompt, double temperature, int maxTokens) {
         try {
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.setBearerAuth(apiKey);
-
             Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", "gpt-4-turbo-preview"); // Upgrade zu GPT-4 für bessere Qualität
+            requestBody.put("model", MODEL); // Upgrade zu GPT-4 für bessere Qualität
             requestBody.put("messages", Arrays.asList(
                     Map.of("role", "system", "content",
                             "Du bist ein Experte für Dokumentenanalyse und technische Empfehlungen. " +
@@ -238,18 +235,7 @@ public class OpenAIService {
             requestBody.put("frequency_penalty", 0.2);
             requestBody.put("presence_penalty", 0.1);
 
-            HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-            ResponseEntity<Map> response = restTemplate.exchange(
-                    OPENAI_API_URL,
-                    HttpMethod.POST,
-                    entity,
-                    Map.class);
-
-            Map<String, Object> responseBody = response.getBody();
-            List<Map<String, Object>> choices = (List<Map<String, Object>>) responseBody.get("choices");
-            Map<String, Object> message = (Map<String, Object>) choices.get(0).get("message");
-
-            return (String) message.get("content");
+            return llmClient.chatCompletion(requestBody, "openai-service");
 
         } catch (Exception e) {
             System.err.println("OpenAI API Fehler: " + e.getMessage());
@@ -0,0 +1,376 @@
+package com.bits.aidocassist.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.multipart.MultipartFile;
+
+import com.bits.aidocassist.util.PdfProcessor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * PDF-Text-Extraktion, ab {@code pdf.extraction.min-pages} Seiten parallel: der Seitenbereich
+ * wird in Blöcke zu {@code pdf.extraction.pages-per-chunk} Seiten geteilt, jeder Block mit
+ * eigenem Dokument und Stripper im CPU-Pool ({@link AnalysisTaskRunner#onCpuAll}) extrahiert
+ * und der Text in Seitenreihenfolge zusammengesetzt. Da PDFBox-Dokumente nicht threadsicher
+ * sind, lädt jeder Block die Datei selbst.
+ *
+ * Speicher: Dateien und Byte-Arrays liest PDFBox direkt, Streams (Multipart-Uploads) puffert es
+ * per {@link MemoryUsageSetting} bis {@code pdf.memory.max-main-per-document} im Heap, den Rest
+ * in einer Scratch-Datei – ohne eigene Temp-Kopie. Nur für die parallele Extraktion wird ein
+ * Stream einmal auf die Platte gespoolt, statt ihn für jeden Block erneut zu puffern. Jedes
+ * geöffnete Dokument belegt bis zum Schließen einen Anteil von {@code pdf.memory.global-budget};
+ * ist das Budget erschöpft, warten weitere Extraktionen.
+ *
+ * Dauer je Seite: Micrometer-Timer {@code pdf.extraction.page}, Warnung ab
+ * {@code pdf.extraction.slow-page-ms} und die langsamsten Seiten unter
+ * {@code GET /api/documents/extraction/stats}.
+ */
+@Service
+public class PdfTextExtractor {
+
+    private static final Logger log = LoggerFactory.getLogger(PdfTextExtractor.class);
+
+    private static final int SLOWEST_PAGES = 20;
+
+    private final AnalysisTaskRunner taskRunner;
+    private final boolean parallel;
+    private final int pagesPerChunk;
+    private final int minPages;
+    private final long slowPageMs;
+    private final long maxMainPerDocument;
+    private final int memoryBudgetKb;
+    private final Semaphore memory;
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder parallelDocuments = new LongAdder();
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder extractionNanos = new LongAdder();
+    private final LongAdder memoryWaits = new LongAdder();
+    private final List<SlowPage> slowestPages = new ArrayList<>();
+
+    public PdfTextExtractor(AnalysisTaskRunner taskRunner,
+            @Value("${pdf.extraction.parallel:true}") boolean parallel,
+            @Value("${pdf.extraction.pages-per-chunk:16}") int pagesPerChunk,
+            @Value("${pdf.extraction.min-pages:24}") int minPages,
+            @Value("${pdf.extraction.slow-page-ms:500}") long slowPageMs,
+            @Value("${pdf.memory.max-main-per-document:16MB}") DataSize maxMainPerDocument,
+            @Value("${pdf.memory.global-budget:64MB}") DataSize globalBudget,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        this.taskRunner = taskRunner;
+        this.parallel = parallel;
+        this.pagesPerChunk = Math.max(1, pagesPerChunk);
+        this.minPages = Math.max(2, minPages);
+        this.slowPageMs = slowPageMs;
+        this.maxMainPerDocument = Math.max(DataSize.ofMegabytes(1).toBytes(), maxMainPerDocument.toBytes());
+        this.memoryBudgetKb = (int) Math.min(Integer.MAX_VALUE,
+                Math.max(this.maxMainPerDocument, globalBudget.toBytes()) / 1024);
+        this.memory = new Semaphore(memoryBudgetKb, true);
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Quelle eines PDFs; {@link #load} wird für jeden Block erneut aufgerufen.
+     */
+    public interface PdfSource {
+        PDDocument load(MemoryUsageSetting memory) throws IOException;
+
+        /**
+         * Größe in Bytes, -1 wenn unbekannt.
+         */
+        long size();
+
+        static PdfSource of(File file) {
+            return new FileSource(file);
+        }
+
+        static PdfSource of(byte[] bytes) {
+            return new BytesSource(bytes);
+        }
+
+        /**
+         * Dateibasierte Ressourcen (gespoolte Batch-Einträge) und Byte-Arrays (Job-Nutzlast)
+         * direkt, alles andere (Multipart-Upload) als Stream.
+         */
+        static PdfSource of(InputStreamSource source) throws IOException {
+            if (source instanceof ByteArrayResource bytes) {
+                return new BytesSource(bytes.getByteArray());
+            }
+            if (source instanceof Resource resource && resource.isFile()) {
+                return new FileSource(resource.getFile());
+            }
+            return new StreamSource(source, source instanceof MultipartFile multipart ? multipart.getSize() : -1);
+        }
+    }
+
+    private record FileSource(File file) implements PdfSource {
+        @Override
+        public PDDocument load(MemoryUsageSetting memory) throws IOException {
+            return PDDocument.load(file, memory);
+        }
+
+        @Override
+        public long size() {
+            return file.length();
+        }
+    }
+
+    private record BytesSource(byte[] bytes) implements PdfSource {
+        @Override
+        public PDDocument load(MemoryUsageSetting memory) throws IOException {
+            return PDDocument.load(bytes, "", null, null, memory);
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+    }
+
+    private record StreamSource(InputStreamSource source, long size) implements PdfSource {
+        @Override
+        public PDDocument load(MemoryUsageSetting memory) throws IOException {
+            try (InputStream in = source.getInputStream()) {
+                return PDDocument.load(in, memory);
+            }
+        }
+
+        Path spool() throws IOException {
+            Path file = Files.createTempFile("pdf-", ".pdf");
+            try (InputStream in = source.getInputStream()) {
+                Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            return file;
+        }
+    }
+
+    /**
+     * Ergebnis mit Dauer je Seite ({@code pageNanos[seite - 1]}).
+     */
+    public record Extraction(String text, int pages, int chunks, long elapsedNanos, long[] pageNanos) {
+
+        public List<PageTiming> slowestPages(int limit) {
+            return IntStream.range(0, pageNanos.length)
+                    .boxed()
+                    .sorted(Comparator.comparingLong((Integer index) -> pageNanos[index]).reversed())
+                    .limit(limit)
+                    .map(index -> new PageTiming(index + 1, pageNanos[index] / 1_000_000d))
+                    .toList();
+        }
+    }
+
+    public record PageTiming(int page, double millis) {
+    }
+
+    private record SlowPage(String label, int page, double millis, LocalDateTime at) {
+    }
+
+    /**
+     * Extrahiert den Text; {@code label} (z.B. Dateiname) dient nur Log und Statistik.
+     */
+    public Extraction extract(String label, InputStreamSource source, boolean sortByPosition) throws IOException {
+        return extract(label, PdfSource.of(source), sortByPosition);
+    }
+
+    public Extraction extract(String label, PdfSource source, boolean sortByPosition) throws IOException {
+        long start = System.nanoTime();
+        // Seitenzahl; kleine Dokumente gleich im selben Durchgang
+        FirstPass first = withDocument(source, document -> {
+            long[] pageNanos = new long[document.getNumberOfPages()];
+            String text = parallel && pageNanos.length >= minPages ? null
+                    : PdfProcessor.extractPages(document, 1, Math.max(1, pageNanos.length), sortByPosition,
+                            pageNanos);
+            return new FirstPass(text, pageNanos);
+        });
+
+        long[] pageNanos = first.pageNanos();
+        int chunks = 1;
+        String text = first.text();
+        if (text == null) {
+            chunks = (pageNanos.length + pagesPerChunk - 1) / pagesPerChunk;
+            text = extractChunks(source, pageNanos, sortByPosition);
+        }
+
+        Extraction extraction = new Extraction(text, pageNanos.length, chunks, System.nanoTime() - start,
+                pageNanos);
+        record(label, extraction);
+        return extraction;
+    }
+
+    private record FirstPass(String text, long[] pageNanos) {
+    }
+
+    private String extractChunks(PdfSource source, long[] pageNanos, boolean sortByPosition) throws IOException {
+        Path spooled = source instanceof StreamSource stream ? stream.spool() : null;
+        try {
+            PdfSource chunkSource = spooled != null ? PdfSource.of(spooled.toFile()) : source;
+            List<Callable<String>> tasks = new ArrayList<>();
+            for (int first = 1; first <= pageNanos.length; first += pagesPerChunk) {
+                int from = first;
+                int to = Math.min(pageNanos.length, first + pagesPerChunk - 1);
+                tasks.add(() -> withDocument(chunkSource,
+                        chunk -> PdfProcessor.extractPages(chunk, from, to, sortByPosition, pageNanos)));
+            }
+            return String.join("", runChunks(tasks));
+        } finally {
+            if (spooled != null) {
+                Files.deleteIfExists(spooled);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface DocumentTask<T> {
+        T apply(PDDocument document) throws IOException;
+    }
+
+    /**
+     * Öffnet das Dokument innerhalb des globalen Speicherbudgets und schließt es wieder.
+     */
+    private <T> T withDocument(PdfSource source, DocumentTask<T> task) throws IOException {
+        int permits = permitsFor(source);
+        try {
+            if (!memory.tryAcquire(permits, 0, TimeUnit.MILLISECONDS)) {
+                memoryWaits.increment();
+                memory.acquire(permits);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("PDF-Extraktion abgebrochen");
+        }
+        try (PDDocument document = source.load(MemoryUsageSetting.setupMixed(maxMainPerDocument))) {
+            return task.apply(document);
+        } finally {
+            memory.release(permits);
+        }
+    }
+
+    /**
+     * Geschätzter Heap-Bedarf in KB: Dateigröße, mindestens 1 MB, höchstens das Heap-Limit je Dokument.
+     */
+    private int permitsFor(PdfSource source) {
+        long size = source.size();
+        long bytes = size < 0 ? maxMainPerDocument
+                : Math.max(DataSize.ofMegabytes(1).toBytes(), Math.min(size, maxMainPerDocument));
+        return (int) Math.min(memoryBudgetKb, bytes / 1024);
+    }
+
+    private List<String> runChunks(List<Callable<String>> tasks) throws IOException {
+        try {
+            return taskRunner.onCpuAll(tasks);
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("PDF-Extraktion abgebrochen");
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void record(String label, Extraction extraction) {
+        documents.increment();
+        if (extraction.chunks() > 1) {
+            parallelDocuments.increment();
+        }
+        pages.add(extraction.pages());
+        extractionNanos.add(extraction.elapsedNanos());
+
+        long[] pageNanos = extraction.pageNanos();
+        meterRegistry.ifAvailable(registry -> {
+            Timer pageTimer = Timer.builder("pdf.extraction.page")
+                    .description("Text-Extraktion je PDF-Seite")
+                    .register(registry);
+            for (long nanos : pageNanos) {
+                pageTimer.record(nanos, TimeUnit.NANOSECONDS);
+            }
+            Timer.builder("pdf.extraction")
+                    .description("Text-Extraktion je PDF-Dokument")
+                    .tag("mode", extraction.chunks() > 1 ? "parallel" : "sequential")
+                    .register(registry)
+                    .record(extraction.elapsedNanos(), TimeUnit.NANOSECONDS);
+        });
+
+        for (PageTiming timing : extraction.slowestPages(SLOWEST_PAGES)) {
+            if (timing.millis() >= slowPageMs) {
+                log.warn("🐢 Langsame PDF-Seite {} in {}: {}ms", timing.page(), label, Math.round(timing.millis()));
+            }
+            rememberSlowPage(new SlowPage(label, timing.page(), timing.millis(), LocalDateTime.now()));
+        }
+        log.debug("📄 PDF {} extrahiert: {} Seiten in {} Blöcken, {}ms", label, extraction.pages(),
+                extraction.chunks(), extraction.elapsedNanos() / 1_000_000);
+    }
+
+    private synchronized void rememberSlowPage(SlowPage page) {
+        if (slowestPages.size() >= SLOWEST_PAGES
+                && slowestPages.get(slowestPages.size() - 1).millis() >= page.millis()) {
+            return;
+        }
+        slowestPages.add(page);
+        slowestPages.sort(Comparator.comparingDouble(SlowPage::millis).reversed());
+        if (slowestPages.size() > SLOWEST_PAGES) {
+            slowestPages.remove(slowestPages.size() - 1);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("parallel", parallel);
+        stats.put("pagesPerChunk", pagesPerChunk);
+        stats.put("minPages", minPages);
+        stats.put("documents", documents.sum());
+        stats.put("parallelDocuments", parallelDocuments.sum());
+        stats.put("pages", pages.sum());
+        stats.put("totalMs", extractionNanos.sum() / 1_000_000);
+        stats.put("memoryBudgetMb", memoryBudgetKb / 1024);
+        stats.put("memoryInUseMb", (memoryBudgetKb - memory.availablePermits()) / 1024);
+        stats.put("memoryWaits", memoryWaits.sum());
+        stats.put("waitingForMemory", memory.getQueueLength());
+        List<Map<String, Object>> slowest = new ArrayList<>();
+        synchronized (this) {
+            for (SlowPage page : slowestPages) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("document", page.label());
+                entry.put("page", page.page());
+                entry.put("ms", Math.round(page.millis() * 10) / 10d);
+                entry.put("at", page.at().toString());
+                slowest.add(entry);
+            }
+        }
+        stats.put("slowestPages", slowest);
+        return stats;
+    }
+}
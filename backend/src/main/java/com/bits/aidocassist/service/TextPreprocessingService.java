@@ -63,6 +63,9 @@ public class TextPreprocessingService {
     private static final Pattern CAMEL_CASE_PATTERN = 
         Pattern.compile("([a-z])([A-Z])");
 
+    private static final Pattern SECTION_MARKER_PATTERN =
+        Pattern.compile("\\n?--- Abschnitt \\d+ ---\\n");
+
     /**
      * Hauptmethode für Text-Preprocessing
      */
@@ -301,6 +304,23 @@ public class TextPreprocessingService {
         return text;
     }
 
+    /**
+     * Segmente eines bereits vorverarbeiteten Textes (Trennung an den
+     * "--- Abschnitt N ---"-Markierungen aus {@link #segmentText}).
+     */
+    public List<String> getSegments(String processedText) {
+        List<String> segments = new ArrayList<>();
+        if (processedText == null || processedText.isBlank()) {
+            return segments;
+        }
+        for (String segment : SECTION_MARKER_PATTERN.split(processedText)) {
+            if (!segment.isBlank()) {
+                segments.add(segment.trim());
+            }
+        }
+        return segments;
+    }
+
     /**
      * Text in logische Segmente unterteilen
      */
@@ -0,0 +1,197 @@
+package com.bits.aidocassist.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingRegistry;
+import com.knuddels.jtokkit.api.EncodingResult;
+import com.knuddels.jtokkit.api.EncodingType;
+
+/**
+ * Lokale BPE-Tokenisierung (tiktoken-kompatibel, cl100k_base/o200k_base).
+ *
+ * Ersetzt das Kürzen nach Zeichen: Prompts werden exakt auf das Kontextfenster
+ * des Modells und das {@code max_tokens}-Budget der Antwort zugeschnitten.
+ * Die BPE-Tabellen liegen als Ressource im jtokkit-JAR, es gibt keinen Netzwerkzugriff.
+ */
+@Service
+public class TokenizerService {
+
+    // Chat-Format: Overhead pro Message und für die Antwort-Einleitung (OpenAI Cookbook)
+    private static final int TOKENS_PER_MESSAGE = 3;
+    private static final int TOKENS_REPLY_PRIMING = 3;
+
+    // Kontextfenster nach Modell-Präfix (längster Treffer gewinnt)
+    private static final Map<String, Integer> CONTEXT_WINDOWS = new LinkedHashMap<>();
+    static {
+        CONTEXT_WINDOWS.put("gpt-4o", 128_000);
+        CONTEXT_WINDOWS.put("gpt-4-turbo", 128_000);
+        CONTEXT_WINDOWS.put("gpt-4-1106", 128_000);
+        CONTEXT_WINDOWS.put("gpt-4-0125", 128_000);
+        CONTEXT_WINDOWS.put("gpt-4-32k", 32_768);
+        CONTEXT_WINDOWS.put("gpt-4", 8_192);
+        CONTEXT_WINDOWS.put("gpt-3.5-turbo-instruct", 4_096);
+        CONTEXT_WINDOWS.put("gpt-3.5-turbo", 16_385);
+    }
+    private static final int DEFAULT_CONTEXT_WINDOW = 8_192;
+
+    private final EncodingRegistry registry = Encodings.newLazyEncodingRegistry();
+    private final Map<String, Encoding> encodingsByModel = new ConcurrentHashMap<>();
+
+    // Kostenbremse: maximale Dokument-Tokens pro Prompt, unabhängig vom Kontextfenster
+    @Value("${openai.tokens.max-input-tokens:6000}")
+    private int maxInputTokens = 6000;
+
+    // Reserve für Abweichungen zwischen lokaler Zählung und Provider
+    @Value("${openai.tokens.safety-margin:64}")
+    private int safetyMargin = 64;
+
+    public int countTokens(String model, String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        return encodingFor(model).countTokensOrdinary(text);
+    }
+
+    /**
+     * Tokens eines Chat-Requests inkl. Message-Overhead.
+     */
+    public int countChatTokens(String model, List<Map<String, Object>> messages) {
+        int tokens = TOKENS_REPLY_PRIMING;
+        for (Map<String, Object> message : messages) {
+            tokens += TOKENS_PER_MESSAGE;
+            Object content = message.get("content");
+            tokens += countTokens(model, content != null ? content.toString() : "");
+        }
+        return tokens;
+    }
+
+    public int contextWindow(String model) {
+        String name = model != null ? model.toLowerCase() : "";
+        int bestLength = -1;
+        int window = DEFAULT_CONTEXT_WINDOW;
+        for (Map.Entry<String, Integer> entry : CONTEXT_WINDOWS.entrySet()) {
+            if (name.startsWith(entry.getKey()) && entry.getKey().length() > bestLength) {
+                bestLength = entry.getKey().length();
+                window = entry.getValue();
+            }
+        }
+        return window;
+    }
+
+    /**
+     * Tokens, die für das Dokument übrig bleiben, wenn {@code promptTokens} bereits
+     * belegt sind und die Antwort {@code maxCompletionTokens} erhalten soll.
+     */
+    public int inputBudget(String model, int maxCompletionTokens, int promptTokens) {
+        return inputBudget(model, maxCompletionTokens, promptTokens, maxInputTokens);
+    }
+
+    /**
+     * Wie {@link #inputBudget(String, int, int)}, aber mit eigener Obergrenze statt
+     * {@code max-input-tokens} (z.B. für eine Long-Context-Route).
+     */
+    public int inputBudget(String model, int maxCompletionTokens, int promptTokens, int inputTokenCap) {
+        int available = contextWindow(model) - maxCompletionTokens - promptTokens - safetyMargin;
+        return Math.max(0, Math.min(inputTokenCap, available));
+    }
+
+    /**
+     * Kürzt {@code text} auf höchstens {@code maxTokens} Tokens, bevorzugt an einem
+     * Satz- oder Zeilenende (wie bisher bei der Zeichen-Kürzung).
+     */
+    public String truncateToTokens(String model, String text, int maxTokens) {
+        if (text == null || text.isEmpty()) {
+            return "";
+        }
+        if (maxTokens <= 0) {
+            return "";
+        }
+        EncodingResult result = encodingFor(model).encodeOrdinary(text, maxTokens);
+        if (!result.isTruncated()) {
+            return text;
+        }
+
+        int end = result.getLastProcessedCharacterIndex() + 1;
+        String truncated = text.substring(0, Math.max(0, Math.min(end, text.length())));
+        int cutPoint = Math.max(truncated.lastIndexOf('.'), truncated.lastIndexOf('\n'));
+        if (cutPoint > truncated.length() * 0.7) {
+            return truncated.substring(0, cutPoint + 1);
+        }
+        return truncated;
+    }
+
+    /**
+     * Packt Segmente der Reihe nach in Chunks von höchstens {@code maxTokens} Tokens.
+     * Segmente, die allein zu groß sind, werden an Satz- oder Zeilenenden geteilt.
+     *
+     * Die Grenzen hängen am Inhalt: ab halber Füllung endet ein Chunk nach einem Anker-Segment.
+     * Eine Einfügung verschiebt so nur die Grenzen bis zum nächsten Anker, die folgenden Chunks
+     * bleiben gleich und treffen beim erneuten Upload den Response-Cache.
+     */
+    public List<String> packSegments(String model, List<String> segments, int maxTokens) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        int currentTokens = 0;
+
+        for (String segment : segments) {
+            for (String part : splitToTokenLimit(model, segment, maxTokens)) {
+                int partTokens = countTokens(model, part);
+                if (currentTokens > 0 && currentTokens + partTokens > maxTokens) {
+                    chunks.add(current.toString().trim());
+                    current = new StringBuilder();
+                    currentTokens = 0;
+                }
+                current.append(part).append("\n\n");
+                currentTokens += partTokens;
+                if (currentTokens * 2 >= maxTokens && isAnchor(part)) {
+                    chunks.add(current.toString().trim());
+                    current = new StringBuilder();
+                    currentTokens = 0;
+                }
+            }
+        }
+        if (currentTokens > 0) {
+            chunks.add(current.toString().trim());
+        }
+        return chunks;
+    }
+
+    /**
+     * Etwa jedes zweite Segment ist Anker; das oberste Bit des gestreuten Hashs hängt von allen
+     * Zeichen ab (das unterste Bit von {@link String#hashCode} nur von der Zeichensumme).
+     */
+    private static boolean isAnchor(String part) {
+        return (part.hashCode() * 0x9E3779B9) >>> 31 == 0;
+    }
+
+    private List<String> splitToTokenLimit(String model, String text, int maxTokens) {
+        List<String> parts = new ArrayList<>();
+        String rest = text;
+        while (!rest.isBlank()) {
+            String part = truncateToTokens(model, rest, maxTokens);
+            if (part.isEmpty() || part.length() == rest.length()) {
+                parts.add(rest.trim());
+                break;
+            }
+            parts.add(part.trim());
+            rest = rest.substring(part.length());
+        }
+        return parts;
+    }
+
+    private Encoding encodingFor(String model) {
+        String key = model != null ? model : "";
+        return encodingsByModel.computeIfAbsent(key, name -> registry.getEncodingForModel(name)
+                .orElseGet(() -> registry.getEncoding(
+                        name.startsWith("gpt-4o") ? EncodingType.O200K_BASE : EncodingType.CL100K_BASE)));
+    }
+}
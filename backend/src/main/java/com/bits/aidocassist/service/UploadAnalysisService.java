@@ -0,0 +1,173 @@
+package com.bits.aidocassist.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import com.bits.aidocassist.model.AnalysisJob;
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.util.ContentHash;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Analyse-Pipeline für hochgeladene Dateien: Text-Extraktion, Preprocessing, KI-Analyse
+ * und lokale Kennzahlen. Gemeinsam genutzt vom synchronen Upload und den Analyse-Jobs,
+ * daher auf {@link InputStreamSource} statt {@code MultipartFile} (Multipart-Upload oder
+ * gespeicherte Job-Nutzlast).
+ */
+@Service
+public class UploadAnalysisService {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadAnalysisService.class);
+
+    private final AiService aiService;
+    private final TextPreprocessingService preprocessingService;
+    private final AnalysisTaskRunner taskRunner;
+    private final PdfTextExtractor pdfTextExtractor;
+    private final ObjectMapper objectMapper;
+
+    public UploadAnalysisService(AiService aiService, TextPreprocessingService preprocessingService,
+            AnalysisTaskRunner taskRunner, PdfTextExtractor pdfTextExtractor, ObjectMapper objectMapper) {
+        this.aiService = aiService;
+        this.preprocessingService = preprocessingService;
+        this.taskRunner = taskRunner;
+        this.pdfTextExtractor = pdfTextExtractor;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Analysiert eine Datei und liefert das (noch nicht gespeicherte) Dokument mit
+     * Content-Hash für die Deduplizierung.
+     * {@code onStage} erhält den Fortschritt (Extraktion, Preprocessing, KI-Analyse).
+     */
+    public Document analyzeUpload(String filename, String contentType, InputStreamSource source,
+            boolean withSummary, boolean withKeywords, boolean withComponents,
+            Consumer<AnalysisJob.Stage> onStage) throws Exception {
+        onStage.accept(AnalysisJob.Stage.EXTRACTING);
+        String content = taskRunner.onCpu(() -> extractText(filename, contentType, source));
+        onStage.accept(AnalysisJob.Stage.PREPROCESSING);
+        String processed = taskRunner.onCpu(() -> preprocessingService.preprocessText(content));
+
+        Document document = new Document();
+        document.setFilename(filename);
+        document.setFileType(contentType);
+        document.setTitle(extractTitle(filename, processed));
+        document.setContent(processed);
+        document.setUploadDate(new Date());
+        document.setContentHash(ContentHash.sha256(source));
+        document.setAnalysisOptions(
+                DocumentService.analysisOptionsKey("upload", withSummary, withKeywords, withComponents));
+
+        onStage.accept(AnalysisJob.Stage.ANALYZING);
+        AiService.CombinedAnalysis ai = aiService.analyzeCombined(processed, withSummary, withKeywords,
+                withComponents);
+        document.setSummary(ai.getSummary());
+        document.setKeywords(ai.getKeywords());
+        document.setSuggestedComponents(ai.getComponents());
+        document.setAnalysisRoutes(LlmModelRouter.encodeFieldRoutes(ai.getRoutes()));
+        // Nur vollständige KI-Analysen dienen später als Duplikat
+        document.setAnalysisStatus(AnalysisUpgradeService.statusOf(ai));
+
+        document.setDocumentType(detectDocumentType(processed));
+        TextPreprocessingService.PreprocessingResult pr = preprocessingService.getPreprocessingResult(content,
+                processed);
+        document.setComplexityLevel(calculateComplexity(pr));
+        document.setQualityScore(calculateQualityScore(pr));
+        return document;
+    }
+
+    public String extractText(String filename, String contentType, InputStreamSource source) throws IOException {
+        log.debug("Extrahiere Text aus {}, Typ: {}", filename, contentType);
+
+        if ("application/pdf".equals(contentType)) {
+            // Direkt aus Upload, Job-Nutzlast oder Spool-Datei, mit begrenztem Heap
+            return pdfTextExtractor.extract(filename, source, false).text();
+        } else if ("application/json".equals(contentType)) {
+            Object jsonObject = objectMapper.readValue(readUtf8(source), Object.class);
+            return objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(jsonObject);
+        } else if (contentType != null && contentType.contains("word")) {
+            // TODO: Apache POI für .doc/.docx integrieren
+            return "Word-Dokument-Extraktion noch nicht implementiert";
+        } else {
+            // text/plain, text/csv, text/markdown und Unbekanntes
+            return readUtf8(source);
+        }
+    }
+
+    private static String readUtf8(InputStreamSource source) throws IOException {
+        try (InputStream in = source.getInputStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    public String extractTitle(String filename, String content) {
+        if (filename != null) {
+            int lastDot = filename.lastIndexOf('.');
+            return lastDot > 0 ? filename.substring(0, lastDot) : filename;
+        }
+        String[] lines = content.split("\n");
+        if (lines.length > 0 && lines[0].length() < 100)
+            return lines[0].trim();
+        return "Unbenanntes Dokument";
+    }
+
+    public String detectDocumentType(String content) {
+        String s = content == null ? "" : content.toLowerCase();
+        if (s.contains("requirements") || s.contains("anforderungen"))
+            return "Anforderungsdokument";
+        if (s.contains("architecture") || s.contains("architektur"))
+            return "Architekturdokument";
+        if (s.contains("test") || s.contains("testing"))
+            return "Testdokument";
+        if (s.contains("manual") || s.contains("anleitung"))
+            return "Handbuch";
+        if (s.contains("api") && s.contains("endpoint"))
+            return "API-Dokumentation";
+        if (s.contains("class") || s.contains("function") || s.contains("import"))
+            return "Code-Dokumentation";
+        return "Technisches Dokument";
+    }
+
+    public String calculateComplexity(TextPreprocessingService.PreprocessingResult result) {
+        double score = 0;
+        Map<String, Object> m = result != null ? result.qualityMetrics : null;
+
+        if (m != null) {
+            Number wc = (Number) m.getOrDefault("wordCount", 0);
+            Number td = (Number) m.getOrDefault("technicalDensity", 0.0);
+            Number rd = (Number) m.getOrDefault("readabilityScore", 100.0);
+
+            if (wc.longValue() > 1000)
+                score += 20;
+            if (td.doubleValue() > 0.10)
+                score += 30;
+            if (rd.doubleValue() < 50.0)
+                score += 30;
+            if (result.codeBlockCount > 5)
+                score += 20;
+        }
+
+        if (score > 70)
+            return "Experte";
+        if (score > 40)
+            return "Fortgeschritten";
+        return "Einsteiger";
+    }
+
+    public double calculateQualityScore(TextPreprocessingService.PreprocessingResult result) {
+        if (result != null && result.qualityMetrics != null) {
+            Object v = result.qualityMetrics.get("overallQualityScore");
+            if (v instanceof Number n)
+                return n.doubleValue();
+        }
+        return 50.0;
+    }
+}
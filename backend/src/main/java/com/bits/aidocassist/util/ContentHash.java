@@ -0,0 +1,48 @@
+package com.bits.aidocassist.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import org.springframework.core.io.InputStreamSource;
+
+/**
+ * SHA-256-Fingerprint (Hex, 64 Zeichen) für die Erkennung bereits analysierter Inhalte,
+ * die Segmente der inkrementellen Analyse und die konfigurierten API-Keys.
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+    }
+
+    public static String sha256(String text) {
+        MessageDigest digest = newDigest();
+        return HexFormat.of().formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Liest die Quelle gestreamt, ohne sie vollständig in den Speicher zu laden.
+     */
+    public static String sha256(InputStreamSource source) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = source.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, n);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 nicht verfügbar", e);
+        }
+    }
+}
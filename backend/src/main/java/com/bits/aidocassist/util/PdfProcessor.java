@@ -1,6 +1,7 @@
 package com.bits.aidocassist.util;
 
 import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.springframework.stereotype.Component;
 
@@ -16,4 +17,42 @@ public class PdfProcessor {
             return pdfTextStripper.getText(document);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Extrahiert die Seiten {@code startPage} bis {@code endPage} (1-basiert) mit eigenem Stripper.
+     * {@code pageNanos[seite - 1]} erhält die Dauer je Seite (Parsing, Sortierung, Ausgabe).
+     * PDFBox-Dokumente sind nicht threadsicher: parallel nur mit je eigenem {@link PDDocument}.
+     */
+    public static String extractPages(PDDocument document, int startPage, int endPage, boolean sortByPosition,
+            long[] pageNanos) throws IOException {
+        PDFTextStripper stripper = new TimedStripper(pageNanos);
+        stripper.setSortByPosition(sortByPosition);
+        stripper.setStartPage(startPage);
+        stripper.setEndPage(endPage);
+        return stripper.getText(document);
+    }
+
+    private static final class TimedStripper extends PDFTextStripper {
+        private final long[] pageNanos;
+        private long pageStart;
+
+        TimedStripper(long[] pageNanos) throws IOException {
+            this.pageNanos = pageNanos;
+        }
+
+        @Override
+        protected void startPage(PDPage page) throws IOException {
+            pageStart = System.nanoTime();
+            super.startPage(page);
+        }
+
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            super.endPage(page);
+            int index = getCurrentPageNo() - 1;
+            if (index >= 0 && index < pageNanos.length) {
+                pageNanos[index] = System.nanoTime() - pageStart;
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.bits.aidocassist.repository;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import com.bits.aidocassist.model.AnalysisJob;
+import com.bits.aidocassist.model.AnalysisJob.Stage;
+import com.bits.aidocassist.model.AnalysisJob.Status;
+import com.bits.aidocassist.model.AnalysisJobPayload;
+
+@DataJpaTest
+class AnalysisJobRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private AnalysisJobRepository jobRepository;
+
+    @Autowired
+    private AnalysisJobPayloadRepository payloadRepository;
+
+    private AnalysisJob queuedJob(String filename) {
+        return queuedJob(filename, null);
+    }
+
+    private AnalysisJob queuedJob(String filename, String clientId) {
+        AnalysisJob job = new AnalysisJob();
+        job.setClientId(clientId);
+        job.setFilename(filename);
+        job.setContentType("text/plain");
+        job.setCreatedAt(LocalDateTime.now());
+        return entityManager.persistAndFlush(job);
+    }
+
+    @Test
+    void claim_ShouldSucceedOnlyOnce() {
+        AnalysisJob job = queuedJob("a.txt");
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+        assertEquals(1, jobRepository.claim(job.getId(), "worker-1", "t-job-1", now, now.plusMinutes(1), Status.QUEUED,
+                Status.RUNNING));
+        assertEquals(0, jobRepository.claim(job.getId(), "worker-2", "t-job-2", now, now.plusMinutes(1), Status.QUEUED,
+                Status.RUNNING));
+
+        entityManager.clear();
+        AnalysisJob claimed = jobRepository.findById(job.getId()).orElseThrow();
+        assertEquals(Status.RUNNING, claimed.getStatus());
+        assertEquals("worker-1", claimed.getWorkerId());
+        assertEquals(1, claimed.getAttempts());
+        assertEquals(now.plusMinutes(1), claimed.getLeaseExpiresAt());
+    }
+
+    @Test
+    void requeueExpired_ShouldReleaseOnlyExpiredLeases() {
+        AnalysisJob first = queuedJob("a.txt");
+        AnalysisJob second = queuedJob("b.txt");
+        AnalysisJob third = queuedJob("c.txt");
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.claim(first.getId(), "worker-1", "t-first-1", now.minusMinutes(2), now.minusMinutes(1), Status.QUEUED,
+                Status.RUNNING);
+        jobRepository.claim(third.getId(), "worker-2", "t-third-2", now, now.plusMinutes(1), Status.QUEUED, Status.RUNNING);
+
+        assertEquals(1, jobRepository.requeueExpired(Status.RUNNING, Status.QUEUED, Stage.QUEUED, now));
+        entityManager.clear();
+        assertEquals(Status.QUEUED, jobRepository.findById(first.getId()).orElseThrow().getStatus());
+        assertEquals(Status.QUEUED, jobRepository.findById(second.getId()).orElseThrow().getStatus());
+        assertEquals(Status.RUNNING, jobRepository.findById(third.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    void finishAndUpdateStage_ShouldOnlySucceedForLeaseOwner() {
+        AnalysisJob job = queuedJob("a.txt");
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.claim(job.getId(), "worker-1", "t-job-1", now, now.plusMinutes(1), Status.QUEUED, Status.RUNNING);
+
+        assertEquals(1, jobRepository.renewLeases("worker-1", now, now.plusMinutes(2), Status.RUNNING));
+        assertEquals(0, jobRepository.updateStage(job.getId(), "t-job-2", Stage.SAVING, now));
+        assertEquals(1, jobRepository.updateStage(job.getId(), "t-job-1", Stage.SAVING, now));
+        assertEquals(0, jobRepository.finish(job.getId(), "t-job-2", Status.SUCCEEDED, Stage.DONE, 1L, null, now));
+        assertEquals(1, jobRepository.finish(job.getId(), "t-job-1", Status.SUCCEEDED, Stage.DONE, 1L, null, now));
+    }
+
+    @Test
+    void updates_ShouldRejectStaleClaimOfSameWorker() {
+        AnalysisJob job = queuedJob("a.txt");
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.claim(job.getId(), "worker-1", "t-old", now.minusMinutes(2), now.minusMinutes(1), Status.QUEUED,
+                Status.RUNNING);
+        assertEquals(1, jobRepository.requeueExpired(Status.RUNNING, Status.QUEUED, Stage.QUEUED, now));
+        assertEquals(1, jobRepository.claim(job.getId(), "worker-1", "t-new", now, now.plusMinutes(1), Status.QUEUED,
+                Status.RUNNING));
+
+        assertEquals(0, jobRepository.updateStage(job.getId(), "t-old", Stage.SAVING, now));
+        assertEquals(0, jobRepository.requeue(job.getId(), "t-old", Status.QUEUED, Stage.QUEUED, null, now));
+        assertEquals(0, jobRepository.finish(job.getId(), "t-old", Status.SUCCEEDED, Stage.DONE, 1L, null, now));
+        assertEquals(1, jobRepository.finish(job.getId(), "t-new", Status.SUCCEEDED, Stage.DONE, 1L, null, now));
+    }
+
+    @Test
+    void findOldestPerClient_ShouldReturnHeadOfEachClientQueue() {
+        AnalysisJob a1 = queuedJob("a1.txt", "ip:10.0.0.1");
+        queuedJob("a2.txt", "ip:10.0.0.1");
+        AnalysisJob b1 = queuedJob("b1.txt", "key:abc");
+        jobRepository.claim(a1.getId(), "worker-1", "t-a1-1", LocalDateTime.now(), LocalDateTime.now().plusMinutes(1),
+                Status.QUEUED, Status.RUNNING);
+        entityManager.clear();
+
+        List<AnalysisJob> heads = jobRepository.findOldestPerClient(Status.QUEUED);
+
+        assertEquals(2, heads.size());
+        assertEquals(List.of("a2.txt", "b1.txt"), heads.stream().map(AnalysisJob::getFilename).sorted().toList());
+        assertEquals(b1.getId(), heads.stream().filter(job -> "key:abc".equals(job.getClientId())).findFirst()
+                .orElseThrow().getId());
+    }
+
+    @Test
+    void lockQueued_ShouldFallBackToNextJobOfSameClient() {
+        AnalysisJob head = queuedJob("a1.txt", "ip:10.0.0.1");
+        queuedJob("a2.txt", "ip:10.0.0.1");
+        queuedJob("b1.txt", "key:abc");
+        LocalDateTime now = LocalDateTime.now();
+
+        assertEquals(List.of("a1.txt"), jobRepository.lockQueued(Status.QUEUED.name(), head.getId(),
+                head.getClientId()).stream().map(AnalysisJob::getFilename).toList());
+
+        jobRepository.claim(head.getId(), "worker-1", "t-head-1", now, now.plusMinutes(1), Status.QUEUED, Status.RUNNING);
+        entityManager.clear();
+        assertEquals(List.of("a2.txt"), jobRepository.lockQueued(Status.QUEUED.name(), head.getId(),
+                head.getClientId()).stream().map(AnalysisJob::getFilename).toList());
+    }
+
+    @Test
+    void payload_ShouldRoundTripBytes() {
+        AnalysisJob job = queuedJob("a.pdf");
+        byte[] content = new byte[70_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        payloadRepository.saveAndFlush(new AnalysisJobPayload(job.getId(), content));
+        entityManager.clear();
+
+        assertArrayEquals(content, payloadRepository.findById(job.getId()).orElseThrow().getContent());
+    }
+
+    @Test
+    void pendingTotals_ShouldCountQueuedAndRunningJobsOnly() {
+        AnalysisJob first = queuedJob("a.txt");
+        AnalysisJob second = queuedJob("b.txt");
+        AnalysisJob third = queuedJob("c.txt");
+        first.setSizeBytes(1000);
+        second.setSizeBytes(2000);
+        third.setSizeBytes(4000);
+        entityManager.persistAndFlush(first);
+        entityManager.persistAndFlush(second);
+        entityManager.persistAndFlush(third);
+        LocalDateTime now = LocalDateTime.now();
+        jobRepository.claim(second.getId(), "worker-1", "t-second-1", now, now.plusMinutes(1), Status.QUEUED, Status.RUNNING);
+        jobRepository.claim(third.getId(), "worker-1", "t-third-1", now, now.plusMinutes(1), Status.QUEUED, Status.RUNNING);
+        jobRepository.finish(third.getId(), "t-third-1", Status.SUCCEEDED, Stage.DONE, null, null, now);
+
+        List<Status> pending = List.of(Status.QUEUED, Status.RUNNING);
+        assertEquals(2, jobRepository.countByStatusIn(pending));
+        assertEquals(3000, jobRepository.sumSizeBytesByStatusIn(pending));
+    }
+}
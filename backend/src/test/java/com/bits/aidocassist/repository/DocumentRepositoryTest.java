@@ -11,6 +11,7 @@ import java.util.Optional;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
 
 import org.junit.jupiter.api.Test;
 
@@ -71,4 +72,40 @@ class DocumentRepositoryTest {
         // Then
         assertEquals(2, documents.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void findAnalyzed_ShouldMatchHashAndOptionsAndSkipPendingAndFallbackDocuments() {
+        Document pending = new Document();
+        pending.setFilename("a.txt");
+        pending.setContentHash("abc");
+        pending.setAnalysisOptions("upload:SKC");
+        pending.setAnalysisStatus("PENDING");
+        entityManager.persistAndFlush(pending);
+
+        Document otherOptions = new Document();
+        otherOptions.setFilename("a.txt");
+        otherOptions.setContentHash("abc");
+        otherOptions.setAnalysisOptions("upload:S--");
+        entityManager.persistAndFlush(otherOptions);
+
+        Document fallback = new Document();
+        fallback.setFilename("a.txt");
+        fallback.setContentHash("abc");
+        fallback.setAnalysisOptions("upload:SKC");
+        fallback.setAnalysisStatus("FALLBACK");
+        entityManager.persistAndFlush(fallback);
+
+        Document complete = new Document();
+        complete.setFilename("a.txt");
+        complete.setContentHash("abc");
+        complete.setAnalysisOptions("upload:SKC");
+        complete.setAnalysisStatus("COMPLETE");
+        entityManager.persistAndFlush(complete);
+
+        List<Document> found = documentRepository.findAnalyzed("abc", "upload:SKC", PageRequest.of(0, 1));
+
+        assertEquals(1, found.size());
+        assertEquals(complete.getId(), found.get(0).getId());
+        assertTrue(documentRepository.findAnalyzed("def", "upload:SKC", PageRequest.of(0, 1)).isEmpty());
+    }
+}
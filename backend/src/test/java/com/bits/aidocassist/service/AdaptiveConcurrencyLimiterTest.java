@@ -0,0 +1,173 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import com.bits.aidocassist.exception.LlmUnavailableException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.Disposable;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private AdaptiveConcurrencyLimiter newLimiter(int initialLimit, long maxWaitMs) {
+        return newLimiter(initialLimit, maxWaitMs, 10_000);
+    }
+
+    private AdaptiveConcurrencyLimiter newLimiter(int initialLimit, long maxWaitMs, long starvationMs) {
+        return new AdaptiveConcurrencyLimiter(initialLimit, 1, 10, 1000, 0.5, 10, maxWaitMs,
+                "realtime:8,interactive:4,batch:2,background:1", 0.5, starvationMs, maxWaitMs,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static CompletableFuture<AdaptiveConcurrencyLimiter.Permit> queue(AdaptiveConcurrencyLimiter limiter,
+            AnalysisPriority priority) {
+        return limiter.acquireReactive(priority.name())
+                .contextWrite(LlmUsageTracker.withScope(LlmUsageTracker.newScope(priority)))
+                .toFuture();
+    }
+
+    @Test
+    void acquire_ShouldRejectAfterMaxWaitWhenLimitReached() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(1, 50);
+        limiter.acquire("first");
+
+        assertThrows(LlmUnavailableException.class, () -> limiter.acquire("second"));
+        assertEquals(1L, limiter.getStats().get("rejected"));
+    }
+
+    @Test
+    void release_ShouldHalveLimitOnDropAndGrowOnSuccess() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(8, 50);
+
+        limiter.acquire("overload").release(AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+        assertEquals(4, limiter.getLimit());
+
+        // Limit ausschöpfen, damit erfolgreiche Aufrufe es wieder erhöhen
+        for (int round = 0; round < 3; round++) {
+            AdaptiveConcurrencyLimiter.Permit[] permits = new AdaptiveConcurrencyLimiter.Permit[limiter.getLimit()];
+            for (int i = 0; i < permits.length; i++) {
+                permits[i] = limiter.acquire("burst");
+            }
+            for (AdaptiveConcurrencyLimiter.Permit permit : permits) {
+                permit.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+            }
+        }
+        assertTrue(limiter.getLimit() > 4);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void release_ShouldDecreaseOnlyOncePerCongestionEvent() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(8, 50);
+        AdaptiveConcurrencyLimiter.Permit[] burst = new AdaptiveConcurrencyLimiter.Permit[8];
+        for (int i = 0; i < burst.length; i++) {
+            burst[i] = limiter.acquire("burst");
+        }
+
+        for (AdaptiveConcurrencyLimiter.Permit permit : burst) {
+            permit.release(AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+        }
+        assertEquals(4, limiter.getLimit());
+        assertEquals(1L, limiter.getStats().get("dropped"));
+
+        // Ein nach der Verkleinerung gestarteter Aufruf zählt als neues Ereignis
+        limiter.acquire("retry").release(AdaptiveConcurrencyLimiter.Outcome.DROPPED);
+        assertEquals(2, limiter.getLimit());
+    }
+
+    @Test
+    void acquireReactive_ShouldQueueWithoutThreadAndHandOverOnRelease() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(1, 5000);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire("first");
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> second = limiter.acquireReactive("second").toFuture();
+        assertEquals(1, limiter.getQueueDepth());
+        assertFalse(second.isDone());
+
+        first.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        second.get().release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void acquireReactive_ShouldDropCancelledWaiterAndRejectAfterMaxWait() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(1, 50);
+        limiter.acquire("first");
+
+        Disposable cancelled = limiter.acquireReactive("cancelled").subscribe();
+        cancelled.dispose();
+        assertEquals(0, limiter.getQueueDepth());
+
+        assertThrows(LlmUnavailableException.class,
+                () -> limiter.acquireReactive("late").block(Duration.ofSeconds(5)));
+        assertEquals(1L, limiter.getStats().get("rejected"));
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void release_ShouldServeInteractiveBeforeEarlierBatchWaiters() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(1, 5000);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire("first");
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> batch1 = queue(limiter, AnalysisPriority.BATCH);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> batch2 = queue(limiter, AnalysisPriority.BATCH);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> interactive = queue(limiter,
+                AnalysisPriority.INTERACTIVE);
+        assertEquals(3, limiter.getQueueDepth());
+
+        first.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertTrue(interactive.isDone());
+        assertFalse(batch1.isDone());
+
+        interactive.get().release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertTrue(batch1.isDone());
+        assertFalse(batch2.isDone());
+        batch1.get().release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        batch2.get().release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void acquire_ShouldKeepHeadroomForInteractiveWhenBatchUsesItsShare() {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(4, 5000);
+
+        try (LlmUsageTracker.Scope batch = LlmUsageTracker.openScope(AnalysisPriority.BATCH)) {
+            limiter.acquire("batch-1");
+            limiter.acquire("batch-2");
+        }
+        // Batch-Anteil (50% von 4) ausgeschöpft: weitere Batch-Aufrufe warten trotz freier Slots
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> batch3 = queue(limiter, AnalysisPriority.BATCH);
+        assertFalse(batch3.isDone());
+
+        limiter.acquire("interactive");
+        assertEquals(3, limiter.getInFlight());
+        assertEquals(1, limiter.getQueueDepth());
+    }
+
+    @Test
+    void release_ShouldServeStarvingWaiterFirst() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = newLimiter(1, 5000, 50);
+        AdaptiveConcurrencyLimiter.Permit first = limiter.acquire("first");
+
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> background = queue(limiter,
+                AnalysisPriority.BACKGROUND);
+        Thread.sleep(100);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> realtime = queue(limiter, AnalysisPriority.REALTIME);
+
+        first.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertTrue(background.isDone());
+        assertFalse(realtime.isDone());
+        background.get().release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+        assertTrue(realtime.isDone());
+    }
+}
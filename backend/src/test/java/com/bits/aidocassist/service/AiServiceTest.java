@@ -0,0 +1,143 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class AiServiceTest {
+
+    private static final String TEXT = "Das Kundenportal wird mit Spring Boot 3.2 und Angular 17 entwickelt. "
+            + "Daten liegen in PostgreSQL, Deployment erfolgt per Docker auf AWS. ";
+
+    private final LlmClient llmClient = mock(LlmClient.class);
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final Map<String, List<String>> prompts = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        when(llmClient.chatCompletion(anyMap(), anyString())).thenAnswer(invocation -> {
+            Map<String, Object> body = invocation.getArgument(0);
+            String operation = invocation.getArgument(1);
+            @SuppressWarnings("unchecked")
+            List<Map<String, Object>> messages = (List<Map<String, Object>>) body.get("messages");
+            prompts.computeIfAbsent(operation, op -> new CopyOnWriteArrayList<>())
+                    .add((String) messages.get(messages.size() - 1).get("content"));
+            return responses.getOrDefault(operation, "");
+        });
+    }
+
+    private AiService newService(int maxInputTokens) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        AiService service = new AiService();
+        ReflectionTestUtils.setField(service, "openAiApiKey", "test");
+        ReflectionTestUtils.setField(service, "openAiModel", "gpt-4-turbo-preview");
+        ReflectionTestUtils.setField(service, "combinedAnalysisEnabled", true);
+        ReflectionTestUtils.setField(service, "preprocessingService", new TextPreprocessingService());
+        ReflectionTestUtils.setField(service, "llmClient", llmClient);
+        TokenizerService tokenizer = new TokenizerService();
+        ReflectionTestUtils.setField(tokenizer, "maxInputTokens", maxInputTokens);
+        ReflectionTestUtils.setField(service, "tokenizer", tokenizer);
+        ReflectionTestUtils.setField(service, "taskRunner",
+                new AnalysisTaskRunner(2, 16, 10_000, beanFactory.getBeanProvider(MeterRegistry.class)));
+        ReflectionTestUtils.setField(service, "modelRouter",
+                new LlmModelRouter(false, "", "", 2.5, 10, 3_600_000));
+        ReflectionTestUtils.setField(service, "mapReduceEnabled", true);
+        ReflectionTestUtils.setField(service, "chunkTokens", 2000);
+        ReflectionTestUtils.setField(service, "maxChunks", 16);
+        return service;
+    }
+
+    @Test
+    void analyzeCombined_ShouldTakeValidFieldsAndFallBackPerField() {
+        responses.put("combined", """
+                ```json
+                {
+                    "zusammenfassung": "**Projektziel:** Kundenportal für Self-Service",
+                    "keywords": {
+                        "projekt": ["Kundenportal"],
+                        "technologien": {"backend": ["Spring Boot 3.2"], "frontend": ["Angular 17"]},
+                        "konzepte": ["Self-Service"]
+                    }
+                }
+                ```""");
+
+        AiService.CombinedAnalysis result = newService(6000).analyzeCombined(TEXT, true, true, true);
+
+        assertTrue(result.isCombined());
+        assertTrue(result.getSummary().contains("Kundenportal für Self-Service"));
+        assertTrue(result.getKeywords().contains("Spring Boot 3.2"));
+        assertTrue(result.getKeywords().contains("Konzepte: Self-Service"));
+        assertNotNull(result.getComponents());
+        assertEquals(List.of("components"), result.getFallbackFields());
+        assertEquals(1, prompts.get("combined").size());
+    }
+
+    @Test
+    void analyzeCombined_ShouldFallBackForAllFieldsOnInvalidJson() {
+        responses.put("combined", "Leider kann ich das nicht als JSON liefern.");
+
+        AiService.CombinedAnalysis result = newService(6000).analyzeCombined(TEXT, true, true, true);
+
+        assertEquals(List.of("summary", "keywords", "components"), result.getFallbackFields());
+        assertFalse(result.isComplete());
+        assertFalse(result.getSummary().isBlank());
+        assertFalse(result.getKeywords().isBlank());
+    }
+
+    @Test
+    void analyzeCombined_ShouldNotAskForSummaryWhenMapReduceProvidesIt() {
+        responses.put("combined", """
+                {"keywords": {"konzepte": ["Self-Service"]}, "komponenten": {"Monitoring": ["Prometheus"]}}""");
+        responses.put("summary-chunk", "- Kundenportal mit Spring Boot");
+        responses.put("summarization", "**Projektziel:** Kundenportal aus Teilzusammenfassungen");
+
+        // Kleines Token-Budget: das Dokument passt nicht in den kombinierten Prompt
+        AiService.CombinedAnalysis result = newService(200)
+                .analyzeCombined(TEXT.repeat(20), true, true, true);
+
+        assertTrue(result.getSummary().contains("aus Teilzusammenfassungen"));
+        assertTrue(result.getKeywords().contains("Self-Service"));
+        assertTrue(result.getFallbackFields().isEmpty());
+        assertTrue(result.isComplete());
+        assertFalse(prompts.get("combined").get(0).contains("zusammenfassung"));
+        assertFalse(result.getRoutes().containsKey("summary"));
+    }
+
+    @Test
+    void summaryChunks_ShouldBeEmptyWhenDocumentFitsOnePrompt() {
+        assertTrue(newService(6000).summaryChunks(TEXT).isEmpty());
+        assertFalse(newService(6000).mayNeedMapReduce(TEXT));
+        assertTrue(newService(200).mayNeedMapReduce(TEXT.repeat(20)));
+        AiService small = newService(200);
+        ReflectionTestUtils.setField(small, "chunkTokens", 100);
+        assertTrue(small.summaryChunks(TEXT.repeat(20)).size() >= 2);
+    }
+
+    @Test
+    void analyzeCombined_ShouldMarkSeparateCallsWithoutLlmAsFallback() {
+        AiService service = newService(6000);
+        ReflectionTestUtils.setField(service, "openAiApiKey", "");
+
+        AiService.CombinedAnalysis result = service.analyzeCombined(TEXT, true, true, true);
+
+        assertEquals(List.of("summary", "keywords", "components"), result.getFallbackFields());
+        assertFalse(result.isComplete());
+    }
+}
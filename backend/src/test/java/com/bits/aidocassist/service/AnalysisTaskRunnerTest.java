@@ -0,0 +1,99 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class AnalysisTaskRunnerTest {
+
+    private final AnalysisTaskRunner runner = new AnalysisTaskRunner(1, 4, 5_000,
+            new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    @AfterEach
+    void tearDown() {
+        runner.destroy();
+    }
+
+    @Test
+    void scope_ShouldCancelSiblingsOnFailure() throws Exception {
+        CountDownLatch siblingInterrupted = new CountDownLatch(1);
+
+        try (AnalysisTaskRunner.Scope scope = runner.openScope()) {
+            scope.fork(() -> {
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    siblingInterrupted.countDown();
+                }
+                return null;
+            });
+            scope.fork(() -> {
+                throw new IllegalStateException("LLM down");
+            });
+
+            ExecutionException error = assertThrows(ExecutionException.class, scope::join);
+            assertEquals("LLM down", error.getCause().getMessage());
+        }
+        assertTrue(siblingInterrupted.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void scope_ShouldTimeOutAndReturnResultsOfFinishedTasks() throws Exception {
+        try (AnalysisTaskRunner.Scope scope = runner.openScope(Duration.ofMillis(100))) {
+            scope.fork(() -> {
+                Thread.sleep(10_000);
+                return "slow";
+            });
+            assertThrows(TimeoutException.class, scope::join);
+        }
+
+        try (AnalysisTaskRunner.Scope scope = runner.openScope()) {
+            AnalysisTaskRunner.Subtask<String> a = scope.fork(() -> "a");
+            AnalysisTaskRunner.Subtask<Integer> b = scope.fork(() -> runner.onCpu(() -> 42));
+            scope.join();
+            assertEquals("a", a.get());
+            assertEquals(42, b.get());
+        }
+    }
+
+    @Test
+    void onCpuAll_ShouldKeepOrderAndNotDeadlockInsideCpuTask() throws Exception {
+        List<Callable<Integer>> tasks = IntStream.range(0, 20)
+                .<Callable<Integer>>mapToObj(i -> () -> {
+                    Thread.sleep(2);
+                    return i;
+                })
+                .toList();
+
+        // Einziger Pool-Thread wartet selbst: der Aufrufer muss die Blöcke übernehmen
+        List<Integer> results = runner.onCpu(() -> runner.onCpuAll(tasks));
+
+        assertEquals(IntStream.range(0, 20).boxed().toList(), results);
+    }
+
+    @Test
+    void onCpuAll_ShouldPropagateFirstFailure() {
+        List<Callable<String>> tasks = List.of(() -> "a", () -> {
+            throw new IOException("kaputte Seite");
+        }, () -> "c");
+
+        IOException error = assertThrows(IOException.class, () -> runner.onCpuAll(tasks));
+        assertEquals("kaputte Seite", error.getMessage());
+    }
+}
@@ -0,0 +1,157 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+
+import com.bits.aidocassist.model.Document;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class AnalysisUpgradeServiceTest {
+
+    private final Map<Long, Document> stored = new ConcurrentHashMap<>();
+    private AnalysisUpgradeService service;
+
+    @BeforeEach
+    void setUp() {
+        DocumentService documentService = mock(DocumentService.class);
+        when(documentService.saveDocument(any(Document.class))).thenAnswer(inv -> {
+            Document document = inv.getArgument(0);
+            if (document.getId() == null) {
+                document.setId((long) stored.size() + 1);
+            }
+            // Optimistic Locking wie mit @Version
+            Document existing = stored.get(document.getId());
+            if (existing != null && existing.getVersion() != document.getVersion()) {
+                throw new OptimisticLockingFailureException("Dokument " + document.getId() + " veraltet");
+            }
+            document.setVersion(document.getVersion() + 1);
+            stored.put(document.getId(), copy(document));
+            return document;
+        });
+        when(documentService.getDocumentById(anyLong())).thenAnswer(inv -> {
+            Document document = stored.get(inv.<Long>getArgument(0));
+            return document != null ? copy(document) : null;
+        });
+
+        AnalysisTaskRunner taskRunner = new AnalysisTaskRunner(2, 16, 10_000,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        service = new AnalysisUpgradeService(documentService, taskRunner, 5_000);
+    }
+
+    private static Document copy(Document source) {
+        Document document = new Document();
+        document.setId(source.getId());
+        document.setContent(source.getContent());
+        document.setSummary(source.getSummary());
+        document.setAnalysisVersion(source.getAnalysisVersion());
+        document.setAnalysisStatus(source.getAnalysisStatus());
+        document.setVersion(source.getVersion());
+        return document;
+    }
+
+    private Document instantDocument() {
+        Document document = new Document();
+        document.setContent("Inhalt");
+        document.setSummary("Heuristik");
+        return service.saveInstant(document, true);
+    }
+
+    @Test
+    void awaitVersion_ShouldReturnUpgradedDocumentWhenAnalysisFinishes() throws Exception {
+        Document document = instantDocument();
+        CountDownLatch release = new CountDownLatch(1);
+
+        var upgrade = service.submit(document, () -> {
+            release.await(5, TimeUnit.SECONDS);
+            return doc -> doc.setSummary("KI");
+        });
+        // Version 1 liegt schon vor: sofortige Antwort ohne Warten
+        assertEquals(1, service.awaitVersion(document.getId(), 0, 0).block().getAnalysisVersion());
+
+        var poll = service.awaitVersion(document.getId(), 1, 5_000).toFuture();
+        release.countDown();
+        Document upgraded = poll.get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, upgraded.getAnalysisVersion());
+        assertEquals(AnalysisUpgradeService.STATUS_COMPLETE, upgraded.getAnalysisStatus());
+        assertEquals("KI", upgraded.getSummary());
+        upgrade.get(5, TimeUnit.SECONDS);
+        assertFalse(service.isUpgrading(document.getId()));
+    }
+
+    @Test
+    void submit_ShouldKeepHeuristicAndMarkFailedWhenAnalysisFails() throws Exception {
+        Document document = instantDocument();
+
+        Document result = service.submit(document, () -> {
+            throw new IllegalStateException("LLM nicht erreichbar");
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getAnalysisVersion());
+        assertEquals(AnalysisUpgradeService.STATUS_FAILED, result.getAnalysisStatus());
+        assertEquals("Heuristik", stored.get(document.getId()).getSummary());
+    }
+
+    @Test
+    void submit_ShouldDiscardResultWhenContentChangedMeanwhile() throws Exception {
+        Document document = instantDocument();
+
+        Document result = service.submit(document, () -> {
+            stored.get(document.getId()).setContent("Neuer Inhalt");
+            return doc -> doc.setSummary("KI");
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals(1, result.getAnalysisVersion());
+        assertEquals("Heuristik", stored.get(document.getId()).getSummary());
+    }
+
+    @Test
+    void awaitVersion_ShouldReturnCurrentStateAfterWaitTimeout() {
+        Document document = instantDocument();
+        service.submit(document, () -> {
+            Thread.sleep(2_000);
+            return doc -> { };
+        });
+
+        Document current = service.awaitVersion(document.getId(), 1, 50).block(Duration.ofSeconds(5));
+
+        assertEquals(1, current.getAnalysisVersion());
+        assertEquals(AnalysisUpgradeService.STATUS_PENDING, current.getAnalysisStatus());
+    }
+
+    @Test
+    void submit_ShouldNotOverwriteContentSavedBetweenCheckAndSave() throws Exception {
+        Document document = instantDocument();
+
+        Document result = service.submit(document, () -> doc -> {
+            // PUT committet, während das Upgrade seine Änderungen anwendet
+            Document edited = copy(stored.get(document.getId()));
+            if ("Inhalt".equals(edited.getContent())) {
+                edited.setContent("Neuer Inhalt");
+                edited.setVersion(edited.getVersion() + 1);
+                stored.put(document.getId(), edited);
+            }
+            doc.setSummary("KI");
+        }).get(5, TimeUnit.SECONDS);
+
+        assertEquals("Neuer Inhalt", result.getContent());
+        assertEquals("Neuer Inhalt", stored.get(document.getId()).getContent());
+        assertEquals("Heuristik", stored.get(document.getId()).getSummary());
+    }
+}
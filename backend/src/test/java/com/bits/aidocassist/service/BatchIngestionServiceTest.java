@@ -0,0 +1,175 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.unit.DataSize;
+
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.util.ContentHash;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class BatchIngestionServiceTest {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+    private final List<Map<String, Object>> lines = new CopyOnWriteArrayList<>();
+    private DocumentService documentService;
+    private BatchIngestionService service;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        UploadAnalysisService uploadAnalysis = mock(UploadAnalysisService.class);
+        when(uploadAnalysis.analyzeUpload(anyString(), anyString(), any(InputStreamSource.class), anyBoolean(),
+                anyBoolean(), anyBoolean(), any())).thenAnswer(inv -> {
+                    maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    try (InputStream in = inv.<InputStreamSource>getArgument(2).getInputStream()) {
+                        Thread.sleep(20);
+                        Document document = new Document();
+                        document.setTitle(inv.getArgument(0));
+                        document.setContent(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                        return document;
+                    } finally {
+                        active.decrementAndGet();
+                    }
+                });
+        documentService = mock(DocumentService.class);
+        AtomicLong ids = new AtomicLong();
+        when(documentService.saveDocument(any(Document.class))).thenAnswer(inv -> {
+            Document document = inv.getArgument(0);
+            document.setId(ids.incrementAndGet());
+            return document;
+        });
+
+        AnalysisTaskRunner taskRunner = new AnalysisTaskRunner(2, 16, 10_000,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        service = new BatchIngestionService(uploadAnalysis, documentService, taskRunner, 2, DataSize.ofBytes(64),
+                100);
+    }
+
+    private static byte[] zip(Map<String, String> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                zip.putNextEntry(new ZipEntry(entry.getKey()));
+                zip.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zip.closeEntry();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private long count(String status) {
+        return lines.stream().filter(line -> status.equals(line.get("status"))).count();
+    }
+
+    @Test
+    void addZip_ShouldStreamOneResultPerEntryWithBoundedParallelism() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 12; i++) {
+            entries.put("docs/file-" + i + ".txt", "Inhalt " + i);
+        }
+        entries.put("docs/", "");
+        entries.put("__MACOSX/docs/._file-0.txt", "x");
+
+        BatchIngestionService.Ingestion ingestion = service.open(true, true, true, false, lines::add);
+        ingestion.addZip(new ByteArrayInputStream(zip(entries)));
+        Map<String, Object> summary = ingestion.finish(null);
+
+        assertEquals(12, summary.get("files"));
+        assertEquals(12, summary.get("succeeded"));
+        assertEquals(12, count("ok"));
+        assertTrue(maxActive.get() <= 2, "höchstens 2 Analysen gleichzeitig");
+        assertEquals("summary", lines.get(lines.size() - 1).get("type"));
+    }
+
+    @Test
+    void addZip_ShouldRejectOversizedAndUnsupportedEntriesWithoutAbortingBatch() throws Exception {
+        Map<String, String> entries = new LinkedHashMap<>();
+        entries.put("ok.md", "# Titel");
+        entries.put("big.txt", "x".repeat(65));
+        entries.put("setup.exe", "MZ");
+        entries.put("empty.txt", "");
+
+        BatchIngestionService.Ingestion ingestion = service.open(true, false, false, false, lines::add);
+        ingestion.addZip(new ByteArrayInputStream(zip(entries)));
+        Map<String, Object> summary = ingestion.finish(null);
+
+        assertEquals(4, summary.get("files"));
+        assertEquals(1, summary.get("succeeded"));
+        assertEquals(3, summary.get("failed"));
+        assertEquals(3, count("error"));
+    }
+
+    @Test
+    void add_ShouldReuseExistingAnalysisUnlessForced() throws Exception {
+        Document original = new Document();
+        original.setId(42L);
+        original.setFilename("a.txt");
+        when(documentService.findAnalyzedDuplicate(eq(ContentHash.sha256("a")), eq("upload:SKC")))
+                .thenReturn(Optional.of(original));
+
+        BatchIngestionService.Ingestion ingestion = service.open(true, true, true, false, lines::add);
+        ingestion.add("a.txt", "text/plain", () -> new ByteArrayInputStream("a".getBytes(StandardCharsets.UTF_8)));
+        Map<String, Object> summary = ingestion.finish(null);
+
+        assertEquals(1, summary.get("duplicates"));
+        assertEquals(42L, lines.get(0).get("duplicateOf"));
+        assertEquals(0, maxActive.get());
+
+        lines.clear();
+        BatchIngestionService.Ingestion forced = service.open(true, true, true, true, lines::add);
+        forced.add("a.txt", "text/plain", () -> new ByteArrayInputStream("a".getBytes(StandardCharsets.UTF_8)));
+        assertEquals(0, forced.finish(null).get("duplicates"));
+        assertEquals(1, maxActive.get());
+    }
+
+    @Test
+    void add_ShouldStopReadingWhenClientDisconnects() throws Exception {
+        BatchIngestionService.Ingestion ingestion = service.open(true, true, true, false, line -> {
+            throw new IOException("Broken pipe");
+        });
+        ingestion.add("a.txt", "text/plain", () -> new ByteArrayInputStream("a".getBytes(StandardCharsets.UTF_8)));
+        ingestion.finish(null);
+
+        assertTrue(ingestion.isCancelled());
+        assertThrows(IOException.class,
+                () -> ingestion.add("b.txt", "text/plain", () -> new ByteArrayInputStream(new byte[1])));
+    }
+
+    @Test
+    void resolveContentType_ShouldFallBackToExtension() {
+        assertEquals("application/pdf", BatchIngestionService.resolveContentType("A.PDF", "application/octet-stream"));
+        assertEquals("text/plain", BatchIngestionService.resolveContentType("notiz", "text/plain"));
+        assertNull(BatchIngestionService.resolveContentType("archiv.tar", null));
+        assertTrue(BatchIngestionService.isZip("batch.zip", "application/octet-stream"));
+    }
+}
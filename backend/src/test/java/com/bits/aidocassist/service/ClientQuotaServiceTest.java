@@ -0,0 +1,77 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class ClientQuotaServiceTest {
+
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+    private final LlmUsageTracker tracker = new LlmUsageTracker(60, beanFactory.getBeanProvider(MeterRegistry.class));
+
+    private ClientQuotaService newService(double requestsPerMinute, double burst, double tokensPerMinute,
+            double tokenBurst) {
+        return new ClientQuotaService(tracker, true, requestsPerMinute, burst, tokensPerMinute, tokenBurst, 100,
+                List.of("secret-key"), beanFactory.getBeanProvider(MeterRegistry.class));
+    }
+
+    @Test
+    void tryAcquire_ShouldThrottleEachClientSeparatelyAfterBurst() {
+        ClientQuotaService service = newService(1, 2, 100_000, 100_000);
+
+        assertTrue(service.tryAcquire("ip:1").allowed());
+        assertTrue(service.tryAcquire("ip:1").allowed());
+        ClientQuotaService.Decision third = service.tryAcquire("ip:1");
+        assertFalse(third.allowed());
+        assertEquals("requests", third.reason());
+        assertTrue(third.retryAfterMs() > 0);
+
+        assertTrue(service.tryAcquire("ip:2").allowed());
+    }
+
+    @Test
+    void recordedLlmTokens_ShouldThrottleClientUntilRefilled() {
+        ClientQuotaService service = newService(60, 20, 60, 1_000);
+
+        try (LlmUsageTracker.Scope scope = LlmUsageTracker.openScope(AnalysisPriority.INTERACTIVE, "key:noisy")) {
+            // Kind-Scopes erben die Client-ID
+            try (LlmUsageTracker.Scope inner = LlmUsageTracker.openScope(AnalysisPriority.BATCH)) {
+                tracker.record(inner, new LlmUsageTracker.LlmCall("summary", "gpt-4o-mini", 1_500, 500, 0, 100));
+            }
+        }
+
+        assertTrue(service.isLlmThrottled("key:noisy"));
+        ClientQuotaService.Decision decision = service.tryAcquire("key:noisy");
+        assertFalse(decision.allowed());
+        assertEquals("llm-tokens", decision.reason());
+        assertFalse(service.isLlmThrottled("key:quiet"));
+
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> clients = (List<Map<String, Object>>) service.getStats(10).get("clients");
+        assertEquals("key:noisy", clients.get(0).get("clientId"));
+        assertEquals(2_000L, clients.get(0).get("llmTokens"));
+        assertEquals(1L, clients.get(0).get("throttledLlmTokens"));
+    }
+
+    @Test
+    void clientId_ShouldPreferKnownHashedApiKeyOverIp() {
+        ClientQuotaService service = newService(60, 20, 100_000, 100_000);
+        String id = service.clientId("secret-key", "10.0.0.1");
+
+        assertTrue(id.startsWith("key:"));
+        assertFalse(id.contains("secret"));
+        assertEquals("ip:10.0.0.1", service.clientId(null, "10.0.0.1"));
+        // unbekannte Keys ergeben kein eigenes Kontingent
+        assertEquals("ip:10.0.0.1", service.clientId("other-key", "10.0.0.1"));
+        assertNotEquals(id, service.clientId("other-key", "10.0.0.1"));
+    }
+}
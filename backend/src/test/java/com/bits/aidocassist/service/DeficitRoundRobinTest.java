@@ -0,0 +1,74 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+
+class DeficitRoundRobinTest {
+
+    private static String serve(DeficitRoundRobin drr, Map<String, Long> costs) {
+        String client = drr.next(costs, candidate -> true);
+        drr.charge(client, costs.get(client));
+        return client;
+    }
+
+    @Test
+    void next_ShouldAlternateBetweenClientsRegardlessOfBacklog() {
+        DeficitRoundRobin drr = new DeficitRoundRobin(1);
+        // "noisy" hat viele Aufträge, "quiet" wenige – beide gleich teuer
+        Map<String, Long> costs = Map.of("noisy", 1L, "quiet", 1L);
+
+        List<String> order = List.of(serve(drr, costs), serve(drr, costs), serve(drr, costs), serve(drr, costs));
+
+        assertEquals(List.of("noisy", "quiet", "noisy", "quiet"), order);
+    }
+
+    @Test
+    void next_ShouldShareByCostNotByCount() {
+        DeficitRoundRobin drr = new DeficitRoundRobin(256);
+        Map<String, Long> costs = Map.of("large", 1024L, "small", 64L);
+        Map<String, Long> costServed = new HashMap<>();
+
+        for (int i = 0; i < 100; i++) {
+            String client = serve(drr, costs);
+            costServed.merge(client, costs.get(client), Long::sum);
+        }
+
+        // Beide Clients erhalten etwa gleich viel Volumen (Abweichung höchstens ein großer Auftrag)
+        assertTrue(Math.abs(costServed.get("large") - costServed.get("small")) <= 1024 + 256,
+                costServed.toString());
+    }
+
+    @Test
+    void next_ShouldSkipIneligibleClientsAndReturnNullIfNoneEligible() {
+        DeficitRoundRobin drr = new DeficitRoundRobin(1);
+        Map<String, Long> costs = Map.of("throttled", 1L, "ok", 1L);
+
+        assertEquals("ok", drr.next(costs, "ok"::equals));
+        assertNull(drr.next(costs, candidate -> false));
+        assertNull(drr.next(Map.of(), candidate -> true));
+    }
+
+    @Test
+    void next_ShouldEvaluateEligibilityOnceWhenItChangesConcurrently() {
+        DeficitRoundRobin drr = new DeficitRoundRobin(1);
+        // Kosten über einem Quantum: der Client braucht mehrere Runden
+        Map<String, Long> costs = Map.of("client", 3L);
+        // Berechtigt nur bei der ersten Abfrage, danach gedrosselt (z.B. durch andere Threads)
+        AtomicBoolean first = new AtomicBoolean(true);
+
+        String client = assertTimeoutPreemptively(Duration.ofSeconds(2),
+                () -> drr.next(costs, candidate -> first.getAndSet(false)));
+
+        assertEquals("client", client);
+    }
+}
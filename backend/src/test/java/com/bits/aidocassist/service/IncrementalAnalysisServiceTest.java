@@ -0,0 +1,155 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import com.bits.aidocassist.model.Document;
+import com.bits.aidocassist.model.DocumentSegment;
+import com.bits.aidocassist.repository.DocumentSegmentRepository;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class IncrementalAnalysisServiceTest {
+
+    private AiService aiService;
+    private DocumentSegmentRepository repository;
+    private IncrementalAnalysisService service;
+    private final List<DocumentSegment> stored = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        aiService = mock(AiService.class);
+        repository = mock(DocumentSegmentRepository.class);
+        when(aiService.isOpenAiConfigured()).thenReturn(true);
+        // Chunks wie im Map-Reduce: hier je Abschnitt, ein einzelner Abschnitt passt in einen Prompt
+        when(aiService.summaryChunks(anyString())).thenAnswer(inv -> {
+            List<String> chunks = List.of(((String) inv.getArgument(0)).split("\\n--- Abschnitt \\d+ ---\\n\\n"));
+            return chunks.size() < 2 ? List.of() : chunks;
+        });
+        when(aiService.summarizeSegment(anyString())).thenAnswer(inv -> "Teil: " + inv.getArgument(0));
+        when(aiService.mergeSummaries(anyList())).thenReturn("Gesamt");
+        when(aiService.analyzeCombined(anyString(), eq(false), eq(true), eq(true)))
+                .thenReturn(new AiService.CombinedAnalysis());
+        when(repository.findByDocumentIdOrderByPositionAsc(1L)).thenAnswer(inv -> new ArrayList<>(stored));
+        when(repository.saveAll(anyList())).thenAnswer(inv -> {
+            stored.clear();
+            stored.addAll((List<DocumentSegment>) inv.getArgument(0));
+            return stored;
+        });
+
+        AnalysisTaskRunner taskRunner = new AnalysisTaskRunner(2, 16, 10_000,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+        service = new IncrementalAnalysisService(aiService, new TokenizerService(), repository, taskRunner,
+                "gpt-4-turbo-preview");
+    }
+
+    private static Document document(String... segments) {
+        Document document = new Document();
+        document.setId(1L);
+        StringBuilder content = new StringBuilder(segments[0]);
+        for (int i = 1; i < segments.length; i++) {
+            content.append("\n--- Abschnitt ").append(i + 1).append(" ---\n\n").append(segments[i]);
+        }
+        document.setContent(content.toString());
+        return document;
+    }
+
+    @Test
+    void reanalyze_ShouldOnlySummarizeChangedSegments() {
+        Document document = document("Architektur mit Spring Boot.", "Frontend mit Angular.", "Betrieb auf AWS.");
+        IncrementalAnalysisService.IncrementalResult first = service.reanalyze(document, true, true, true);
+        assertEquals(3, first.getRecomputedSegments());
+
+        Document edited = document("Architektur mit Spring Boot.", "Frontend mit Angular 17.", "Betrieb auf AWS.");
+        edited.setSegmentFingerprint(document.getSegmentFingerprint());
+        IncrementalAnalysisService.IncrementalResult second = service.reanalyze(edited, true, true, true);
+
+        assertEquals(2, second.getReusedSegments());
+        assertEquals(1, second.getRecomputedSegments());
+        verify(aiService, times(4)).summarizeSegment(anyString());
+        verify(aiService).summarizeSegment("Frontend mit Angular 17.");
+        assertEquals("Gesamt", edited.getSummary());
+    }
+
+    @Test
+    void reanalyze_ShouldSkipLlmWhenFingerprintUnchanged() {
+        Document document = document("Architektur mit Spring Boot.", "Frontend mit Angular.");
+        service.reanalyze(document, true, true, true);
+        document.setKeywords("Spring Boot");
+        document.setSuggestedComponents("Monitoring: Prometheus");
+
+        IncrementalAnalysisService.IncrementalResult result = service.reanalyze(document, true, true, true);
+
+        assertTrue(result.isUnchanged());
+        verify(aiService, times(2)).summarizeSegment(anyString());
+        verify(aiService, never()).summarizeText(anyString());
+    }
+
+    @Test
+    void reanalyze_ShouldUseSingleCombinedCallWhenDocumentFitsOnePrompt() {
+        when(aiService.analyzeCombined(anyString(), eq(true), eq(true), eq(true)))
+                .thenReturn(new AiService.CombinedAnalysis());
+        Document document = document("Architektur mit Spring Boot, Frontend mit Angular.");
+
+        IncrementalAnalysisService.IncrementalResult result = service.reanalyze(document, true, true, true);
+
+        assertTrue(result.isFullAnalysis());
+        verify(aiService).analyzeCombined(anyString(), eq(true), eq(true), eq(true));
+        verify(aiService, never()).summarizeSegment(anyString());
+        verify(repository).deleteByDocumentId(1L);
+    }
+
+    @Test
+    void prepareInitialSegments_ShouldStoreCachedChunkSummariesOnFirstSave() {
+        when(aiService.mayNeedMapReduce(anyString())).thenReturn(true);
+        when(aiService.cachedSegmentSummary(anyString())).thenAnswer(inv -> "Teil: " + inv.getArgument(0));
+        Document document = document("Architektur mit Spring Boot.", "Frontend mit Angular.", "Betrieb auf AWS.");
+        document.setId(null);
+        document.setSummary("Gesamt");
+        document.setKeywords("Spring Boot");
+        document.setSuggestedComponents("Monitoring: Prometheus");
+
+        List<DocumentSegment> segments = service.prepareInitialSegments(document);
+        document.setId(1L);
+        service.storeInitialSegments(document, segments);
+
+        assertEquals(3, stored.size());
+        verify(aiService, never()).summarizeSegment(anyString());
+        // Fingerprint mit den Segmenten gesetzt: unveränderter Inhalt braucht keine LLM-Aufrufe
+        assertTrue(service.reanalyze(document, true, true, true).isUnchanged());
+
+        Document edited = document("Architektur mit Spring Boot.", "Frontend mit Angular 17.", "Betrieb auf AWS.");
+        IncrementalAnalysisService.IncrementalResult result = service.reanalyze(edited, true, true, true);
+
+        assertEquals(2, result.getReusedSegments());
+        verify(aiService).summarizeSegment("Frontend mit Angular 17.");
+    }
+
+    @Test
+    void prepareInitialSegments_ShouldSkipChunkingWhenDocumentFitsOnePrompt() {
+        Document document = document("Architektur mit Spring Boot.", "Frontend mit Angular.");
+        document.setId(null);
+        document.setSummary("Gesamt");
+
+        assertTrue(service.prepareInitialSegments(document).isEmpty());
+        verify(aiService, never()).summaryChunks(anyString());
+        assertNull(document.getSegmentFingerprint());
+    }
+}
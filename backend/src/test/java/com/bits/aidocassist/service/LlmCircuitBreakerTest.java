@@ -0,0 +1,47 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class LlmCircuitBreakerTest {
+
+    @Test
+    void breaker_ShouldOpenAboveFailureRateAndCloseAfterSuccessfulProbe() throws Exception {
+        LlmCircuitBreaker circuitBreaker = new LlmCircuitBreaker(10, 4, 50, 50, 1);
+        LlmCircuitBreaker.Breaker breaker = circuitBreaker.forOperation("openai", "summarization");
+
+        breaker.tryAcquire();
+        breaker.onSuccess();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure();
+        }
+        assertEquals(LlmCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertTrue(circuitBreaker.isAnyOpen());
+
+        Thread.sleep(80);
+        assertTrue(breaker.tryAcquire());
+        assertEquals(LlmCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        // Nur eine Probe gleichzeitig
+        assertFalse(breaker.tryAcquire());
+
+        breaker.onSuccess();
+        assertEquals(LlmCircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void breaker_ShouldBeIsolatedPerOperation() {
+        LlmCircuitBreaker circuitBreaker = new LlmCircuitBreaker(10, 1, 50, 30000, 1);
+
+        LlmCircuitBreaker.Breaker summary = circuitBreaker.forOperation("openai", "summarization");
+        summary.tryAcquire();
+        summary.onFailure();
+
+        assertEquals(LlmCircuitBreaker.State.OPEN, summary.getState());
+        assertTrue(circuitBreaker.forOperation("openai", "keywords").tryAcquire());
+    }
+}
@@ -0,0 +1,81 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class LlmClientTest {
+
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+
+    private Map<String, Object> request() {
+        return Map.of(
+                "model", "gpt-4-turbo-preview",
+                "messages", List.of(Map.of("role", "user", "content", "Analysiere die Spezifikation")),
+                "temperature", 0.3,
+                "max_tokens", 500);
+    }
+
+    @Test
+    void chatCompletion_ShouldCoalesceIdenticalConcurrentRequests() throws Exception {
+        RestTemplate restTemplate = mock(RestTemplate.class);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(restTemplate.exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class)))
+                .thenAnswer(invocation -> {
+                    entered.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                    return ResponseEntity.ok(Map.of("choices",
+                            List.of(Map.of("message", Map.of("content", "Ergebnis")))));
+                });
+
+        LlmResponseCache cache = new LlmResponseCache(true, 1, 60, beanFactory.getBeanProvider(MeterRegistry.class));
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 1, 20, 20000, 0.5, 100, 5000,
+                "interactive:4,batch:2", 0.75, 10_000, 5000, beanFactory.getBeanProvider(MeterRegistry.class));
+        LlmRetryPolicy retryPolicy = new LlmRetryPolicy(0, 10, 100, 5000, 0.05,
+                beanFactory.getBeanProvider(MeterRegistry.class));
+        LlmClient client = new LlmClient(restTemplate, mock(WebClient.class), cache, limiter, retryPolicy,
+                new LlmCircuitBreaker(20, 5, 50, 30000, 1),
+                new LlmHedgingPolicy(new AnalysisTaskRunner(1, 4, 5_000,
+                        beanFactory.getBeanProvider(MeterRegistry.class)), false, 0.9, 0.05, 20,
+                        beanFactory.getBeanProvider(MeterRegistry.class)),
+                new LlmUsageTracker(60, beanFactory.getBeanProvider(MeterRegistry.class)),
+                beanFactory.getBeanProvider(MeterRegistry.class));
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> client.chatCompletion(request(), "test"));
+        entered.await(5, TimeUnit.SECONDS);
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> client.chatCompletion(request(), "test"));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((long) client.getStats().get("coalescedCalls") < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals("Ergebnis", first.get(5, TimeUnit.SECONDS));
+        assertEquals("Ergebnis", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1L, client.getStats().get("coalescedCalls"));
+        verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.POST), any(HttpEntity.class), eq(Map.class));
+    }
+}
@@ -0,0 +1,60 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class LlmHedgingPolicyTest {
+
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+
+    private LlmHedgingPolicy newPolicy(double budgetRatio) {
+        return new LlmHedgingPolicy(
+                new AnalysisTaskRunner(1, 4, 5_000, beanFactory.getBeanProvider(MeterRegistry.class)),
+                true, 0.9, budgetRatio, 5, beanFactory.getBeanProvider(MeterRegistry.class));
+    }
+
+    private static String sleepAndReturn(long millis, String value) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        return value;
+    }
+
+    @Test
+    void execute_ShouldHedgeSlowCallAndTakeFasterAnswer() {
+        LlmHedgingPolicy policy = newPolicy(1.0);
+        for (int i = 0; i < 5; i++) {
+            policy.execute("summarization", () -> sleepAndReturn(10, "warmup"));
+        }
+
+        // Erster Aufruf hängt, der Hedge antwortet sofort
+        AtomicInteger attempts = new AtomicInteger();
+        String result = policy.execute("summarization",
+                () -> attempts.incrementAndGet() == 1 ? sleepAndReturn(2000, "slow") : "fast");
+
+        assertEquals("fast", result);
+        assertEquals(1L, policy.getStats().get("hedgesSent"));
+        assertEquals(1L, policy.getStats().get("hedgesWon"));
+    }
+
+    @Test
+    void execute_ShouldRespectHedgeBudget() {
+        LlmHedgingPolicy policy = newPolicy(0.0);
+        for (int i = 0; i < 5; i++) {
+            policy.execute("keywords", () -> sleepAndReturn(5, "warmup"));
+        }
+
+        assertEquals("slow", policy.execute("keywords", () -> sleepAndReturn(100, "slow")));
+        assertEquals(0L, policy.getStats().get("hedgesSent"));
+        assertEquals(1L, policy.getStats().get("skippedByBudget"));
+    }
+}
@@ -0,0 +1,76 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class LlmModelRouterTest {
+
+    private static final String TABLE = "small|gpt-4o-mini|keywords,industry|3000;"
+            + "standard|gpt-3.5-turbo|*|6000;long|gpt-4o|summarization|24000";
+
+    @Test
+    void route_ShouldPickFirstRouteByOperationAndSize() {
+        LlmModelRouter router = new LlmModelRouter(true, TABLE, "", 2.5, 2, 3_600_000);
+
+        assertEquals("small", router.route("keywords", 1200, "default-model").route());
+        assertEquals("standard", router.route("keywords", 4000, "default-model").route());
+        assertEquals("standard", router.route("summarization", 2000, "default-model").route());
+        assertEquals("gpt-4o", router.route("summarization", 20000, "default-model").model());
+
+        LlmModelRouter.Decision tooLong = router.route("keywords", 50000, "default-model");
+        assertEquals(LlmModelRouter.DEFAULT_ROUTE, tooLong.route());
+        assertEquals("default-model", tooLong.model());
+        assertEquals(0, tooLong.maxInputTokens());
+    }
+
+    @Test
+    void route_ShouldSkipRoutesWithPoorFeedback() {
+        LlmModelRouter router = new LlmModelRouter(true, TABLE, "", 2.5, 2, 3_600_000);
+
+        router.recordRating("small", 1);
+        assertEquals("small", router.route("keywords", 500, "default-model").route());
+        router.recordRating("small", 2);
+        assertEquals("standard", router.route("keywords", 500, "default-model").route());
+    }
+
+    @Test
+    void route_ShouldPreferLaterRouteWhenLatencyTargetIsMissed() {
+        LlmModelRouter router = new LlmModelRouter(true, TABLE, "industry:1000", 2.5, 2, 3_600_000);
+
+        LlmModelRouter.Decision slow = router.route("industry", 100, "default-model");
+        router.recordOutcome(slow, 5000, true);
+        router.recordOutcome(slow, 5000, true);
+        assertEquals("small", slow.route());
+        // Latenzziel verfehlt: nächste Route ohne Messwerte bevorzugen
+        assertEquals("standard", router.route("industry", 100, "default-model").route());
+    }
+
+    @Test
+    void route_ShouldRetryExcludedRoutesOnceTheirStatsHaveDecayed() throws InterruptedException {
+        LlmModelRouter router = new LlmModelRouter(true, TABLE, "industry:1000", 2.5, 2, 50);
+
+        router.recordRating("small", 1);
+        router.recordRating("small", 1);
+        assertEquals("standard", router.route("keywords", 500, "default-model").route());
+        LlmModelRouter.Decision slow = new LlmModelRouter.Decision("small", "gpt-4o-mini", 3000);
+        router.recordOutcome(slow, 5000, true);
+        router.recordOutcome(slow, 5000, true);
+        assertEquals("standard", router.route("industry", 100, "default-model").route());
+
+        // ohne Verkehr keine neuen Messwerte: erst das Verfallen der alten gibt die Route frei
+        Thread.sleep(200);
+        assertEquals("small", router.route("keywords", 500, "default-model").route());
+        assertEquals("small", router.route("industry", 100, "default-model").route());
+    }
+
+    @Test
+    void fieldRoutes_ShouldRoundTrip() {
+        String encoded = LlmModelRouter.encodeFieldRoutes(Map.of("summary", "long", "keywords", "small"));
+
+        assertEquals("keywords=small,summary=long", encoded);
+        assertEquals(Map.of("summary", "long", "keywords", "small"), LlmModelRouter.decodeFieldRoutes(encoded));
+    }
+}
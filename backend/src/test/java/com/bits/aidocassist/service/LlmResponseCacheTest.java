@@ -0,0 +1,68 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class LlmResponseCacheTest {
+
+    private LlmResponseCache newCache(boolean enabled) {
+        return new LlmResponseCache(enabled, 1, 60,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private Map<String, Object> request(String prompt, double temperature) {
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", "gpt-4-turbo-preview");
+        body.put("messages", List.of(Map.of("role", "user", "content", prompt)));
+        body.put("temperature", temperature);
+        body.put("max_tokens", 500);
+        return body;
+    }
+
+    @Test
+    void keyFor_ShouldIgnoreStreamFlagButNotParameters() {
+        LlmResponseCache cache = newCache(true);
+        Map<String, Object> streamed = request("Hallo", 0.3);
+        streamed.put("stream", true);
+        Map<String, Object> streamedWithUsage = new HashMap<>(streamed);
+        streamedWithUsage.put("stream_options", Map.of("include_usage", true));
+
+        assertEquals(cache.keyFor(request("Hallo", 0.3)), cache.keyFor(streamed));
+        assertEquals(cache.keyFor(request("Hallo", 0.3)), cache.keyFor(streamedWithUsage));
+        assertNotEquals(cache.keyFor(request("Hallo", 0.3)), cache.keyFor(request("Hallo", 0.7)));
+    }
+
+    @Test
+    void getAndPut_ShouldRecordHitsAndMisses() {
+        LlmResponseCache cache = newCache(true);
+        String key = cache.keyFor(request("Spezifikation", 0.3));
+
+        assertNull(cache.get(key));
+        cache.put(key, "Zusammenfassung");
+        assertEquals("Zusammenfassung", cache.get(key));
+
+        Map<String, Object> stats = cache.getStats();
+        assertEquals(1L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+        assertEquals(1L, stats.get("entries"));
+    }
+
+    @Test
+    void disabledCache_ShouldNeverReturnEntries() {
+        LlmResponseCache cache = newCache(false);
+        String key = cache.keyFor(request("Spezifikation", 0.3));
+
+        cache.put(key, "Zusammenfassung");
+        assertNull(cache.get(key));
+    }
+}
@@ -0,0 +1,84 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class LlmRetryPolicyTest {
+
+    private LlmRetryPolicy newPolicy(int maxRetries, long budgetMs) {
+        return new LlmRetryPolicy(maxRetries, 10, 50, budgetMs, 0.05,
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private HttpClientErrorException error(HttpStatus status, HttpHeaders headers) {
+        return HttpClientErrorException.create(status, status.getReasonPhrase(), headers, new byte[0], null);
+    }
+
+    @Test
+    void parseResetMs_ShouldReadOpenAiDurations() {
+        assertEquals(20, LlmRetryPolicy.parseResetMs("20ms"));
+        assertEquals(360_000, LlmRetryPolicy.parseResetMs("6m0s"));
+        assertEquals(1500, LlmRetryPolicy.parseResetMs("1.5s"));
+        assertEquals(-1, LlmRetryPolicy.parseResetMs(null));
+    }
+
+    @Test
+    void execute_ShouldRetryOn429AndHonourRetryAfter() {
+        LlmRetryPolicy policy = newPolicy(3, 5000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("retry-after-ms", "5");
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = policy.execute("test", () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw error(HttpStatus.TOO_MANY_REQUESTS, headers);
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2L, policy.getStats().get("retries"));
+    }
+
+    @Test
+    void execute_ShouldNotRetryClientErrorsOrBeyondBudget() {
+        LlmRetryPolicy policy = newPolicy(3, 5000);
+        AtomicInteger attempts = new AtomicInteger();
+        assertThrows(HttpClientErrorException.class, () -> policy.execute("test", () -> {
+            attempts.incrementAndGet();
+            throw error(HttpStatus.BAD_REQUEST, new HttpHeaders());
+        }));
+        assertEquals(1, attempts.get());
+
+        HttpHeaders slow = new HttpHeaders();
+        slow.set(HttpHeaders.RETRY_AFTER, "60");
+        assertThrows(HttpClientErrorException.class,
+                () -> policy.execute("test", () -> { throw error(HttpStatus.TOO_MANY_REQUESTS, slow); }));
+        assertEquals(1L, policy.getStats().get("budgetExhausted"));
+    }
+
+    @Test
+    void observe_ShouldPauseWhenRequestQuotaIsExhausted() {
+        LlmRetryPolicy policy = newPolicy(0, 5000);
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("x-ratelimit-limit-requests", "500");
+        headers.set("x-ratelimit-remaining-requests", "0");
+        headers.set("x-ratelimit-reset-requests", "2s");
+
+        policy.observe(headers);
+
+        assertTrue(policy.quotaDelayMs() > 1000);
+    }
+}
@@ -0,0 +1,71 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class LlmUsageTrackerTest {
+
+    private final LlmUsageTracker tracker = new LlmUsageTracker(60,
+            new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    private static Map<String, Object> body(int prompt, int completion, int cached) {
+        return Map.of("usage", Map.of("prompt_tokens", prompt, "completion_tokens", completion,
+                "prompt_tokens_details", Map.of("cached_tokens", cached)));
+    }
+
+    @Test
+    void scope_ShouldAggregateCallsAcrossPropagatedThreads() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (LlmUsageTracker.Scope usage = LlmUsageTracker.openScope()) {
+            tracker.record(LlmUsageTracker.current(),
+                    LlmUsageTracker.LlmCall.fromResponse("summary", "gpt-4o-mini", body(1000, 200, 400), 120));
+            CompletableFuture.runAsync(LlmUsageTracker.propagate(() -> tracker.record(LlmUsageTracker.current(),
+                    LlmUsageTracker.LlmCall.fromResponse("keywords", "gpt-4o-mini", body(500, 50, 0), 80))),
+                    executor).get();
+
+            Map<String, Object> metadata = usage.toMetadata();
+            assertEquals(2L, ((Number) metadata.get("calls")).longValue());
+            assertEquals(1500L, ((Number) metadata.get("promptTokens")).longValue());
+            assertEquals(250L, ((Number) metadata.get("completionTokens")).longValue());
+            assertEquals(400L, ((Number) metadata.get("cachedTokens")).longValue());
+            assertEquals(2, ((Map<?, ?>) metadata.get("byOperation")).size());
+        } finally {
+            executor.shutdown();
+        }
+        assertNull(LlmUsageTracker.current());
+    }
+
+    @Test
+    void getUsage_ShouldSortOperationsByRequestedMetric() {
+        LlmUsageTracker.Scope scope = LlmUsageTracker.newScope();
+        tracker.record(scope, new LlmUsageTracker.LlmCall("summary", "gpt-4o", 2000, 300, 0, 900));
+        tracker.record(scope, new LlmUsageTracker.LlmCall("industry", "gpt-4o", 100, 10, 0, 50));
+        tracker.record(scope, new LlmUsageTracker.LlmCall("industry", "gpt-4o", 100, 10, 0, 50));
+
+        List<?> byTokens = (List<?>) tracker.getUsage("tokens", 10).get("operations");
+        assertEquals("summary", ((Map<?, ?>) byTokens.get(0)).get("operation"));
+
+        List<?> byCalls = (List<?>) tracker.getUsage("calls", 1).get("operations");
+        assertEquals(1, byCalls.size());
+        assertEquals("industry", ((Map<?, ?>) byCalls.get(0)).get("operation"));
+    }
+
+    @Test
+    void estimateCostUsd_ShouldUseLongestPrefixAndDiscountCachedInput() {
+        // gpt-4o-mini: 0.15 $ Input, 0.075 $ gecacht, 0.60 $ Output je 1 Mio. Tokens
+        assertEquals(0.15 * 0.5 + 0.075 * 0.5 + 0.60,
+                LlmUsageTracker.estimateCostUsd("gpt-4o-mini-2024-07-18", 1_000_000, 500_000, 1_000_000), 1e-9);
+        assertEquals(-1, LlmUsageTracker.estimateCostUsd("local-model", 100, 0, 100));
+    }
+}
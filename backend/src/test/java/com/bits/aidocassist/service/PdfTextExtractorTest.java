@@ -0,0 +1,111 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.util.unit.DataSize;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+class PdfTextExtractorTest {
+
+    private final AnalysisTaskRunner runner = new AnalysisTaskRunner(4, 16, 5_000,
+            new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+
+    @AfterEach
+    void tearDown() {
+        runner.destroy();
+    }
+
+    private PdfTextExtractor extractor(boolean parallel) {
+        return new PdfTextExtractor(runner, parallel, 4, 8, 10_000, DataSize.ofMegabytes(1), DataSize.ofMegabytes(2),
+                new StaticListableBeanFactory().getBeanProvider(MeterRegistry.class));
+    }
+
+    private static byte[] pdf(int pages) throws IOException {
+        try (PDDocument document = new PDDocument(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            for (int i = 1; i <= pages; i++) {
+                PDPage page = new PDPage();
+                document.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+                    content.beginText();
+                    content.setFont(PDType1Font.HELVETICA, 12);
+                    content.newLineAtOffset(72, 700);
+                    content.showText("Seite " + i + " Anforderungen");
+                    content.endText();
+                }
+            }
+            document.save(out);
+            return out.toByteArray();
+        }
+    }
+
+    @Test
+    void extract_ShouldReassembleChunksInPageOrder() throws Exception {
+        byte[] bytes = pdf(30);
+
+        PdfTextExtractor.Extraction sequential = extractor(false).extract("spec.pdf",
+                PdfTextExtractor.PdfSource.of(bytes), true);
+        PdfTextExtractor.Extraction parallel = extractor(true).extract("spec.pdf",
+                PdfTextExtractor.PdfSource.of(bytes), true);
+
+        assertEquals(1, sequential.chunks());
+        assertEquals(8, parallel.chunks());
+        assertEquals(sequential.text(), parallel.text());
+        assertTrue(parallel.text().indexOf("Seite 9 ") < parallel.text().indexOf("Seite 10 "));
+        assertEquals(30, parallel.pages());
+        assertTrue(Arrays.stream(parallel.pageNanos()).allMatch(nanos -> nanos > 0), "Dauer für jede Seite");
+    }
+
+    @Test
+    void extract_ShouldReportSlowestPages() throws Exception {
+        PdfTextExtractor extractor = extractor(true);
+        PdfTextExtractor.Extraction extraction = extractor.extract("short.pdf",
+                PdfTextExtractor.PdfSource.of(pdf(3)), false);
+
+        List<PdfTextExtractor.PageTiming> slowest = extraction.slowestPages(2);
+        assertEquals(2, slowest.size());
+        assertTrue(slowest.get(0).millis() >= slowest.get(1).millis());
+
+        Map<String, Object> stats = extractor.getStats();
+        assertEquals(1L, stats.get("documents"));
+        assertEquals(0L, stats.get("parallelDocuments"));
+        assertEquals(3, ((List<?>) stats.get("slowestPages")).size());
+    }
+
+    @Test
+    void extract_ShouldReadStreamsWithinMemoryBudget() throws Exception {
+        byte[] bytes = pdf(30);
+        AtomicInteger opened = new AtomicInteger();
+        InputStreamSource upload = () -> {
+            opened.incrementAndGet();
+            return new ByteArrayInputStream(bytes);
+        };
+        PdfTextExtractor extractor = extractor(true);
+
+        PdfTextExtractor.Extraction extraction = extractor.extract("upload.pdf", upload, true);
+
+        assertEquals(8, extraction.chunks());
+        assertTrue(extraction.text().contains("Seite 30 "));
+        // Seitenzahl aus dem Stream, danach einmal gespoolt statt je Block neu gelesen
+        assertEquals(2, opened.get());
+        assertEquals(0, extractor.getStats().get("memoryInUseMb"));
+        assertEquals(0, extractor.getStats().get("waitingForMemory"));
+    }
+}
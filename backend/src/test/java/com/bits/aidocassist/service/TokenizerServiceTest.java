@@ -0,0 +1,83 @@
+package com.bits.aidocassist.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class TokenizerServiceTest {
+
+    private static final String MODEL = "gpt-4-turbo-preview";
+
+    private final TokenizerService tokenizer = new TokenizerService();
+
+    @Test
+    void countTokens_ShouldMatchCl100kEncoding() {
+        // Referenzwert aus tiktoken (cl100k_base)
+        assertEquals(4, tokenizer.countTokens(MODEL, "hello world, test"));
+        assertEquals(0, tokenizer.countTokens(MODEL, ""));
+        // Chat-Overhead: 3 pro Message + 3 für die Antwort
+        assertEquals(3 + 3 + 2, tokenizer.countChatTokens(MODEL,
+                List.of(Map.of("role", "user", "content", "hello world"))));
+    }
+
+    @Test
+    void truncateToTokens_ShouldStayWithinBudgetAndPreferSentenceEnd() {
+        String text = "Das System nutzt Spring Boot und Angular. ".repeat(200);
+
+        String truncated = tokenizer.truncateToTokens(MODEL, text, 100);
+
+        assertTrue(tokenizer.countTokens(MODEL, truncated) <= 100);
+        assertTrue(tokenizer.countTokens(MODEL, truncated) > 70);
+        assertTrue(truncated.endsWith("."));
+        assertEquals("kurz", tokenizer.truncateToTokens(MODEL, "kurz", 100));
+    }
+
+    @Test
+    void packSegments_ShouldFillChunksUpToLimitAndSplitOversizedSegments() {
+        String small = "Kleiner Abschnitt über Docker.";
+        String large = "Ein sehr langer Abschnitt über Kubernetes und Helm. ".repeat(100);
+
+        List<String> chunks = tokenizer.packSegments(MODEL, List.of(small, small, large, small), 200);
+
+        assertTrue(chunks.size() > 3);
+        assertTrue(chunks.get(0).startsWith(small + "\n\n" + small));
+        chunks.forEach(chunk -> assertTrue(tokenizer.countTokens(MODEL, chunk) <= 200));
+        assertTrue(chunks.get(chunks.size() - 1).endsWith(small));
+    }
+
+    @Test
+    void packSegments_ShouldKeepLaterChunksStableAfterInsertion() {
+        List<String> segments = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            segments.add("Abschnitt " + i + ": Der Dienst " + i + " nutzt Spring Boot, Kafka und PostgreSQL "
+                    + "für die Verarbeitung von Aufträgen aus dem Kundenportal.");
+        }
+        List<String> edited = new ArrayList<>(segments);
+        edited.add(2, "Neuer Abschnitt: Authentifizierung erfolgt über Keycloak mit OpenID Connect.");
+
+        List<String> before = tokenizer.packSegments(MODEL, segments, 200);
+        List<String> after = tokenizer.packSegments(MODEL, edited, 200);
+
+        // Nur die Chunks bis zum nächsten Anker ändern sich
+        List<String> changed = before.stream().filter(chunk -> !after.contains(chunk)).toList();
+        assertTrue(before.size() > 10);
+        assertTrue(changed.size() <= 2, "geänderte Chunks: " + changed.size());
+    }
+
+    @Test
+    void inputBudget_ShouldRespectContextWindowAndCap() {
+        assertEquals(128_000, tokenizer.contextWindow("gpt-4-turbo-preview"));
+        assertEquals(8_192, tokenizer.contextWindow("gpt-4"));
+        assertEquals(4_096, tokenizer.contextWindow("gpt-3.5-turbo-instruct"));
+
+        // Kleines Fenster: 4096 - 200 - 1000 - 64
+        assertEquals(2_832, tokenizer.inputBudget("gpt-3.5-turbo-instruct", 200, 1000));
+        // Großes Fenster: Kostenbremse greift
+        assertEquals(6_000, tokenizer.inputBudget(MODEL, 1200, 500));
+    }
+}